@@ -0,0 +1,87 @@
+package se.eskimos.admission;
+
+import java.util.ArrayList;
+import java.util.List;
+import se.eskimos.recorder.JobRegistry;
+import se.eskimos.recorder.RecordingJob;
+
+/**
+ * Decides at scheduling time whether a new job is accepted. The registry's active jobs are indexed once
+ * by ScheduleConflictChecker and every accepted job is added to the index, so one controller can check
+ * a whole watch or batch pass.
+ */
+public class AdmissionController {
+
+    /**
+     * Outcome of an admission check.
+     */
+    public enum Decision {
+        /** A slot is free for the whole window */
+        ACCEPT,
+        /** The provider is fully booked for part of the window, the job waits for a slot by priority */
+        QUEUE,
+        /** The provider is fully booked and the policy is reject */
+        REJECT,
+        /** A job on the same channel already covers the whole window */
+        DUPLICATE
+    }
+
+    /**
+     * @param decision The decision
+     * @param report Overlaps, duplicates and provider load found for the job
+     */
+    public record Result(Decision decision, ScheduleConflictChecker.Report report) {}
+
+    private final JobRegistry registry;
+    private ScheduleConflictChecker checker;
+
+    public AdmissionController(JobRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Checks a job against the active jobs. The job needs url, provider, startAt and stopAt set.
+     * @param job The new job
+     * @param maxConnections Provider limit, 0 for unlimited
+     * @param reject true to reject instead of queue when the provider is fully booked
+     * @return The decision and the conflicts found
+     */
+    public Result check(RecordingJob job, int maxConnections, boolean reject) {
+        ScheduleConflictChecker.Report report = getChecker().check(job);
+        if (report.isCoveredBy(job)) {
+            return new Result(Decision.DUPLICATE, report);
+        }
+        if (!report.exceeds(maxConnections)) {
+            return new Result(Decision.ACCEPT, report);
+        }
+        return new Result(reject ? Decision.REJECT : Decision.QUEUE, report);
+    }
+
+    /**
+     * Adds an accepted or queued job to the index so later checks count it.
+     */
+    public void admitted(RecordingJob job) {
+        getChecker().add(job);
+    }
+
+    /**
+     * @return Active jobs on the same channel that are recording or waiting when the job starts, or stop
+     *         exactly then, so the job can continue on their connection. The job itself is not included.
+     */
+    public List<RecordingJob> connectionHosts(RecordingJob job) {
+        List<RecordingJob> hosts = new ArrayList<>();
+        for (RecordingJob other : getChecker().runningAt(job.getUrl(), job.getStartAt())) {
+            if (!other.getId().equals(job.getId()) && other.getStartAt() <= job.getStartAt()) {
+                hosts.add(other);
+            }
+        }
+        return hosts;
+    }
+
+    private ScheduleConflictChecker getChecker() {
+        if (checker == null) {
+            checker = new ScheduleConflictChecker(registry.list());
+        }
+        return checker;
+    }
+}
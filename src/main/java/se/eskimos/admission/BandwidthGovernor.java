@@ -0,0 +1,110 @@
+package se.eskimos.admission;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+import se.eskimos.metrics.MetricsFiles;
+import se.eskimos.recorder.JobRegistry;
+import se.eskimos.recorder.RecordingJob;
+import se.eskimos.scheduler.DeadlineScheduler;
+
+/**
+ * Keeps the downlink of all recorders below a limit. Every recorder sums the bitrate gauges of all
+ * recorders' metrics files at the metrics interval. When the sum is over the limit only the lowest priority
+ * recording acts, so the recorders agree without talking to each other: it switches to a lower quality
+ * stream of its channel, or gives up its connection if it has none.
+ *
+ * A decision is marked in the state directory, and no recorder acts again until the metrics files have
+ * had a few intervals to show its effect.
+ */
+public class BandwidthGovernor {
+    /** Gauge every recorder exports with the bitrate it receives */
+    public static final String BITRATE_METRIC = "iptv_recording_bitrate_bps";
+
+    /**
+     * What the lowest priority recording does when the limit is exceeded.
+     */
+    public interface Actions {
+        /**
+         * @return true if the recording switched to a lower quality stream, false if it has none (left)
+         */
+        boolean downgrade();
+
+        /** Gives up the connection, ending the recording */
+        void preempt();
+    }
+
+    private static final String DECISION_FILE = "bandwidth.last";
+    private static final int SETTLE_INTERVALS = 3;
+
+    private final String stateDir;
+    private final String jobId;
+    private final int maxMbps;
+    private final int intervalSeconds;
+    private final Actions actions;
+
+    /**
+     * @param jobId Job of this recorder in the registry
+     * @param maxMbps Limit for all recorders together
+     * @param intervalSeconds Metrics export interval, the check runs as often
+     */
+    public BandwidthGovernor(String stateDir, String jobId, int maxMbps, int intervalSeconds, Actions actions) {
+        if (maxMbps <= 0 || intervalSeconds <= 0) {
+            throw new IllegalArgumentException("Bandwidth limit and metrics interval must be > 0");
+        }
+        this.stateDir = stateDir;
+        this.jobId = jobId;
+        this.maxMbps = maxMbps;
+        this.intervalSeconds = intervalSeconds;
+        this.actions = actions;
+    }
+
+    /**
+     * Checks the limit every interval until the process exits.
+     */
+    public void start() {
+        DeadlineScheduler.getDefault().schedule("bandwidth", ZonedDateTime.now().plusSeconds(intervalSeconds), () -> {
+            try {
+                check();
+            } catch (RuntimeException e) {
+                LogHelper.LogWarning(String.format(TextHelper.PREEMPT_BANDWIDTH_CHECK_FAILED, e.getMessage()));
+            }
+            start();
+        });
+    }
+
+    /**
+     * Acts if the limit is exceeded, this is the lowest priority recording and no decision is settling.
+     */
+    void check() {
+        double totalBps = MetricsFiles.sum(stateDir, BITRATE_METRIC);
+        if (totalBps <= maxMbps * 1_000_000.0) {
+            return;
+        }
+        File decision = new File(stateDir, DECISION_FILE);
+        if (decision.lastModified() > System.currentTimeMillis() - SETTLE_INTERVALS * intervalSeconds * 1000L) {
+            return;
+        }
+        RecordingJob lowest = new JobRegistry(stateDir).lowestPriorityRecording(job -> true);
+        if (lowest == null || !lowest.getId().equals(jobId)) {
+            return;
+        }
+        markDecision(decision);
+        LogHelper.LogWarning(String.format(TextHelper.PREEMPT_BANDWIDTH_EXCEEDED, totalBps / 1_000_000.0, maxMbps, lowest.getPriority()));
+        if (!actions.downgrade()) {
+            actions.preempt();
+        }
+    }
+
+    private static void markDecision(File decision) {
+        try {
+            if (!decision.createNewFile()) {
+                decision.setLastModified(System.currentTimeMillis());
+            }
+        } catch (IOException e) {
+            LogHelper.LogDebug("[PREEMPT] Could not mark the decision in " + decision + ": " + e.getMessage());
+        }
+    }
+}
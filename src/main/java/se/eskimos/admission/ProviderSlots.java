@@ -0,0 +1,332 @@
+package se.eskimos.admission;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+
+/**
+ * Connection slots per provider shared by all recorder processes, implemented with file locks under
+ * &lt;stateDir&gt;/slots/&lt;provider&gt;. A slot is held by locking slot-N.lock, so slots of crashed processes
+ * are released by the operating system.
+ *
+ * Processes waiting for a slot queue up by creating a locked waiter file named by priority and arrival time.
+ * Only the first live waiter may take a free slot, so higher priority jobs are served first and equal
+ * priorities in arrival order.
+ *
+ * A holder writes its job id and priority into its slot file. When the first waiter has waited long enough
+ * it can ask the lowest priority holder below its own priority to give up the slot (preemption).
+ */
+public class ProviderSlots {
+    private static final String SLOTS_DIR = "slots";
+    private static final String WAITERS_DIR = "waiters";
+    private static final String SLOT_PREFIX = "slot-";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String WAITER_SUFFIX = ".wait";
+    private static final int MAX_PRIORITY = 99;
+    // Lock releases are not signalled across processes, so waiters check again at this interval
+    private static final long WAIT_POLL_MILLIS = 1000;
+    // Unlocked waiter files younger than this may belong to a process that has not locked it yet
+    private static final long WAITER_STALE_MILLIS = 60_000;
+
+    // Files locked by this JVM. They must not be opened and closed again here: on some systems closing
+    // any channel of a file releases all locks the process holds on it
+    static final Set<String> HELD = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A slot held by another process, as written by its holder.
+     * @param since Epoch millis the slot was taken
+     */
+    public record Holder(int slot, String jobId, int priority, long since) {}
+
+    /**
+     * Asks a holder to give up its slot, e.g. through its control API.
+     */
+    public interface Preemptor {
+        /**
+         * @return true if the holder agreed to release the slot
+         */
+        boolean preempt(Holder holder);
+    }
+
+    private final File baseDir;
+
+    /**
+     * @param stateDir Directory for runtime state
+     */
+    public ProviderSlots(String stateDir) {
+        this.baseDir = new File(stateDir, SLOTS_DIR);
+    }
+
+    /**
+     * Takes a free slot without waiting and without regard to queued waiters.
+     * @return The lease, or null if all slots are taken
+     */
+    public SlotLease tryAcquire(String provider, int maxConnections) throws IOException {
+        File dir = providerDir(provider);
+        for (int slot = 0; slot < maxConnections; slot++) {
+            File file = new File(dir, SLOT_PREFIX + slot + LOCK_SUFFIX);
+            if (HELD.contains(file.getAbsolutePath())) {
+                continue;
+            }
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = tryLock(channel);
+            if (lock != null) {
+                HELD.add(file.getAbsolutePath());
+                return new SlotLease(provider, slot, file.getAbsolutePath(), channel, lock);
+            }
+            channel.close();
+        }
+        return null;
+    }
+
+    /**
+     * Waits in the provider's priority queue until a slot is free or the deadline passes.
+     * @param priority Higher values are served first (clamped to -99..99)
+     * @param jobId Used in the waiter file name for diagnostics
+     * @param deadlineMillis Epoch millis after which waiting is pointless (e.g. the recording's stop time)
+     * @return The lease, or null if the deadline passed
+     */
+    public SlotLease acquire(String provider, int maxConnections, int priority, String jobId, long deadlineMillis) throws IOException, InterruptedException {
+        return acquire(provider, maxConnections, priority, jobId, deadlineMillis, null, 0);
+    }
+
+    /**
+     * Like acquire, but once this process is first in the queue and has waited preemptAfterMillis it asks the
+     * lowest priority holder below its own priority to give up its slot. Every holder is asked at most once.
+     * @param preemptor Asks a holder to release its slot, null to never preempt
+     */
+    public SlotLease acquire(String provider, int maxConnections, int priority, String jobId, long deadlineMillis,
+                             Preemptor preemptor, long preemptAfterMillis) throws IOException, InterruptedException {
+        long waitStart = System.currentTimeMillis();
+        Set<String> asked = new java.util.HashSet<>();
+        File waiters = new File(providerDir(provider), WAITERS_DIR);
+        waiters.mkdirs();
+        int clamped = Math.max(-MAX_PRIORITY, Math.min(MAX_PRIORITY, priority));
+        String name = String.format("%03d-%013d-%s%s", MAX_PRIORITY - clamped, System.currentTimeMillis(), sanitize(jobId), WAITER_SUFFIX);
+        File waiterFile = new File(waiters, name);
+        HELD.add(waiterFile.getAbsolutePath());
+        FileChannel waiterChannel = null;
+        try {
+            boolean logged = false;
+            while (System.currentTimeMillis() < deadlineMillis) {
+                // Registers, and again if the file was deleted before it was locked, keeping the place in the queue
+                if (waiterChannel == null || !waiterFile.exists()) {
+                    if (waiterChannel != null) {
+                        waiterChannel.close();
+                    }
+                    waiterChannel = FileChannel.open(waiterFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    waiterChannel.lock();
+                    continue;
+                }
+                if (isFirstLiveWaiter(waiters, name)) {
+                    SlotLease lease = tryAcquire(provider, maxConnections);
+                    if (lease != null) {
+                        writeOwner(lease, jobId, clamped);
+                        return lease;
+                    }
+                    if (preemptor != null && System.currentTimeMillis() - waitStart >= preemptAfterMillis) {
+                        Holder victim = lowestHolderBelow(provider, maxConnections, clamped, asked);
+                        if (victim != null) {
+                            asked.add(victim.jobId());
+                            preemptor.preempt(victim);
+                        }
+                    }
+                }
+                if (!logged) {
+                    LogHelper.LogWarning(String.format(TextHelper.ADMISSION_WAITING, maxConnections, provider, clamped));
+                    logged = true;
+                }
+                Thread.sleep(Math.min(WAIT_POLL_MILLIS, Math.max(1, deadlineMillis - System.currentTimeMillis())));
+            }
+            return null;
+        } finally {
+            if (waiterChannel != null) {
+                waiterChannel.close();
+            }
+            waiterFile.delete();
+            HELD.remove(waiterFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * @return Number of slots currently held by other processes
+     */
+    public int inUse(String provider, int maxConnections) {
+        int used = 0;
+        File dir = new File(baseDir, sanitize(provider));
+        int slots = Math.max(maxConnections, countSlotFiles(dir));
+        for (int slot = 0; slot < slots; slot++) {
+            File f = new File(dir, SLOT_PREFIX + slot + LOCK_SUFFIX);
+            if (f.exists() && isLockedByOther(f)) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    /**
+     * @return Slots held by other processes that have written their owner
+     */
+    public List<Holder> holders(String provider, int maxConnections) {
+        List<Holder> holders = new ArrayList<>();
+        File dir = new File(baseDir, sanitize(provider));
+        int slots = Math.max(maxConnections, countSlotFiles(dir));
+        for (int slot = 0; slot < slots; slot++) {
+            File f = new File(dir, SLOT_PREFIX + slot + LOCK_SUFFIX);
+            // Reading a slot file of this JVM would close a channel of a held lock
+            if (!f.exists() || HELD.contains(f.getAbsolutePath()) || !isLockedByOther(f)) {
+                continue;
+            }
+            Holder holder = readOwner(slot, f);
+            if (holder != null) {
+                holders.add(holder);
+            }
+        }
+        return holders;
+    }
+
+    /**
+     * @return Number of live processes waiting for a slot
+     */
+    public int waiting(String provider) {
+        File[] files = new File(new File(baseDir, sanitize(provider)), WAITERS_DIR).listFiles((d, n) -> n.endsWith(WAITER_SUFFIX));
+        if (files == null) {
+            return 0;
+        }
+        int count = 0;
+        for (File f : files) {
+            if (isLockedByOther(f)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Providers (as directory names) that have slot files
+     */
+    public List<String> providers() {
+        String[] names = baseDir.list((d, n) -> new File(d, n).isDirectory());
+        List<String> result = new ArrayList<>();
+        if (names != null) {
+            result.addAll(Arrays.asList(names));
+            result.sort(null);
+        }
+        return result;
+    }
+
+    // Lowest priority first, of equal priorities the one that took its slot last
+    private Holder lowestHolderBelow(String provider, int maxConnections, int priority, Set<String> exclude) {
+        Holder victim = null;
+        for (Holder holder : holders(provider, maxConnections)) {
+            if (holder.priority() >= priority || exclude.contains(holder.jobId())) {
+                continue;
+            }
+            if (victim == null || holder.priority() < victim.priority()
+                || (holder.priority() == victim.priority() && holder.since() > victim.since())) {
+                victim = holder;
+            }
+        }
+        return victim;
+    }
+
+    // Written through the locked channel, one line: priority since jobId (the id may contain spaces)
+    private static void writeOwner(SlotLease lease, String jobId, int priority) {
+        if (jobId == null || jobId.isEmpty()) {
+            return;
+        }
+        String owner = priority + " " + System.currentTimeMillis() + " " + jobId + "\n";
+        try {
+            lease.writeOwner(owner.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LogHelper.LogDebug("[ADMISSION] Could not write slot owner: " + e.getMessage());
+        }
+    }
+
+    private static Holder readOwner(int slot, File f) {
+        try {
+            String[] parts = Files.readString(f.toPath(), StandardCharsets.UTF_8).trim().split(" ", 3);
+            if (parts.length < 3) {
+                return null;
+            }
+            return new Holder(slot, parts[2], Integer.parseInt(parts[0]), Long.parseLong(parts[1]));
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean isFirstLiveWaiter(File waiters, String myName) {
+        String[] names = waiters.list((d, n) -> n.endsWith(WAITER_SUFFIX));
+        if (names == null) {
+            return true;
+        }
+        Arrays.sort(names);
+        for (String other : names) {
+            if (other.equals(myName)) {
+                return true;
+            }
+            File f = new File(waiters, other);
+            if (isLockedByOther(f)) {
+                return false;
+            }
+            // Left behind by a process that died while waiting
+            if (System.currentTimeMillis() - f.lastModified() > WAITER_STALE_MILLIS) {
+                f.delete();
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLockedByOther(File f) {
+        if (HELD.contains(f.getAbsolutePath())) {
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.WRITE)) {
+            FileLock lock = tryLock(channel);
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by this JVM through another channel
+            return null;
+        }
+    }
+
+    private static int countSlotFiles(File dir) {
+        String[] names = dir.list((d, n) -> n.startsWith(SLOT_PREFIX) && n.endsWith(LOCK_SUFFIX));
+        return names == null ? 0 : names.length;
+    }
+
+    private File providerDir(String provider) {
+        File dir = new File(baseDir, sanitize(provider));
+        dir.mkdirs();
+        return dir;
+    }
+
+    static String sanitize(String value) {
+        String s = value == null || value.isEmpty() ? "default" : value;
+        return s.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
@@ -0,0 +1,137 @@
+package se.eskimos.admission;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import se.eskimos.recorder.RecordingJob;
+import se.eskimos.scheduler.IntervalTree;
+
+/**
+ * Index of the active jobs' recording windows, one interval tree per provider and one per channel.
+ * Checking a new job costs O(log n + k) where k is the number of jobs overlapping its window.
+ *
+ * Provider load counts a job from the time it connects (its pre-warm and pre-roll lead before the start),
+ * duplicates on a channel are judged by the recorded window alone.
+ */
+public class ScheduleConflictChecker {
+
+    /**
+     * Conflicts of one job with the indexed jobs.
+     * @param duplicates Jobs on the same channel whose window overlaps
+     * @param providerOverlaps Jobs on the same provider whose connection overlaps the new job's
+     * @param peakConcurrent Most provider connections open at the same instant while the new job's is, not counting it
+     */
+    public record Report(List<RecordingJob> duplicates, List<RecordingJob> providerOverlaps, int peakConcurrent) {
+
+        /**
+         * @return true if a job on the same channel already covers the whole window
+         */
+        public boolean isCoveredBy(RecordingJob job) {
+            return coveringJob(job) != null;
+        }
+
+        /**
+         * @return The job on the same channel that covers the whole window, null if none does
+         */
+        public RecordingJob coveringJob(RecordingJob job) {
+            for (RecordingJob other : duplicates) {
+                if (other.getStartAt() <= job.getStartAt() && other.getStopAt() >= job.getStopAt()) {
+                    return other;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return true if the new job would exceed the provider limit (0 = unlimited)
+         */
+        public boolean exceeds(int maxConnections) {
+            return maxConnections > 0 && peakConcurrent + 1 > maxConnections;
+        }
+    }
+
+    private final Map<String, IntervalTree<RecordingJob>> byProvider = new HashMap<>();
+    private final Map<String, IntervalTree<RecordingJob>> byChannel = new HashMap<>();
+
+    /**
+     * Indexes all active jobs with a known window.
+     */
+    public ScheduleConflictChecker(List<RecordingJob> jobs) {
+        for (RecordingJob job : jobs) {
+            if (job.isActive()) {
+                add(job);
+            }
+        }
+    }
+
+    /**
+     * Indexes an accepted job so later checks see it.
+     */
+    public void add(RecordingJob job) {
+        if (job.getStopAt() <= job.getStartAt()) {
+            return;
+        }
+        byProvider.computeIfAbsent(job.getProvider(), k -> new IntervalTree<>()).add(job.getConnectAt(), job.getStopAt(), job);
+        byChannel.computeIfAbsent(job.getUrl(), k -> new IntervalTree<>()).add(job.getStartAt(), job.getStopAt(), job);
+    }
+
+    /**
+     * Removes a job, e.g. when it is cancelled.
+     */
+    public void remove(RecordingJob job) {
+        IntervalTree<RecordingJob> provider = byProvider.get(job.getProvider());
+        if (provider != null) {
+            provider.remove(job.getConnectAt(), job.getStopAt(), job);
+        }
+        IntervalTree<RecordingJob> channel = byChannel.get(job.getUrl());
+        if (channel != null) {
+            channel.remove(job.getStartAt(), job.getStopAt(), job);
+        }
+    }
+
+    /**
+     * Checks a new job against the index, the job itself (same id) is ignored.
+     */
+    public Report check(RecordingJob job) {
+        IntervalTree<RecordingJob> provider = byProvider.get(job.getProvider());
+        IntervalTree<RecordingJob> channel = byChannel.get(job.getUrl());
+        if (job.getStopAt() <= job.getStartAt()) {
+            return new Report(List.of(), List.of(), 0);
+        }
+        List<RecordingJob> duplicates = channel == null ? List.of() : withoutSelf(channel.overlapping(job.getStartAt(), job.getStopAt()), job);
+        List<RecordingJob> overlaps = provider == null ? List.of() : withoutSelf(provider.overlapping(job.getConnectAt(), job.getStopAt()), job);
+        return new Report(duplicates, overlaps, peakConcurrent(overlaps, job.getConnectAt(), job.getStopAt()));
+    }
+
+    /**
+     * @return Jobs on the url whose window contains the instant or ends exactly at it, ordered by start
+     */
+    public List<RecordingJob> runningAt(String url, long instant) {
+        IntervalTree<RecordingJob> channel = byChannel.get(url);
+        return channel == null ? List.of() : channel.overlapping(instant - 1, instant + 1);
+    }
+
+    // Sweep over the overlapping connections clipped to [start, stop)
+    private static int peakConcurrent(List<RecordingJob> jobs, long start, long stop) {
+        long[][] events = new long[jobs.size() * 2][];
+        int i = 0;
+        for (RecordingJob job : jobs) {
+            events[i++] = new long[] {Math.max(job.getConnectAt(), start), 1};
+            events[i++] = new long[] {Math.min(job.getStopAt(), stop), -1};
+        }
+        // Stops sort before starts at the same instant, windows are half-open
+        java.util.Arrays.sort(events, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        int current = 0;
+        int peak = 0;
+        for (long[] event : events) {
+            current += (int) event[1];
+            peak = Math.max(peak, current);
+        }
+        return peak;
+    }
+
+    private static List<RecordingJob> withoutSelf(List<RecordingJob> jobs, RecordingJob self) {
+        jobs.removeIf(other -> other.getId().equals(self.getId()));
+        return jobs;
+    }
+}
@@ -0,0 +1,55 @@
+package se.eskimos.admission;
+
+import java.io.Closeable;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+/**
+ * A held connection slot. The slot is released on close, or by the operating system when the process exits.
+ */
+public final class SlotLease implements Closeable {
+    private final String provider;
+    private final int slot;
+    private final String path;
+    private final FileChannel channel;
+    private final FileLock lock;
+
+    SlotLease(String provider, int slot, String path, FileChannel channel, FileLock lock) {
+        this.provider = provider;
+        this.slot = slot;
+        this.path = path;
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    // Replaces the slot file's content, which other processes read to see who holds the slot
+    void writeOwner(byte[] owner) throws java.io.IOException {
+        channel.truncate(0);
+        channel.write(java.nio.ByteBuffer.wrap(owner), 0);
+    }
+
+    public boolean isValid() {
+        return lock.isValid();
+    }
+
+    @Override
+    public void close() {
+        try {
+            lock.release();
+        } catch (java.io.IOException ignored) {
+        }
+        try {
+            channel.close();
+        } catch (java.io.IOException ignored) {
+        }
+        ProviderSlots.HELD.remove(path);
+    }
+}
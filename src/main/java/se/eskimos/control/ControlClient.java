@@ -0,0 +1,112 @@
+package se.eskimos.control;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client for the control API of a running ScheduledRecorder, see ControlServer.
+ */
+public class ControlClient {
+    private static final int TIMEOUT_MS = 3000;
+
+    private final int port;
+    private final String token;
+
+    public ControlClient(int port, String token) {
+        this.port = port;
+        this.token = token;
+    }
+
+    /**
+     * @param jobId Job recorded by the process, null for its oldest job
+     */
+    public Map<String, String> status(String jobId) throws IOException {
+        return parse(request("GET", "/status" + jobQuery(jobId, '?')));
+    }
+
+    public String metrics() throws IOException {
+        return request("GET", "/metrics");
+    }
+
+    public void cancel(String jobId) throws IOException {
+        request("POST", "/cancel" + jobQuery(jobId, '?'));
+    }
+
+    /**
+     * Moves the stop time.
+     * @return Status after the move
+     */
+    public Map<String, String> moveStop(String jobId, long stopAtMillis) throws IOException {
+        return parse(request("POST", "/stop?at=" + stopAtMillis + jobQuery(jobId, '&')));
+    }
+
+    /**
+     * Starts a waiting recording now.
+     * @return Status of the process's first job
+     */
+    public Map<String, String> startNow() throws IOException {
+        return parse(request("POST", "/start"));
+    }
+
+    /**
+     * Asks the process to give up its connection for a recording of higher priority, ending all its jobs.
+     * @param reason Why, e.g. slots or bandwidth
+     * @param byJobId Job that needs the connection
+     */
+    public void preempt(String reason, String byJobId) throws IOException {
+        String by = byJobId == null || byJobId.isEmpty() ? "" : "&by=" + URLEncoder.encode(byJobId, StandardCharsets.UTF_8);
+        request("POST", "/preempt?reason=" + URLEncoder.encode(reason, StandardCharsets.UTF_8) + by);
+    }
+
+    /**
+     * Lets the process record another job on its channel from the same connection.
+     * @return Status of the attached job
+     */
+    public Map<String, String> attach(String jobId, long startAtMillis, long stopAtMillis) throws IOException {
+        return parse(request("POST", "/attach?start=" + startAtMillis + "&stop=" + stopAtMillis + jobQuery(jobId, '&')));
+    }
+
+    private static String jobQuery(String jobId, char separator) {
+        return jobId == null || jobId.isEmpty() ? "" : separator + "job=" + URLEncoder.encode(jobId, StandardCharsets.UTF_8);
+    }
+
+    private String request(String method, String path) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) URI.create("http://127.0.0.1:" + port + path).toURL().openConnection();
+        try {
+            conn.setRequestMethod(method);
+            conn.setConnectTimeout(TIMEOUT_MS);
+            conn.setReadTimeout(TIMEOUT_MS);
+            conn.setRequestProperty(ControlServer.TOKEN_HEADER, token);
+            if ("POST".equals(method)) {
+                conn.setDoOutput(true);
+                conn.getOutputStream().close();
+            }
+            int code = conn.getResponseCode();
+            InputStream in = code < 400 ? conn.getInputStream() : conn.getErrorStream();
+            String body = in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            if (code != 200) {
+                throw new IOException("HTTP " + code + ": " + body.trim());
+            }
+            return body;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static Map<String, String> parse(String body) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String line : body.split("\n")) {
+            int eq = line.indexOf('=');
+            if (eq > 0) {
+                values.put(line.substring(0, eq), line.substring(eq + 1));
+            }
+        }
+        return values;
+    }
+}
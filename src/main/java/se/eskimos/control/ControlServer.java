@@ -0,0 +1,160 @@
+package se.eskimos.control;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import se.eskimos.metrics.Metrics;
+
+/**
+ * Loopback-only HTTP control endpoint of one ScheduledRecorder. Every request must carry the token from
+ * the job file in the X-Control-Token header.
+ *
+ * GET /status and GET /metrics report, POST /cancel ends the recording and POST /stop?at=epochMillis
+ * moves the stop time. POST /start starts a waiting recording now, with its pre-roll. POST /attach?job=id&start=epochMillis&stop=epochMillis records another job on the
+ * same channel from this connection. POST /preempt?reason=r&by=id ends all jobs for a recording of higher priority. /status, /cancel and /stop take an optional job=id, by default they
+ * act on the oldest job of the process. Responses are plain text, status as key=value lines.
+ */
+public class ControlServer {
+    public static final String TOKEN_HEADER = "X-Control-Token";
+
+    private final HttpServer server;
+    private final String token;
+    private final RecorderControl control;
+    private final ZoneId zone;
+
+    private ControlServer(RecorderControl control, ZoneId zone) throws IOException {
+        byte[] secret = new byte[16];
+        new SecureRandom().nextBytes(secret);
+        this.token = HexFormat.of().formatHex(secret);
+        this.control = control;
+        this.zone = zone;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "control-api");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/status", exchange -> handle(exchange, "GET", () -> format(control.status(queryParam(exchange, "job")))));
+        server.createContext("/metrics", exchange -> handle(exchange, "GET", () -> Metrics.get().toPrometheus()));
+        server.createContext("/cancel", exchange -> handle(exchange, "POST", () -> {
+            control.cancel(queryParam(exchange, "job"));
+            return "cancelled\n";
+        }));
+        server.createContext("/stop", exchange -> handle(exchange, "POST", () -> {
+            String job = queryParam(exchange, "job");
+            control.moveStop(job, epochParam(exchange, "at"));
+            return format(control.status(job));
+        }));
+        server.createContext("/start", exchange -> handle(exchange, "POST", () -> {
+            control.requestStart();
+            return format(control.status(null));
+        }));
+        server.createContext("/preempt", exchange -> handle(exchange, "POST", () -> {
+            String reason = queryParam(exchange, "reason");
+            String by = queryParam(exchange, "by");
+            control.preempt(reason == null || reason.isEmpty() ? "request" : reason, by == null ? "" : by);
+            return "preempted\n";
+        }));
+        server.createContext("/attach", exchange -> handle(exchange, "POST", () -> {
+            String job = queryParam(exchange, "job");
+            if (job == null || job.isEmpty()) {
+                throw new IllegalArgumentException("Missing parameter: job");
+            }
+            control.attach(job, epochParam(exchange, "start"), epochParam(exchange, "stop"));
+            return format(control.status(job));
+        }));
+    }
+
+    /**
+     * Starts the server on a free loopback port.
+     */
+    public static ControlServer start(RecorderControl control, ZoneId zone) throws IOException {
+        ControlServer controlServer = new ControlServer(control, zone);
+        controlServer.server.start();
+        return controlServer;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    private interface Action {
+        String run() throws Exception;
+    }
+
+    private void handle(HttpExchange exchange, String method, Action action) throws IOException {
+        int code;
+        String body;
+        if (!token.equals(exchange.getRequestHeaders().getFirst(TOKEN_HEADER))) {
+            code = 403;
+            body = "Invalid token\n";
+        } else if (!method.equals(exchange.getRequestMethod())) {
+            code = 405;
+            body = "Use " + method + "\n";
+        } else {
+            try {
+                body = action.run();
+                code = 200;
+            } catch (IllegalArgumentException e) {
+                code = 400;
+                body = e.getMessage() + "\n";
+            } catch (IllegalStateException e) {
+                code = 409;
+                body = e.getMessage() + "\n";
+            } catch (Exception e) {
+                code = 500;
+                body = e.getMessage() + "\n";
+            }
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return java.net.URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    // Parameter in epoch millis as a time in the recorder's zone
+    private ZonedDateTime epochParam(HttpExchange exchange, String name) {
+        String value = queryParam(exchange, name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return Instant.ofEpochMilli(Long.parseLong(value)).atZone(zone);
+    }
+
+    static String format(Map<String, String> values) {
+        StringBuilder sb = new StringBuilder();
+        values.forEach((k, v) -> sb.append(k).append('=').append(v).append('\n'));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,295 @@
+package se.eskimos.control;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import se.eskimos.helpers.RecorderHelper;
+import se.eskimos.scheduler.DeadlineScheduler;
+import se.eskimos.stream.SharedStreamSource;
+
+/**
+ * Runtime state of one ScheduledRecorder that the control API can change: the jobs recorded by the
+ * process, their stop times and the deadlines and recorder that depend on them. Moving a stop reschedules
+ * the deadlines and the running recorder's stop instant, the stream connection is left alone.
+ *
+ * A regular recording can take further jobs on the same channel (attach), each written to its own file
+ * from the shared connection. The process runs until the latest stop of its jobs.
+ */
+public class RecorderControl {
+
+    /**
+     * Receives the changes made through the control API.
+     */
+    public interface Listener {
+        /** A job's stop time was moved, e.g. to update the job registry */
+        void stopMoved(String jobId, ZonedDateTime newStop);
+
+        /** A job was attached to this process */
+        void attached(String jobId, ZonedDateTime start, ZonedDateTime stop);
+
+        /** A job was cancelled while other jobs of the process keep recording */
+        void jobCancelled(String jobId);
+
+        /** The last job was cancelled: stop recording and end the process, called on its own thread */
+        void cancelled();
+
+        /** Another recording needs the connection: stop all jobs and end the process, called on its own thread */
+        void preempted(String reason, String byJobId);
+    }
+
+    private record Window(ZonedDateTime start, ZonedDateTime stop) {}
+
+    // Time for the control API to send its response before the process ends
+    private static final long RESPONSE_GRACE_MILLIS = 200;
+
+    private final int failsafeGraceSeconds;
+    private final Listener listener;
+    // Jobs of this process, the one it was started for first
+    private final Map<String, Window> jobs = new LinkedHashMap<>();
+    private DeadlineScheduler.Deadline failsafe;
+    private DeadlineScheduler.Deadline stopDeadline;
+    private RecorderHelper helper;
+    private SharedStreamSource source;
+    private BiFunction<ZonedDateTime, ZonedDateTime, String> fileNames;
+    private String state = "WAITING";
+    private boolean preRolling;
+    private volatile boolean startRequested;
+
+    public RecorderControl(String jobId, ZonedDateTime start, ZonedDateTime stop, int failsafeGraceSeconds, Listener listener) {
+        this.failsafeGraceSeconds = failsafeGraceSeconds;
+        this.listener = listener;
+        jobs.put(jobId, new Window(start, stop));
+    }
+
+    /**
+     * Lets other jobs on the channel share the connection (regular mode only).
+     * @param source Source the recorder reads the stream into, the first job already subscribed
+     * @param fileNames Output file of an attached job from its start and stop
+     */
+    public synchronized void shareConnection(SharedStreamSource source, BiFunction<ZonedDateTime, ZonedDateTime, String> fileNames) {
+        this.source = source;
+        this.fileNames = fileNames;
+    }
+
+    /**
+     * @return Latest stop of the process's jobs
+     */
+    public synchronized ZonedDateTime getStop() {
+        ZonedDateTime stop = null;
+        for (Window window : jobs.values()) {
+            if (stop == null || window.stop().isAfter(stop)) {
+                stop = window.stop();
+            }
+        }
+        return stop;
+    }
+
+    /**
+     * @return Ids of the jobs recorded by this process
+     */
+    public synchronized List<String> jobIds() {
+        return new ArrayList<>(jobs.keySet());
+    }
+
+    /**
+     * Arms the failsafe deadline at the current stop time plus the grace period.
+     */
+    public synchronized void armFailsafe(DeadlineScheduler scheduler, Runnable task) {
+        failsafe = scheduler.schedule("failsafe", getStop().plusSeconds(failsafeGraceSeconds), task);
+    }
+
+    /**
+     * Cancels the failsafe deadline, e.g. once the process is ending by itself.
+     */
+    public synchronized void cancelFailsafe() {
+        if (failsafe != null) {
+            failsafe.cancel();
+            failsafe = null;
+        }
+    }
+
+    /**
+     * Arms the stop deadline at the current stop time. Later moves reschedule it.
+     * @param task Runs at the stop time, or null to only wait on the returned deadline
+     */
+    public synchronized DeadlineScheduler.Deadline armStop(DeadlineScheduler scheduler, Runnable task) {
+        stopDeadline = task != null ? scheduler.schedule("stop", getStop(), task) : scheduler.schedule("stop", getStop());
+        return stopDeadline;
+    }
+
+    /**
+     * Marks the time the recorder buffers pre-roll before the start, it can be started early meanwhile.
+     */
+    public synchronized void preRolling(boolean preRolling) {
+        this.preRolling = preRolling;
+    }
+
+    /**
+     * Asks a recorder that is buffering pre-roll to start now.
+     * @throws IllegalStateException if it is not buffering pre-roll
+     */
+    public synchronized void requestStart() {
+        if (!preRolling) {
+            throw new IllegalStateException("The recording is not buffering pre-roll, it cannot be started early");
+        }
+        startRequested = true;
+    }
+
+    public boolean isStartRequested() {
+        return startRequested;
+    }
+
+    /**
+     * Registers the recorder once recording has started.
+     */
+    public synchronized void recording(RecorderHelper helper) {
+        this.helper = helper;
+        this.state = "RECORDING";
+    }
+
+    /**
+     * Moves the stop time of a waiting or running job.
+     * @param id Job id, null for the oldest job
+     * @throws IllegalArgumentException if the job is unknown or the new stop is not after both its start and now
+     * @throws IllegalStateException if the job's file is already complete
+     */
+    public synchronized void moveStop(String id, ZonedDateTime newStop) {
+        String key = resolve(id);
+        Window window = jobs.get(key);
+        if (!newStop.isAfter(window.start()) || !newStop.isAfter(ZonedDateTime.now(newStop.getZone()))) {
+            throw new IllegalArgumentException("The stop time must be after the start time and in the future: " + newStop);
+        }
+        if (source != null && !source.setStop(key, newStop.toInstant().toEpochMilli())) {
+            throw new IllegalStateException("The job has already finished: " + key);
+        }
+        jobs.put(key, new Window(window.start(), newStop));
+        stopChanged();
+        listener.stopMoved(key, newStop);
+    }
+
+    /**
+     * Adds a job on the same channel that starts before this process stops, it is recorded from the
+     * running connection into its own file.
+     * @throws IllegalStateException if the connection cannot be shared (ffmpeg mode, recording ended)
+     * @throws IllegalArgumentException if the window does not continue or overlap this process's recording
+     */
+    public synchronized void attach(String id, ZonedDateTime start, ZonedDateTime stop) {
+        if (source == null) {
+            throw new IllegalStateException("This recording cannot share its connection");
+        }
+        if (jobs.containsKey(id)) {
+            throw new IllegalArgumentException("Job is already recorded by this process: " + id);
+        }
+        if (!stop.isAfter(start) || !stop.isAfter(ZonedDateTime.now(stop.getZone()))) {
+            throw new IllegalArgumentException("The stop time must be after the start time and in the future: " + stop);
+        }
+        if (start.isAfter(getStop())) {
+            throw new IllegalArgumentException("The job starts after this recording stops: " + start);
+        }
+        source.subscribe(id, start.toInstant().toEpochMilli(), stop.toInstant().toEpochMilli(), () -> fileNames.apply(start, stop));
+        jobs.put(id, new Window(start, stop));
+        stopChanged();
+        listener.attached(id, start, stop);
+    }
+
+    /**
+     * Continues all jobs in new files, e.g. on another volume. Later attached jobs are written there too.
+     * @param fileNames Output file of a job from its start and stop
+     * @throws IllegalStateException if the files are not written by this process (ffmpeg mode)
+     */
+    public synchronized void relocate(BiFunction<ZonedDateTime, ZonedDateTime, String> fileNames) {
+        if (source == null) {
+            throw new IllegalStateException("This recording's file cannot be moved");
+        }
+        this.fileNames = fileNames;
+        jobs.forEach((id, window) -> source.relocate(id, () -> fileNames.apply(window.start(), window.stop())));
+    }
+
+    /**
+     * Cancels a job. The last job ends the process shortly after, so the caller can still send its response.
+     * @param id Job id, null for the oldest job
+     */
+    public synchronized void cancel(String id) {
+        String key = resolve(id);
+        if (jobs.size() > 1 && source != null) {
+            source.unsubscribe(key);
+            jobs.remove(key);
+            stopChanged();
+            listener.jobCancelled(key);
+            return;
+        }
+        state = "CANCELLING";
+        endLater(listener::cancelled, "control-cancel");
+    }
+
+    /**
+     * Gives up the connection for a recording of higher priority: all jobs of the process end shortly after,
+     * so the caller can still send its response.
+     * @param reason Why, e.g. slots or bandwidth
+     * @param byJobId Job that needs the connection, empty if not known
+     * @throws IllegalStateException if the process is already ending
+     */
+    public synchronized void preempt(String reason, String byJobId) {
+        if (!"WAITING".equals(state) && !"RECORDING".equals(state)) {
+            throw new IllegalStateException("The recording is already ending: " + state);
+        }
+        state = "PREEMPTED";
+        endLater(() -> listener.preempted(reason, byJobId), "control-preempt");
+    }
+
+    /**
+     * @param id Job id, null for the oldest job
+     * @return Current state of the job as key/value pairs
+     */
+    public synchronized Map<String, String> status(String id) {
+        String key = resolve(id);
+        Window window = jobs.get(key);
+        long bytes = source != null ? source.getBytes(key) : helper != null ? helper.getBytesRecorded() : 0;
+        Map<String, String> status = new LinkedHashMap<>();
+        status.put("id", key);
+        status.put("state", preRolling ? "PREROLL" : state);
+        status.put("start", window.start().toString());
+        status.put("stop", window.stop().toString());
+        status.put("bytes", Long.toString(bytes));
+        status.put("pid", Long.toString(ProcessHandle.current().pid()));
+        status.put("jobs", String.join(",", jobs.keySet()));
+        return status;
+    }
+
+    // Without an id the oldest remaining job, the first one may have been cancelled while attached jobs go on
+    private String resolve(String id) {
+        if (id == null || id.isEmpty()) {
+            return jobs.keySet().iterator().next();
+        }
+        if (!jobs.containsKey(id)) {
+            throw new IllegalArgumentException("Unknown job: " + id);
+        }
+        return id;
+    }
+
+    private static void endLater(Runnable end, String name) {
+        Thread t = new Thread(() -> {
+            try {
+                Thread.sleep(RESPONSE_GRACE_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            end.run();
+        }, name);
+        t.start();
+    }
+
+    // The process deadlines follow the latest stop
+    private void stopChanged() {
+        ZonedDateTime stop = getStop();
+        if (failsafe != null) {
+            failsafe.reschedule(stop.plusSeconds(failsafeGraceSeconds));
+        }
+        if (stopDeadline != null) {
+            stopDeadline.reschedule(stop);
+        }
+    }
+}
@@ -34,4 +34,45 @@ public class ChannelSearchHelper {
         }
         return matches;
     }
-} 
\ No newline at end of file
+
+    /**
+     * Finds a lower quality variant of a channel: another entry with the same tvgId whose name marks a lower
+     * quality (UHD/4K, FHD/1080, HD/720, SD). Unmarked names count as HD.
+     * @return The lowest quality variant below the channel's own quality, or null if there is none
+     */
+    public static M3UHolder findLowerQualityVariant(List<M3UHolder> channels, M3UHolder channel) {
+        if (channels == null || channel == null || channel.tvgId() == null || channel.tvgId().isEmpty()) {
+            return null;
+        }
+        int own = qualityRank(channel);
+        M3UHolder best = null;
+        int bestRank = own;
+        for (M3UHolder ch : channels) {
+            if (!channel.tvgId().equals(ch.tvgId()) || ch.url() == null || ch.url().equals(channel.url())) {
+                continue;
+            }
+            int rank = qualityRank(ch);
+            if (rank < bestRank) {
+                best = ch;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    // 4 = UHD, 3 = FHD, 2 = HD or unmarked, 1 = SD
+    private static int qualityRank(M3UHolder ch) {
+        String name = ch.tvgName() != null && !ch.tvgName().isEmpty() ? ch.tvgName() : ch.name();
+        String upper = name == null ? "" : " " + name.toUpperCase().replaceAll("[^A-Z0-9]+", " ") + " ";
+        if (upper.contains(" UHD ") || upper.contains(" 4K ") || upper.contains(" 2160P ")) {
+            return 4;
+        }
+        if (upper.contains(" FHD ") || upper.contains(" 1080P ") || upper.contains(" 1080 ")) {
+            return 3;
+        }
+        if (upper.contains(" SD ") || upper.contains(" 576P ") || upper.contains(" 480P ")) {
+            return 1;
+        }
+        return 2;
+    }
+}
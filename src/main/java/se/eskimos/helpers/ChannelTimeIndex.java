@@ -0,0 +1,176 @@
+package se.eskimos.helpers;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import se.eskimos.m3u.M3UHolder;
+
+/**
+ * Sorted index of channels keyed by the start time found in their tvg-name (e.g. '20:30 MXGP FHD').
+ * Range queries are answered by binary search over the sorted keys instead of scanning the whole playlist.
+ */
+public class ChannelTimeIndex {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * A channel together with the start time extracted from its name.
+     */
+    public record Entry(LocalTime startTime, M3UHolder channel) {}
+
+    /**
+     * A window of start times, from and to both inclusive. to is before from when it crosses midnight.
+     */
+    public record Window(LocalTime from, LocalTime to) {}
+
+    // Parallel arrays: keys[i] is the minute of day for entries[i], sorted ascending
+    private final int[] keys;
+    private final Entry[] entries;
+
+    private ChannelTimeIndex(Entry[] entries) {
+        this.entries = entries;
+        this.keys = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            keys[i] = toKey(entries[i].startTime());
+        }
+    }
+
+    /**
+     * Builds an index of all channels whose tvg-name (or name as fallback) contains a start time.
+     * Channels without a time are left out. Playlist order is kept for channels with the same start time.
+     * @param channels The channels to index
+     * @return The index
+     */
+    public static ChannelTimeIndex build(List<M3UHolder> channels) {
+        List<Entry> timed = new ArrayList<>();
+        for (M3UHolder ch : channels) {
+            String name = ch.tvgName() != null && !ch.tvgName().isEmpty() ? ch.tvgName() : ch.name();
+            LocalTime time = DateTimeHelper.extractTimeFromName(name);
+            if (time != null) {
+                timed.add(new Entry(time, ch));
+            }
+        }
+        Entry[] sorted = timed.toArray(new Entry[0]);
+        // Arrays.sort on objects is stable, so playlist order is kept within the same minute
+        Arrays.sort(sorted, Comparator.comparingInt(e -> toKey(e.startTime())));
+        return new ChannelTimeIndex(sorted);
+    }
+
+    /**
+     * @return Number of channels with a start time in the index
+     */
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * Returns all channels starting between from and to (both inclusive), optionally limited to some groups.
+     * If to is before from the window is treated as crossing midnight (e.g. 23:00 - 01:00).
+     * @param from Start of the window
+     * @param to End of the window
+     * @param groupTitles Group titles to include (case-insensitive), null or empty for all groups
+     * @return Matching entries ordered by start time
+     */
+    public List<Entry> between(LocalTime from, LocalTime to, String[] groupTitles) {
+        Set<String> groups = normalizeGroups(groupTitles);
+        List<Entry> result = new ArrayList<>();
+        int fromKey = toKey(from);
+        int toKey = toKey(to);
+        if (fromKey <= toKey) {
+            collect(fromKey, toKey, groups, result);
+        } else {
+            collect(fromKey, MINUTES_PER_DAY - 1, groups, result);
+            collect(0, toKey, groups, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns all channels starting within the given number of minutes from a point in time.
+     * @param from Start of the window
+     * @param minutes Length of the window in minutes
+     * @param groupTitles Group titles to include (case-insensitive), null or empty for all groups
+     * @return Matching entries ordered by start time
+     */
+    public List<Entry> startingWithin(LocalTime from, int minutes, String[] groupTitles) {
+        Window window = window(from, minutes);
+        return between(window.from(), window.to(), groupTitles);
+    }
+
+    /**
+     * The start times startingWithin covers.
+     * @param from Start of the window
+     * @param minutes Length of the window in minutes, a day or more covers the whole day
+     * @return The window
+     */
+    public static Window window(LocalTime from, int minutes) {
+        // from.plusMinutes would wrap past midnight
+        if (minutes >= MINUTES_PER_DAY) {
+            return new Window(LocalTime.MIDNIGHT, LocalTime.of(23, 59));
+        }
+        return new Window(from, from.plusMinutes(Math.max(0, minutes)));
+    }
+
+    private void collect(int fromKey, int toKey, Set<String> groups, List<Entry> result) {
+        int end = upperBound(toKey);
+        for (int i = lowerBound(fromKey); i < end; i++) {
+            Entry e = entries[i];
+            if (groups.isEmpty() || groups.contains(normalizeGroup(e.channel().groupTitle()))) {
+                result.add(e);
+            }
+        }
+    }
+
+    // First index with keys[i] >= key
+    private int lowerBound(int key) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // First index with keys[i] > key
+    private int upperBound(int key) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int toKey(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+
+    private static Set<String> normalizeGroups(String[] groupTitles) {
+        Set<String> groups = new HashSet<>();
+        if (groupTitles != null) {
+            for (String g : groupTitles) {
+                if (g != null && !g.trim().isEmpty()) {
+                    groups.add(normalizeGroup(g));
+                }
+            }
+        }
+        return groups;
+    }
+
+    private static String normalizeGroup(String group) {
+        return group == null ? "" : group.trim().toLowerCase();
+    }
+}
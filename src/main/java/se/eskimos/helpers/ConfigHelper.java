@@ -20,6 +20,8 @@ public class ConfigHelper {
     private static final String DEFAULT_USE_M3U_FILE = "false";
     private static final String DEFAULT_EMPTY_STRING = "";
     private static final String GROUP_TITLE_SEPARATOR = "\\|";
+    private static final String DEFAULT_STATE_DIR = ".iptv-recorder";
+    private static final String DEFAULT_WATCH_RULES_FILE = "watch-rules.properties";
 
     private boolean sendMail;
     private String sendTo;
@@ -30,6 +32,9 @@ public class ConfigHelper {
     // Recording retry config
     private int recRetries;
     private int recRetriesDelay;
+    // Compiled lazily from GROUP_TITLE
+    private se.eskimos.m3u.GroupFilter groupFilter;
+    private boolean groupFilterCompiled;
 
     /**
      * Creates a new ConfigHelper instance and loads configuration from the specified file
@@ -102,6 +107,23 @@ public class ConfigHelper {
     public String getDestinationPath() {
         return getEnvOrProp("destinationPath", DEFAULT_DESTINATION_PATH);
     }
+
+    /**
+     * Gets the volumes new recordings are placed on
+     * @return destinationPath followed by the destinationPaths, each path once
+     */
+    public java.util.List<String> getDestinationPaths() {
+        java.util.Set<String> paths = new java.util.LinkedHashSet<>();
+        paths.add(getDestinationPath());
+        String raw = getEnvOrProp("destinationPaths", DEFAULT_EMPTY_STRING);
+        if (isValidString(raw)) {
+            java.util.Arrays.stream(raw.split(GROUP_TITLE_SEPARATOR))
+                .map(String::trim)
+                .filter(this::isValidString)
+                .forEach(paths::add);
+        }
+        return new java.util.ArrayList<>(paths);
+    }
     
     /**
      * Gets the IPTV service URL
@@ -177,30 +199,19 @@ public class ConfigHelper {
         String raw = getEnvOrProp("GROUP_TITLE", DEFAULT_EMPTY_STRING);
         if (!isValidString(raw)) return new String[0];
         
-        return java.util.Arrays.stream(raw.split(GROUP_TITLE_SEPARATOR))
-            .map(String::trim)
-            .filter(this::isValidString)
-            .toArray(String[]::new);
+        return se.eskimos.m3u.GroupFilter.split(raw);
     }
     
     /**
-     * Checks if a group matches any of the specified group titles
-     * @param group The group to check
-     * @param groupTitles Array of group titles to match against
-     * @return true if the group matches any of the group titles
+     * Gets the group titles compiled into a filter for the M3U parser (exact, wildcard and 're:' regex forms)
+     * @return The compiled filter, or null if no group titles are configured
      */
-    public static boolean matchesAnyGroup(String group, String[] groupTitles) {
-        if (group == null || groupTitles == null || groupTitles.length == 0) {
-            return false;
-        }
-        
-        String groupNorm = group.trim().toLowerCase();
-        for (String g : groupTitles) {
-            if (groupNorm.equals(g.trim().toLowerCase())) {
-                return true;
-            }
+    public se.eskimos.m3u.GroupFilter getGroupFilter() {
+        if (!groupFilterCompiled) {
+            groupFilter = se.eskimos.m3u.GroupFilter.compile(getGroupTitles());
+            groupFilterCompiled = true;
         }
-        return false;
+        return groupFilter;
     }
     
     /**
@@ -232,6 +243,408 @@ public class ConfigHelper {
         return val == null || val.equalsIgnoreCase("true");
     }
 
+    /**
+     * Gets the directory for runtime state shared between processes (job registry etc.)
+     * @return The state directory
+     */
+    public String getStateDir() {
+        return getEnvOrProp("stateDir", DEFAULT_STATE_DIR);
+    }
+
+    /**
+     * Gets the path to the watch rules file used by --watch
+     * @return The watch rules file path
+     */
+    public String getWatchRulesFile() {
+        return getEnvOrProp("watchRulesFile", DEFAULT_WATCH_RULES_FILE);
+    }
+
+    /**
+     * Gets the playlist refresh interval for --watch, 0 means evaluate once and exit
+     * @return Refresh interval in minutes
+     */
+    public int getWatchRefreshMinutes() {
+        return getIntEnvOrProp("watchRefreshMinutes", 0);
+    }
+
+    /**
+     * Gets how many seconds before the start time the recorder connects, so capture starts exactly at the start time
+     * @return Pre-warm lead time in seconds, 0 connects at the start time
+     */
+    public int getPreWarmSeconds() {
+        return getIntEnvOrProp("preWarmSeconds", 5);
+    }
+
+    /**
+     * Gets how many minutes of the stream before the start time are kept and written at the start of a recording
+     * @return Pre-roll in minutes, 0 disables it
+     */
+    public int getPreRollMinutes() {
+        return getIntEnvOrProp("preRollMinutes", 0);
+    }
+
+    /**
+     * Gets the memory cap of one recording's pre-roll buffer (allocated outside the Java heap)
+     * @return Cap in megabytes
+     */
+    public int getPreRollMaxMB() {
+        return getIntEnvOrProp("preRollMaxMB", 64);
+    }
+
+    /**
+     * Checks if channels should be probed for liveness before one is picked among several matches
+     * @return true if probing is enabled
+     */
+    public boolean isProbeEnabled() {
+        return Boolean.parseBoolean(getEnvOrProp("probeEnabled", "false"));
+    }
+
+    /**
+     * Gets the maximum number of concurrent probe connections (keep below the provider's stream limit)
+     * @return Maximum concurrent probes
+     */
+    public int getProbeMaxConnections() {
+        return getIntEnvOrProp("probeMaxConnections", 4);
+    }
+
+    /**
+     * Gets the connect/read timeout of a single probe
+     * @return Timeout in seconds
+     */
+    public int getProbeTimeoutSeconds() {
+        return getIntEnvOrProp("probeTimeoutSeconds", 5);
+    }
+
+    /**
+     * Gets how long a probe result is trusted before the channel is probed again
+     * @return Cache lifetime in minutes
+     */
+    public int getProbeCacheMinutes() {
+        return getIntEnvOrProp("probeCacheMinutes", 10);
+    }
+
+    /**
+     * Gets the groups whose channels are probed in the background by --watch
+     * @return Array of group titles, empty if background probing is off
+     */
+    public String[] getProbeGroups() {
+        String raw = getEnvOrProp("probeGroups", DEFAULT_EMPTY_STRING);
+        if (!isValidString(raw)) return new String[0];
+        return se.eskimos.m3u.GroupFilter.split(raw);
+    }
+
+    /**
+     * Gets the retry policy for a provider. Each setting is read from {@code retry.<host>.<setting>}, then
+     * {@code retry.<setting>}, and defaults to a backoff derived from recRetries and recRetriesDelay.
+     * @param host Provider host, see getProviderHost
+     * @return The retry policy
+     */
+    public se.eskimos.stream.RetryPolicy getRetryPolicy(String host) {
+        se.eskimos.stream.RetryPolicy defaults = se.eskimos.stream.RetryPolicy.fromLegacy(getRecRetries(), getRecRetriesDelay());
+        try {
+            return new se.eskimos.stream.RetryPolicy(
+                getLongEnvOrProp(providerKey("retry", host, "initialDelayMs"), defaults.initialDelayMillis()),
+                getLongEnvOrProp(providerKey("retry", host, "maxDelayMs"), defaults.maxDelayMillis()),
+                getDoubleEnvOrProp(providerKey("retry", host, "multiplier"), defaults.multiplier()),
+                getDoubleEnvOrProp(providerKey("retry", host, "jitter"), defaults.jitter()),
+                getLongEnvOrProp(providerKey("retry", host, "budgetSeconds"), defaults.budgetMillis() / 1000) * 1000,
+                (int) getLongEnvOrProp(providerKey("retry", host, "maxAttempts"), defaults.maxAttempts()),
+                getLongEnvOrProp(providerKey("retry", host, "hedgeAfterMs"), defaults.hedgeAfterMillis()));
+        } catch (IllegalArgumentException e) {
+            LogHelper.LogWarning(String.format(TextHelper.INVALID_RETRY_CONFIG, host, e.getMessage()));
+            return defaults;
+        }
+    }
+
+    /**
+     * Gets the provider host of a stream URL, used as key for per-provider settings
+     * @param url The stream URL
+     * @return Lower case host name, or empty string if the URL has no host
+     */
+    public static String getProviderHost(String url) {
+        try {
+            String host = java.net.URI.create(url).getHost();
+            return host == null ? DEFAULT_EMPTY_STRING : host.toLowerCase();
+        } catch (IllegalArgumentException e) {
+            return DEFAULT_EMPTY_STRING;
+        }
+    }
+
+    /**
+     * Gets the key that connection limits are counted by. Hosts that belong to the same account can share
+     * one limit with {@code provider.<host>.account=<name>}.
+     * @param url The stream URL
+     * @return The account name if configured for the host, otherwise the host
+     */
+    public String getProviderKey(String url) {
+        String host = getProviderHost(url);
+        if (!isValidString(host)) return DEFAULT_EMPTY_STRING;
+        return safeTrim(getEnvOrProp("provider." + host + ".account", host));
+    }
+
+    /**
+     * Gets the maximum number of simultaneous recordings for a provider, from
+     * {@code provider.<key>.maxConnections} or {@code provider.maxConnections}
+     * @param providerKey Provider key, see getProviderKey
+     * @return Maximum connections, 0 for unlimited
+     */
+    public int getMaxConnections(String providerKey) {
+        return Math.max(0, getIntEnvOrProp(providerKey("provider", providerKey, "maxConnections"), 0));
+    }
+
+    /**
+     * Gets what happens to a new job when its provider is already fully booked for the window
+     * @param providerKey Provider key, see getProviderKey
+     * @return "queue" (wait for a free slot by priority) or "reject"
+     */
+    public String getAdmissionPolicy(String providerKey) {
+        String policy = safeTrim(getEnvOrProp(providerKey("provider", providerKey, "admission"), "queue")).toLowerCase();
+        return "reject".equals(policy) ? policy : "queue";
+    }
+
+    /**
+     * Gets how long a recording waits for a slot of a fully used provider before it preempts the lowest
+     * priority recording holding one (only recordings of lower priority are preempted)
+     * @param providerKey Provider key, see getProviderKey
+     * @return Seconds, 0 disables preemption
+     */
+    public int getPreemptAfterSeconds(String providerKey) {
+        return Math.max(0, getIntEnvOrProp(providerKey("provider", providerKey, "preemptAfterSeconds"), 60));
+    }
+
+    /**
+     * Gets the downlink bandwidth all running recordings may use together. Above it the lowest priority
+     * recording switches to a lower quality variant of its channel, or is preempted if there is none
+     * @return Megabits per second, 0 disables the limit
+     */
+    public int getMaxBandwidthMbps() {
+        return Math.max(0, getIntEnvOrProp("maxBandwidthMbps", 0));
+    }
+
+    /**
+     * Gets what running recorders do when their volume will run out of space before the recordings end
+     * @return "alert", "stop" (the lowest priority recording) or "failover" (it moves to getDiskFailoverPath)
+     */
+    public String getDiskPolicy() {
+        String policy = safeTrim(getEnvOrProp("diskPolicy", "alert")).toLowerCase();
+        return "stop".equals(policy) || "failover".equals(policy) ? policy : "alert";
+    }
+
+    /**
+     * Gets how much space the disk monitor keeps free on the recording volume
+     * @return Megabytes
+     */
+    public int getDiskReserveMB() {
+        return Math.max(0, getIntEnvOrProp("diskReserveMB", 1024));
+    }
+
+    /**
+     * Gets the directory on another volume that recordings move to under the failover policy
+     * @return Path, empty if not set
+     */
+    public String getDiskFailoverPath() {
+        return safeTrim(getEnvOrProp("diskFailoverPath", DEFAULT_EMPTY_STRING));
+    }
+
+    /**
+     * Gets the extent size recording files are preallocated in
+     * @return Megabytes, 0 lets the files grow with the data
+     */
+    public int getPreallocateMB() {
+        return Math.min(1024, Math.max(0, getIntEnvOrProp("preallocateMB", 64)));
+    }
+
+    /**
+     * Gets when recording files are forced to disk: none, periodic or rollover
+     * @return Policy name
+     */
+    public String getDurability() {
+        return safeTrim(getEnvOrProp("durability", "none")).toLowerCase();
+    }
+
+    /**
+     * Gets the time between forces of the periodic durability policy
+     * @return Seconds, 0 for no time limit
+     */
+    public int getDurabilitySeconds() {
+        return Math.max(0, getIntEnvOrProp("durabilitySeconds", 10));
+    }
+
+    /**
+     * Gets the data written between forces of the periodic durability policy
+     * @return Megabytes, 0 for no size limit
+     */
+    public int getDurabilityMB() {
+        return Math.max(0, getIntEnvOrProp("durabilityMB", 64));
+    }
+
+    /**
+     * Checks if a seek index is written next to every recording (regular mode)
+     * @return true if enabled
+     */
+    public boolean isSeekIndexEnabled() {
+        return Boolean.parseBoolean(getEnvOrProp("seekIndex", "true"));
+    }
+
+    /**
+     * Checks if recordings are verified when they stop (regular mode)
+     * @return true if enabled
+     */
+    public boolean isVerifyAfterRecording() {
+        return Boolean.parseBoolean(getEnvOrProp("verifyAfterRecording", "true"));
+    }
+
+    /**
+     * Gets how many recordings are verified in parallel
+     * @return Number of threads
+     */
+    public int getVerifyThreads() {
+        return Math.min(16, Math.max(1, getIntEnvOrProp("verifyThreads", 2)));
+    }
+
+    /**
+     * Gets how long a cached channel logo is used before it is revalidated with the server
+     * @return Hours, 0 to revalidate for every recording
+     */
+    public int getLogoCacheHours() {
+        return Math.max(0, getIntEnvOrProp("logoCacheHours", 24));
+    }
+
+    /**
+     * Gets the steps run on every finished recording, separated by | (e.g. concat|remux:mkv|nfo)
+     * @return Step list, empty if recordings are not post-processed
+     */
+    public String getPostProcessSteps() {
+        return getEnvOrProp("postProcessSteps", DEFAULT_EMPTY_STRING).trim();
+    }
+
+    /**
+     * Gets how many recordings are post-processed at the same time, by all recorders together
+     * @return Number of jobs
+     */
+    public int getPostProcessParallel() {
+        return Math.min(8, Math.max(1, getIntEnvOrProp("postProcessParallel", 1)));
+    }
+
+    /**
+     * Checks if post-processing programs run at the lowest CPU and I/O priority
+     * @return true if enabled
+     */
+    public boolean isPostProcessLowPriority() {
+        return Boolean.parseBoolean(getEnvOrProp("postProcessLowPriority", "true"));
+    }
+
+    /**
+     * Checks if the .ts recording is kept after it was remuxed
+     * @return true if kept
+     */
+    public boolean isPostProcessKeepSource() {
+        return Boolean.parseBoolean(getEnvOrProp("postProcessKeepSource", "true"));
+    }
+
+    /**
+     * Gets the directories every recording is also written to while it records (regular mode)
+     * @return Paths, empty if recordings are not mirrored
+     */
+    public String[] getMirrorPaths() {
+        String raw = getEnvOrProp("mirrorPaths", DEFAULT_EMPTY_STRING);
+        if (!isValidString(raw)) return new String[0];
+        return java.util.Arrays.stream(raw.split(GROUP_TITLE_SEPARATOR))
+            .map(String::trim)
+            .filter(this::isValidString)
+            .toArray(String[]::new);
+    }
+
+    /**
+     * Gets how much data is held for a mirror that falls behind before it is dropped
+     * @return Megabytes per mirror and recording
+     */
+    public int getMirrorBufferMB() {
+        return Math.min(1024, Math.max(1, getIntEnvOrProp("mirrorBufferMB", 64)));
+    }
+
+    /**
+     * Gets how long recordings are kept
+     * @return Days, 0 keeps them regardless of age
+     */
+    public int getRetentionDays() {
+        return Math.max(0, getIntEnvOrProp("retentionDays", 0));
+    }
+
+    /**
+     * Gets the size the recordings tree is kept below, least recently used recordings are evicted first
+     * @return Gigabytes, 0 for no quota
+     */
+    public int getRetentionMaxGB() {
+        return Math.max(0, getIntEnvOrProp("retentionMaxGB", 0));
+    }
+
+    /**
+     * Gets how many recordings of each channel are kept, the newest first
+     * @return Number of recordings, 0 keeps all
+     */
+    public int getRetentionKeepPerChannel() {
+        return Math.max(0, getIntEnvOrProp("retentionKeepPerChannel", 0));
+    }
+
+    /**
+     * Gets the priority of recordings that are not scheduled by a watch rule with its own priority
+     * @return Priority, higher values get free provider slots first
+     */
+    public int getDefaultPriority() {
+        return getIntEnvOrProp("priority", 0);
+    }
+
+    /**
+     * Gets how often running recorders write their metrics file
+     * @return Interval in seconds, 0 disables the export
+     */
+    public int getMetricsIntervalSeconds() {
+        return getIntEnvOrProp("metricsIntervalSeconds", 15);
+    }
+
+    // Per-provider key if it is set, otherwise the global key
+    private String providerKey(String prefix, String host, String name) {
+        String specific = prefix + "." + host + "." + name;
+        if (isValidString(host) && isValidString(getEnvOrProp(specific, DEFAULT_EMPTY_STRING))) {
+            return specific;
+        }
+        return prefix + "." + name;
+    }
+
+    private long getLongEnvOrProp(String key, long defaultValue) {
+        try {
+            return Long.parseLong(getEnvOrProp(key, Long.toString(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            LogHelper.LogWarning(String.format(TextHelper.INVALID_NUMBER_CONFIG, key, defaultValue));
+            return defaultValue;
+        }
+    }
+
+    private double getDoubleEnvOrProp(String key, double defaultValue) {
+        try {
+            return Double.parseDouble(getEnvOrProp(key, Double.toString(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            LogHelper.LogWarning(String.format(TextHelper.INVALID_NUMBER_CONFIG, key, defaultValue));
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Gets an integer value from environment variable or properties file, with fallback to default
+     * @param key The configuration key
+     * @param defaultValue The default value if not found or not a number
+     * @return The configuration value
+     */
+    private int getIntEnvOrProp(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(getEnvOrProp(key, Integer.toString(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            LogHelper.LogWarning(String.format(TextHelper.INVALID_NUMBER_CONFIG, key, defaultValue));
+            return defaultValue;
+        }
+    }
+
     public boolean isSendMail() { return sendMail; }
     public String getSendTo() { return sendTo; }
     public String getSentFrom() { return sentFrom; }
@@ -6,11 +6,16 @@ import java.time.format.DateTimeFormatterBuilder;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoField;
 import java.time.format.SignStyle;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Helper for flexible date/time parsing and formatting.
  */
 public class DateTimeHelper {
+    // Same pattern used when a start time is picked up from a channel's tvg-name
+    private static final Pattern NAME_TIME_PATTERN = Pattern.compile("(\\d{1,2}):(\\d{2})");
+
     /**
      * Parses a time string using the provided formatter, falling back to a flexible formatter that accepts 1 or 2 digit hours.
      * @param time The time string (e.g. '8:30' or '08:30')
@@ -30,4 +35,50 @@ public class DateTimeHelper {
             return LocalTime.parse(time, flexibleFormatter);
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Extracts the first valid HH:mm time from a channel name (e.g. '20:30 SVT1 News').
+     * @param name The channel name or tvg-name
+     * @return The extracted time, or null if the name does not contain a valid time
+     */
+    public static LocalTime extractTimeFromName(String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        Matcher matcher = NAME_TIME_PATTERN.matcher(name);
+        while (matcher.find()) {
+            int hour = Integer.parseInt(matcher.group(1));
+            int minute = Integer.parseInt(matcher.group(2));
+            if (hour < 24 && minute < 60) {
+                return LocalTime.of(hour, minute);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a position in a recording given as seconds, m:ss or h:mm:ss.
+     * @param position The position (e.g. '90', '1:30' or '1:01:30')
+     * @return Milliseconds from the start
+     * @throws IllegalArgumentException if it is not such a position
+     */
+    public static long parsePositionMillis(String position) {
+        String[] parts = position.trim().split(":");
+        if (parts.length > 3) {
+            throw new IllegalArgumentException("Not a position, expected seconds, m:ss or h:mm:ss: " + position);
+        }
+        long seconds = 0;
+        try {
+            for (String part : parts) {
+                long value = Long.parseLong(part);
+                if (value < 0) {
+                    throw new IllegalArgumentException("Not a position, expected seconds, m:ss or h:mm:ss: " + position);
+                }
+                seconds = seconds * 60 + value;
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a position, expected seconds, m:ss or h:mm:ss: " + position);
+        }
+        return seconds * 1000;
+    }
+}
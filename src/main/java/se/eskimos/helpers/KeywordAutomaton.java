@@ -0,0 +1,125 @@
+package se.eskimos.helpers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Case-insensitive multi-keyword matcher (Aho-Corasick).
+ * All keywords are found in a single pass over the text, no matter how many keywords there are.
+ */
+public class KeywordAutomaton {
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    private final List<int[]> outputs = new ArrayList<>();
+    private int[] failure;
+    private final int keywordCount;
+
+    /**
+     * Builds the automaton. Keyword ids are the indexes in the given list.
+     * @param keywords Keywords to match (matched case-insensitively, empty keywords are ignored)
+     */
+    public KeywordAutomaton(List<String> keywords) {
+        this.keywordCount = keywords.size();
+        newState();
+        for (int id = 0; id < keywords.size(); id++) {
+            String keyword = keywords.get(id);
+            if (keyword == null || keyword.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = Character.toLowerCase(keyword.charAt(i));
+                Integer next = transitions.get(state).get(c);
+                if (next == null) {
+                    next = newState();
+                    transitions.get(state).put(c, next);
+                }
+                state = next;
+            }
+            outputs.set(state, append(outputs.get(state), id));
+        }
+        buildFailureLinks();
+    }
+
+    /**
+     * @return Number of keywords the automaton was built from
+     */
+    public int getKeywordCount() {
+        return keywordCount;
+    }
+
+    /**
+     * Scans the text once and reports the id of every keyword occurrence.
+     * A keyword occurring several times is reported several times.
+     * @param text Text to scan
+     * @param onMatch Receives the id of each matched keyword
+     */
+    public void scan(CharSequence text, IntConsumer onMatch) {
+        if (text == null) {
+            return;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            Integer next = transitions.get(state).get(c);
+            while (next == null && state != 0) {
+                state = failure[state];
+                next = transitions.get(state).get(c);
+            }
+            state = next == null ? 0 : next;
+            for (int id : outputs.get(state)) {
+                onMatch.accept(id);
+            }
+        }
+    }
+
+    private int newState() {
+        transitions.add(new HashMap<>());
+        outputs.add(NO_OUTPUT);
+        return transitions.size() - 1;
+    }
+
+    // Breadth-first construction of failure links, merging outputs of the failure state into each state
+    private void buildFailureLinks() {
+        failure = new int[transitions.size()];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : transitions.get(0).values()) {
+            failure[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> t : transitions.get(state).entrySet()) {
+                char c = t.getKey();
+                int child = t.getValue();
+                int f = failure[state];
+                Integer next = transitions.get(f).get(c);
+                while (next == null && f != 0) {
+                    f = failure[f];
+                    next = transitions.get(f).get(c);
+                }
+                failure[child] = next == null ? 0 : next;
+                int[] inherited = outputs.get(failure[child]);
+                if (inherited.length > 0) {
+                    int[] merged = outputs.get(child);
+                    for (int id : inherited) {
+                        merged = append(merged, id);
+                    }
+                    outputs.set(child, merged);
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] result = java.util.Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+}
@@ -4,7 +4,6 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
-import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.concurrent.TimeUnit;
 import se.eskimos.log.LogHelper;
@@ -12,22 +11,31 @@ import java.util.ArrayList;
 import java.time.format.DateTimeParseException;
 import java.util.NoSuchElementException;
 import se.eskimos.m3u.M3UHolder;
+import se.eskimos.scheduler.DeadlineScheduler;
+import se.eskimos.scheduler.RecordingWindow;
+import se.eskimos.storage.LogoCache;
+import se.eskimos.stream.RetryPolicy;
+import se.eskimos.stream.SharedStreamSource;
+import se.eskimos.stream.StreamConnector;
 
 public class RecorderHelper {
 	
 	// Constants for magic numbers
 	private static final int BUFFER_SIZE = 8192;
-	private static final int SLEEP_INTERVAL_MS = 1000;
+	/** Connect and read timeouts for recording connections */
+	public static final int CONNECT_TIMEOUT_MS = 10_000;
+	public static final int READ_TIMEOUT_MS = 60_000;
 	private static final long MIN_DISK_SPACE_BYTES = 1024 * 1024 * 100; // 100MB minimum
 	
 	private String timeFrom = "";
 	private String timeTo = "";
-	private String url = "";
+	private volatile String url = "";
 	private String errorMessage = "";
 	
 	// Add recording mode tracking
 	private RecordingMode recordingMode = RecordingMode.REGULAR;
 	
+	private static volatile LogoCache logoCache;
 	private static final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newCachedThreadPool();
 	static {
 		// Add shutdown hook for resource cleanup
@@ -382,50 +390,30 @@ public class RecorderHelper {
 	}
 	
 	/**
-	 * Waits until the start time is reached
+	 * Waits until the start time is reached, the thread sleeps until the scheduler wakes it
 	 */
 	public void startCounter() {
-		
-		LocalTime targetTime = DateTimeHelper.parseFlexibleLocalTime(this.timeFrom, TIME_FORMATTER);
-		 
-		while(true) {
-			 
-			LocalTime currentTime = LocalTime.now();
-			if (currentTime.isAfter(targetTime) || currentTime.equals(targetTime)){
-				break;
-			}
-			
-			userIO.displayRecordingStatus(TextHelper.WAITING_FOR_RECORDING_START, true, this.timeFrom, this.timeTo, this.url);
- 
-			try {
-				Thread.sleep(SLEEP_INTERVAL_MS);
-			} catch (InterruptedException e) {
-				LogHelper.LogWarning(TextHelper.START_COUNTER_INTERRUPTED);
-			}
+		RecordingWindow window = RecordingWindow.resolve(this.timeFrom, this.timeTo, TIME_FORMATTER, LogHelper.getTimeZone());
+		userIO.displayRecordingStatus(TextHelper.WAITING_FOR_RECORDING_START, true, this.timeFrom, this.timeTo, this.url);
+		try {
+			DeadlineScheduler.getDefault().awaitUntil("start", window.start());
+		} catch (InterruptedException e) {
+			LogHelper.LogWarning(TextHelper.START_COUNTER_INTERRUPTED);
+			Thread.currentThread().interrupt();
 		}
 	}
 	
 	/**
-	 * Waits until the end time is reached
+	 * Waits until the end time is reached, the thread sleeps until the scheduler wakes it
 	 */
 	public void endCounter() {
-		
-		LocalTime targetTime = DateTimeHelper.parseFlexibleLocalTime(this.timeTo, TIME_FORMATTER);
-		 
-		while(true) {
-			 
-			LocalTime currentTime = LocalTime.now();
-			if (currentTime.isAfter(targetTime) || currentTime.equals(targetTime)){
-				break;
-			}
-			
-			userIO.displayRecordingStatus(TextHelper.RECORDING_STARTED_WAITING_FOR_END, false, this.timeFrom, this.timeTo, this.url);
- 
-			try {
-				Thread.sleep(SLEEP_INTERVAL_MS);
-			} catch (InterruptedException e) {
-				LogHelper.LogWarning(TextHelper.END_COUNTER_INTERRUPTED);
-			}
+		RecordingWindow window = RecordingWindow.resolve(this.timeFrom, this.timeTo, TIME_FORMATTER, LogHelper.getTimeZone());
+		userIO.displayRecordingStatus(TextHelper.RECORDING_STARTED_WAITING_FOR_END, false, this.timeFrom, this.timeTo, this.url);
+		try {
+			DeadlineScheduler.getDefault().awaitUntil("stop", window.stop());
+		} catch (InterruptedException e) {
+			LogHelper.LogWarning(TextHelper.END_COUNTER_INTERRUPTED);
+			Thread.currentThread().interrupt();
 		}
 	}
 	
@@ -449,6 +437,7 @@ public class RecorderHelper {
         );
         pb.redirectErrorStream(true);
         this.ffmpegProcess = pb.start();
+        this.outputFile = new java.io.File(outputFile);
         
         // Read ffmpeg output in a separate thread
         Thread ffmpegOutputThread = new Thread(() -> {
@@ -466,35 +455,46 @@ public class RecorderHelper {
     }
 	
 	/**
-	 * Performs a recording attempt, returns true if the stream lasted until stop time, otherwise false
+	 * Performs a recording attempt, returns true if the stream lasted until every subscriber's stop time, otherwise false
 	 */
-	private boolean recordOnceRegular(String filePath, LocalTime targetTime) throws Exception {
-        String outputFile = StringAndFileHelper.createFileNameWithSubfolder(filePath, LogHelper.getTimeZone(), this.channelInfo, this.timeFrom, this.timeTo);
-        java.net.URL urlObj = java.net.URI.create(this.url).toURL();
-        java.net.URLConnection conn = urlObj.openConnection();
-        conn.setReadTimeout(60_000); // 60 sekunder timeout
-        try (var input = conn.getInputStream();
-             var outputStream = new java.io.FileOutputStream(new java.io.File(outputFile))) {
-            byte[] bytes = new byte[BUFFER_SIZE];
+	private boolean recordOnceRegular(SharedStreamSource source) throws Exception {
+        // A connection opened ahead of the start time is used by the first attempt, capture starts on a packet boundary
+        try (StreamConnector connector = takeOrOpenConnector();
+             var input = connector.alignedStream()) {
+            currentConnector = connector;
+            if (urlSwitched) {
+                // Switched while connecting, possibly to the old stream
+                return false;
+            }
+            source.resync();
             int read;
-            while ((read = input.read(bytes)) != -1) {
-                outputStream.write(bytes, 0, read);
-                // Check if we've reached the stop time
-                LocalTime currentTime = LocalTime.now();
-                if (currentTime.isAfter(targetTime) || currentTime.equals(targetTime)) {
-                    break;
+            while ((read = source.readFrom(input)) != -1) {
+                bytesRecorded += read;
+                // Check if we've reached the stop time (absolute, so recordings crossing midnight work)
+                if (source.isDone(System.currentTimeMillis())) {
+                    return true;
                 }
             }
-            if (LocalTime.now().isBefore(targetTime)) {
+            if (!source.isDone(System.currentTimeMillis())) {
                 LogHelper.LogError(TextHelper.REGULAR_INPUTSTREAM_ENDED);
                 return false;
             }
             return true;
         }
     }
+
+	private StreamConnector takeOrOpenConnector() throws java.io.IOException {
+		StreamConnector prepared = this.preparedStream;
+		this.preparedStream = null;
+		if (prepared != null) {
+			return prepared;
+		}
+		return StreamConnector.openHedged(this.url, CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS, getRetryPolicy().hedgeAfterMillis(), this.hedgeSlots);
+	}
 	
 	/**
-	 * Starts regular recording using input/output streams
+	 * Starts regular recording using input/output streams. Dropped streams are reconnected until the stop time
+	 * with the retry policy's backoff, the backoff starts over once the stream has delivered data again.
 	 * @param filePath Destination path for the recording
 	 * @throws Exception if recording cannot be started
 	 */
@@ -505,23 +505,67 @@ public class RecorderHelper {
         java.io.File posterFile = new java.io.File(new java.io.File(StringAndFileHelper.createFileNameWithSubfolder(filePath, LogHelper.getTimeZone(), this.channelInfo, this.timeFrom, this.timeTo)).getParentFile(), "poster.jpg");
         getLogo(this.channelInfo != null ? this.channelInfo.tvgLogo() : null, this.channelInfo != null ? this.channelInfo.tvgName() : null, posterFile);
 
-        LocalTime targetTime = DateTimeHelper.parseFlexibleLocalTime(this.timeTo, TIME_FORMATTER);
+        // Without a shared source this recording is its only subscriber, and the source is closed at the end
+        SharedStreamSource source = this.streamSource;
+        boolean ownSource = source == null;
+        if (ownSource) {
+            RecordingWindow window = RecordingWindow.resolve(this.timeFrom, this.timeTo, TIME_FORMATTER, LogHelper.getTimeZone());
+            String outputFile = StringAndFileHelper.createFileNameWithSubfolder(filePath, LogHelper.getTimeZone(), this.channelInfo, this.timeFrom, this.timeTo);
+            source = new SharedStreamSource();
+            source.subscribe("recording", window.start().toInstant().toEpochMilli(), window.stop().toInstant().toEpochMilli(), () -> outputFile);
+        }
+        // Reconnects are bounded by the stop time, not by the attempt limit
+        RetryPolicy resumePolicy = getRetryPolicy().withUnlimitedAttempts();
+        RetryPolicy.Backoff backoff = null;
 
-        while (LocalTime.now().isBefore(targetTime)) {
-            try {
-                boolean success = recordOnceRegular(filePath, targetTime);
-                if (success) {
-                    break; // Done!
-                } else {
-                    LogHelper.LogError("Recording failed, exiting.");
-                    System.exit(1);
+        try {
+            while (!source.isDone(System.currentTimeMillis())) {
+                long bytesBefore = bytesRecorded;
+                try {
+                    if (recordOnceRegular(source)) {
+                        break; // Done!
+                    }
+                } catch (Exception e) {
+                    if (!urlSwitched) {
+                        LogHelper.LogError(String.format(TextHelper.REGULAR_EXCEPTION_DURING_RECORDING, e.getMessage()), e);
+                    }
                 }
-            } catch (Exception e) {
-                LogHelper.LogError(String.format(TextHelper.REGULAR_EXCEPTION_DURING_RECORDING, e.getMessage()), e);
-                LogHelper.LogWarning("[REGULAR] Waiting 15 seconds before retrying...");
-                Thread.sleep(15_000);
-                // The loop continues and tries again
+                if (urlSwitched) {
+                    // Dropped on purpose, the other stream is connected right away
+                    urlSwitched = false;
+                    backoff = null;
+                    LogHelper.Log(String.format(TextHelper.REGULAR_STREAM_SWITCHED, this.url));
+                    continue;
+                }
+                if (backoff == null || bytesRecorded > bytesBefore) {
+                    // New outage
+                    backoff = resumePolicy.withBudget(Math.max(1, source.getStopMillis() - System.currentTimeMillis())).start();
+                }
+                long delay = backoff.nextDelayMillis();
+                if (delay < 0) {
+                    LogHelper.LogWarning(TextHelper.REGULAR_RETRY_BUDGET_EXHAUSTED);
+                    break;
+                }
+                LogHelper.LogWarning(String.format(TextHelper.REGULAR_RETRYING_IN, delay, backoff.getFailures()));
+                Thread.sleep(delay);
             }
+        } finally {
+            if (ownSource) {
+                source.close();
+            }
+        }
+    }
+
+	/**
+	 * Switches a running regular recording to another stream of the channel, e.g. a lower quality variant.
+	 * The current connection is dropped and the recording goes on in the same files from the new stream.
+	 */
+	public void switchUrl(String newUrl) {
+        this.url = newUrl;
+        this.urlSwitched = true;
+        StreamConnector connector = this.currentConnector;
+        if (connector != null) {
+            connector.close();
         }
     }
 
@@ -678,6 +722,20 @@ public class RecorderHelper {
     private int recRetriesDelay = 60;
     private String tvgLogo = "";
     private String tvgName = "";
+    // Connection opened early by the pre-warm, used by the first recording attempt
+    private StreamConnector preparedStream;
+    private RetryPolicy retryPolicy;
+    // Provider connections for hedged connection attempts, null if connections are not limited
+    private StreamConnector.HedgeSlots hedgeSlots;
+    // Bytes written by all attempts of this recording
+    private volatile long bytesRecorded;
+    // Stream source of regular recordings, shared by all attempts and by recordings attached to this connection
+    private SharedStreamSource streamSource;
+    // File written by ffmpeg, which does not report its progress
+    private java.io.File outputFile;
+    // Connection of the running regular attempt, closed to switch streams
+    private volatile StreamConnector currentConnector;
+    private volatile boolean urlSwitched;
 
     // Getters and setters for new fields
     public void setLogConfigPath(String logConfigPath) { this.logConfigPath = logConfigPath; }
@@ -700,6 +758,31 @@ public class RecorderHelper {
     public String getTvgLogo() { return this.tvgLogo; }
     public void setTvgName(String tvgName) { this.tvgName = tvgName; }
     public String getTvgName() { return this.tvgName; }
+    public void setPreparedStream(StreamConnector preparedStream) { this.preparedStream = preparedStream; }
+    public void setRetryPolicy(RetryPolicy retryPolicy) { this.retryPolicy = retryPolicy; }
+    public void setHedgeSlots(StreamConnector.HedgeSlots hedgeSlots) { this.hedgeSlots = hedgeSlots; }
+    public RetryPolicy getRetryPolicy() { return this.retryPolicy != null ? this.retryPolicy : RetryPolicy.fromLegacy(this.recRetries, this.recRetriesDelay); }
+    public long getBytesRecorded() { return this.outputFile != null ? this.outputFile.length() : this.bytesRecorded; }
+    /** File ffmpeg records to, empty before it was started */
+    public String getOutputFile() { return this.outputFile != null ? this.outputFile.getAbsolutePath() : ""; }
+
+    /**
+     * Waits for a stopped ffmpeg process to finish its file.
+     * @return true if no ffmpeg process is running any more
+     */
+    public boolean awaitExit(long timeoutMillis) {
+        Process process = this.ffmpegProcess;
+        if (process == null) {
+            return true;
+        }
+        try {
+            return process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    public void setStreamSource(SharedStreamSource streamSource) { this.streamSource = streamSource; }
 
     /**
      * Builds the argument list for ScheduledRecorder using the original channelInfo and all required parameters.
@@ -728,27 +811,27 @@ public class RecorderHelper {
 
 
 
-    // Download a logo image from a URL and save to dest (no progress print)
+    /**
+     * Sets the cache logos are fetched through, e.g. one in the state directory shared with other recordings
+     */
+    public static void setLogoCache(LogoCache cache) {
+        logoCache = cache;
+    }
+
+    /**
+     * @return The cache logos are fetched through, one without a directory if none was set
+     */
+    public static synchronized LogoCache getLogoCache() {
+        if (logoCache == null) {
+            logoCache = new LogoCache("", 0);
+        }
+        return logoCache;
+    }
+
+    // Fetch a logo image from a URL into dest in the background, the recording does not wait for it
     public static void getLogo(String logoUrl, String channelName, File dest) {
         if (logoUrl != null && !logoUrl.isEmpty() && (logoUrl.startsWith("http://") || logoUrl.startsWith("https://"))) {
-            java.io.InputStream input = null;
-            java.io.FileOutputStream outputStream = null;
-            try {
-                java.net.URL url = java.net.URI.create(logoUrl).toURL();
-                input = url.openStream();
-                outputStream = new java.io.FileOutputStream(dest);
-                byte[] bytes = new byte[BUFFER_SIZE];
-                int read;
-                while ((read = input.read(bytes)) != -1) {
-                    outputStream.write(bytes, 0, read);
-                }
-                LogHelper.Log(String.format(TextHelper.REGULAR_DOWNLOADED_TVG_LOGO, (channelName != null ? channelName : "?")));
-            } catch (Exception e) {
-                LogHelper.LogWarning(String.format(TextHelper.REGULAR_FAILED_TO_DOWNLOAD_TVG_LOGO, (channelName != null ? channelName : "?"), e.getMessage()));
-            } finally {
-                try { if (input != null) input.close(); } catch (Exception ignored) {}
-                try { if (outputStream != null) outputStream.close(); } catch (Exception ignored) {}
-            }
+            getLogoCache().fetchInto(logoUrl, channelName, dest);
         } else {
             LogHelper.Log(TextHelper.REGULAR_NO_TVG_LOGO_FOUND.replace("%s", (channelName != null ? channelName : "?")));
         }
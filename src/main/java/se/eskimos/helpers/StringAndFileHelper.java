@@ -89,4 +89,35 @@ public class StringAndFileHelper {
         fileName = fileName.replace("+", PLUS_REPLACEMENT);
         return new File(eventDir, fileName).getAbsolutePath();
     }
-} 
\ No newline at end of file
+
+    /**
+     * Reads the scheduled length of a recording from its folder name (date_start_stop, see
+     * createFileNameWithSubfolder). A stop before the start is on the next day.
+     * @param folderName Name of the recording's folder
+     * @return Milliseconds, 0 if the name has no start and stop
+     */
+    public static long scheduledMillisFromFolder(String folderName) {
+        String[] parts = folderName.split("_");
+        if (parts.length < 2) {
+            return 0;
+        }
+        int start = minutesOfDay(parts[parts.length - 2]);
+        int stop = minutesOfDay(parts[parts.length - 1]);
+        if (start < 0 || stop < 0) {
+            return 0;
+        }
+        int minutes = stop > start ? stop - start : stop + 24 * 60 - start;
+        return minutes * 60_000L;
+    }
+
+    // HHmm or Hmm, -1 if it is not a time
+    private static int minutesOfDay(String hhmm) {
+        if (!hhmm.matches("\\d{3,4}")) {
+            return -1;
+        }
+        int value = Integer.parseInt(hhmm);
+        int hours = value / 100;
+        int minutes = value % 100;
+        return hours < 24 && minutes < 60 ? hours * 60 + minutes : -1;
+    }
+}
@@ -7,6 +7,17 @@ public class TextHelper {
     public static final String MAIN_HELP =
         "Usage: java -jar IPTV-Recorder.jar [--help] [config.properties]\n" +
         "You can specify the config file as the first argument, or use --config <path>.\n" +
+        "Evaluate auto-record watch rules: --watch <config>\n" +
+        "Schedule many searches from one playlist load: --batch <config> <batch file>\n" +
+        "Probe channel streams for liveness: --probe <config> [group|group]\n" +
+        "Print provider slot usage and recorder metrics: --metrics <config>\n" +
+        "List or control scheduled recordings: --jobs <config> [list|start <id>|cancel <id>|extend <id> <minutes>|stop <id> <HH:mm>]\n" +
+        "Evict old recordings by the retention policy: --retention <config> [dry-run]\n" +
+        "Copy a time range out of a recording using its seek index: --extract <file.ts> <from> <to> [output.ts]\n" +
+        "Verify finished recordings and write gap reports: --verify <config> [file or directory]\n" +
+        "Run queued post-processing (also failed jobs with retry): --postprocess <config> [retry]\n" +
+        "Find finished recordings: --catalog <config> [date=2025-05] [from=<date>] [to=<date>] [channel=<name>] [sport=<sport>] [status=<status>]\n" +
+        "List channels starting in a time window: --starting <config> <HH:mm|now> <HH:mm|+minutes> [group|group]\n" +
         "All configuration is in config.properties or via environment variables.\n" +
         "See README.md for details.";
 
@@ -66,8 +77,8 @@ public class TextHelper {
     public static final String SCHEDULER_LOGGING_ONLY_TERMINAL = "[SCHEDULER] Logging only to terminal. No log file specified.";
     public static final String SCHEDULER_START_TIME_PASSED = "[SCHEDULER] Start time '%s' has already passed, starting immediately.";
     public static final String SCHEDULER_WAITING_UNTIL_START = "[SCHEDULER] Waiting %d seconds until start time %s";
-    public static final String SCHEDULER_ATTEMPTING_START = "[SCHEDULER] Attempting to start recording (attempt %d/%d) for channel: %s";
-    public static final String SCHEDULER_FAILED_START_FFMPEG = "[SCHEDULER] Failed to start FFMPEG recording (attempt %d/%d) for channel: %s. Retrying in %d seconds. Error: %s";
+    public static final String SCHEDULER_ATTEMPTING_START = "[SCHEDULER] Attempting to start recording (attempt %d) for channel: %s";
+    public static final String SCHEDULER_FAILED_START_FFMPEG = "[SCHEDULER] Failed to start FFMPEG recording (attempt %d) for channel: %s. Retrying in %d ms. Error: %s";
     public static final String SCHEDULER_COULD_NOT_START_FFMPEG = "[SCHEDULER] Could not start FFMPEG recording after %d attempts for channel: %s. Error: %s";
     public static final String SCHEDULER_RECORDING_IN_PROGRESS = "[SCHEDULER] Recording in progress, waiting until stop time %s...";
     public static final String SCHEDULER_STOP_TIME_REACHED = "[SCHEDULER] Stop time reached. Stopping recording.";
@@ -80,6 +91,7 @@ public class TextHelper {
     public static final String SCHEDULER_EXCEPTION_DELETING_EMPTY_FOLDER = "[SCHEDULER] Exception while trying to delete empty recording folder: %s";
     public static final String SCHEDULER_PROCESS_ENDED_NO_RECORDING = "[SCHEDULER] Process ended since no recording could be done!";
     public static final String SCHEDULER_FAILSAFE_TIMER_REACHED_STOP_TIME = "[SCHEDULER] Failsafe timer reached stop time. Exiting with System.exit(0)";
+    public static final String SCHEDULER_POST_STOP_LIMIT = "[SCHEDULER] The work after the stop did not finish within %d minutes, exiting.";
     public static final String SCHEDULER_FAILSAFE_TIMER_ERROR = "[SCHEDULER] Failsafe timer error: ";
     public static final String SCHEDULER_FAILSAFE_TIMER_EXITING = "[SCHEDULER] Failsafe timer exiting with System.exit(1)";
     public static final String SCHEDULER_EXECUTOR_TIMEOUT = "[SCHEDULER] Executor did not terminate within timeout, forcing shutdownNow.";
@@ -87,17 +99,25 @@ public class TextHelper {
     public static final String SCHEDULER_UNCAUGHT_THROWABLE = "[SCHEDULER] Uncaught throwable in thread %s: %s";
     public static final String SCHEDULER_PROCESS_EXITING = "[SCHEDULER] Process exiting with exit(1)";
     public static final String REGULAR_EXCEPTION_DURING_RECORDING = "[REGULAR] Exception during recording: %s";
+    public static final String REGULAR_STREAM_SWITCHED = "[REGULAR] Switched to stream %s";
+    public static final String REGULAR_RETRYING_IN = "[REGULAR] Reconnecting in %d ms (attempt %d of this outage)...";
+    public static final String RETRY_HEDGE_STARTED = "[RETRY] No data after %d ms, starting a hedged connection attempt";
+    public static final String RETRY_HEDGE_SKIPPED = "[RETRY] No data after %d ms, not hedging (%s), waiting for the first connection attempt";
+    public static final String REGULAR_RETRY_BUDGET_EXHAUSTED = "[REGULAR] No time left before stop time for another reconnect, ending recording.";
 
     public static final String REGULAR_DOWNLOADED_TVG_LOGO = "Downloaded tvg-logo for channel: %s";
     public static final String REGULAR_FAILED_TO_DOWNLOAD_TVG_LOGO = "Failed to download tvg-logo for channel: %s. %s";
     public static final String REGULAR_NO_TVG_LOGO_FOUND = "No tvg-logo found for channel: %s";
+    public static final String LOGO_CACHE_FAILED = "[LOGO] Could not cache %s: %s";
+    public static final String LOGO_REVALIDATE_FAILED = "[LOGO] Could not revalidate %s, using the cached logo: %s";
+    public static final String LOGO_CHANGED = "[LOGO] Logo %s changed, cached the new image";
     public static final String SCHEDULER_ERROR_WAITING_BETWEEN_ATTEMPTS = "[SCHEDULER] Error while waiting between attempts: ";
     public static final String SCHEDULER_ELLIPSIS = "...";
     public static final String SCHEDULER_ERROR_DURING_STOP = "[SCHEDULER] Error during recording stop: ";
     public static final String SCHEDULER_RECORDING_COULD_NOT_BE_STARTED = "[SCHEDULER] Recording could not be started. Process exiting with exit(1)";
     public static final String SCHEDULER_STARTED_RECORDING = "[SCHEDULER] Started recording for channel: %s";
     public static final String SCHEDULER_STOP_TIME_REACHED_ATTEMPTING_CANCEL = "[SCHEDULER] Stop time reached. Attempting to cancel REGULAR recording.";
-    public static final String SCHEDULER_FAILED_START_REGULAR = "[SCHEDULER] Failed to start REGULAR recording (attempt %d/%d) for channel: %s. Retrying in %d seconds. Error: %s";
+    public static final String SCHEDULER_FAILED_START_REGULAR = "[SCHEDULER] Failed to start REGULAR recording (attempt %d) for channel: %s. Retrying in %d ms. Error: %s";
     public static final String SCHEDULER_COULD_NOT_START_REGULAR = "[SCHEDULER] Could not start REGULAR recording after %d attempts for channel: %s. Error: %s";
     public static final String SCHEDULER_EXCEPTION_DELETING_EMPTY_RECORDING_FOLDER = "[SCHEDULER] Exception while trying to delete empty recording folder: ";
     public static final String FAILED_TO_LOAD_PROPERTIES_FILE = "Failed to load properties file: ";
@@ -115,4 +135,119 @@ public class TextHelper {
     public static final String FAILED_TO_SEND_EXCEPTION_MAIL = "Failed to send exception mail: ";
     public static final String M3U_FILE_NOT_FOUND = "M3U file not found: ";
     public static final String FAILED_TO_PARSE_M3U_FILE = "Failed to parse M3U file: ";
+    public static final String STARTING_QUERY_TOO_FEW_ARGS = "Too few arguments for time window query. Usage: --starting config.properties <HH:mm|now> <HH:mm|+minutes> [group|group]";
+    public static final String STARTING_QUERY_HEADER = "\nChannels starting between %s and %s (%d found):";
+    public static final String INVALID_TIME_ARGUMENT = "Invalid time '%s', expected HH:mm";
+    public static final String INVALID_NUMBER_CONFIG = "Invalid number for config '%s', using default: %s";
+    public static final String INVALID_RETRY_CONFIG = "Invalid retry settings for provider '%s', using defaults: %s";
+    public static final String JOB_REGISTRY_READ_FAILED = "Could not read job file %s: %s";
+    public static final String JOB_REGISTRY_WRITE_FAILED = "Could not register recording job %s: %s";
+    public static final String WATCH_TOO_FEW_ARGS = "Too few arguments for watch mode. Usage: --watch config.properties";
+    public static final String WATCH_RULES_LOADED = "[WATCH] Compiled %d watch rules from %s";
+    public static final String WATCH_PASS_DONE = "[WATCH] Evaluated %d channels: %d matched, %d new recordings scheduled";
+    public static final String WATCH_NO_START_TIME = "[WATCH] Rule '%s' matched '%s' but neither the channel name nor the rule has a start time, skipping.";
+    public static final String BATCH_TOO_FEW_ARGS = "Too few arguments for batch mode. Usage: --batch config.properties <batch file>";
+    public static final String BATCH_RESOLVED = "[BATCH] Resolved %d searches against %d channels in one pass";
+    public static final String BATCH_DONE = "%d of %d batch recordings scheduled, check log file for more logging.";
+    public static final String WATCH_ALREADY_SCHEDULED = "[WATCH] '%s' %s-%s is already scheduled, skipping.";
+    public static final String PREWARM_CONNECTED_EARLY = "[PREWARM] Stream connected %.1f seconds before start time, discarding data until start.";
+    public static final String PREWARM_DISCARDED = "[PREWARM] Discarded %d bytes before start time.";
+    public static final String PREWARM_CONNECTION_LOST = "[PREWARM] Pre-warmed connection lost before start time (%s), reconnecting at start.";
+    public static final String PROBE_TOO_FEW_ARGS = "Too few arguments for probe. Usage: --probe config.properties [group|group]";
+    public static final String PROBE_CACHE_READ_FAILED = "Could not read liveness cache %s: %s";
+    public static final String PROBE_CACHE_WRITE_FAILED = "Could not write liveness cache %s: %s";
+    public static final String PROBE_RESULT = "[PROBE] %s is %s (%d kbps) %s";
+    public static final String PROBE_STARTED = "[PROBE] Probing %d channels with at most %d concurrent connections";
+    public static final String PROBE_DONE = "[PROBE] %d of %d channels alive";
+    public static final String PROBE_NO_SLOT = "[PROBE] Could not take a provider connection for probing %s: %s";
+    public static final String PROBE_PREFERRED_LIVE = "[PROBE] Picked '%s' among %d matches based on liveness";
+    public static final String METRICS_TOO_FEW_ARGS = "Too few arguments for metrics. Usage: --metrics config.properties";
+    public static final String ADMISSION_REJECTED = "[ADMISSION] Not scheduling '%s' %s-%s: provider '%s' already has %d of %d connections booked in that window.";
+    public static final String ADMISSION_DUPLICATE = "[ADMISSION] Not scheduling '%s' %s-%s: job %s already records this channel for the whole window.";
+    public static final String ADMISSION_CHANNEL_OVERLAP = "[ADMISSION] '%s' %s-%s overlaps %s-%s of job %s on the same channel, both will record.";
+    public static final String ADMISSION_QUEUED = "[ADMISSION] Provider '%s' already has %d of %d connections booked during '%s' %s-%s, the recording waits for a free slot (priority %d).";
+    public static final String ADMISSION_WAITING = "[ADMISSION] All %d connections to '%s' are in use, waiting for a free slot (priority %d)";
+    public static final String ADMISSION_SLOT_ACQUIRED = "[ADMISSION] Got connection slot %d of %d for '%s' after %d ms";
+    public static final String ADMISSION_SLOTS_UNAVAILABLE = "[ADMISSION] Could not use connection slots for '%s', recording without a slot: %s";
+    public static final String ADMISSION_NO_SLOT = "[ADMISSION] No connection slot for '%s' became free before the stop time, exiting.";
+    public static final String CONTROL_STARTED = "[CONTROL] Control API listening on 127.0.0.1:%d";
+    public static final String CONTROL_START_FAILED = "[CONTROL] Could not start the control API, the recording can only be stopped by killing the process: %s";
+    public static final String CONTROL_STOP_MOVED = "[CONTROL] Stop time moved to %s";
+    public static final String CONTROL_CANCELLED = "[CONTROL] Recording cancelled through the control API";
+    public static final String CONTROL_JOB_ATTACHED = "[CONTROL] Job %s (%s-%s) attached, it is recorded from this connection";
+    public static final String CONTROL_JOB_CANCELLED = "[CONTROL] Job %s cancelled through the control API, the other jobs keep recording";
+    public static final String PREEMPT_REQUESTED = "[PREEMPT] All connections to '%s' are in use for %d s, asking job %s (priority %d) to give up its slot for priority %d";
+    public static final String PREEMPT_REQUEST_FAILED = "[PREEMPT] Could not ask job %s to give up its slot: %s";
+    public static final String PREEMPT_STOPPED = "[PREEMPT] Recording preempted (%s) for job %s, stopping";
+    public static final String PREEMPT_BANDWIDTH_EXCEEDED = "[PREEMPT] Recordings use %.1f of %d Mbit/s and this is the lowest priority recording (priority %d)";
+    public static final String PREEMPT_BANDWIDTH_CHECK_FAILED = "[PREEMPT] Bandwidth check failed: %s";
+    public static final String PREEMPT_DOWNGRADED = "[PREEMPT] Switching to the lower quality stream '%s' to save bandwidth";
+    public static final String DISK_SPACE_LOW = "[DISK] %s will run out of space: the recordings need %d MB more, %d MB are usable with %d MB kept free (policy %s)";
+    public static final String DISK_FAILOVER = "[DISK] Continuing the recording on %s";
+    public static final String DISK_STOPPING = "[DISK] Stopping the recording to leave the space to recordings of higher priority";
+    public static final String DISK_PLACED = "[DISK] Recording to %s, the roomiest and least loaded of %d destinations";
+    public static final String DISK_NO_BITRATES = "[DISK] No bitrate metrics for the %d running recording(s), the volume is chosen by free space only. Set metricsIntervalSeconds to include the write load.";
+    public static final String DISK_MEASURE_FAILED = "[DISK] Could not measure the destination %s: %s";
+    public static final String DISK_CHECK_FAILED = "[DISK] Could not check the free space of %s: %s";
+    public static final String EXTRACT_TOO_FEW_ARGS = "Too few arguments for extract. Usage: --extract <file.ts> <from> <to> [output.ts], positions as seconds, m:ss or h:mm:ss";
+    public static final String EXTRACT_DONE = "Extracted %s (%d MB)";
+    public static final String VERIFY_TOO_FEW_ARGS = "Too few arguments for verify. Usage: --verify config.properties [file or directory]";
+    public static final String VERIFY_OK = "[VERIFY] %s is complete: %d s recorded";
+    public static final String VERIFY_PROBLEMS = "[VERIFY] %s has problems: %d continuity errors, %d PCR gaps, %d sync losses, %d s recorded of %d s scheduled";
+    public static final String VERIFY_PARTS_SHORT = "[VERIFY] Recording %s: its %d parts cover %d s of %d s scheduled";
+    public static final String VERIFY_FAILED = "[VERIFY] Could not verify %s: %s";
+    public static final String VERIFY_DONE = "[VERIFY] %d recordings verified, %d with problems, reports in <file>.verify.json";
+    public static final String POSTPROCESS_TOO_FEW_ARGS = "Too few arguments for postprocess. Usage: --postprocess config.properties [retry]";
+    public static final String POSTPROCESS_QUEUED = "[POSTPROCESS] Queued %d recordings for post-processing (%s)";
+    public static final String POSTPROCESS_FFMPEG_RUNNING = "[POSTPROCESS] ffmpeg has not exited yet, its file may be incomplete";
+    public static final String POSTPROCESS_START_FAILED = "[POSTPROCESS] Could not start the post-processing worker, run --postprocess later: %s";
+    public static final String POSTPROCESS_STEP_DONE = "[POSTPROCESS] Job %s: %s done in %d s";
+    public static final String POSTPROCESS_DONE = "[POSTPROCESS] Job %s done: %s";
+    public static final String POSTPROCESS_FAILED = "[POSTPROCESS] Job %s failed in step %s: %s";
+    public static final String POSTPROCESS_SAVE_FAILED = "[POSTPROCESS] Could not save job %s: %s";
+    public static final String POSTPROCESS_DISABLED = "No post-processing steps configured (postProcessSteps)";
+    public static final String POSTPROCESS_SUMMARY = "[POSTPROCESS] %d jobs run, %d failed";
+    public static final String POSTPROCESS_TAKEN = "[POSTPROCESS] Job %s was run by another worker, skipped";
+    public static final String CATALOG_TOO_FEW_ARGS = "Too few arguments for catalog. Usage: --catalog config.properties [date=2025-05] [from=<date>] [to=<date>] [channel=<name>] [sport=<sport>] [status=<status>]";
+    public static final String CATALOG_READ_FAILED = "[CATALOG] Could not read %s: %s";
+    public static final String CATALOG_LINES_SKIPPED = "[CATALOG] Skipped %d unreadable lines in %s";
+    public static final String CATALOG_APPEND_FAILED = "[CATALOG] Could not add recording %s to the catalog: %s";
+    public static final String CATALOG_REMOVE_FAILED = "[CATALOG] Could not remove the evicted recording %s from the catalog: %s";
+    public static final String CATALOG_ENTRY = "%s %s-%s  %-40s %-24s %8d MB  %-6s %-6s %s";
+    public static final String CATALOG_SUMMARY = "[CATALOG] %d of %d recordings match, query took %d ms (catalog loaded in %d ms)";
+    public static final String RETENTION_TOO_FEW_ARGS = "Too few arguments for retention. Usage: --retention config.properties [dry-run]";
+    public static final String RETENTION_DISABLED = "[RETENTION] No retention limits are configured (retentionDays, retentionMaxGB, retentionKeepPerChannel)";
+    public static final String RETENTION_SCANNING = "[RETENTION] No index of %s yet, scanning the whole tree";
+    public static final String RETENTION_INDEX_UNREADABLE = "[RETENTION] Could not read the index %s, scanning the whole tree: %s";
+    public static final String RETENTION_EVICTED = "[RETENTION] Evicted %s (%d MB, %s)";
+    public static final String RETENTION_WOULD_EVICT = "[RETENTION] Would evict %s (%d MB, %s)";
+    public static final String RETENTION_DELETE_FAILED = "[RETENTION] Could not delete %s: %s";
+    public static final String RETENTION_DONE = "[RETENTION] %d recordings evicted, %d recordings (%d MB) kept";
+    public static final String PREROLL_BUFFERED = "[PREROLL] Starting with %d s (%.1f MB) of pre-roll";
+    public static final String PREROLL_START_REQUESTED = "[PREROLL] Start requested through the control API, recording now";
+    public static final String SEGMENT_STARTED = "[SEGMENT] Segment %s started: %s";
+    public static final String SEGMENT_FINISHED = "[SEGMENT] Segment %s finished after %d bytes";
+    public static final String SEGMENT_CLOSE_FAILED = "[SEGMENT] Could not close segment %s: %s";
+    public static final String SEGMENT_FORCE_FAILED = "[SEGMENT] Forcing the file of %s to disk failed: %s";
+    public static final String DURABILITY_LATENCY = "[DURABILITY] Write latency %s; force latency %s";
+    public static final String SEGMENT_RELOCATED = "[SEGMENT] Segment %s continues in a new file, %s is complete";
+    public static final String SEGMENT_PREALLOCATE_FAILED = "[SEGMENT] Could not preallocate segment %s, it grows with the data: %s";
+    public static final String SEGMENT_INDEX_FAILED = "[SEGMENT] Could not write the seek index of segment %s, the recording goes on without it: %s";
+    public static final String MIRROR_STARTED = "[MIRROR] Mirror %s of segment %s started: %s";
+    public static final String MIRROR_BEHIND = "[MIRROR] Mirror %s of segment %s is more than %d MB behind, dropping data until it catches up";
+    public static final String MIRROR_CAUGHT_UP = "[MIRROR] Mirror %s of segment %s caught up, %d KB were dropped";
+    public static final String MIRROR_CLOSE_TIMEOUT = "[MIRROR] Mirror %s of segment %s did not finish within %d s, %d KB still queued were dropped and its last file is incomplete";
+    public static final String MIRROR_WRITE_FAILED = "[MIRROR] Writing mirror %s of segment %s failed, the recording goes on: %s";
+    public static final String SEGMENT_WRITE_FAILED = "[SEGMENT] Writing segment %s failed, the other recordings on the connection go on: %s";
+    public static final String ATTACH_SHARED = "[SCHEDULER] '%s' %s-%s continues the running recording of job %s, sharing its connection.";
+    public static final String ATTACH_FAILED = "[SCHEDULER] Could not attach '%s' to the running recording of job %s, starting a separate recorder: %s";
+    public static final String JOBS_TOO_FEW_ARGS = "Too few arguments for jobs. Usage: --jobs config.properties [list|start <id>|cancel <id>|extend <id> <minutes>|stop <id> <HH:mm>]";
+    public static final String JOBS_NONE = "No active or pending recordings.";
+    public static final String JOBS_NOT_FOUND = "No active recording matches '%s'.";
+    public static final String JOBS_AMBIGUOUS = "'%s' matches several recordings, use more of the id.";
+    public static final String JOBS_NO_CONTROL = "Recording %s has no reachable control API (process %d): %s";
+    public static final String JOBS_STARTED = "Recording %s started now, with its pre-roll.";
+    public static final String JOBS_CANCELLED = "Recording %s cancelled.";
+    public static final String JOBS_STOP_MOVED = "Recording %s now stops at %s.";
+    public static final String ADMISSION_NOT_SCHEDULED = "The recording was not scheduled, it is already recorded or the provider has no free connection in that window. Check log file for details.";
 } 
\ No newline at end of file
@@ -72,6 +72,48 @@ public class UserIOHelper {
         printChannelList(matches, 0, Math.min(matches.size(), StringAndFileHelper.CHANNELS_PER_PAGE), maxNameLength);
     }
 
+    /**
+     * Prints channels from a time window query, one line per channel with its start time first.
+     */
+    public void printTimeWindowResults(java.util.List<ChannelTimeIndex.Entry> entries) {
+        java.time.format.DateTimeFormatter hhmm = java.time.format.DateTimeFormatter.ofPattern("HH:mm");
+        for (ChannelTimeIndex.Entry e : entries) {
+            M3UHolder mH = e.channel();
+            String name = mH.tvgName() != null && !mH.tvgName().isEmpty() ? mH.tvgName().trim() : mH.name().trim();
+            print(String.format("%s  %s  [%s]  %s%s", hhmm.format(e.startTime()), name, mH.groupTitle(), TextHelper.CHANNEL_CODE_PREFIX, mH.code()));
+        }
+    }
+
+    /**
+     * Prints probe results, one line per channel
+     */
+    public void printProbeResults(java.util.List<M3UHolder> channels, java.util.List<se.eskimos.probe.ProbeResult> results) {
+        for (int i = 0; i < channels.size(); i++) {
+            M3UHolder mH = channels.get(i);
+            se.eskimos.probe.ProbeResult r = results.get(i);
+            String name = mH.tvgName() != null && !mH.tvgName().isEmpty() ? mH.tvgName().trim() : mH.name().trim();
+            String state = r.alive() ? String.format("ALIVE %5d kbps %5d ms", r.bitrateKbps(), r.latencyMs()) : "DEAD ";
+            print(String.format("%s  %s  [%s]  %s", state, name, mH.groupTitle(), r.message()));
+        }
+    }
+
+    /**
+     * Prints one recording job, with the live state and byte count from its control API if it is running
+     * @param live Status reported by the recorder, or null if it could not be reached
+     */
+    public void printJob(se.eskimos.recorder.RecordingJob job, java.util.Map<String, String> live) {
+        String state = live != null ? live.getOrDefault("state", job.getStatus().name()) : job.getStatus().name();
+        String bytes = live != null ? formatBytes(Long.parseLong(live.getOrDefault("bytes", "0"))) : "-";
+        print(String.format("%-26s %-10s %5s-%-5s %10s  %s  [%s]", job.getId(), state, job.getStart(), job.getStop(), bytes, job.getChannelName(), job.getProvider()));
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return String.format("%d kB", bytes / 1024);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
     /**
      * Displays recording status information
      */
@@ -0,0 +1,239 @@
+package se.eskimos.m3u;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Precompiled group-title filter that can be tested directly against a region of an #EXTINF line,
+ * so the parser can skip non-matching entries without allocating strings for them.
+ *
+ * Supported forms (all case-insensitive, surrounding whitespace ignored):
+ * <ul>
+ * <li>exact: {@code Sport Events}, also when the title contains {@code *} or {@code ?}</li>
+ * <li>wildcard: {@code glob:Sport*}, {@code glob:UK ? Sports} ({@code *} any characters, {@code ?} one character)</li>
+ * <li>regex: {@code re:^(SE|NO) .*HD$}</li>
+ * </ul>
+ * Exact titles are kept in an open addressing hash table keyed by a case-insensitive hash,
+ * wildcards and regexes are combined into one alternation pattern.
+ */
+public class GroupFilter {
+    private static final String REGEX_PREFIX = "re:";
+    private static final String GLOB_PREFIX = "glob:";
+
+    private final String[] exactTable;
+    private final int[] exactHashes;
+    private final int mask;
+    private final Pattern pattern;
+    // Matcher and slice reused per thread so matching a line region does not allocate
+    private final ThreadLocal<Matcher> matchers;
+    private final ThreadLocal<Slice> slices = ThreadLocal.withInitial(Slice::new);
+
+    private GroupFilter(List<String> exact, Pattern pattern) {
+        int capacity = Integer.highestOneBit(Math.max(4, exact.size() * 2 - 1)) << 1;
+        this.exactTable = new String[capacity];
+        this.exactHashes = new int[capacity];
+        this.mask = capacity - 1;
+        for (String title : exact) {
+            int h = hash(title, 0, title.length());
+            int i = h & mask;
+            while (exactTable[i] != null && !(exactHashes[i] == h && regionEqualsIgnoreCase(exactTable[i], title, 0, title.length()))) {
+                i = (i + 1) & mask;
+            }
+            exactTable[i] = title;
+            exactHashes[i] = h;
+        }
+        this.pattern = pattern;
+        this.matchers = pattern != null ? ThreadLocal.withInitial(() -> pattern.matcher("")) : null;
+    }
+
+    /**
+     * Compiles group titles (e.g. from GROUP_TITLE) into a filter.
+     * @param groupTitles Exact titles, 'glob:' wildcards or 're:' regexes
+     * @return The filter, or null if no titles are given (accept everything)
+     * @throws java.util.regex.PatternSyntaxException if a regex is invalid
+     */
+    public static GroupFilter compile(String[] groupTitles) {
+        if (groupTitles == null || groupTitles.length == 0) {
+            return null;
+        }
+        List<String> exact = new ArrayList<>();
+        List<String> alternatives = new ArrayList<>();
+        for (String raw : groupTitles) {
+            if (raw == null || raw.trim().isEmpty()) {
+                continue;
+            }
+            String title = raw.trim();
+            if (title.regionMatches(true, 0, REGEX_PREFIX, 0, REGEX_PREFIX.length())) {
+                alternatives.add("(?:" + title.substring(REGEX_PREFIX.length()) + ")");
+            } else if (title.regionMatches(true, 0, GLOB_PREFIX, 0, GLOB_PREFIX.length())) {
+                alternatives.add("(?:" + wildcardToRegex(title.substring(GLOB_PREFIX.length()).trim()) + ")");
+            } else {
+                exact.add(title);
+            }
+        }
+        if (exact.isEmpty() && alternatives.isEmpty()) {
+            return null;
+        }
+        Pattern pattern = alternatives.isEmpty() ? null
+            : Pattern.compile(String.join("|", alternatives), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        return new GroupFilter(exact, pattern);
+    }
+
+    /**
+     * Splits a list of group titles separated by |. Inside a 're:' entry a | within parentheses or brackets
+     * belongs to the regex, so re:^(SE|NO) .* stays one entry.
+     * @return The trimmed, non-empty entries
+     */
+    public static String[] split(String groupTitles) {
+        List<String> entries = new ArrayList<>();
+        if (groupTitles == null) {
+            return new String[0];
+        }
+        StringBuilder entry = new StringBuilder();
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < groupTitles.length(); i++) {
+            char c = groupTitles.charAt(i);
+            boolean regex = entry.toString().trim().regionMatches(true, 0, REGEX_PREFIX, 0, REGEX_PREFIX.length());
+            if (c == '|' && (!regex || (depth == 0 && !inClass))) {
+                entries.add(entry.toString());
+                entry.setLength(0);
+                depth = 0;
+                inClass = false;
+                continue;
+            }
+            entry.append(c);
+            if (!regex) {
+                continue;
+            }
+            if (c == '\\' && i + 1 < groupTitles.length()) {
+                entry.append(groupTitles.charAt(++i));
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && depth > 0) {
+                depth--;
+            }
+        }
+        entries.add(entry.toString());
+        return entries.stream().map(String::trim).filter(s -> !s.isEmpty()).toArray(String[]::new);
+    }
+
+    /**
+     * @param group A group title
+     * @return true if the group matches any of the compiled titles
+     */
+    public boolean matches(String group) {
+        return group != null && matches(group, 0, group.length());
+    }
+
+    /**
+     * Tests a region of a character sequence (e.g. the group-title value inside an #EXTINF line).
+     * @param text Text containing the group title
+     * @param start Start index (inclusive)
+     * @param end End index (exclusive)
+     * @return true if the trimmed region matches any of the compiled titles
+     */
+    public boolean matches(CharSequence text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+        int h = hash(text, start, end);
+        int i = h & mask;
+        while (exactTable[i] != null) {
+            if (exactHashes[i] == h && regionEqualsIgnoreCase(exactTable[i], text, start, end)) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        if (pattern == null) {
+            return false;
+        }
+        Slice slice = slices.get();
+        slice.set(text, start, end);
+        try {
+            return matchers.get().reset(slice).matches();
+        } finally {
+            slice.set(null, 0, 0);
+        }
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(text.charAt(i)));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean regionEqualsIgnoreCase(String title, CharSequence text, int start, int end) {
+        if (title.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < title.length(); i++) {
+            char a = title.charAt(i);
+            char b = text.charAt(start + i);
+            if (a != b && Character.toLowerCase(Character.toUpperCase(a)) != Character.toLowerCase(Character.toUpperCase(b))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String wildcardToRegex(String wildcard) {
+        StringBuilder sb = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : wildcard.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    sb.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                sb.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            sb.append(Pattern.quote(literal.toString()));
+        }
+        return sb.toString();
+    }
+
+    // Mutable CharSequence view over part of a line
+    private static final class Slice implements CharSequence {
+        private CharSequence text;
+        private int start;
+        private int end;
+
+        void set(CharSequence text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return text.subSequence(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return text.subSequence(start, end).toString();
+        }
+    }
+}
@@ -20,6 +20,7 @@ public class M3UParser {
 	private static final String TVG_ID_PATTERN = "tvg-id=\"(.*?)\"";
 	private static final String TVG_NAME_PATTERN = "tvg-name=\"(.*?)\"";
 	private static final String TVG_LOGO_PATTERN = "tvg-logo=\"(.*?)\"";
+	private static final String GROUP_TITLE_ATTRIBUTE = "group-title=\"";
 	
 	// Static compiled patterns for efficiency
 	private static final Pattern GROUP_TITLE_REGEX = Pattern.compile(GROUP_TITLE_PATTERN, Pattern.CASE_INSENSITIVE);
@@ -38,6 +39,18 @@ public class M3UParser {
 	 * @throws FileNotFoundException if the file doesn't exist
 	 */
 	public ArrayList<M3UHolder> parseFile(File f) throws FileNotFoundException {
+		return parseFile(f, null);
+	}
+
+	/**
+	 * Parses an M3U file, keeping only entries whose group-title matches the filter.
+	 * Non-matching entries are skipped before any channel fields or records are created for them.
+	 * @param f The M3U file to parse
+	 * @param groupFilter Precompiled group filter, or null to keep all entries
+	 * @return List of M3UHolder objects containing channel information
+	 * @throws FileNotFoundException if the file doesn't exist
+	 */
+	public ArrayList<M3UHolder> parseFile(File f, GroupFilter groupFilter) throws FileNotFoundException {
 		ArrayList<M3UHolder> myArray = new ArrayList<>();
 		if (f.exists()) {
 			try (BufferedReader br = new BufferedReader(new FileReader(f))) {
@@ -51,6 +64,11 @@ public class M3UParser {
                 String tvgLogo = "";
 				while ((line = br.readLine()) != null) {
 					if (line.startsWith(EXTINF_PREFIX)) {
+						if (groupFilter != null && !groupTitleMatches(line, groupFilter)) {
+							// Skip the URL line of the filtered entry as well
+							br.readLine();
+							continue;
+						}
 						name = extractChannelName(line);
 						groupTitle = extractGroupTitle(line);
 						tvgId = extractTvgId(line);
@@ -83,6 +101,35 @@ public class M3UParser {
 		return myArray;
 	}
 
+	/**
+	 * Tests the group-title value of an EXTINF line in place, without extracting it
+	 * @param extinfLine The EXTINF line
+	 * @param groupFilter The filter to test against
+	 * @return true if the entry's group matches (a missing group-title counts as an empty group)
+	 */
+	private static boolean groupTitleMatches(String extinfLine, GroupFilter groupFilter) {
+		int attr = indexOfIgnoreCase(extinfLine, GROUP_TITLE_ATTRIBUTE);
+		if (attr < 0) {
+			return groupFilter.matches(extinfLine, 0, 0);
+		}
+		int start = attr + GROUP_TITLE_ATTRIBUTE.length();
+		int end = extinfLine.indexOf('"', start);
+		if (end < 0) {
+			return groupFilter.matches(extinfLine, 0, 0);
+		}
+		return groupFilter.matches(extinfLine, start, end);
+	}
+
+	private static int indexOfIgnoreCase(String text, String needle) {
+		int max = text.length() - needle.length();
+		for (int i = 0; i <= max; i++) {
+			if (text.regionMatches(true, i, needle, 0, needle.length())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * Extracts the last sequence of digits from a URL string
 	 * @param s The URL string to process
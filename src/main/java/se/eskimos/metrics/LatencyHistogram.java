@@ -0,0 +1,117 @@
+package se.eskimos.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets, in the manner of HdrHistogram: values
+ * below 128 ns are counted exactly, above that every power of two is split into 64 buckets, so a recorded
+ * value is off by less than 1/64 (about 1.6%) over the whole range of a long. The counts take a fixed
+ * 30 KB and recording is a few atomic increments, cheap enough for every write.
+ *
+ * Recorded by one thread and read by others (metrics, logs), the counts are cumulative since creation.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+    // Shift of the largest long (top bit 62), the buckets end there
+    private static final int MAX_SHIFT = 62 - (SUB_BITS - 1);
+    private static final double[] EXPORTED_QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_COUNT + MAX_SHIFT * HALF_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Adds one latency, negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public long getMeanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    /**
+     * @param quantile 0..1, e.g. 0.99
+     * @return The latency the given share of the recorded values are at or below (upper edge of its bucket,
+     *         at most the maximum), 0 without values
+     */
+    public long valueAtQuantile(double quantile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(1, Math.max(0, quantile)) * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalent(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Registers the quantiles (label quantile="0.5" .. "0.999"), the maximum and the count as metrics in
+     * microseconds: &lt;name&gt;_us, &lt;name&gt;_max_us and &lt;name&gt;_total.
+     * @param labelPairs Alternating label names and values, see Metrics.labels
+     */
+    public void export(Metrics metrics, String name, String... labelPairs) {
+        for (double quantile : EXPORTED_QUANTILES) {
+            String[] pairs = java.util.Arrays.copyOf(labelPairs, labelPairs.length + 2);
+            pairs[labelPairs.length] = "quantile";
+            pairs[labelPairs.length + 1] = Double.toString(quantile);
+            metrics.gauge(name + "_us", Metrics.labels(pairs), () -> valueAtQuantile(quantile) / 1000);
+        }
+        String labels = Metrics.labels(labelPairs);
+        metrics.gauge(name + "_max_us", labels, () -> getMaxNanos() / 1000);
+        metrics.counter(name + "_total", labels, this::getCount);
+    }
+
+    /**
+     * @return e.g. "p50 120 us, p99 2100 us, p99.9 9000 us, max 15000 us (12000 values)"
+     */
+    public String summary() {
+        return String.format("p50 %d us, p99 %d us, p99.9 %d us, max %d us (%d values)", valueAtQuantile(0.5) / 1000,
+            valueAtQuantile(0.99) / 1000, valueAtQuantile(0.999) / 1000, getMaxNanos() / 1000, getCount());
+    }
+
+    // Below SUB_COUNT the value itself, above it the power of two (shift) and the top bits below it
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return SUB_COUNT + (shift - 1) * HALF_COUNT + (int) (value >>> shift) - HALF_COUNT;
+    }
+
+    // Largest value counted in a bucket
+    static long highestEquivalent(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_COUNT) / HALF_COUNT + 1;
+        long sub = (index - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+        long next = (sub + 1) << shift;
+        return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+}
@@ -0,0 +1,151 @@
+package se.eskimos.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Minimal metrics registry with counters and gauges, written in the Prometheus text format.
+ * Every process keeps its own registry and dumps it to a file under &lt;stateDir&gt;/metrics,
+ * the --metrics command merges the files of all live processes.
+ */
+public class Metrics {
+    private static final Metrics GLOBAL = new Metrics();
+    // Metrics with this suffix are typed as counters
+    private static final String COUNTER_SUFFIX = "_total";
+
+    // Series key is the metric name followed by its label set, e.g. bytes_total{job="x"}
+    private final Map<String, AtomicLong> values = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> suppliers = new ConcurrentHashMap<>();
+
+    /**
+     * @return The registry of this process
+     */
+    public static Metrics get() {
+        return GLOBAL;
+    }
+
+    /**
+     * Builds a label set from name/value pairs.
+     * @param pairs Alternating label names and values
+     * @return Label set such as {provider="x",job="y"}, or an empty string without labels
+     */
+    public static String labels(String... pairs) {
+        if (pairs.length == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String value = pairs[i + 1] == null ? "" : pairs[i + 1];
+            sb.append(pairs[i]).append("=\"")
+                .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                .append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Adds to a counter. Counter names should end with _total.
+     */
+    public void increment(String name, String labels, long delta) {
+        values.computeIfAbsent(name + labels, k -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public void increment(String name, String labels) {
+        increment(name, labels, 1);
+    }
+
+    public void setGauge(String name, String labels, long value) {
+        values.computeIfAbsent(name + labels, k -> new AtomicLong()).set(value);
+    }
+
+    /**
+     * Registers a gauge that is sampled when the metrics are written.
+     * @throws IllegalArgumentException if the name ends with _total, which is typed as a counter
+     */
+    public void gauge(String name, String labels, LongSupplier supplier) {
+        if (name.endsWith(COUNTER_SUFFIX)) {
+            throw new IllegalArgumentException("Gauge names must not end with " + COUNTER_SUFFIX + ": " + name);
+        }
+        suppliers.put(name + labels, supplier);
+    }
+
+    /**
+     * Registers a counter kept elsewhere, sampled when the metrics are written. The supplier must never decrease.
+     * @throws IllegalArgumentException if the name does not end with _total
+     */
+    public void counter(String name, String labels, LongSupplier supplier) {
+        if (!name.endsWith(COUNTER_SUFFIX)) {
+            throw new IllegalArgumentException("Counter names must end with " + COUNTER_SUFFIX + ": " + name);
+        }
+        suppliers.put(name + labels, supplier);
+    }
+
+    public long getValue(String name, String labels) {
+        LongSupplier supplier = suppliers.get(name + labels);
+        if (supplier != null) {
+            return supplier.getAsLong();
+        }
+        AtomicLong value = values.get(name + labels);
+        return value == null ? 0 : value.get();
+    }
+
+    /**
+     * @return All series as Prometheus text, sorted, with one TYPE line per metric
+     */
+    public String toPrometheus() {
+        Map<String, Long> samples = new TreeMap<>();
+        values.forEach((k, v) -> samples.put(k, v.get()));
+        suppliers.forEach((k, s) -> samples.put(k, s.getAsLong()));
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> e : samples.entrySet()) {
+            sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+        }
+        return withTypes(sb.toString());
+    }
+
+    /**
+     * Writes the metrics atomically so readers never see a partial file.
+     */
+    public void writeTo(File file) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.writeString(tmp.toPath(), toPrometheus(), StandardCharsets.UTF_8);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Merges sample lines from several registries (e.g. files of several processes) and adds one
+     * TYPE line per metric: names ending with _total are counters, everything else gauges.
+     * @param text Sample lines, TYPE and comment lines are dropped
+     * @return Prometheus text
+     */
+    public static String withTypes(String text) {
+        Map<String, StringBuilder> byMetric = new TreeMap<>();
+        for (String line : text.split("\n")) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            int end = 0;
+            while (end < line.length() && line.charAt(end) != '{' && line.charAt(end) != ' ') {
+                end++;
+            }
+            byMetric.computeIfAbsent(line.substring(0, end), k -> new StringBuilder()).append(line).append('\n');
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, StringBuilder> e : byMetric.entrySet()) {
+            sb.append("# TYPE ").append(e.getKey()).append(e.getKey().endsWith(COUNTER_SUFFIX) ? " counter\n" : " gauge\n");
+            sb.append(e.getValue());
+        }
+        return sb.toString();
+    }
+}
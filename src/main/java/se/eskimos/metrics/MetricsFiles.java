@@ -0,0 +1,145 @@
+package se.eskimos.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import se.eskimos.log.LogHelper;
+import se.eskimos.scheduler.DeadlineScheduler;
+
+/**
+ * Per-process metrics files under &lt;stateDir&gt;/metrics, named after the process id.
+ * Files of processes that are no longer running are removed when the files are collected.
+ */
+public final class MetricsFiles {
+    private static final String METRICS_DIR = "metrics";
+    private static final String SUFFIX = ".prom";
+
+    private MetricsFiles() {
+    }
+
+    public static File dir(String stateDir) {
+        File dir = new File(stateDir, METRICS_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    /**
+     * Writes the process registry now and then every intervalSeconds, and removes the file when the process exits.
+     */
+    public static void startExport(String stateDir, int intervalSeconds) {
+        File file = new File(dir(stateDir), ProcessHandle.current().pid() + SUFFIX);
+        Runnable write = () -> {
+            try {
+                Metrics.get().writeTo(file);
+            } catch (IOException e) {
+                LogHelper.LogDebug("[METRICS] Could not write " + file + ": " + e.getMessage());
+            }
+        };
+        write.run();
+        scheduleNext(write, intervalSeconds);
+        Runtime.getRuntime().addShutdownHook(new Thread(file::delete));
+    }
+
+    private static void scheduleNext(Runnable write, int intervalSeconds) {
+        DeadlineScheduler.getDefault().schedule("metrics-export", java.time.ZonedDateTime.now().plusSeconds(intervalSeconds), () -> {
+            write.run();
+            scheduleNext(write, intervalSeconds);
+        });
+    }
+
+    /**
+     * @return Sample lines of all running processes' metrics files
+     */
+    public static String collect(String stateDir) {
+        StringBuilder sb = new StringBuilder();
+        File[] files = dir(stateDir).listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return "";
+        }
+        for (File f : files) {
+            String pid = f.getName().substring(0, f.getName().length() - SUFFIX.length());
+            try {
+                if (ProcessHandle.of(Long.parseLong(pid)).map(ProcessHandle::isAlive).orElse(false)) {
+                    sb.append(Files.readString(f.toPath(), StandardCharsets.UTF_8)).append('\n');
+                } else {
+                    f.delete();
+                }
+            } catch (NumberFormatException | IOException e) {
+                LogHelper.LogDebug("[METRICS] Skipping " + f + ": " + e.getMessage());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return Sum of all samples of a metric in the running processes' metrics files, whatever their labels
+     */
+    public static double sum(String stateDir, String name) {
+        return sum(stateDir, name, "");
+    }
+
+    /**
+     * @param label Only samples with this label, e.g. job="x" (empty for all)
+     * @return Sum of the matching samples of a metric in the running processes' metrics files
+     */
+    public static double sum(String stateDir, String name, String label) {
+        return read(stateDir, name).sum(label);
+    }
+
+    /**
+     * Reads the samples of a metric from the running processes' metrics files once, for several sums.
+     */
+    public static Samples read(String stateDir, String name) {
+        List<String> lines = new ArrayList<>();
+        for (String line : collect(stateDir).split("\n")) {
+            if (line.startsWith(name) && line.length() > name.length()
+                && (line.charAt(name.length()) == '{' || line.charAt(name.length()) == ' ')) {
+                lines.add(line);
+            }
+        }
+        return new Samples(lines);
+    }
+
+    /**
+     * Sample lines of one metric as read by read().
+     */
+    public static final class Samples {
+        private final List<String> lines;
+
+        private Samples(List<String> lines) {
+            this.lines = lines;
+        }
+
+        /**
+         * @return true if no running process exported the metric, e.g. metrics export is off
+         */
+        public boolean isEmpty() {
+            return lines.isEmpty();
+        }
+
+        /**
+         * @param label Only samples with this label, e.g. job="x" (empty for all)
+         * @return Sum of the matching samples
+         */
+        public double sum(String label) {
+            double sum = 0;
+            for (String line : lines) {
+                int space = line.lastIndexOf(' ');
+                if (!line.contains(label) || space <= 0) {
+                    continue;
+                }
+                try {
+                    sum += Double.parseDouble(line.substring(space + 1));
+                } catch (NumberFormatException e) {
+                    LogHelper.LogDebug("[METRICS] Skipping sample: " + line);
+                }
+            }
+            return sum;
+        }
+    }
+}
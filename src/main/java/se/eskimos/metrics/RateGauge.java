@@ -0,0 +1,35 @@
+package se.eskimos.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Gauge with the per-second rate of a growing total, e.g. bits per second from the bytes read. The rate
+ * is taken over the time since the previous update, which happens at most once a second, so reading the
+ * gauge more often (the control API's /metrics) gives the last rate instead of a noisy one.
+ */
+public final class RateGauge implements LongSupplier {
+    private static final long MIN_WINDOW_MILLIS = 1000;
+
+    private final LongSupplier total;
+    private long lastTotal;
+    private long lastMillis;
+    private long rate;
+
+    public RateGauge(LongSupplier total) {
+        this.total = total;
+        this.lastTotal = total.getAsLong();
+        this.lastMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized long getAsLong() {
+        long now = System.currentTimeMillis();
+        if (now - lastMillis >= MIN_WINDOW_MILLIS) {
+            long current = total.getAsLong();
+            rate = Math.max(0, current - lastTotal) * 1000 / (now - lastMillis);
+            lastTotal = current;
+            lastMillis = now;
+        }
+        return rate;
+    }
+}
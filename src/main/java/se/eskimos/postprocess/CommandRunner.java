@@ -0,0 +1,89 @@
+package se.eskimos.postprocess;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import se.eskimos.log.LogHelper;
+
+/**
+ * Runs the external programs of post-processing steps (ffmpeg, user scripts). At low priority they get
+ * CPU and disk only when the running recordings leave some (nice 19, idle I/O class where available).
+ */
+public class CommandRunner {
+    // Output lines kept for the error message of a failed command
+    private static final int TAIL_LINES = 5;
+
+    private final List<String> prefix = new ArrayList<>();
+
+    /**
+     * @param lowPriority Run programs through nice and ionice if they are on the PATH
+     */
+    public CommandRunner(boolean lowPriority) {
+        if (lowPriority) {
+            if (onPath("nice")) {
+                prefix.addAll(List.of("nice", "-n", "19"));
+            }
+            if (onPath("ionice")) {
+                prefix.addAll(List.of("ionice", "-c", "3"));
+            }
+        }
+    }
+
+    /**
+     * Runs a program to its end, its output goes to the debug log.
+     * @param env Extra environment variables
+     * @param dir Working directory, null for the current one
+     * @throws IOException if it cannot be started or exits with an error
+     */
+    public void run(List<String> command, Map<String, String> env, File dir) throws IOException, InterruptedException {
+        List<String> full = new ArrayList<>(prefix);
+        full.addAll(command);
+        ProcessBuilder pb = new ProcessBuilder(full);
+        pb.redirectErrorStream(true);
+        pb.redirectInput(ProcessBuilder.Redirect.from(new File(File.separatorChar == '\\' ? "NUL" : "/dev/null")));
+        pb.environment().putAll(env);
+        if (dir != null) {
+            pb.directory(dir);
+        }
+        Process process = pb.start();
+        Deque<String> tail = new ArrayDeque<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                LogHelper.LogDebug(line);
+                if (tail.size() == TAIL_LINES) {
+                    tail.removeFirst();
+                }
+                tail.addLast(line);
+            }
+        } finally {
+            // Interrupted or failed to read: the program must not outlive the step
+            if (process.isAlive()) {
+                process.destroy();
+            }
+        }
+        int exit = process.waitFor();
+        if (exit != 0) {
+            throw new IOException(command.get(0) + " exited with " + exit + (tail.isEmpty() ? "" : ": " + String.join(" / ", tail)));
+        }
+    }
+
+    private static boolean onPath(String program) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+        for (String dir : path.split(File.pathSeparator)) {
+            if (new File(dir, program).canExecute()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,101 @@
+package se.eskimos.postprocess;
+
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Post-processing of one finished recording, stored as a small properties file by PostProcessQueue.
+ * The job remembers the next step and the files it works on, so an interrupted job resumes there.
+ */
+public class PostProcessJob {
+    /**
+     * Lifecycle of a job.
+     */
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private static final String LIST_SEPARATOR = "|";
+
+    private final Properties props;
+
+    /**
+     * @param id Id of the recording job
+     * @param files Files of the recording in order
+     * @param steps Steps to run, see PostProcessSteps
+     */
+    public PostProcessJob(String id, List<String> files, String steps) {
+        this.props = new Properties();
+        props.setProperty("id", id);
+        setStatus(Status.QUEUED);
+        setFiles(files);
+        set("steps", steps);
+        props.setProperty("createdAt", Long.toString(System.currentTimeMillis()));
+    }
+
+    PostProcessJob(Properties props) {
+        this.props = props;
+    }
+
+    Properties toProperties() {
+        return props;
+    }
+
+    public String getId() { return props.getProperty("id"); }
+    public long getCreatedAt() { return getLong("createdAt", 0L); }
+
+    public Status getStatus() {
+        try {
+            return Status.valueOf(props.getProperty("status", Status.QUEUED.name()));
+        } catch (IllegalArgumentException e) {
+            return Status.QUEUED;
+        }
+    }
+    public void setStatus(Status status) { props.setProperty("status", status.name()); }
+
+    /** Files the next step works on, the recording's parts at first */
+    public List<String> getFiles() {
+        String raw = props.getProperty("files", "");
+        return raw.isEmpty() ? List.of() : List.of(raw.split(java.util.regex.Pattern.quote(LIST_SEPARATOR)));
+    }
+    public void setFiles(List<String> files) { set("files", String.join(LIST_SEPARATOR, files)); }
+    public String getSteps() { return props.getProperty("steps", ""); }
+    /** Index of the next step to run */
+    public int getStep() { return (int) getLong("step", 0L); }
+    public void setStep(int step) { set("step", Integer.toString(step)); }
+    public int getAttempts() { return (int) getLong("attempts", 0L); }
+    public void setAttempts(int attempts) { set("attempts", Integer.toString(attempts)); }
+    /** Process running the job */
+    public long getPid() { return getLong("pid", 0L); }
+    public void setPid(long pid) { set("pid", Long.toString(pid)); }
+    public String getError() { return props.getProperty("error", ""); }
+    public void setError(String error) { set("error", error); }
+
+    public String getChannelName() { return props.getProperty("channelName", ""); }
+    public void setChannelName(String channelName) { set("channelName", channelName); }
+    /** Date of the recording (yyyy-MM-dd) */
+    public String getDate() { return props.getProperty("date", ""); }
+    public void setDate(String date) { set("date", date); }
+    public String getStart() { return props.getProperty("start", ""); }
+    public void setStart(String start) { set("start", start); }
+    public String getStop() { return props.getProperty("stop", ""); }
+    public void setStop(String stop) { set("stop", stop); }
+    /** Scheduled length of the recording */
+    public long getDurationMillis() { return getLong("durationMillis", 0L); }
+    public void setDurationMillis(long millis) { set("durationMillis", Long.toString(millis)); }
+    /** Whether steps that convert a file keep the original */
+    public boolean isKeepSource() { return Boolean.parseBoolean(props.getProperty("keepSource", "true")); }
+    public void setKeepSource(boolean keepSource) { set("keepSource", Boolean.toString(keepSource)); }
+
+    private long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(props.getProperty(key, Long.toString(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private void set(String key, String value) {
+        props.setProperty(key, value != null ? value : "");
+    }
+}
@@ -0,0 +1,159 @@
+package se.eskimos.postprocess;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+
+/**
+ * File based queue of post-processing jobs, one properties file per job under &lt;stateDir&gt;/postprocess.
+ * Shared by the recorders that add jobs and the worker processes that run them.
+ */
+public class PostProcessQueue {
+    private static final String QUEUE_DIR = "postprocess";
+    private static final String JOB_FILE_SUFFIX = ".job";
+    private static final String CLAIM_LOCK_FILE = ".claim.lock";
+
+    private final File dir;
+
+    /**
+     * @param stateDir Directory for runtime state (created if missing)
+     */
+    public PostProcessQueue(String stateDir) {
+        this.dir = new File(stateDir, QUEUE_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+    }
+
+    /**
+     * Loads a job, or returns null if it does not exist or cannot be read.
+     */
+    public PostProcessJob load(String id) {
+        File f = jobFile(id);
+        if (!f.exists()) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (var fis = new FileInputStream(f)) {
+            props.load(fis);
+            return new PostProcessJob(props);
+        } catch (IOException e) {
+            LogHelper.LogWarning(String.format(TextHelper.JOB_REGISTRY_READ_FAILED, f.getAbsolutePath(), e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Writes the job file atomically (temp file + move).
+     */
+    public void save(PostProcessJob job) throws IOException {
+        File target = jobFile(job.getId());
+        File tmp = new File(dir, job.getId() + ".tmp");
+        try (var fos = new FileOutputStream(tmp)) {
+            job.toProperties().store(fos, null);
+        }
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (java.nio.file.AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return All jobs, oldest first
+     */
+    public List<PostProcessJob> list() {
+        List<PostProcessJob> jobs = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(JOB_FILE_SUFFIX));
+        if (files == null) {
+            return jobs;
+        }
+        for (File f : files) {
+            PostProcessJob job = load(f.getName().substring(0, f.getName().length() - JOB_FILE_SUFFIX.length()));
+            if (job != null) {
+                jobs.add(job);
+            }
+        }
+        jobs.sort(Comparator.comparingLong(PostProcessJob::getCreatedAt));
+        return jobs;
+    }
+
+    /**
+     * @param retryFailed Also failed jobs, they continue with the step that failed
+     * @return Jobs waiting to run and jobs whose worker died, oldest first
+     */
+    public List<PostProcessJob> pending(boolean retryFailed) {
+        List<PostProcessJob> pending = new ArrayList<>();
+        for (PostProcessJob job : list()) {
+            if (isPending(job, retryFailed)) {
+                pending.add(job);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Marks a job as run by this process if it is still pending. The job is read again and saved under a
+     * lock, so of two workers that picked the same job only one gets it.
+     * @param retryFailed Also take the job if it failed
+     * @return The job as it is now, null if it is done or another worker has it
+     */
+    public PostProcessJob claim(String id, boolean retryFailed) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(dir, CLAIM_LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                PostProcessJob job = load(id);
+                if (job == null || !isPending(job, retryFailed)) {
+                    return null;
+                }
+                job.setStatus(PostProcessJob.Status.RUNNING);
+                job.setPid(ProcessHandle.current().pid());
+                job.setAttempts(job.getAttempts() + 1);
+                job.setError("");
+                save(job);
+                return job;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    // Waiting to run, or its worker died
+    private static boolean isPending(PostProcessJob job, boolean retryFailed) {
+        boolean abandoned = job.getStatus() == PostProcessJob.Status.RUNNING
+            && !ProcessHandle.of(job.getPid()).map(ProcessHandle::isAlive).orElse(false);
+        return job.getStatus() == PostProcessJob.Status.QUEUED || abandoned
+            || (retryFailed && job.getStatus() == PostProcessJob.Status.FAILED);
+    }
+
+    /**
+     * Removes finished jobs last changed before the given time.
+     * @return Number of removed jobs
+     */
+    public int pruneDoneBefore(long millis) {
+        int removed = 0;
+        for (PostProcessJob job : list()) {
+            File f = jobFile(job.getId());
+            if (job.getStatus() == PostProcessJob.Status.DONE && f.lastModified() < millis && f.delete()) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private File jobFile(String id) {
+        return new File(dir, id + JOB_FILE_SUFFIX);
+    }
+}
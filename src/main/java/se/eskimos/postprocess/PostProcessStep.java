@@ -0,0 +1,25 @@
+package se.eskimos.postprocess;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * One step of the post-processing of a recording, e.g. a remux or a sidecar file. Steps are run in the
+ * configured order, each gets the files the previous one returned. A step must be safe to run again on
+ * its own input, a job interrupted in a step starts that step over.
+ */
+public interface PostProcessStep {
+
+    /**
+     * @return Name in logs and in the job file
+     */
+    String getName();
+
+    /**
+     * @param files Files of the recording, in order
+     * @param commands Runs external programs at the configured priority
+     * @return The files the next step works on
+     */
+    List<Path> run(PostProcessJob job, List<Path> files, CommandRunner commands) throws IOException, InterruptedException;
+}
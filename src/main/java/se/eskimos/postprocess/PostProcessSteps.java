@@ -0,0 +1,294 @@
+package se.eskimos.postprocess;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import se.eskimos.stream.SeekIndex;
+import se.eskimos.stream.TsVerifier;
+
+/**
+ * The steps post-processing can run, by name. A step list is written as names separated by |, a step
+ * takes an argument after a colon, e.g. concat|remux:mkv|nfo|script:/home/me/after.sh.
+ *
+ * Built in: concat (joins the parts of a recording that moved to another volume), remux:mkv|mp4 (ffmpeg
+ * stream copy into another container), nfo (Kodi style sidecar) and script:&lt;command&gt; (runs a program
+ * with the files as arguments). Further steps can be registered before the worker runs.
+ */
+public final class PostProcessSteps {
+
+    private static final Map<String, Function<String, PostProcessStep>> FACTORIES = new ConcurrentHashMap<>();
+
+    static {
+        register("concat", arg -> new Concat());
+        register("remux", Remux::new);
+        register("nfo", arg -> new Nfo());
+        register("script", Script::new);
+    }
+
+    private PostProcessSteps() {}
+
+    /**
+     * Makes a step available by name.
+     * @param factory Creates the step from its argument (empty if none)
+     */
+    public static void register(String name, Function<String, PostProcessStep> factory) {
+        FACTORIES.put(name.toLowerCase(), factory);
+    }
+
+    /**
+     * @return The steps of a step list, in order
+     * @throws IllegalArgumentException if a step is unknown or its argument invalid
+     */
+    public static List<PostProcessStep> parse(String spec) {
+        List<PostProcessStep> steps = new ArrayList<>();
+        for (String part : spec.split("\\|")) {
+            String trimmed = part.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int colon = trimmed.indexOf(':');
+            String name = (colon < 0 ? trimmed : trimmed.substring(0, colon)).trim().toLowerCase();
+            String arg = colon < 0 ? "" : trimmed.substring(colon + 1).trim();
+            Function<String, PostProcessStep> factory = FACTORIES.get(name);
+            if (factory == null) {
+                throw new IllegalArgumentException("Unknown post-processing step: " + name);
+            }
+            steps.add(factory.apply(arg));
+        }
+        return steps;
+    }
+
+    // Sidecars that describe a .ts byte by byte and are wrong once it is joined or converted
+    private static void deleteSidecars(Path ts) throws IOException {
+        Files.deleteIfExists(SeekIndex.indexFile(ts));
+        Files.deleteIfExists(TsVerifier.reportFile(ts));
+    }
+
+    private static void deleteIfEmpty(Path dir) {
+        try {
+            if (dir != null) {
+                Files.deleteIfExists(dir);
+            }
+        } catch (IOException e) {
+            // Not empty, e.g. the poster is in it
+        }
+    }
+
+    private static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Appends the parts of a recording to the last one, which is on the volume it ended on. MPEG-TS can be
+     * joined byte by byte, players resync at the seam. A marker with the joined size is written before the
+     * joined file replaces the last part, so a resumed run that finds it only removes the other parts.
+     */
+    static final class Concat implements PostProcessStep {
+        @Override
+        public String getName() {
+            return "concat";
+        }
+
+        @Override
+        public List<Path> run(PostProcessJob job, List<Path> files, CommandRunner commands) throws IOException {
+            if (files.size() < 2) {
+                return files;
+            }
+            Path last = files.get(files.size() - 1);
+            Path marker = last.resolveSibling(last.getFileName() + ".concat.done");
+            if (isJoined(last, marker)) {
+                removeParts(files, last, marker);
+                return List.of(last);
+            }
+            Path tmp = last.resolveSibling(last.getFileName() + ".concat.tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Path part : files) {
+                    try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                        long pos = 0;
+                        long size = in.size();
+                        while (pos < size) {
+                            pos += in.transferTo(pos, size - pos, out);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            Files.writeString(marker, Long.toString(Files.size(tmp)), StandardCharsets.UTF_8);
+            Files.move(tmp, last, StandardCopyOption.REPLACE_EXISTING);
+            removeParts(files, last, marker);
+            return List.of(last);
+        }
+
+        // The last part already holds the joined recording if it has the size the marker recorded
+        private static boolean isJoined(Path last, Path marker) throws IOException {
+            if (!Files.exists(marker) || !Files.exists(last)) {
+                return false;
+            }
+            try {
+                return Files.size(last) == Long.parseLong(Files.readString(marker, StandardCharsets.UTF_8).trim());
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        private static void removeParts(List<Path> files, Path last, Path marker) throws IOException {
+            for (Path part : files) {
+                deleteSidecars(part);
+                if (!part.equals(last)) {
+                    Files.deleteIfExists(part);
+                    deleteIfEmpty(part.getParent());
+                }
+            }
+            Files.deleteIfExists(marker);
+        }
+    }
+
+    /**
+     * Copies the video and audio streams into a Matroska or MP4 file next to the recording, nothing is
+     * re-encoded. The recording is removed afterwards unless the job keeps sources. The output only appears
+     * once it is complete, so a resumed run that finds it does not convert the file again.
+     */
+    static final class Remux implements PostProcessStep {
+        private final String format;
+
+        Remux(String arg) {
+            this.format = arg.isEmpty() ? "mkv" : arg.toLowerCase();
+            if (!format.equals("mkv") && !format.equals("mp4")) {
+                throw new IllegalArgumentException("Remux format must be mkv or mp4: " + arg);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "remux:" + format;
+        }
+
+        @Override
+        public List<Path> run(PostProcessJob job, List<Path> files, CommandRunner commands) throws IOException, InterruptedException {
+            List<Path> outputs = new ArrayList<>();
+            for (Path file : files) {
+                Path out = file.resolveSibling(baseName(file) + "." + format);
+                if (file.equals(out)) {
+                    outputs.add(file);
+                    continue;
+                }
+                // An existing output was made by a run that stopped before the job was saved
+                if (!Files.exists(out)) {
+                    Path tmp = file.resolveSibling(baseName(file) + ".remux.tmp");
+                    List<String> command = new ArrayList<>(List.of("ffmpeg", "-hide_banner", "-loglevel", "error", "-y",
+                        "-i", file.toString(), "-map", "0:v?", "-map", "0:a?", "-c", "copy"));
+                    if (format.equals("mp4")) {
+                        command.addAll(List.of("-movflags", "+faststart", "-f", "mp4"));
+                    } else {
+                        command.addAll(List.of("-f", "matroska"));
+                    }
+                    command.add(tmp.toString());
+                    try {
+                        commands.run(command, Map.of(), null);
+                    } catch (IOException | InterruptedException e) {
+                        Files.deleteIfExists(tmp);
+                        throw e;
+                    }
+                    Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING);
+                }
+                if (!job.isKeepSource()) {
+                    deleteSidecars(file);
+                    Files.deleteIfExists(file);
+                }
+                outputs.add(out);
+            }
+            return outputs;
+        }
+    }
+
+    /**
+     * Writes a Kodi style &lt;file&gt;.nfo next to each file, with the channel, date and the poster.
+     */
+    static final class Nfo implements PostProcessStep {
+        @Override
+        public String getName() {
+            return "nfo";
+        }
+
+        @Override
+        public List<Path> run(PostProcessJob job, List<Path> files, CommandRunner commands) throws IOException {
+            for (Path file : files) {
+                String title = (job.getChannelName() + " " + job.getDate() + " " + job.getStart() + "-" + job.getStop()).trim();
+                StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<episodedetails>\n");
+                element(xml, "title", title);
+                element(xml, "showtitle", job.getChannelName());
+                element(xml, "studio", job.getChannelName());
+                element(xml, "aired", job.getDate());
+                if (job.getDurationMillis() > 0) {
+                    element(xml, "runtime", Long.toString(job.getDurationMillis() / 60_000));
+                }
+                if (Files.exists(file.resolveSibling("poster.jpg"))) {
+                    element(xml, "thumb", "poster.jpg");
+                }
+                xml.append("</episodedetails>\n");
+                Path nfo = file.resolveSibling(baseName(file) + ".nfo");
+                Path tmp = nfo.resolveSibling(nfo.getFileName() + ".tmp");
+                Files.writeString(tmp, xml, StandardCharsets.UTF_8);
+                Files.move(tmp, nfo, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return files;
+        }
+
+        private static void element(StringBuilder xml, String name, String value) {
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            String escaped = value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+            xml.append("  <").append(name).append('>').append(escaped).append("</").append(name).append(">\n");
+        }
+    }
+
+    /**
+     * Runs a program with the files as arguments, in the folder of the first one. The recording is also
+     * described in IPTV_* environment variables.
+     */
+    static final class Script implements PostProcessStep {
+        private final String command;
+
+        Script(String arg) {
+            if (arg.isEmpty()) {
+                throw new IllegalArgumentException("The script step needs a command, e.g. script:/home/me/after.sh");
+            }
+            this.command = arg;
+        }
+
+        @Override
+        public String getName() {
+            return "script:" + new File(command).getName();
+        }
+
+        @Override
+        public List<Path> run(PostProcessJob job, List<Path> files, CommandRunner commands) throws IOException, InterruptedException {
+            List<String> cmd = new ArrayList<>(List.of(command));
+            files.forEach(f -> cmd.add(f.toString()));
+            Map<String, String> env = Map.of(
+                "IPTV_JOB_ID", job.getId(),
+                "IPTV_CHANNEL", job.getChannelName(),
+                "IPTV_DATE", job.getDate(),
+                "IPTV_START", job.getStart(),
+                "IPTV_STOP", job.getStop(),
+                "IPTV_FILES", String.join(File.pathSeparator, files.stream().map(Path::toString).toList()));
+            commands.run(cmd, env, files.isEmpty() ? null : files.get(0).toAbsolutePath().getParent().toFile());
+            return files;
+        }
+    }
+}
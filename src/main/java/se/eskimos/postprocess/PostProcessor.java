@@ -0,0 +1,200 @@
+package se.eskimos.postprocess;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import se.eskimos.admission.ProviderSlots;
+import se.eskimos.admission.SlotLease;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+import se.eskimos.storage.RecordingCatalog;
+
+/**
+ * Runs post-processing jobs. At most maxParallel jobs run at a time across all processes, they wait for
+ * one of the post-processing slots in &lt;stateDir&gt;/slots in arrival order. After every step the job file
+ * is updated, so a job whose worker died continues with the step it was in. The steps check for what such a
+ * run already did, so running the step again does not join or convert a file twice.
+ *
+ * A recorder hands its finished jobs to a worker process of their own (spawn) and exits, the worker runs
+ * them and exits too.
+ */
+public class PostProcessor {
+
+    /** Slot group the jobs wait in, next to the providers' connection slots */
+    public static final String SLOT_GROUP = "post-processing";
+
+    private final String stateDir;
+    private final int maxParallel;
+    private final boolean lowPriority;
+    private final PostProcessQueue queue;
+
+    /**
+     * @param maxParallel Jobs run at the same time, by all processes together
+     * @param lowPriority Run external programs at the lowest CPU and I/O priority
+     */
+    public PostProcessor(String stateDir, int maxParallel, boolean lowPriority) {
+        if (stateDir == null || stateDir.isEmpty()) {
+            throw new IllegalArgumentException("Post-processing needs a state directory");
+        }
+        this.stateDir = stateDir;
+        this.maxParallel = Math.max(1, maxParallel);
+        this.lowPriority = lowPriority;
+        this.queue = new PostProcessQueue(stateDir);
+    }
+
+    public PostProcessQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * Waits for a slot and runs the job's remaining steps. The job is read again once the slot is free and
+     * skipped if another worker ran it meanwhile.
+     * @param retryFailed Also run the job if it failed
+     * @return true if all steps succeeded or the job was skipped
+     */
+    public boolean run(PostProcessJob queued, boolean retryFailed) throws InterruptedException {
+        SlotLease lease;
+        try {
+            lease = new ProviderSlots(stateDir).acquire(SLOT_GROUP, maxParallel, 0, queued.getId(), Long.MAX_VALUE);
+        } catch (IOException e) {
+            // Not claimed, the job file may belong to another worker and is left as it is
+            LogHelper.LogError(String.format(TextHelper.POSTPROCESS_FAILED, queued.getId(), "-", e.getMessage()));
+            return false;
+        }
+        try {
+            PostProcessJob job = queue.claim(queued.getId(), retryFailed);
+            if (job == null) {
+                LogHelper.LogDebug(String.format(TextHelper.POSTPROCESS_TAKEN, queued.getId()));
+                return true;
+            }
+            List<PostProcessStep> steps;
+            try {
+                steps = PostProcessSteps.parse(job.getSteps());
+            } catch (IllegalArgumentException e) {
+                fail(job, "-", e);
+                return false;
+            }
+            CommandRunner commands = new CommandRunner(lowPriority);
+            List<Path> files = new ArrayList<>(job.getFiles().stream().map(Path::of).toList());
+            for (int i = job.getStep(); i < steps.size(); i++) {
+                PostProcessStep step = steps.get(i);
+                long started = System.currentTimeMillis();
+                try {
+                    files = step.run(job, files, commands);
+                } catch (IOException | RuntimeException e) {
+                    fail(job, step.getName(), e);
+                    return false;
+                }
+                job.setFiles(files.stream().map(Path::toString).toList());
+                job.setStep(i + 1);
+                save(job);
+                LogHelper.Log(String.format(TextHelper.POSTPROCESS_STEP_DONE, job.getId(), step.getName(), (System.currentTimeMillis() - started) / 1000));
+            }
+            job.setStatus(PostProcessJob.Status.DONE);
+            save(job);
+            updateCatalog(job);
+            LogHelper.Log(String.format(TextHelper.POSTPROCESS_DONE, job.getId(), String.join(", ", job.getFiles())));
+            return true;
+        } catch (IOException e) {
+            LogHelper.LogError(String.format(TextHelper.POSTPROCESS_FAILED, queued.getId(), "-", e.getMessage()));
+            return false;
+        } finally {
+            lease.close();
+        }
+    }
+
+    /**
+     * Runs the queued jobs and those whose worker died, one after the other.
+     * @param retryFailed Also run failed jobs again, from the step that failed
+     * @return Number of jobs that failed
+     */
+    public int runPending(boolean retryFailed) throws InterruptedException {
+        int failed = 0;
+        for (PostProcessJob job : queue.pending(retryFailed)) {
+            if (!run(job, retryFailed)) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Starts a worker process for queued jobs, it runs on after this process exits.
+     * @param logFile Log file of the worker, empty for none
+     */
+    public void spawn(List<String> jobIds, String logFile) throws IOException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(PostProcessor.class.getName());
+        cmd.add(stateDir);
+        cmd.add(Integer.toString(maxParallel));
+        cmd.add(Boolean.toString(lowPriority));
+        cmd.add(logFile != null ? logFile : "");
+        cmd.addAll(jobIds);
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        pb.start();
+    }
+
+    /**
+     * Worker process: runs the given jobs.
+     * Usage: PostProcessor &lt;stateDir&gt; &lt;maxParallel&gt; &lt;lowPriority&gt; &lt;logFile&gt; &lt;jobId&gt;...
+     */
+    public static void main(String[] args) {
+        if (args.length < 5) {
+            System.err.println("Usage: java -cp ... se.eskimos.postprocess.PostProcessor <stateDir> <maxParallel> <lowPriority> <logFile> <jobId>...");
+            System.exit(1);
+        }
+        if (!args[3].isEmpty()) {
+            LogHelper.setLogFile(args[3]);
+        }
+        PostProcessor processor = new PostProcessor(args[0], Integer.parseInt(args[1]), Boolean.parseBoolean(args[2]));
+        int failed = 0;
+        try {
+            for (int i = 4; i < args.length; i++) {
+                PostProcessJob job = processor.queue.load(args[i]);
+                if (job != null && !processor.run(job, false)) {
+                    failed++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private void fail(PostProcessJob job, String step, Exception e) {
+        job.setStatus(PostProcessJob.Status.FAILED);
+        job.setError(step + ": " + e.getMessage());
+        save(job);
+        LogHelper.LogError(String.format(TextHelper.POSTPROCESS_FAILED, job.getId(), step, e.getMessage()));
+    }
+
+    // The recording's catalog entry points at the files the steps left
+    private void updateCatalog(PostProcessJob job) {
+        RecordingCatalog catalog = new RecordingCatalog(stateDir);
+        catalog.load();
+        RecordingCatalog.Entry entry = catalog.get(job.getId());
+        if (entry == null || entry.files().equals(job.getFiles())) {
+            return;
+        }
+        try {
+            catalog.append(entry.withFiles(job.getFiles()));
+        } catch (IOException e) {
+            LogHelper.LogWarning(String.format(TextHelper.CATALOG_APPEND_FAILED, job.getId(), e.getMessage()));
+        }
+    }
+
+    private void save(PostProcessJob job) {
+        try {
+            queue.save(job);
+        } catch (IOException e) {
+            LogHelper.LogWarning(String.format(TextHelper.POSTPROCESS_SAVE_FAILED, job.getId(), e.getMessage()));
+        }
+    }
+}
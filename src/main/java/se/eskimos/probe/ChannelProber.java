@@ -0,0 +1,244 @@
+package se.eskimos.probe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+import se.eskimos.m3u.M3UHolder;
+import se.eskimos.stream.TsPackets;
+
+/**
+ * Checks whether channel streams are alive with a short ranged GET that only reads the first TS packets.
+ * Probes run concurrently, but never more than the configured number of connections at once,
+ * so a provider's stream limit is not exhausted by probing. With connection slots each probe also holds
+ * one of its provider's slots, a probe without a free slot is skipped.
+ */
+public class ChannelProber {
+
+    /**
+     * Takes a provider connection for one probe.
+     */
+    public interface ConnectionSlots {
+        /**
+         * @return Released after the probe, null if the provider has no connection to spare
+         */
+        Closeable acquire(String url) throws IOException;
+    }
+
+    // Enough packets to see a couple of PCRs on typical streams
+    private static final int PROBE_BYTES = TsPackets.PACKET_SIZE * 2048;
+    private static final int MIN_PACKETS = 8;
+    private static final String HLS_HEADER = "#EXTM3U";
+
+    private final ProbeCache cache;
+    private final int maxConnections;
+    private final int timeoutMillis;
+    private final ConnectionSlots slots;
+
+    /**
+     * @param cache Cache that receives the results
+     * @param maxConnections Maximum number of concurrent probe connections
+     * @param timeoutSeconds Connect/read timeout and maximum read time per probe
+     */
+    public ChannelProber(ProbeCache cache, int maxConnections, int timeoutSeconds) {
+        this(cache, maxConnections, timeoutSeconds, null);
+    }
+
+    /**
+     * @param slots Provider connections the probes take, null to ignore the providers' limits
+     */
+    public ChannelProber(ProbeCache cache, int maxConnections, int timeoutSeconds, ConnectionSlots slots) {
+        this.cache = cache;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.timeoutMillis = Math.max(1, timeoutSeconds) * 1000;
+        this.slots = slots;
+    }
+
+    public ProbeCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Probes all channels (skipping ones with a fresh cached result) and saves the cache.
+     * Blocks until all probes are done.
+     * @param channels Channels to probe
+     * @return Results in the same order as the channels
+     */
+    public List<ProbeResult> probeAll(List<M3UHolder> channels) {
+        List<ProbeResult> results = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(maxConnections, Math.max(1, channels.size())), r -> {
+            Thread t = new Thread(r, "channel-prober");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<ProbeResult>> futures = new ArrayList<>();
+            for (M3UHolder ch : channels) {
+                ProbeResult cached = cache.get(ch.url());
+                futures.add(cached != null ? CompletableFuture.completedFuture(cached) : pool.submit(() -> probe(ch.url())));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (Exception e) {
+                    results.add(new ProbeResult(channels.get(i).url(), false, 0, 0, System.currentTimeMillis(), e.getMessage()));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        cache.save();
+        return results;
+    }
+
+    /**
+     * Starts probing in the background.
+     * @return A future completing when all channels are probed and the cache is saved
+     */
+    public CompletableFuture<List<ProbeResult>> probeAllAsync(List<M3UHolder> channels) {
+        List<M3UHolder> copy = List.copyOf(channels);
+        return CompletableFuture.supplyAsync(() -> probeAll(copy), se.eskimos.helpers.RecorderHelper.getExecutor());
+    }
+
+    /**
+     * Orders channels so that known working streams come first, see ProbeCache.preferLive.
+     */
+    public List<M3UHolder> preferLive(List<M3UHolder> channels) {
+        return cache.preferLive(channels, M3UHolder::url);
+    }
+
+    /**
+     * Probes one URL and stores the result in the cache. Without a free provider connection nothing is
+     * stored and the result says so.
+     */
+    public ProbeResult probe(String url) {
+        Closeable slot = null;
+        if (slots != null) {
+            try {
+                slot = slots.acquire(url);
+            } catch (IOException e) {
+                LogHelper.LogDebug(String.format(TextHelper.PROBE_NO_SLOT, url, e.getMessage()));
+            }
+            if (slot == null) {
+                return new ProbeResult(url, false, 0, 0, System.currentTimeMillis(), "no free provider connection");
+            }
+        }
+        try {
+            return connect(url);
+        } finally {
+            if (slot != null) {
+                try {
+                    slot.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private ProbeResult connect(String url) {
+        long started = System.currentTimeMillis();
+        ProbeResult result;
+        URLConnection conn = null;
+        try {
+            conn = java.net.URI.create(url).toURL().openConnection();
+            conn.setConnectTimeout(timeoutMillis);
+            conn.setReadTimeout(timeoutMillis);
+            // Live TS servers usually ignore Range, but it keeps file-like servers from sending everything
+            conn.setRequestProperty("Range", "bytes=0-" + (PROBE_BYTES - 1));
+            if (conn instanceof HttpURLConnection http) {
+                int code = http.getResponseCode();
+                if (code >= 400) {
+                    return store(new ProbeResult(url, false, 0, 0, System.currentTimeMillis(), "HTTP " + code));
+                }
+            }
+            try (InputStream in = conn.getInputStream()) {
+                result = readPackets(url, in, started);
+            }
+        } catch (Exception e) {
+            result = new ProbeResult(url, false, 0, 0, System.currentTimeMillis(), e.getClass().getSimpleName() + ": " + e.getMessage());
+        } finally {
+            if (conn instanceof HttpURLConnection http) {
+                http.disconnect();
+            }
+        }
+        return store(result);
+    }
+
+    private ProbeResult store(ProbeResult result) {
+        cache.put(result);
+        LogHelper.LogDebug(String.format(TextHelper.PROBE_RESULT, result.url(), result.alive() ? "alive" : "dead", result.bitrateKbps(), result.message()));
+        return result;
+    }
+
+    // Reads up to PROBE_BYTES (or until the timeout) and validates/measures the TS packets
+    private ProbeResult readPackets(String url, InputStream in, long started) throws java.io.IOException {
+        byte[] buf = new byte[PROBE_BYTES];
+        int len = 0;
+        long firstByteAt = -1;
+        long deadline = started + timeoutMillis;
+        while (len < buf.length && System.currentTimeMillis() < deadline) {
+            int read = in.read(buf, len, buf.length - len);
+            if (read == -1) {
+                break;
+            }
+            if (firstByteAt < 0) {
+                firstByteAt = System.currentTimeMillis();
+            }
+            len += read;
+        }
+        long now = System.currentTimeMillis();
+        if (len == 0) {
+            return new ProbeResult(url, false, 0, 0, now, "no data");
+        }
+        long latency = firstByteAt - started;
+        if (new String(buf, 0, Math.min(len, HLS_HEADER.length()), java.nio.charset.StandardCharsets.US_ASCII).equals(HLS_HEADER)) {
+            return new ProbeResult(url, true, 0, latency, now, "HLS playlist");
+        }
+        int sync = TsPackets.findSync(buf, 0, len);
+        if (sync < 0 || (len - sync) / TsPackets.PACKET_SIZE < MIN_PACKETS) {
+            return new ProbeResult(url, false, 0, latency, now, "no transport stream packets");
+        }
+        return new ProbeResult(url, true, estimateBitrateKbps(buf, sync, len, now - firstByteAt), latency, now, "");
+    }
+
+    /**
+     * Bitrate from the bytes between the first and last PCR of one PID, falling back to wall clock time.
+     */
+    private static long estimateBitrateKbps(byte[] buf, int sync, int len, long elapsedMillis) {
+        int pcrPid = -1;
+        long firstPcr = -1;
+        long lastPcr = -1;
+        int firstOffset = 0;
+        int lastOffset = 0;
+        for (int off = sync; off + TsPackets.PACKET_SIZE <= len; off += TsPackets.PACKET_SIZE) {
+            if (buf[off] != TsPackets.SYNC_BYTE || !TsPackets.hasPcr(buf, off)) {
+                continue;
+            }
+            int pid = TsPackets.pid(buf, off);
+            if (pcrPid == -1) {
+                pcrPid = pid;
+                firstPcr = TsPackets.pcr(buf, off);
+                firstOffset = off;
+            } else if (pid == pcrPid) {
+                lastPcr = TsPackets.pcr(buf, off);
+                lastOffset = off;
+            }
+        }
+        if (lastPcr >= 0) {
+            long ticks = TsPackets.clockDelta(firstPcr, lastPcr);
+            if (ticks > 0) {
+                return (lastOffset - firstOffset) * 8L * TsPackets.CLOCK_HZ / ticks / 1000;
+            }
+        }
+        return elapsedMillis > 0 ? (len - sync) * 8L / elapsedMillis : 0;
+    }
+}
@@ -0,0 +1,132 @@
+package se.eskimos.probe;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+
+/**
+ * Liveness and bitrate per channel URL, kept in memory and persisted to &lt;stateDir&gt;/liveness.properties
+ * so that later runs (cron, background recorders) can use results from earlier probes.
+ */
+public class ProbeCache {
+    private static final String CACHE_FILE = "liveness.properties";
+
+    private final Map<String, ProbeResult> results = new ConcurrentHashMap<>();
+    private final File file;
+    private final long maxAgeMillis;
+
+    /**
+     * @param stateDir Directory for runtime state
+     * @param maxAgeMinutes Results older than this are treated as unknown
+     */
+    public ProbeCache(String stateDir, int maxAgeMinutes) {
+        File dir = new File(stateDir);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        this.file = new File(dir, CACHE_FILE);
+        this.maxAgeMillis = maxAgeMinutes * 60_000L;
+        load();
+    }
+
+    /**
+     * @return The cached result, or null if the URL was never probed or the result is too old
+     */
+    public ProbeResult get(String url) {
+        ProbeResult r = results.get(url);
+        if (r == null || System.currentTimeMillis() - r.checkedAt() > maxAgeMillis) {
+            return null;
+        }
+        return r;
+    }
+
+    /**
+     * @return The last known result regardless of age (e.g. for the measured bitrate), or null
+     */
+    public ProbeResult getLastKnown(String url) {
+        return results.get(url);
+    }
+
+    /**
+     * Orders items so that known working streams come first (highest measured bitrate first), then streams
+     * whose result is too old but were working, never probed streams and known dead streams. The order is
+     * kept otherwise. The results are read once, probes that finish meanwhile do not change the order.
+     * @param url The stream URL of an item
+     */
+    public <T> List<T> preferLive(List<T> items, Function<T, String> url) {
+        record Ranked<R>(R item, int rank, long bitrateKbps) {}
+        List<Ranked<T>> ranked = new ArrayList<>(items.size());
+        for (T item : items) {
+            String u = url.apply(item);
+            ProbeResult fresh = get(u);
+            ProbeResult last = getLastKnown(u);
+            int rank;
+            if (last == null) {
+                rank = 2;
+            } else if (fresh != null) {
+                rank = fresh.alive() ? 0 : 4;
+            } else {
+                rank = last.alive() ? 1 : 3;
+            }
+            ranked.add(new Ranked<>(item, rank, last != null && last.alive() ? last.bitrateKbps() : 0));
+        }
+        ranked.sort(Comparator.comparingInt((Ranked<T> r) -> r.rank()).thenComparingLong(r -> -r.bitrateKbps()));
+        List<T> sorted = new ArrayList<>(items.size());
+        ranked.forEach(r -> sorted.add(r.item()));
+        return sorted;
+    }
+
+    public void put(ProbeResult result) {
+        results.put(result.url(), result);
+    }
+
+    /**
+     * Writes all results to the cache file (temp file + move).
+     */
+    public synchronized void save() {
+        Properties props = new Properties();
+        for (ProbeResult r : results.values()) {
+            props.setProperty(r.url(), r.toCacheValue());
+        }
+        File tmp = new File(file.getParentFile(), CACHE_FILE + ".tmp");
+        try {
+            try (var fos = new FileOutputStream(tmp)) {
+                props.store(fos, null);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LogHelper.LogWarning(String.format(TextHelper.PROBE_CACHE_WRITE_FAILED, file.getAbsolutePath(), e.getMessage()));
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        Properties props = new Properties();
+        try (var fis = new FileInputStream(file)) {
+            props.load(fis);
+        } catch (IOException e) {
+            LogHelper.LogWarning(String.format(TextHelper.PROBE_CACHE_READ_FAILED, file.getAbsolutePath(), e.getMessage()));
+            return;
+        }
+        for (String url : props.stringPropertyNames()) {
+            ProbeResult r = ProbeResult.fromCacheValue(url, props.getProperty(url));
+            if (r != null) {
+                results.put(url, r);
+            }
+        }
+    }
+}
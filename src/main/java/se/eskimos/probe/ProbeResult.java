@@ -0,0 +1,36 @@
+package se.eskimos.probe;
+
+/**
+ * Outcome of probing one channel URL.
+ * @param url The probed stream URL
+ * @param alive true if the stream answered with transport stream packets (or an HLS playlist)
+ * @param bitrateKbps Measured bitrate in kbit/s, 0 if it could not be measured
+ * @param latencyMs Time from connect until the first byte arrived
+ * @param checkedAt When the probe finished (epoch millis)
+ * @param message Short reason when the stream is not alive
+ */
+public record ProbeResult(String url, boolean alive, long bitrateKbps, long latencyMs, long checkedAt, String message) {
+
+    /**
+     * Serializes the result for the cache file (url is the key and not included).
+     */
+    String toCacheValue() {
+        return alive + "|" + bitrateKbps + "|" + latencyMs + "|" + checkedAt + "|" + (message != null ? message.replace('|', '/') : "");
+    }
+
+    /**
+     * Parses a value written by toCacheValue, returns null if it is malformed.
+     */
+    static ProbeResult fromCacheValue(String url, String value) {
+        String[] parts = value.split("\\|", 5);
+        if (parts.length < 4) {
+            return null;
+        }
+        try {
+            return new ProbeResult(url, Boolean.parseBoolean(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                Long.parseLong(parts[3]), parts.length > 4 ? parts[4] : "");
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
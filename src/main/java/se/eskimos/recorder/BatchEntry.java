@@ -0,0 +1,96 @@
+package se.eskimos.recorder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One line of a batch file for --batch: a search string with start and stop time.
+ *
+ * Each line is either CSV ({@code search,start,stop}, fields may be quoted with "")
+ * or a JSON object ({@code {"search":"MXGP FHD","start":"19:00","stop":"21:00"}}).
+ * Empty lines and lines starting with # are ignored.
+ */
+public record BatchEntry(int lineNumber, String search, String start, String stop) {
+
+    private static final Pattern JSON_FIELD = Pattern.compile("\"(search|start|stop)\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    /**
+     * Reads all entries from a batch file.
+     * @param path Path to the batch file
+     * @return The entries in file order
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line is invalid (the message contains the line number)
+     */
+    public static List<BatchEntry> load(String path) throws IOException {
+        List<BatchEntry> entries = new ArrayList<>();
+        List<String> lines = Files.readAllLines(Path.of(path), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            entries.add(line.startsWith("{") ? parseJson(i + 1, line) : parseCsv(i + 1, line));
+        }
+        return entries;
+    }
+
+    private static BatchEntry parseJson(int lineNumber, String line) {
+        String search = null;
+        String start = null;
+        String stop = null;
+        Matcher m = JSON_FIELD.matcher(line);
+        while (m.find()) {
+            String value = m.group(2).replace("\\\"", "\"").replace("\\\\", "\\");
+            switch (m.group(1)) {
+                case "search" -> search = value;
+                case "start" -> start = value;
+                default -> stop = value;
+            }
+        }
+        return validated(lineNumber, search, start, stop);
+    }
+
+    private static BatchEntry parseCsv(int lineNumber, String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString().trim());
+        if (fields.size() < 3) {
+            throw new IllegalArgumentException("Batch line " + lineNumber + ": expected search,start,stop");
+        }
+        return validated(lineNumber, fields.get(0), fields.get(1), fields.get(2));
+    }
+
+    private static BatchEntry validated(int lineNumber, String search, String start, String stop) {
+        if (search == null || search.isBlank() || start == null || start.isBlank() || stop == null || stop.isBlank()) {
+            throw new IllegalArgumentException("Batch line " + lineNumber + ": search, start and stop are required");
+        }
+        return new BatchEntry(lineNumber, search.trim(), start.trim(), stop.trim());
+    }
+}
@@ -0,0 +1,161 @@
+package se.eskimos.recorder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import se.eskimos.log.LogHelper;
+import se.eskimos.helpers.TextHelper;
+
+/**
+ * File based registry of scheduled recordings, one properties file per job under &lt;stateDir&gt;/jobs.
+ * Shared between StartRecorder invocations (e.g. cron jobs) and the background ScheduledRecorder processes.
+ */
+public class JobRegistry {
+    private static final String JOBS_DIR = "jobs";
+    private static final String JOB_FILE_SUFFIX = ".job";
+
+    private final File jobsDir;
+
+    /**
+     * @param stateDir Directory for runtime state (created if missing)
+     */
+    public JobRegistry(String stateDir) {
+        this.jobsDir = new File(stateDir, JOBS_DIR);
+        if (!jobsDir.exists()) {
+            jobsDir.mkdirs();
+        }
+    }
+
+    /**
+     * Builds a stable job id from what makes a recording unique: stream, date and window.
+     * Scheduling the same stream for the same window twice gives the same id.
+     */
+    public static String jobId(String url, LocalDate date, String start, String stop) {
+        String key = url + "|" + date + "|" + start + "|" + stop;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return date.toString().replace("-", "") + "-" + start.replace(":", "") + "-" + HexFormat.of().formatHex(hash, 0, 6);
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return true if a job with this id is registered and has not failed, been cancelled or preempted
+     */
+    public boolean isActive(String id) {
+        RecordingJob job = load(id);
+        return job != null && job.getStatus() != RecordingJob.Status.FAILED && job.getStatus() != RecordingJob.Status.CANCELLED
+            && job.getStatus() != RecordingJob.Status.PREEMPTED;
+    }
+
+    /**
+     * Loads a job, or returns null if it does not exist or cannot be read.
+     */
+    public RecordingJob load(String id) {
+        File f = jobFile(id);
+        if (!f.exists()) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (var fis = new FileInputStream(f)) {
+            props.load(fis);
+            return new RecordingJob(props);
+        } catch (IOException e) {
+            LogHelper.LogWarning(String.format(TextHelper.JOB_REGISTRY_READ_FAILED, f.getAbsolutePath(), e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Writes the job file atomically (temp file + move) so readers never see a half written job.
+     */
+    public void save(RecordingJob job) throws IOException {
+        File target = jobFile(job.getId());
+        File tmp = new File(jobsDir, job.getId() + ".tmp");
+        try (var fos = new FileOutputStream(tmp)) {
+            job.toProperties().store(fos, null);
+        }
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (java.nio.file.AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return All registered jobs
+     */
+    public List<RecordingJob> list() {
+        List<RecordingJob> jobs = new ArrayList<>();
+        File[] files = jobsDir.listFiles((dir, name) -> name.endsWith(JOB_FILE_SUFFIX));
+        if (files == null) {
+            return jobs;
+        }
+        for (File f : files) {
+            RecordingJob job = load(f.getName().substring(0, f.getName().length() - JOB_FILE_SUFFIX.length()));
+            if (job != null) {
+                jobs.add(job);
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Removes job files for recordings dated before the given date.
+     * @return Number of removed jobs
+     */
+    public int pruneBefore(LocalDate date) {
+        int removed = 0;
+        for (RecordingJob job : list()) {
+            try {
+                if (!job.getDate().isEmpty() && LocalDate.parse(job.getDate()).isBefore(date) && jobFile(job.getId()).delete()) {
+                    removed++;
+                }
+            } catch (java.time.format.DateTimeParseException e) {
+                // Leave jobs with unreadable dates alone
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Picks the recorder that gives way first under resource pressure: of the running recorders with their
+     * own connection, the lowest priority, of equal priorities the one that started last. Every recorder
+     * picks the same one, so they agree without talking to each other.
+     * @param filter Further condition on the jobs, e.g. the volume they write to
+     * @return The job, or null if no recorder is running
+     */
+    public RecordingJob lowestPriorityRecording(java.util.function.Predicate<RecordingJob> filter) {
+        RecordingJob lowest = null;
+        for (RecordingJob job : list()) {
+            if (job.getStatus() != RecordingJob.Status.RECORDING || !job.getAttachedTo().isEmpty() || !isRunning(job.getPid()) || !filter.test(job)) {
+                continue;
+            }
+            if (lowest == null || job.getPriority() < lowest.getPriority()
+                || (job.getPriority() == lowest.getPriority() && (job.getStartAt() > lowest.getStartAt()
+                    || (job.getStartAt() == lowest.getStartAt() && job.getId().compareTo(lowest.getId()) > 0)))) {
+                lowest = job;
+            }
+        }
+        return lowest;
+    }
+
+    private static boolean isRunning(long pid) {
+        return pid > 0 && ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    private File jobFile(String id) {
+        return new File(jobsDir, id + JOB_FILE_SUFFIX);
+    }
+}
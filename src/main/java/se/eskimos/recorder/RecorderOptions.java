@@ -0,0 +1,156 @@
+package se.eskimos.recorder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import se.eskimos.log.LogHelper;
+import se.eskimos.stream.RetryPolicy;
+
+/**
+ * Optional ScheduledRecorder settings passed as trailing key=value arguments after the positional ones.
+ * Unknown keys are kept and ignored, so a newer StartRecorder can still start an older recorder.
+ */
+public class RecorderOptions {
+    /** Index of the first key=value argument */
+    public static final int FIRST_OPTION_INDEX = 15;
+
+    public static final String PRE_WARM_SECONDS = "preWarmSeconds";
+    public static final String RETRY_INITIAL_MS = "retryInitialMs";
+    public static final String RETRY_MAX_MS = "retryMaxMs";
+    public static final String RETRY_MULTIPLIER = "retryMultiplier";
+    public static final String RETRY_JITTER = "retryJitter";
+    public static final String RETRY_BUDGET_MS = "retryBudgetMs";
+    public static final String RETRY_MAX_ATTEMPTS = "retryMaxAttempts";
+    public static final String HEDGE_AFTER_MS = "hedgeAfterMs";
+    public static final String JOB_ID = "jobId";
+    public static final String STATE_DIR = "stateDir";
+    public static final String PROVIDER = "provider";
+    public static final String MAX_CONNECTIONS = "maxConnections";
+    public static final String PRIORITY = "priority";
+    public static final String METRICS_INTERVAL_SECONDS = "metricsIntervalSeconds";
+    public static final String PRE_ROLL_SECONDS = "preRollSeconds";
+    public static final String PRE_ROLL_MAX_MB = "preRollMaxMB";
+    public static final String FALLBACK_URL = "fallbackUrl";
+    public static final String PREEMPT_AFTER_SECONDS = "preemptAfterSeconds";
+    public static final String MAX_BANDWIDTH_MBPS = "maxBandwidthMbps";
+    public static final String DISK_POLICY = "diskPolicy";
+    public static final String DISK_RESERVE_MB = "diskReserveMB";
+    public static final String DISK_FAILOVER_PATH = "diskFailoverPath";
+    public static final String PREALLOCATE_MB = "preallocateMB";
+    public static final String DURABILITY = "durability";
+    public static final String DURABILITY_SECONDS = "durabilitySeconds";
+    public static final String DURABILITY_MB = "durabilityMB";
+    public static final String DESTINATION_PATHS = "destinationPaths";
+    public static final String MIRROR_PATHS = "mirrorPaths";
+    public static final String MIRROR_BUFFER_MB = "mirrorBufferMB";
+    public static final String SEEK_INDEX = "seekIndex";
+    public static final String VERIFY = "verify";
+    public static final String VERIFY_THREADS = "verifyThreads";
+    public static final String LOGO_CACHE_HOURS = "logoCacheHours";
+    public static final String POST_PROCESS_STEPS = "postProcessSteps";
+    public static final String POST_PROCESS_PARALLEL = "postProcessParallel";
+    public static final String POST_PROCESS_LOW_PRIORITY = "postProcessLowPriority";
+    public static final String POST_PROCESS_KEEP_SOURCE = "postProcessKeepSource";
+
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    /**
+     * Parses the key=value arguments from FIRST_OPTION_INDEX on, arguments without '=' are skipped.
+     */
+    public static RecorderOptions parse(String[] args) {
+        RecorderOptions options = new RecorderOptions();
+        for (int i = FIRST_OPTION_INDEX; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq <= 0) {
+                LogHelper.LogWarning("[SCHEDULER] Ignoring argument without key=value: " + args[i]);
+                continue;
+            }
+            options.values.put(args[i].substring(0, eq).trim(), args[i].substring(eq + 1));
+        }
+        return options;
+    }
+
+    public RecorderOptions set(String key, Object value) {
+        if (value != null) {
+            values.put(key, value.toString());
+        }
+        return this;
+    }
+
+    public String get(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(values.getOrDefault(key, Integer.toString(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            LogHelper.LogWarning(String.format("[SCHEDULER] Invalid number for option '%s', using default: %d", key, defaultValue));
+            return defaultValue;
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(values.getOrDefault(key, Long.toString(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            LogHelper.LogWarning(String.format("[SCHEDULER] Invalid number for option '%s', using default: %d", key, defaultValue));
+            return defaultValue;
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        try {
+            return Double.parseDouble(values.getOrDefault(key, Double.toString(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            LogHelper.LogWarning(String.format("[SCHEDULER] Invalid number for option '%s', using default: %s", key, defaultValue));
+            return defaultValue;
+        }
+    }
+
+    public RecorderOptions setRetryPolicy(RetryPolicy policy) {
+        return set(RETRY_INITIAL_MS, policy.initialDelayMillis())
+            .set(RETRY_MAX_MS, policy.maxDelayMillis())
+            .set(RETRY_MULTIPLIER, policy.multiplier())
+            .set(RETRY_JITTER, policy.jitter())
+            .set(RETRY_BUDGET_MS, policy.budgetMillis())
+            .set(RETRY_MAX_ATTEMPTS, policy.maxAttempts())
+            .set(HEDGE_AFTER_MS, policy.hedgeAfterMillis());
+    }
+
+    /**
+     * @param defaults Policy used for keys that are not set, and as a whole if the options are invalid
+     */
+    public RetryPolicy getRetryPolicy(RetryPolicy defaults) {
+        try {
+            return new RetryPolicy(
+                getLong(RETRY_INITIAL_MS, defaults.initialDelayMillis()),
+                getLong(RETRY_MAX_MS, defaults.maxDelayMillis()),
+                getDouble(RETRY_MULTIPLIER, defaults.multiplier()),
+                getDouble(RETRY_JITTER, defaults.jitter()),
+                getLong(RETRY_BUDGET_MS, defaults.budgetMillis()),
+                getInt(RETRY_MAX_ATTEMPTS, defaults.maxAttempts()),
+                getLong(HEDGE_AFTER_MS, defaults.hedgeAfterMillis()));
+        } catch (IllegalArgumentException e) {
+            LogHelper.LogWarning("[SCHEDULER] Invalid retry options, using defaults: " + e.getMessage());
+            return defaults;
+        }
+    }
+
+    /**
+     * @return The options as key=value arguments, to append after the positional arguments
+     */
+    public List<String> toArgs() {
+        List<String> args = new ArrayList<>();
+        for (Map.Entry<String, String> e : values.entrySet()) {
+            args.add(e.getKey() + "=" + e.getValue());
+        }
+        return args;
+    }
+}
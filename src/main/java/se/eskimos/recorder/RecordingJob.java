@@ -0,0 +1,161 @@
+package se.eskimos.recorder;
+
+import java.util.Properties;
+
+/**
+ * Metadata for one scheduled recording, stored as a small properties file by JobRegistry.
+ * Backed by Properties so new fields can be added without breaking older job files.
+ */
+public class RecordingJob {
+    /**
+     * Lifecycle of a job.
+     */
+    public enum Status {
+        SCHEDULED, RECORDING, DONE, FAILED, CANCELLED, PREEMPTED
+    }
+
+    private final Properties props;
+
+    public RecordingJob(String id) {
+        this.props = new Properties();
+        props.setProperty("id", id);
+        setStatus(Status.SCHEDULED);
+        props.setProperty("createdAt", Long.toString(System.currentTimeMillis()));
+    }
+
+    RecordingJob(Properties props) {
+        this.props = props;
+    }
+
+    Properties toProperties() {
+        return props;
+    }
+
+    public String getId() { return props.getProperty("id"); }
+    public long getCreatedAt() { return getLong("createdAt", 0L); }
+
+    public Status getStatus() {
+        try {
+            return Status.valueOf(props.getProperty("status", Status.SCHEDULED.name()));
+        } catch (IllegalArgumentException e) {
+            return Status.SCHEDULED;
+        }
+    }
+    public void setStatus(Status status) { props.setProperty("status", status.name()); }
+
+    public String getUrl() { return props.getProperty("url", ""); }
+    public void setUrl(String url) { set("url", url); }
+    public String getChannelName() { return props.getProperty("channelName", ""); }
+    public void setChannelName(String channelName) { set("channelName", channelName); }
+    public String getGroupTitle() { return props.getProperty("groupTitle", ""); }
+    public void setGroupTitle(String groupTitle) { set("groupTitle", groupTitle); }
+    public String getTvgId() { return props.getProperty("tvgId", ""); }
+    public void setTvgId(String tvgId) { set("tvgId", tvgId); }
+    /** Date of the recording (yyyy-MM-dd) in the configured timezone */
+    public String getDate() { return props.getProperty("date", ""); }
+    public void setDate(String date) { set("date", date); }
+    /** Start time (HH:mm) */
+    public String getStart() { return props.getProperty("start", ""); }
+    public void setStart(String start) { set("start", start); }
+    /** Stop time (HH:mm) */
+    public String getStop() { return props.getProperty("stop", ""); }
+    public void setStop(String stop) { set("stop", stop); }
+    /** What created the job (interactive, search, watch rule name, ...) */
+    public String getSource() { return props.getProperty("source", ""); }
+    public void setSource(String source) { set("source", source); }
+    /** Provider key used for connection limits (host or configured account) */
+    public String getProvider() { return props.getProperty("provider", ""); }
+    public void setProvider(String provider) { set("provider", provider); }
+    /** Higher priority jobs get free provider slots first */
+    public int getPriority() { return (int) getLong("priority", 0L); }
+    public void setPriority(int priority) { set("priority", Integer.toString(priority)); }
+    /** Resolved recording window in epoch millis (0 if unknown) */
+    public long getStartAt() { return getLong("startAt", 0L); }
+    public void setStartAt(long startAt) { set("startAt", Long.toString(startAt)); }
+    public long getStopAt() { return getLong("stopAt", 0L); }
+    public void setStopAt(long stopAt) { set("stopAt", Long.toString(stopAt)); }
+    /** Seconds before startAt the recorder connects (pre-warm, pre-roll), it holds a provider connection from then */
+    public int getLeadSeconds() { return (int) getLong("leadSeconds", 0L); }
+    public void setLeadSeconds(int seconds) { set("leadSeconds", Integer.toString(seconds)); }
+    public long getConnectAt() { return getStartAt() - getLeadSeconds() * 1000L; }
+    /** Process id of the ScheduledRecorder (0 if not started) */
+    public long getPid() { return getLong("pid", 0L); }
+    public void setPid(long pid) { set("pid", Long.toString(pid)); }
+    /** Loopback port and token of the recorder's control API (port 0 if it has none) */
+    public int getControlPort() { return (int) getLong("controlPort", 0L); }
+    public void setControlPort(int port) { set("controlPort", Integer.toString(port)); }
+    public String getControlToken() { return props.getProperty("controlToken", ""); }
+    public void setControlToken(String token) { set("controlToken", token); }
+    /** Job whose recorder process also records this job from its connection (empty if it has its own) */
+    public String getAttachedTo() { return props.getProperty("attachedTo", ""); }
+    public void setAttachedTo(String jobId) { set("attachedTo", jobId); }
+    /** Directory the recording is written to, set when it starts and when it fails over to another volume */
+    public String getOutputDir() { return props.getProperty("outputDir", ""); }
+    public void setOutputDir(String dir) { set("outputDir", dir); }
+    /** File the recording is written to, set when it is opened (empty in ffmpeg mode) */
+    public String getFile() { return props.getProperty("file", ""); }
+    public void setFile(String file) { set("file", file); }
+    /** Every file the recording was written to in order, more than one if it moved to another volume */
+    public java.util.List<String> getFiles() {
+        String raw = props.getProperty("files", "");
+        return raw.isEmpty() ? java.util.List.of() : java.util.List.of(raw.split("\\|"));
+    }
+    public void addFile(String file) {
+        if (!getFiles().contains(file)) {
+            String raw = props.getProperty("files", "");
+            set("files", raw.isEmpty() ? file : raw + "|" + file);
+        }
+    }
+    /** When the first file was opened and when the recorder finished, epoch millis (0 if unknown) */
+    public long getRecordedFrom() { return getLong("recordedFrom", 0L); }
+    public void setRecordedFrom(long recordedFrom) { set("recordedFrom", Long.toString(recordedFrom)); }
+    public long getRecordedTo() { return getLong("recordedTo", 0L); }
+    public void setRecordedTo(long recordedTo) { set("recordedTo", Long.toString(recordedTo)); }
+    /** Outcome of the verification after the stop: ok, failed or empty if it was not verified */
+    public String getVerified() { return props.getProperty("verified", ""); }
+    public void setVerified(String verified) { set("verified", verified); }
+    /** Why the recorder gave way to other recordings (slots, bandwidth), empty if it did not */
+    public String getPreemptReason() { return props.getProperty("preemptReason", ""); }
+    public void setPreemptReason(String reason) { set("preemptReason", reason); }
+    /** Lower quality stream the recorder switched to under bandwidth pressure (empty if none) */
+    public String getDowngradedTo() { return props.getProperty("downgradedTo", ""); }
+    public void setDowngradedTo(String url) { set("downgradedTo", url); }
+
+    /**
+     * @return true if the job is scheduled or recording
+     */
+    public boolean isActive() {
+        return getStatus() == Status.SCHEDULED || getStatus() == Status.RECORDING;
+    }
+
+    /**
+     * @return true if both jobs have a known window and the windows intersect (stop is exclusive)
+     */
+    public boolean overlaps(RecordingJob other) {
+        return getStopAt() > 0 && other.getStopAt() > 0
+            && getStartAt() < other.getStopAt() && other.getStartAt() < getStopAt();
+    }
+
+    /** Jobs are identified by their id */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RecordingJob other && getId().equals(other.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return getId().hashCode();
+    }
+
+    protected long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(props.getProperty(key, Long.toString(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    protected void set(String key, String value) {
+        props.setProperty(key, value != null ? value : "");
+    }
+}
@@ -1,8 +1,10 @@
 package se.eskimos.recorder;
-import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.io.IOException;
 import se.eskimos.helpers.DateTimeHelper;
+import se.eskimos.scheduler.RecordingWindow;
 
 /**
  * Handles starting and stopping of recordings (FFMPEG and REGULAR).
@@ -30,19 +32,20 @@ public class RecordingManager {
      * Starts a regular recording using input/output streams until stopTime.
      * @param url Stream URL
      * @param outputFile Output file path
-     * @param stopTime Stop time (HH:mm)
+     * @param stopTime Stop time (HH:mm), the next occurrence is used so recordings may cross midnight
      * @throws IOException if recording cannot be started
      */
     public void startRecRegular(String url, String outputFile, String stopTime) throws IOException {
-        LocalTime targetTime = DateTimeHelper.parseFlexibleLocalTime(stopTime, TIME_FORMATTER);
+        ZonedDateTime now = ZonedDateTime.now(ZoneId.systemDefault());
+        long stopAtMillis = RecordingWindow.resolve(now.toLocalTime(), DateTimeHelper.parseFlexibleLocalTime(stopTime, TIME_FORMATTER), now)
+            .stop().toInstant().toEpochMilli();
         try (var input = java.net.URI.create(url).toURL().openStream();
              var outputStream = new java.io.FileOutputStream(new java.io.File(outputFile), true)) {
             byte[] bytes = new byte[8192];
             int read;
             while ((read = input.read(bytes)) != -1) {
                 outputStream.write(bytes, 0, read);
-                LocalTime currentTime = LocalTime.now();
-                if (currentTime.isAfter(targetTime) || currentTime.equals(targetTime)) {
+                if (System.currentTimeMillis() >= stopAtMillis) {
                     break;
                 }
             }
@@ -1,20 +1,81 @@
 package se.eskimos.recorder;
 
 import se.eskimos.log.LogHelper;
-import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.ZonedDateTime;
 import java.time.ZoneId;
 
+import se.eskimos.admission.BandwidthGovernor;
+import se.eskimos.admission.ProviderSlots;
+import se.eskimos.admission.SlotLease;
+import se.eskimos.control.ControlClient;
+import se.eskimos.control.ControlServer;
+import se.eskimos.control.RecorderControl;
+import se.eskimos.helpers.ConfigHelper;
 import se.eskimos.helpers.StringAndFileHelper;
 import se.eskimos.helpers.UserIOHelper;
 import se.eskimos.helpers.TextHelper;
 import se.eskimos.helpers.RecorderHelper;
 import se.eskimos.m3u.M3UHolder;
-import se.eskimos.helpers.DateTimeHelper;
+import se.eskimos.metrics.Metrics;
+import se.eskimos.metrics.MetricsFiles;
+import se.eskimos.metrics.RateGauge;
+import se.eskimos.postprocess.PostProcessJob;
+import se.eskimos.postprocess.PostProcessor;
+import se.eskimos.scheduler.DeadlineScheduler;
+import se.eskimos.scheduler.RecordingWindow;
+import se.eskimos.stream.Durability;
+import se.eskimos.stream.PreRollBuffer;
+import se.eskimos.stream.RetryPolicy;
+import se.eskimos.stream.SharedStreamSource;
+import se.eskimos.stream.StreamConnector;
+import se.eskimos.stream.TeeWriter;
+import se.eskimos.stream.TsVerifier;
+import se.eskimos.storage.DiskSpaceMonitor;
+import se.eskimos.storage.LogoCache;
+import se.eskimos.storage.RecordingCatalog;
+import se.eskimos.storage.VolumePlacement;
 
 public class ScheduledRecorder {
 
+    // How long after the stop time the failsafe deadline forces the process to exit
+    private static final int FAILSAFE_GRACE_SECONDS = 60;
+    private static final long LOGO_WAIT_MS = 5_000;
+    private static final long FFMPEG_EXIT_WAIT_MS = 10_000;
+    // Verification and the other work after the stop may take this long before the process exits anyway
+    private static final long POST_STOP_LIMIT_MS = 30 * 60_000L;
+    // Set by the first thread that ends the process (stop, cancel, failsafe, errors)
+    private static final java.util.concurrent.atomic.AtomicBoolean shuttingDown = new java.util.concurrent.atomic.AtomicBoolean();
+
+    // Job registry entry of this recording (null when started without a state directory)
+    private static JobRegistry jobRegistry;
+    private static String jobId;
+    // Held provider connection slot, released when the process exits
+    private static SlotLease slotLease;
+    // Recorder of the running attempt, stopped when the recording is cancelled
+    private static volatile RecorderHelper activeHelper;
+    // Jobs of this process and their stop times, set once the arguments are parsed
+    private static RecorderControl control;
+    // Regular mode: the connection's subscribers, closed on exit so queued data is written
+    private static SharedStreamSource streamSource;
+    // Set when a bandwidth limit applies, started once by the first recording attempt
+    private static BandwidthGovernor bandwidthGovernor;
+    // Set when metrics are exported, started once by the first recording attempt
+    private static DiskSpaceMonitor diskSpaceMonitor;
+    // Where the recording is written, changed by a disk failover
+    private static volatile String outputDir;
+    // Recordings are verified after the stop on this many threads, 0 if they are not
+    private static int verifyThreads;
+    // Set when finished recordings are post-processed, with the steps they get
+    private static PostProcessor postProcessor;
+    private static String postProcessSteps;
+    private static boolean postProcessKeepSource;
+    private static String postProcessLogFile;
+    // Finished recordings are added to it, set with the job registry
+    private static RecordingCatalog catalog;
+    // Regular mode: runs the recording attempts one after the other, shut down on exit
+    private static java.util.concurrent.ExecutorService recordingExecutor;
+
     public static void main(String[] args) {
         // Set global UncaughtExceptionHandler
         Thread.setDefaultUncaughtExceptionHandler((t, e) -> {
@@ -26,13 +87,13 @@ public class ScheduledRecorder {
             }
         });
         if (args.length > 0 && ("--help".equals(args[0]) || "-h".equals(args[0]))) {
-            System.out.println("Usage: java -cp ... ScheduledRecorder <url> <outputPath> <startTime> <stopTime> <ffmpeg|regular> <logConfigPath> <tvgName> [timezone] [is24Hour] [logFile] [groupTitle] [tvgId]\n" +
+            System.out.println("Usage: java -cp ... ScheduledRecorder <url> <outputPath> <startTime> <stopTime> <ffmpeg|regular> <logConfigPath> <tvgName> [timezone] [is24Hour] [logFile] [groupTitle] [tvgId] [recRetries] [recRetriesDelay] [tvgLogo] [key=value ...]\n" +
                 "All configuration must be passed as arguments. This program does NOT read config.properties.\n" +
                 "See README.md for details.");
             return;
         }
         if (args.length < 7) {
-            System.err.println("Usage: java -cp ... ScheduledRecorder <url> <outputPath> <startTime> <stopTime> <ffmpeg|regular> <logConfigPath> <tvgName> [timezone] [is24Hour] [logFile] [groupTitle] [tvgId]");
+            System.err.println("Usage: java -cp ... ScheduledRecorder <url> <outputPath> <startTime> <stopTime> <ffmpeg|regular> <logConfigPath> <tvgName> [timezone] [is24Hour] [logFile] [groupTitle] [tvgId] [recRetries] [recRetriesDelay] [tvgLogo] [key=value ...]");
             return;
         }
         String url = args[0];
@@ -64,222 +125,524 @@ public class ScheduledRecorder {
         }
         ZoneId zone = ZoneId.of(timezone);
         LogHelper.setTimeZone(zone);
-       
-        // Wait until start time before attempting any connections
+
+        // Resolve start and stop to absolute times (stop before start means the recording crosses midnight)
         DateTimeFormatter formatter = is24Hour ? DateTimeFormatter.ofPattern("HH:mm") : DateTimeFormatter.ofPattern("hh:mm a");
+        RecordingWindow window = RecordingWindow.resolve(startTime, stopTime, formatter, zone);
+        DeadlineScheduler scheduler = DeadlineScheduler.getDefault();
+        RecorderOptions options = RecorderOptions.parse(args);
+        jobId = options.get(RecorderOptions.JOB_ID, "");
+        String stateDir = options.get(RecorderOptions.STATE_DIR, "");
+        String provider = options.get(RecorderOptions.PROVIDER, ConfigHelper.getProviderHost(url));
+        String jobLabels = Metrics.labels("job", jobId, "provider", provider, "channel", displayName);
+        // Regular recordings read through a shared source, so other jobs on this channel can use the connection
+        SharedStreamSource source = "ffmpeg".equalsIgnoreCase(mode) ? null : new SharedStreamSource();
+        streamSource = source;
+        // The stop time can be moved and jobs attached through the control API, everything that depends on it goes through control
+        control = createControl(window, formatter, mode, provider, displayName);
+        if (source != null) {
+            subscribe(source, window, zone, formatter, channelInfo, startTime, stopTime);
+        }
+        // Failsafe: exit if the recording has not stopped in an orderly way shortly after the stop time
+        control.armFailsafe(scheduler, () -> {
+            LogHelper.Log(TextHelper.SCHEDULER_FAILSAFE_TIMER_REACHED_STOP_TIME);
+            shutdownAndExit(0);
+        });
+
+        int preWarmSeconds = Math.max(0, options.getInt(RecorderOptions.PRE_WARM_SECONDS, 0));
+        // Only regular mode reads the stream itself and can keep what came before the start
+        int preRollSeconds = source != null ? Math.max(0, options.getInt(RecorderOptions.PRE_ROLL_SECONDS, 0)) : 0;
+        RetryPolicy retryPolicy = options.getRetryPolicy(RetryPolicy.fromLegacy(recRetries, recRetriesDelay));
+        int maxConnections = options.getInt(RecorderOptions.MAX_CONNECTIONS, 0);
+        outputDir = outputPath;
+        long diskReserveBytes = options.getInt(RecorderOptions.DISK_RESERVE_MB, 1024) * 1024L * 1024L;
+        verifyThreads = options.getBoolean(RecorderOptions.VERIFY, false) ? Math.max(1, options.getInt(RecorderOptions.VERIFY_THREADS, 2)) : 0;
+        if (source != null) {
+            configureSource(source, options);
+        }
+        if (!stateDir.isEmpty()) {
+            startServices(options, stateDir, mode, provider, zone, formatter, channelInfo, logFile, diskReserveBytes);
+        }
+
+        awaitConnectTime(scheduler, window, zone, startTime, Math.max(preWarmSeconds, preRollSeconds));
+        // Provider connection limit: wait for a free slot (by priority) before connecting
+        if (maxConnections > 0 && !stateDir.isEmpty()) {
+            acquireSlot(options, stateDir, provider, maxConnections, jobLabels);
+        }
+        // A hedged connection attempt needs a slot of its own, and leaves it to recordings waiting for one
+        StreamConnector.HedgeSlots hedgeSlots = maxConnections > 0 && !stateDir.isEmpty() ? () -> {
+            ProviderSlots slots = new ProviderSlots(stateDir);
+            return slots.waiting(provider) > 0 ? null : slots.tryAcquire(provider, maxConnections);
+        } : null;
+        placeRecording(stateDir, options.get(RecorderOptions.DESTINATION_PATHS, ""), diskReserveBytes);
+
+        // Regular mode keeps the connection and records from it, ffmpeg mode only resolves DNS and redirects
+        String streamUrl = url;
+        StreamConnector preparedStream = null;
+        if ("ffmpeg".equalsIgnoreCase(mode)) {
+            streamUrl = connectWithRetries(url, retryPolicy, jobLabels, () -> StreamConnector.resolve(url, RecorderHelper.CONNECT_TIMEOUT_MS));
+        } else {
+            preparedStream = connectWithRetries(url, retryPolicy, jobLabels, () -> StreamConnector.openHedged(url,
+                RecorderHelper.CONNECT_TIMEOUT_MS, RecorderHelper.READ_TIMEOUT_MS, retryPolicy.hedgeAfterMillis(), hedgeSlots));
+        }
+
+        // Connected ahead of time: keep the connection drained until capture starts at the scheduled instant
+        if (ZonedDateTime.now(zone).isBefore(window.start())) {
+            long leadMillis = java.time.Duration.between(ZonedDateTime.now(zone), window.start()).toMillis();
+            LogHelper.Log(String.format(TextHelper.PREWARM_CONNECTED_EARLY, leadMillis / 1000.0));
+            if (preparedStream != null) {
+                int preRollMaxMB = Math.min(1024, Math.max(1, options.getInt(RecorderOptions.PRE_ROLL_MAX_MB, 64)));
+                preparedStream = prewarm(preparedStream, source, window, preRollSeconds, preRollMaxMB);
+            } else {
+                try { scheduler.awaitUntil("start", window.start()); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+            }
+        }
+
+        // Every recording attempt gets a helper of its own, configured the same way
+        java.util.function.Function<String, RecorderHelper> newHelper = helperUrl -> createConfiguredHelper(
+            helperUrl, startTime, stopTime, channelInfo, logConfigPath, timezone, is24Hour, logFile, groupTitle, tvgId, recRetries, recRetriesDelay, tvgLogo, groupTitle
+        );
+        if ("ffmpeg".equalsIgnoreCase(mode)) {
+            recordFfmpeg(newHelper.apply(streamUrl), retryPolicy, scheduler, displayName, stopTime, jobLabels);
+        } else {
+            recordRegular(() -> newHelper.apply(url), preparedStream, retryPolicy, hedgeSlots, scheduler, displayName,
+                startTime, stopTime, groupTitle, jobLabels);
+        }
+    }
+
+    // Control of the process's jobs, its listener keeps the job registry up to date
+    private static RecorderControl createControl(RecordingWindow window, DateTimeFormatter formatter, String mode, String provider, String channelLabel) {
+        return new RecorderControl(jobId, window.start(), window.stop(), FAILSAFE_GRACE_SECONDS, new RecorderControl.Listener() {
+            @Override
+            public void stopMoved(String id, ZonedDateTime newStop) {
+                LogHelper.Log(String.format(TextHelper.CONTROL_STOP_MOVED, newStop.format(formatter)));
+                updateJob(id, job -> {
+                    job.setStop(newStop.format(formatter));
+                    job.setStopAt(newStop.toInstant().toEpochMilli());
+                });
+            }
+
+            @Override
+            public void attached(String id, ZonedDateTime start, ZonedDateTime stop) {
+                LogHelper.Log(String.format(TextHelper.CONTROL_JOB_ATTACHED, id, start.format(formatter), stop.format(formatter)));
+                Metrics.get().gauge("iptv_recording_bytes", Metrics.labels("job", id, "provider", provider, "channel", channelLabel), () -> streamSource.getBytes(id));
+                updateJob(id, job -> job.setOutputDir(outputDir));
+            }
+
+            @Override
+            public void jobCancelled(String id) {
+                LogHelper.Log(String.format(TextHelper.CONTROL_JOB_CANCELLED, id));
+                updateJob(id, job -> job.setStatus(RecordingJob.Status.CANCELLED));
+            }
+
+            @Override
+            public void cancelled() {
+                LogHelper.Log(TextHelper.CONTROL_CANCELLED);
+                for (String id : control.jobIds()) {
+                    updateJob(id, job -> job.setStatus(RecordingJob.Status.CANCELLED));
+                }
+                RecorderHelper helper = activeHelper;
+                if (helper != null && "ffmpeg".equalsIgnoreCase(mode)) {
+                    helper.stopRecording();
+                }
+                shutdownAndExit(0);
+            }
+
+            @Override
+            public void preempted(String reason, String byJobId) {
+                LogHelper.LogWarning(String.format(TextHelper.PREEMPT_STOPPED, reason, byJobId.isEmpty() ? "-" : byJobId));
+                Metrics.get().increment("iptv_preemptions_total", Metrics.labels("job", jobId, "provider", provider, "action", "preempt", "reason", reason));
+                for (String id : control.jobIds()) {
+                    updateJob(id, job -> {
+                        job.setStatus(RecordingJob.Status.PREEMPTED);
+                        job.setPreemptReason(reason);
+                    });
+                }
+                RecorderHelper helper = activeHelper;
+                if (helper != null && "ffmpeg".equalsIgnoreCase(mode)) {
+                    helper.stopRecording();
+                }
+                shutdownAndExit(0);
+            }
+        });
+    }
+
+    // Regular mode: this job is the source's first subscriber, jobs attached later share its connection
+    private static void subscribe(SharedStreamSource source, RecordingWindow window, ZoneId zone, DateTimeFormatter formatter,
+                                  M3UHolder channelInfo, String startTime, String stopTime) {
+        source.subscribe(jobId, window.start().toInstant().toEpochMilli(), window.stop().toInstant().toEpochMilli(),
+            () -> StringAndFileHelper.createFileNameWithSubfolder(outputDir, zone, channelInfo, startTime, stopTime));
+        source.setListener(new SharedStreamSource.Listener() {
+            @Override
+            public void started(String id, String file) {
+                updateJob(id, job -> {
+                    job.setStatus(RecordingJob.Status.RECORDING);
+                    job.setFile(file);
+                    job.addFile(file);
+                    if (job.getRecordedFrom() == 0) {
+                        job.setRecordedFrom(System.currentTimeMillis());
+                    }
+                });
+            }
+
+            @Override
+            public void finished(String id, long bytes) {
+                updateJob(id, job -> {
+                    if (job.isActive()) {
+                        job.setStatus(RecordingJob.Status.DONE);
+                    }
+                });
+            }
+        });
+        control.shareConnection(source, (start, stop) ->
+            StringAndFileHelper.createFileNameWithSubfolder(outputDir, zone, channelInfo, start.format(formatter), stop.format(formatter)));
+    }
+
+    // Mirrors, file layout and durability of the files the source writes
+    private static void configureSource(SharedStreamSource source, RecorderOptions options) {
+        // Mirrors get the file's path below outputDir, which can change until the file is opened
+        long mirrorBufferBytes = Math.min(1024, Math.max(1, options.getInt(RecorderOptions.MIRROR_BUFFER_MB, 64))) * 1024L * 1024L;
+        for (String mirrorPath : options.get(RecorderOptions.MIRROR_PATHS, "").split("\\|")) {
+            if (!mirrorPath.trim().isEmpty()) {
+                TeeWriter.Destination mirror = new TeeWriter.Destination(mirrorPath.trim(), file -> mirrorFile(mirrorPath.trim(), file), mirrorBufferBytes);
+                source.addMirror(mirror);
+                String mirrorLabels = Metrics.labels("job", jobId, "mirror", mirror.getName());
+                Metrics.get().gauge("iptv_mirror_written_bytes", mirrorLabels, mirror::getWritten);
+                Metrics.get().gauge("iptv_mirror_dropped_bytes", mirrorLabels, mirror::getDropped);
+            }
+        }
+        source.setSeekIndex(options.getBoolean(RecorderOptions.SEEK_INDEX, false));
+        source.setPreallocation(Math.min(1024, Math.max(0, options.getInt(RecorderOptions.PREALLOCATE_MB, 0))) * 1024L * 1024L);
+        source.setDurability(new Durability(Durability.Mode.parse(options.get(RecorderOptions.DURABILITY, "none")),
+            Math.max(0, options.getInt(RecorderOptions.DURABILITY_SECONDS, 10)) * 1000L,
+            Math.max(0, options.getInt(RecorderOptions.DURABILITY_MB, 64)) * 1024L * 1024L));
+        source.getWriteLatency().export(Metrics.get(), "iptv_write_latency", "job", jobId);
+        source.getForceLatency().export(Metrics.get(), "iptv_force_latency", "job", jobId);
+    }
+
+    // Everything that lives in the state directory: job registry, control API, logo cache, post-processing and monitors
+    private static void startServices(RecorderOptions options, String stateDir, String mode, String provider, ZoneId zone,
+                                      DateTimeFormatter formatter, M3UHolder channelInfo, String logFile, long diskReserveBytes) {
+        if (!jobId.isEmpty()) {
+            jobRegistry = new JobRegistry(stateDir);
+            catalog = new RecordingCatalog(stateDir);
+            updateJob(job -> {
+                job.setPid(ProcessHandle.current().pid());
+                job.setOutputDir(outputDir);
+            });
+            try {
+                ControlServer controlServer = ControlServer.start(control, zone);
+                updateJob(job -> {
+                    job.setControlPort(controlServer.getPort());
+                    job.setControlToken(controlServer.getToken());
+                });
+                LogHelper.LogDebug(String.format(TextHelper.CONTROL_STARTED, controlServer.getPort()));
+            } catch (java.io.IOException e) {
+                LogHelper.LogWarning(String.format(TextHelper.CONTROL_START_FAILED, e.getMessage()));
+            }
+        }
+        // Logos are shared by all recordings, fetched now so the start only has to link them
+        RecorderHelper.setLogoCache(new LogoCache(stateDir, options.getInt(RecorderOptions.LOGO_CACHE_HOURS, 24)));
+        String tvgLogo = channelInfo.tvgLogo();
+        if (tvgLogo.startsWith("http://") || tvgLogo.startsWith("https://")) {
+            RecorderHelper.getLogoCache().prefetch(tvgLogo);
+        }
+        postProcessSteps = options.get(RecorderOptions.POST_PROCESS_STEPS, "");
+        if (!postProcessSteps.isEmpty() && jobRegistry != null) {
+            postProcessor = new PostProcessor(stateDir, options.getInt(RecorderOptions.POST_PROCESS_PARALLEL, 1),
+                options.getBoolean(RecorderOptions.POST_PROCESS_LOW_PRIORITY, true));
+            postProcessKeepSource = options.getBoolean(RecorderOptions.POST_PROCESS_KEEP_SOURCE, true);
+            postProcessLogFile = logFile;
+        }
+        int metricsInterval = options.getInt(RecorderOptions.METRICS_INTERVAL_SECONDS, 0);
+        if (metricsInterval > 0) {
+            MetricsFiles.startExport(stateDir, metricsInterval);
+            // The limit is checked against the other recorders' metrics files
+            int maxBandwidthMbps = options.getInt(RecorderOptions.MAX_BANDWIDTH_MBPS, 0);
+            if (maxBandwidthMbps > 0 && jobRegistry != null) {
+                bandwidthGovernor = new BandwidthGovernor(stateDir, jobId, maxBandwidthMbps, metricsInterval,
+                    bandwidthActions(options.get(RecorderOptions.FALLBACK_URL, ""), "ffmpeg".equalsIgnoreCase(mode), provider));
+            }
+            // Projects the space the recordings need from the bitrates in the metrics files
+            if (jobRegistry != null) {
+                DiskSpaceMonitor.Policy diskPolicy = DiskSpaceMonitor.Policy.parse(options.get(RecorderOptions.DISK_POLICY, "alert"));
+                diskSpaceMonitor = new DiskSpaceMonitor(stateDir, jobId, () -> outputDir, diskPolicy, diskReserveBytes, metricsInterval,
+                    diskActions(options.get(RecorderOptions.DISK_FAILOVER_PATH, ""), zone, channelInfo, formatter));
+            }
+        }
+    }
+
+    // Waits until the lead time before the start time (pre-warm or pre-roll) before attempting any connections
+    private static void awaitConnectTime(DeadlineScheduler scheduler, RecordingWindow window, ZoneId zone, String startTime, int leadSeconds) {
         ZonedDateTime now = ZonedDateTime.now(zone);
-        LocalTime startLocal = DateTimeHelper.parseFlexibleLocalTime(startTime, formatter);
-        ZonedDateTime start = now.withHour(startLocal.getHour()).withMinute(startLocal.getMinute()).withSecond(0).withNano(0);
-        if (start.isBefore(now)) {
+        ZonedDateTime connectAt = window.start().minusSeconds(leadSeconds);
+        if (window.isRunning(now)) {
             LogHelper.LogWarning(String.format(TextHelper.SCHEDULER_START_TIME_PASSED, startTime));
-        } else {
-            long millisToWait = java.time.Duration.between(now, start).toMillis();
+        } else if (now.isBefore(connectAt)) {
+            long millisToWait = java.time.Duration.between(now, window.start()).toMillis();
             LogHelper.Log(String.format(TextHelper.SCHEDULER_WAITING_UNTIL_START, (millisToWait/1000), startTime));
-            try { Thread.sleep(millisToWait); } catch (InterruptedException ie) { /* ignore */ }
+            try { scheduler.awaitUntil("pre-warm", connectAt); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+        }
+    }
+
+    // Waits in the provider's queue for a connection slot, the process exits if none is free before the stop time
+    private static void acquireSlot(RecorderOptions options, String stateDir, String provider, int maxConnections, String jobLabels) {
+        int priority = options.getInt(RecorderOptions.PRIORITY, 0);
+        int preemptAfterSeconds = options.getInt(RecorderOptions.PREEMPT_AFTER_SECONDS, 0);
+        long waitStart = System.currentTimeMillis();
+        try {
+            // A lower priority recording holding a slot is asked to give it up after a while
+            ProviderSlots.Preemptor preemptor = preemptAfterSeconds > 0 && jobRegistry != null
+                ? holder -> requestPreemption(holder, provider, priority, preemptAfterSeconds) : null;
+            slotLease = new ProviderSlots(stateDir).acquire(provider, maxConnections, priority, jobId,
+                control.getStop().toInstant().toEpochMilli(), preemptor, preemptAfterSeconds * 1000L);
+            if (slotLease == null) {
+                LogHelper.LogError(String.format(TextHelper.ADMISSION_NO_SLOT, provider));
+                shutdownAndExit(1);
+            }
+            long waited = System.currentTimeMillis() - waitStart;
+            LogHelper.Log(String.format(TextHelper.ADMISSION_SLOT_ACQUIRED, slotLease.getSlot() + 1, maxConnections, provider, waited));
+            Metrics.get().setGauge("iptv_provider_slot_wait_ms", jobLabels, waited);
+        } catch (java.io.IOException e) {
+            // Recording without a slot is better than not recording at all
+            LogHelper.LogWarning(String.format(TextHelper.ADMISSION_SLOTS_UNAVAILABLE, provider, e.getMessage()));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Several destination volumes: the recording goes to the roomiest and least loaded one at its start
+    private static void placeRecording(String stateDir, String destinationPaths, long diskReserveBytes) {
+        if (destinationPaths.isEmpty()) {
+            return;
         }
-       
-        // Startup connection retry mechanism: uses configurable recRetries and recRetriesDelay
-        boolean connectionEstablished = false;
-        
-        for (int attempt = 1; attempt <= recRetries; attempt++) {
+        java.util.List<String> paths = java.util.Arrays.stream(destinationPaths.split("\\|")).map(String::trim).filter(p -> !p.isEmpty()).toList();
+        if (paths.isEmpty()) {
+            return;
+        }
+        String chosen = VolumePlacement.choose(stateDir, paths, diskReserveBytes);
+        outputDir = chosen;
+        LogHelper.Log(String.format(TextHelper.DISK_PLACED, chosen, paths.size()));
+        for (String id : control.jobIds()) {
+            updateJob(id, job -> job.setOutputDir(chosen));
+        }
+    }
+
+    /**
+     * Startup connection retry mechanism: backoff with jitter within the retry policy's attempts and budget.
+     * The process exits when no attempt succeeds.
+     * @param connect One connection attempt
+     * @return The result of the successful attempt
+     */
+    private static <T> T connectWithRetries(String url, RetryPolicy retryPolicy, String jobLabels, java.util.concurrent.Callable<T> connect) {
+        RetryPolicy.Backoff connectBackoff = retryPolicy.start();
+        while (true) {
+            int attempt = connectBackoff.getAttempt();
             try {
-                LogHelper.Log(String.format("[STARTUP] Connection attempt %d/%d to URL: %s", attempt, recRetries, url));
-                java.net.URL urlObj = java.net.URI.create(url).toURL();
-                java.net.URLConnection conn = urlObj.openConnection();
-                conn.setConnectTimeout(10000); // 10 second timeout
-                conn.setReadTimeout(10000); // 10 second timeout
-                conn.connect();
-                conn.getInputStream().close(); // Test the connection and close immediately
-                LogHelper.Log(String.format("[STARTUP] Connection successful on attempt %d/%d", attempt, recRetries));
-                connectionEstablished = true;
-                break;
+                LogHelper.Log(String.format("[STARTUP] Connection attempt %d to URL: %s", attempt, url));
+                T connection = connect.call();
+                LogHelper.Log(String.format("[STARTUP] Connection successful on attempt %d", attempt));
+                return connection;
             } catch (Exception e) {
-                if (attempt < recRetries) {
-                    LogHelper.LogWarning(String.format("[STARTUP] Connection attempt %d/%d failed: %s. Retrying in %d seconds...", attempt, recRetries, e.getMessage(), recRetriesDelay));
+                Metrics.get().increment("iptv_connect_failures_total", jobLabels);
+                long delay = connectBackoff.nextDelayMillis();
+                if (delay >= 0) {
+                    LogHelper.LogWarning(String.format("[STARTUP] Connection attempt %d failed: %s. Retrying in %d ms...", attempt, e.getMessage(), delay));
                     try {
-                        Thread.sleep(recRetriesDelay * 1000);
+                        Thread.sleep(delay);
                     } catch (InterruptedException ie) {
                         LogHelper.LogError("[STARTUP] Retry delay interrupted: " + ie.getMessage());
                         Thread.currentThread().interrupt();
-                        break;
+                        LogHelper.LogError("[STARTUP] Failed to establish connection after all retry attempts.");
+                        shutdownAndExit(1);
                     }
                 } else {
-                    LogHelper.LogError(String.format("[STARTUP] All %d connection attempts failed. Last error: %s", recRetries, e.getMessage()));
+                    LogHelper.LogError(String.format("[STARTUP] All %d connection attempts failed. Last error: %s", attempt, e.getMessage()));
                     LogHelper.LogError("[STARTUP] Unable to establish connection, exiting.");
                     shutdownAndExit(1);
                 }
             }
         }
-        
-        if (!connectionEstablished) {
-            LogHelper.LogError("[STARTUP] Failed to establish connection after all retry attempts.");
-            shutdownAndExit(1);
-        }
-       
-        RecorderHelper helper = null;
-        LocalTime stop = DateTimeHelper.parseFlexibleLocalTime(stopTime, formatter);
-       
-        if ("ffmpeg".equalsIgnoreCase(mode)) {
-            helper = new RecorderHelper(new UserIOHelper(new java.util.Scanner(System.in), System.out));
-            helper.setUrl(url);
-            helper.setTimeFrom(startTime);
-            helper.setTimeTo(stopTime);
-            helper.setChannelInfo(channelInfo);
-            helper.setLogConfigPath(logConfigPath);
-            helper.setTimezone(timezone);
-            helper.setIs24Hour(is24Hour);
-            helper.setLogFile(logFile);
-            helper.setGroupTitle(groupTitle);
-            helper.setTvgId(tvgId);
-            helper.setRecRetries(recRetries);
-            helper.setRecRetriesDelay(recRetriesDelay / 1000); // save in seconds
-            helper.setTvgLogo(tvgLogo);
-            helper.setTvgName(groupTitle);
-            int retryCount = 0;
-            boolean started = false;
-            while (retryCount < recRetries && !started) {
+    }
+
+    /**
+     * Keeps the pre-warmed connection drained until the start time, or buffers the pre-roll from it.
+     * @return The connection, or null if it was lost and the recorder has to open a fresh one
+     */
+    private static StreamConnector prewarm(StreamConnector preparedStream, SharedStreamSource source, RecordingWindow window,
+                                           int preRollSeconds, int preRollMaxMB) {
+        try {
+            if (preRollSeconds > 0) {
+                // Keeps the last minutes before the start, written first when recording starts
+                PreRollBuffer preRoll = new PreRollBuffer(preRollMaxMB * 1024 * 1024, preRollSeconds * 1000L);
+                boolean startedEarly;
+                control.preRolling(true);
                 try {
-                    LogHelper.Log(String.format(TextHelper.SCHEDULER_ATTEMPTING_START, (retryCount+1), recRetries, displayName));
-                    helper.startRecFFMPEG(outputPath); // If getLogo is called, pass displayName as channelName
-                    started = true;
-                } catch (Exception e) {
-                    retryCount++;
-                    started = false;
-                    if (retryCount < recRetries) {
-                        LogHelper.LogWarning(String.format(TextHelper.SCHEDULER_FAILED_START_FFMPEG, retryCount, recRetries, displayName, recRetriesDelay, LogHelper.printStackTrace(e)));
-                        try { Thread.sleep(recRetriesDelay * 1000); } catch (Exception t) { LogHelper.LogError(TextHelper.SCHEDULER_ERROR_WAITING_BETWEEN_ATTEMPTS + LogHelper.printStackTrace(t)); }
-                    } else {
-                        LogHelper.LogError(String.format(TextHelper.SCHEDULER_COULD_NOT_START_FFMPEG, recRetries, displayName, LogHelper.printStackTrace(e)));
-                        LogHelper.LogError(TextHelper.SCHEDULER_PROCESS_EXITING);
-                        shutdownAndExit(1);
-                    }
+                    startedEarly = preparedStream.bufferUntil(window.start().toInstant().toEpochMilli(), preRoll, control::isStartRequested);
+                } finally {
+                    control.preRolling(false);
                 }
+                long nowMillis = System.currentTimeMillis();
+                if (startedEarly) {
+                    source.setStart(jobId, nowMillis);
+                    LogHelper.Log(TextHelper.PREROLL_START_REQUESTED);
+                }
+                LogHelper.Log(String.format(TextHelper.PREROLL_BUFFERED, preRoll.bufferedMillis(nowMillis) / 1000, preRoll.size() / (1024.0 * 1024.0)));
+            } else {
+                long discarded = preparedStream.discardUntil(window.start().toInstant().toEpochMilli());
+                LogHelper.LogDebug(String.format(TextHelper.PREWARM_DISCARDED, discarded));
             }
-            if (started) {
-                try {
-                    LogHelper.Log(String.format(TextHelper.SCHEDULER_RECORDING_IN_PROGRESS, stopTime));
-                    while (true) {
-                        LocalTime nowTime = LocalTime.now(zone);
-                        long secondsLeft = java.time.Duration.between(nowTime, stop).getSeconds();
-                        if (secondsLeft <= 0) break;
-                        Thread.sleep(1000);
+            return preparedStream;
+        } catch (java.io.IOException e) {
+            // The recorder opens a fresh connection instead
+            LogHelper.LogWarning(String.format(TextHelper.PREWARM_CONNECTION_LOST, e.getMessage()));
+            preparedStream.close();
+            return null;
+        }
+    }
+
+    // ffmpeg mode: starts ffmpeg with retries and stops it at the stop time
+    private static void recordFfmpeg(RecorderHelper helper, RetryPolicy retryPolicy, DeadlineScheduler scheduler, String displayName,
+                                     String stopTime, String jobLabels) {
+        RetryPolicy.Backoff startBackoff = retryPolicy.start();
+        boolean started = false;
+        while (!started) {
+            int attempt = startBackoff.getAttempt();
+            try {
+                LogHelper.Log(String.format(TextHelper.SCHEDULER_ATTEMPTING_START, attempt, displayName));
+                helper.startRecFFMPEG(outputDir); // If getLogo is called, pass displayName as channelName
+                started = true;
+                activeHelper = helper;
+                control.recording(helper);
+                updateJob(job -> {
+                    job.setStatus(RecordingJob.Status.RECORDING);
+                    job.addFile(helper.getOutputFile());
+                    if (job.getRecordedFrom() == 0) {
+                        job.setRecordedFrom(System.currentTimeMillis());
                     }
-                    LogHelper.Log(TextHelper.SCHEDULER_STOP_TIME_REACHED);
-                    helper.stopRecording();
-                    // Wait for executor to finish
-                    shutdownAndExit(0);
-                } catch (Exception e) {
-                    LogHelper.LogError(TextHelper.SCHEDULER_ERROR_DURING_STOP + LogHelper.printStackTrace(e));
+                });
+                Metrics.get().setGauge("iptv_recording_active", jobLabels, 1);
+                Metrics.get().gauge(BandwidthGovernor.BITRATE_METRIC, jobLabels, new RateGauge(() -> helper.getBytesRecorded() * 8));
+                startMonitors();
+            } catch (Exception e) {
+                long delay = startBackoff.nextDelayMillis();
+                if (delay >= 0) {
+                    LogHelper.LogWarning(String.format(TextHelper.SCHEDULER_FAILED_START_FFMPEG, attempt, displayName, delay, LogHelper.printStackTrace(e)));
+                    try { Thread.sleep(delay); } catch (Exception t) { LogHelper.LogError(TextHelper.SCHEDULER_ERROR_WAITING_BETWEEN_ATTEMPTS + LogHelper.printStackTrace(t)); }
+                } else {
+                    LogHelper.LogError(String.format(TextHelper.SCHEDULER_COULD_NOT_START_FFMPEG, attempt, displayName, LogHelper.printStackTrace(e)));
                     LogHelper.LogError(TextHelper.SCHEDULER_PROCESS_EXITING);
                     shutdownAndExit(1);
                 }
-            } else {
-                LogHelper.LogError(TextHelper.SCHEDULER_RECORDING_COULD_NOT_BE_STARTED);
-                LogHelper.LogError(TextHelper.SCHEDULER_PROCESS_EXITING);
-                shutdownAndExit(1);
             }
-        } else {
-            // Regular-mode
-            int retryCount = 0;
-            boolean started = false;
-            String sanitizedChannel = null;
-            while (retryCount < recRetries && !started) {
-                try {
-                    RecorderHelper helperReg = createConfiguredHelperReg(
-                        url, startTime, stopTime, channelInfo, logConfigPath, timezone, is24Hour, logFile, groupTitle, tvgId, recRetries, recRetriesDelay, tvgLogo, groupTitle
-                    );
-                    sanitizedChannel = StringAndFileHelper.sanitizeForFileName(groupTitle);
-                    // Determine display name for channel (prefer tvgName, fallback to name)
-                    displayName = (channelInfo.tvgName() != null && !channelInfo.tvgName().isEmpty()) ? channelInfo.tvgName() : channelInfo.name();
-                    java.util.concurrent.Future<?> recFuture = java.util.concurrent.Executors.newSingleThreadExecutor().submit(() -> {
-                        try {
-                            helperReg.startRecRegular(outputPath); // If getLogo is called, pass displayName as channelName
-                        } catch (Exception e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
-                    started = true;
-                    LogHelper.Log(String.format(TextHelper.SCHEDULER_RECORDING_STARTED, displayName, startTime, stopTime));
-                    // Wait for the recording to finish or fail
-                    while (true) {
-                        LocalTime nowTime = LocalTime.now(zone);
-                        long secondsLeft = java.time.Duration.between(nowTime, stop).getSeconds();
-                        if (secondsLeft <= 0) break;
-                        if (recFuture.isDone()) break;
-                        try { Thread.sleep(1000); } catch (InterruptedException ie) { break; }
+        }
+        try {
+            LogHelper.Log(String.format(TextHelper.SCHEDULER_RECORDING_IN_PROGRESS, stopTime));
+            control.armStop(scheduler, null).await();
+            LogHelper.Log(TextHelper.SCHEDULER_STOP_TIME_REACHED);
+            helper.stopRecording();
+            // Wait for executor to finish
+            shutdownAndExit(0);
+        } catch (Exception e) {
+            LogHelper.LogError(TextHelper.SCHEDULER_ERROR_DURING_STOP + LogHelper.printStackTrace(e));
+            LogHelper.LogError(TextHelper.SCHEDULER_PROCESS_EXITING);
+            shutdownAndExit(1);
+        }
+    }
+
+    // Regular mode: each attempt records on the recording thread until the stop time, failed attempts are retried
+    private static void recordRegular(java.util.function.Supplier<RecorderHelper> newHelper, StreamConnector preparedStream,
+                                      RetryPolicy retryPolicy, StreamConnector.HedgeSlots hedgeSlots, DeadlineScheduler scheduler,
+                                      String displayName, String startTime, String stopTime, String groupTitle, String jobLabels) {
+        SharedStreamSource source = streamSource;
+        recordingExecutor = java.util.concurrent.Executors.newSingleThreadExecutor(r -> new Thread(r, "recording"));
+        RetryPolicy.Backoff startBackoff = retryPolicy.start();
+        String sanitizedChannel = null;
+        while (true) {
+            int attempt = startBackoff.getAttempt();
+            try {
+                RecorderHelper helperReg = newHelper.get();
+                helperReg.setRetryPolicy(retryPolicy);
+                helperReg.setHedgeSlots(hedgeSlots);
+                // Only the first attempt can use the pre-warmed connection
+                helperReg.setPreparedStream(preparedStream);
+                preparedStream = null;
+                // The source follows later moves of the stop times and attached jobs
+                helperReg.setStreamSource(source);
+                control.recording(helperReg);
+                activeHelper = helperReg;
+                sanitizedChannel = StringAndFileHelper.sanitizeForFileName(groupTitle);
+                java.util.concurrent.Future<?> recFuture = recordingExecutor.submit(() -> {
+                    try {
+                        helperReg.startRecRegular(outputDir); // If getLogo is called, pass displayName as channelName
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
                     }
+                });
+                LogHelper.Log(String.format(TextHelper.SCHEDULER_RECORDING_STARTED, displayName, startTime, stopTime));
+                Metrics.get().setGauge("iptv_recording_active", jobLabels, 1);
+                Metrics.get().gauge("iptv_recording_bytes", jobLabels, () -> source.getBytes(jobId));
+                Metrics.get().gauge(BandwidthGovernor.BITRATE_METRIC, jobLabels, new RateGauge(() -> source.getBytesRead() * 8));
+                startMonitors();
+                // Cancel the recording at stop time if it has not ended by itself
+                DeadlineScheduler.Deadline stopDeadline = control.armStop(scheduler, () -> {
                     if (!recFuture.isDone()) {
                         LogHelper.Log(TextHelper.SCHEDULER_STOP_TIME_REACHED_ATTEMPTING_CANCEL);
                         recFuture.cancel(true);
                         LogHelper.Log(TextHelper.SCHEDULER_REGULAR_RECORDING_CANCELLED);
-                    } else {
-                        // Check if the recording thread threw an exception
-                        try {
-                            recFuture.get();
-                        } catch (Exception e) {
-                            throw e.getCause() != null ? new Exception(e.getCause()) : e;
-                        }
-                    }
-                    shutdownAndExit(0);
-                } catch (Exception e) {
-                    retryCount++;
-                    started = false;
-                    if (retryCount < recRetries) {
-                        LogHelper.LogWarning(String.format(TextHelper.SCHEDULER_FAILED_START_REGULAR, retryCount, recRetries, displayName, recRetriesDelay, LogHelper.printStackTrace(e)));
-                        try { Thread.sleep(recRetriesDelay * 1000); } catch (Exception t) { LogHelper.LogError(TextHelper.SCHEDULER_ERROR_WAITING_BETWEEN_ATTEMPTS + LogHelper.printStackTrace(t)); }
-                    } else {
-                        LogHelper.LogError(String.format(TextHelper.SCHEDULER_COULD_NOT_START_REGULAR, recRetries, displayName, LogHelper.printStackTrace(e)));
-                        // Try to delete the created folder if empty
-                        try {
-                            String channelNameToDelete = sanitizedChannel != null ? sanitizedChannel : groupTitle;
-                            java.io.File channelDir = new java.io.File(outputPath, channelNameToDelete);
-                            if (channelDir.exists() && channelDir.isDirectory() && channelDir.list().length == 0) {
-                                if (channelDir.delete()) {
-                                    LogHelper.Log(String.format(TextHelper.SCHEDULER_DELETED_EMPTY_RECORDING_FOLDER, channelDir.getAbsolutePath()));
-                                } else {
-                                    LogHelper.LogWarning(String.format(TextHelper.SCHEDULER_COULD_NOT_DELETE_EMPTY_RECORDING_FOLDER, channelDir.getAbsolutePath()));
-                                }
-                            }
-                        } catch (Exception delEx) {
-                            LogHelper.LogWarning(TextHelper.SCHEDULER_EXCEPTION_DELETING_EMPTY_RECORDING_FOLDER + LogHelper.printStackTrace(delEx));
-                        }
-                        LogHelper.Log(TextHelper.SCHEDULER_PROCESS_ENDED_NO_RECORDING);
-                        LogHelper.LogError(TextHelper.SCHEDULER_PROCESS_EXITING);
-                        shutdownAndExit(1);
                     }
+                });
+                // Wait for the recording to finish or fail
+                try {
+                    recFuture.get();
+                } catch (java.util.concurrent.CancellationException ce) {
+                    // Cancelled at stop time
+                } catch (java.util.concurrent.ExecutionException e) {
+                    // The recording thread threw an exception
+                    throw e.getCause() != null ? new Exception(e.getCause()) : e;
+                } finally {
+                    stopDeadline.cancel();
+                }
+                shutdownAndExit(0);
+            } catch (Exception e) {
+                if (shuttingDown.get()) {
+                    // Interrupted by the exit in progress, not a failed attempt
+                    return;
+                }
+                Metrics.get().increment("iptv_recording_restarts_total", jobLabels);
+                long delay = startBackoff.nextDelayMillis();
+                if (delay >= 0) {
+                    LogHelper.LogWarning(String.format(TextHelper.SCHEDULER_FAILED_START_REGULAR, attempt, displayName, delay, LogHelper.printStackTrace(e)));
+                    try { Thread.sleep(delay); } catch (Exception t) { LogHelper.LogError(TextHelper.SCHEDULER_ERROR_WAITING_BETWEEN_ATTEMPTS + LogHelper.printStackTrace(t)); }
+                } else {
+                    LogHelper.LogError(String.format(TextHelper.SCHEDULER_COULD_NOT_START_REGULAR, attempt, displayName, LogHelper.printStackTrace(e)));
+                    deleteEmptyChannelFolder(sanitizedChannel != null ? sanitizedChannel : groupTitle);
+                    LogHelper.Log(TextHelper.SCHEDULER_PROCESS_ENDED_NO_RECORDING);
+                    LogHelper.LogError(TextHelper.SCHEDULER_PROCESS_EXITING);
+                    shutdownAndExit(1);
                 }
             }
         }
-        // Start a failsafe timer thread to exit at stop time
-        Thread stopTimer = new Thread(() -> {
-            try {
-                // Use already declared formatter and stop
-                LocalTime stopLocal = DateTimeHelper.parseFlexibleLocalTime(stopTime, formatter);
-                ZonedDateTime stopDateTime = ZonedDateTime.now(zone);
-                if (stopDateTime.isBefore(stopDateTime.withHour(stopLocal.getHour()).withMinute(stopLocal.getMinute()).withSecond(0).withNano(0))) {
-                    stopDateTime = stopDateTime.plusDays(1);
-                }
-                while (true) {
-                    ZonedDateTime current = ZonedDateTime.now(zone);
-                    
-                    if (!current.isBefore(stopDateTime)) {
-                        LogHelper.Log(TextHelper.SCHEDULER_FAILSAFE_TIMER_REACHED_STOP_TIME);
-                        shutdownAndExit(0);
-                    }
-                    Thread.sleep(1000);
+    }
+
+    // Removes the channel folder a failed recording created, if nothing was written to it
+    private static void deleteEmptyChannelFolder(String channelName) {
+        try {
+            java.io.File channelDir = new java.io.File(outputDir, channelName);
+            if (channelDir.exists() && channelDir.isDirectory() && channelDir.list().length == 0) {
+                if (channelDir.delete()) {
+                    LogHelper.Log(String.format(TextHelper.SCHEDULER_DELETED_EMPTY_RECORDING_FOLDER, channelDir.getAbsolutePath()));
+                } else {
+                    LogHelper.LogWarning(String.format(TextHelper.SCHEDULER_COULD_NOT_DELETE_EMPTY_RECORDING_FOLDER, channelDir.getAbsolutePath()));
                 }
-            } catch (Exception e) {
-                LogHelper.LogError(TextHelper.SCHEDULER_FAILSAFE_TIMER_ERROR + LogHelper.printStackTrace(e));
-                LogHelper.LogError(TextHelper.SCHEDULER_FAILSAFE_TIMER_EXITING);
-                shutdownAndExit(1);
             }
-        });
-        stopTimer.setDaemon(true);
-        stopTimer.start();
+        } catch (Exception delEx) {
+            LogHelper.LogWarning(TextHelper.SCHEDULER_EXCEPTION_DELETING_EMPTY_RECORDING_FOLDER + LogHelper.printStackTrace(delEx));
+        }
     }
 
-    // Create and configure RecorderHelper for REGULAR-mode
-    private static RecorderHelper createConfiguredHelperReg(String url, String startTime, String stopTime, M3UHolder channelInfo, String logConfigPath, String timezone, boolean is24Hour, String logFile, String groupTitle, String tvgId, int recRetries, int recRetriesDelay, String tvgLogo, String tvgName) {
+    // Create and configure RecorderHelper for a recording attempt
+    private static RecorderHelper createConfiguredHelper(String url, String startTime, String stopTime, M3UHolder channelInfo, String logConfigPath, String timezone, boolean is24Hour, String logFile, String groupTitle, String tvgId, int recRetries, int recRetriesDelay, String tvgLogo, String tvgName) {
         RecorderHelper helperReg = new RecorderHelper(new UserIOHelper(new java.util.Scanner(System.in), System.out));
         helperReg.setUrl(url);
         helperReg.setTimeFrom(startTime);
@@ -298,8 +661,190 @@ public class ScheduledRecorder {
         return helperReg;
     }
 
+    // Asks the holder of a provider slot through its control API to end its recording
+    private static boolean requestPreemption(ProviderSlots.Holder holder, String provider, int priority, int waitedSeconds) {
+        RecordingJob victim = jobRegistry.load(holder.jobId());
+        if (victim == null || victim.getControlPort() <= 0) {
+            LogHelper.LogWarning(String.format(TextHelper.PREEMPT_REQUEST_FAILED, holder.jobId(), "no control API"));
+            return false;
+        }
+        LogHelper.LogWarning(String.format(TextHelper.PREEMPT_REQUESTED, provider, waitedSeconds, holder.jobId(), holder.priority(), priority));
+        try {
+            new ControlClient(victim.getControlPort(), victim.getControlToken()).preempt("slots", jobId);
+            Metrics.get().increment("iptv_preemptions_total", Metrics.labels("job", holder.jobId(), "provider", provider, "action", "preempt", "reason", "slots"));
+            return true;
+        } catch (java.io.IOException e) {
+            LogHelper.LogWarning(String.format(TextHelper.PREEMPT_REQUEST_FAILED, holder.jobId(), e.getMessage()));
+            return false;
+        }
+    }
+
+    // Under bandwidth pressure a regular recording first switches to the lower quality stream, once
+    private static BandwidthGovernor.Actions bandwidthActions(String fallbackUrl, boolean ffmpegMode, String provider) {
+        return new BandwidthGovernor.Actions() {
+            private boolean downgraded;
+
+            @Override
+            public boolean downgrade() {
+                RecorderHelper helper = activeHelper;
+                if (downgraded || ffmpegMode || fallbackUrl.isEmpty() || helper == null) {
+                    return false;
+                }
+                downgraded = true;
+                LogHelper.LogWarning(String.format(TextHelper.PREEMPT_DOWNGRADED, fallbackUrl));
+                Metrics.get().increment("iptv_preemptions_total", Metrics.labels("job", jobId, "provider", provider, "action", "downgrade", "reason", "bandwidth"));
+                updateJob(job -> job.setDowngradedTo(fallbackUrl));
+                helper.switchUrl(fallbackUrl);
+                return true;
+            }
+
+            @Override
+            public void preempt() {
+                try {
+                    control.preempt("bandwidth", "");
+                } catch (IllegalStateException e) {
+                    // Already ending
+                }
+            }
+        };
+    }
+
+    // The mirror of a file keeps its place below the output directory
+    private static String mirrorFile(String mirrorPath, String file) {
+        java.nio.file.Path path = java.nio.file.Path.of(file).toAbsolutePath().normalize();
+        java.nio.file.Path root = java.nio.file.Path.of(outputDir).toAbsolutePath().normalize();
+        java.nio.file.Path relative = path.startsWith(root) ? root.relativize(path) : path.getFileName();
+        return java.nio.file.Path.of(mirrorPath).resolve(relative).toString();
+    }
+
+    // Under disk pressure a regular recording can continue its files on the failover volume, otherwise it stops
+    private static DiskSpaceMonitor.Actions diskActions(String failoverPath, ZoneId zone, M3UHolder channelInfo, DateTimeFormatter formatter) {
+        return new DiskSpaceMonitor.Actions() {
+            @Override
+            public boolean failover() {
+                // Moved once, a second move would overwrite the files on the failover volume
+                if (failoverPath.isEmpty() || failoverPath.equals(outputDir)) {
+                    return false;
+                }
+                try {
+                    control.relocate((start, stop) ->
+                        StringAndFileHelper.createFileNameWithSubfolder(failoverPath, zone, channelInfo, start.format(formatter), stop.format(formatter)));
+                } catch (IllegalStateException e) {
+                    return false;
+                }
+                outputDir = failoverPath;
+                LogHelper.LogWarning(String.format(TextHelper.DISK_FAILOVER, failoverPath));
+                Metrics.get().increment("iptv_disk_actions_total", Metrics.labels("job", jobId, "action", "failover"));
+                for (String id : control.jobIds()) {
+                    updateJob(id, job -> job.setOutputDir(failoverPath));
+                }
+                return true;
+            }
+
+            @Override
+            public void stop() {
+                LogHelper.LogWarning(TextHelper.DISK_STOPPING);
+                try {
+                    control.preempt("disk", "");
+                } catch (IllegalStateException e) {
+                    // Already ending
+                }
+            }
+        };
+    }
+
+    private static synchronized void startMonitors() {
+        if (bandwidthGovernor != null) {
+            bandwidthGovernor.start();
+            bandwidthGovernor = null;
+        }
+        if (diskSpaceMonitor != null) {
+            diskSpaceMonitor.start();
+            diskSpaceMonitor = null;
+        }
+    }
+
+    // Updates this recording's registry entry, failures are only logged
+    private static void updateJob(java.util.function.Consumer<RecordingJob> change) {
+        updateJob(jobId, change);
+    }
+
+    // Updates the registry entry of a job recorded by this process (it may be attached)
+    private static synchronized void updateJob(String id, java.util.function.Consumer<RecordingJob> change) {
+        if (jobRegistry == null || id.isEmpty()) {
+            return;
+        }
+        try {
+            RecordingJob job = jobRegistry.load(id);
+            if (job != null) {
+                change.accept(job);
+                jobRegistry.save(job);
+            }
+        } catch (Exception e) {
+            LogHelper.LogWarning(String.format(TextHelper.JOB_REGISTRY_WRITE_FAILED, id, e.getMessage()));
+        }
+    }
+
     // Utility method to shutdown executor and exit process
     private static void shutdownAndExit(int exitCode) {
+        if (!shuttingDown.compareAndSet(false, true)) {
+            // Another thread is already ending the process, this one waits for the exit
+            while (true) {
+                try {
+                    Thread.sleep(Long.MAX_VALUE);
+                } catch (InterruptedException e) {
+                    // Keep waiting, the exit ends the thread
+                }
+            }
+        }
+        // The failsafe would end the process in the middle of the work below, a fixed limit replaces it
+        if (control != null) {
+            control.cancelFailsafe();
+        }
+        Thread limit = new Thread(() -> {
+            try {
+                Thread.sleep(POST_STOP_LIMIT_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            LogHelper.LogError(String.format(TextHelper.SCHEDULER_POST_STOP_LIMIT, POST_STOP_LIMIT_MS / 60_000));
+            System.exit(exitCode);
+        }, "post-stop-limit");
+        limit.setDaemon(true);
+        limit.start();
+        // Stops reading the stream before the source writes out what it has queued
+        if (recordingExecutor != null) {
+            recordingExecutor.shutdownNow();
+        }
+        if (streamSource != null) {
+            streamSource.close();
+            if (streamSource.getWriteLatency().getCount() > 0) {
+                LogHelper.Log(String.format(TextHelper.DURABILITY_LATENCY, streamSource.getWriteLatency().summary(),
+                    streamSource.getForceLatency().summary()));
+            }
+        }
+        for (String id : control != null ? control.jobIds() : java.util.List.of(jobId)) {
+            updateJob(id, job -> {
+                if (job.isActive()) {
+                    job.setStatus(exitCode == 0 ? RecordingJob.Status.DONE : RecordingJob.Status.FAILED);
+                    job.setRecordedTo(System.currentTimeMillis());
+                }
+            });
+        }
+        if (slotLease != null) {
+            slotLease.close();
+        }
+        if (exitCode == 0 && verifyThreads > 0) {
+            verifyRecordings();
+        }
+        if (catalog != null) {
+            catalogRecordings();
+        }
+        if (exitCode == 0 && postProcessor != null) {
+            queuePostProcessing();
+        }
+        // A logo still on its way is given a moment, it is not worth holding up the exit for
+        RecorderHelper.getLogoCache().shutdown(LOGO_WAIT_MS);
         try {
             java.util.concurrent.ExecutorService exec = RecorderHelper.getExecutor();
             exec.shutdown();
@@ -313,6 +858,113 @@ public class ScheduledRecorder {
         System.exit(exitCode);
     }
 
+    // Scans the closed files of the process's jobs and marks the outcome in the job registry. The parts of a
+    // recording that moved to another volume are scanned one by one, their durations cover the window together.
+    private static void verifyRecordings() {
+        // Only regular mode recordings are verified
+        if (jobRegistry == null || control == null || streamSource == null) {
+            return;
+        }
+        java.util.Map<java.nio.file.Path, String> files = new java.util.LinkedHashMap<>();
+        java.util.Map<java.nio.file.Path, Long> expected = new java.util.HashMap<>();
+        java.util.Map<String, Integer> parts = new java.util.HashMap<>();
+        java.util.Map<String, Long> windows = new java.util.HashMap<>();
+        for (String id : control.jobIds()) {
+            RecordingJob job = jobRegistry.load(id);
+            if (job == null) {
+                continue;
+            }
+            java.util.List<java.nio.file.Path> jobFiles = job.getFiles().stream()
+                .filter(f -> new java.io.File(f).isFile()).map(java.nio.file.Path::of).toList();
+            long window = Math.max(0, job.getStopAt() - job.getStartAt());
+            for (java.nio.file.Path file : jobFiles) {
+                files.put(file, id);
+                // A part is only a piece of the window, it is not compared with it on its own
+                expected.put(file, jobFiles.size() == 1 ? window : 0L);
+            }
+            parts.put(id, jobFiles.size());
+            windows.put(id, window);
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+        java.util.Map<String, Long> durations = new java.util.HashMap<>();
+        java.util.Map<String, Boolean> results = new java.util.LinkedHashMap<>();
+        for (TsVerifier.Report report : TsVerifier.verifyAll(new java.util.ArrayList<>(files.keySet()), file -> expected.getOrDefault(file, 0L), verifyThreads)) {
+            TsVerifier.log(report);
+            String id = files.get(report.file());
+            durations.merge(id, report.durationMillis(), Long::sum);
+            results.merge(id, report.isOk(), Boolean::logicalAnd);
+        }
+        for (java.util.Map.Entry<String, Boolean> result : results.entrySet()) {
+            String id = result.getKey();
+            boolean ok = result.getValue();
+            if (parts.get(id) > 1 && !TsVerifier.isComplete(durations.get(id), windows.get(id))) {
+                LogHelper.LogWarning(String.format(TextHelper.VERIFY_PARTS_SHORT, id, parts.get(id), durations.get(id) / 1000, windows.get(id) / 1000));
+                ok = false;
+            }
+            String verified = ok ? "ok" : "failed";
+            updateJob(id, job -> job.setVerified(verified));
+        }
+    }
+
+    // Adds the process's jobs that wrote a file to the recording catalog, once they have their outcome
+    private static void catalogRecordings() {
+        for (String id : control != null ? control.jobIds() : java.util.List.of(jobId)) {
+            RecordingJob job = jobRegistry.load(id);
+            if (job == null || job.isActive() || job.getFiles().isEmpty()) {
+                continue;
+            }
+            try {
+                catalog.append(RecordingCatalog.Entry.of(job));
+            } catch (java.io.IOException e) {
+                LogHelper.LogWarning(String.format(TextHelper.CATALOG_APPEND_FAILED, id, e.getMessage()));
+            }
+        }
+    }
+
+    // Hands the finished recordings of the process's jobs to a post-processing worker, the recorder does not wait for it
+    private static void queuePostProcessing() {
+        RecorderHelper helper = activeHelper;
+        // In ffmpeg mode the file is complete once ffmpeg has exited
+        if (helper != null && !helper.awaitExit(FFMPEG_EXIT_WAIT_MS)) {
+            LogHelper.LogWarning(TextHelper.POSTPROCESS_FFMPEG_RUNNING);
+        }
+        java.util.List<String> ids = new java.util.ArrayList<>();
+        for (String id : control != null ? control.jobIds() : java.util.List.of(jobId)) {
+            RecordingJob job = jobRegistry.load(id);
+            if (job == null || job.getStatus() != RecordingJob.Status.DONE) {
+                continue;
+            }
+            java.util.List<String> files = job.getFiles().stream().filter(f -> new java.io.File(f).isFile()).toList();
+            if (files.isEmpty()) {
+                continue;
+            }
+            PostProcessJob post = new PostProcessJob(id, files, postProcessSteps);
+            post.setChannelName(job.getChannelName());
+            post.setDate(job.getDate());
+            post.setStart(job.getStart());
+            post.setStop(job.getStop());
+            post.setDurationMillis(Math.max(0, job.getStopAt() - job.getStartAt()));
+            post.setKeepSource(postProcessKeepSource);
+            try {
+                postProcessor.getQueue().save(post);
+                ids.add(id);
+            } catch (java.io.IOException e) {
+                LogHelper.LogWarning(String.format(TextHelper.POSTPROCESS_SAVE_FAILED, id, e.getMessage()));
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            postProcessor.spawn(ids, postProcessLogFile);
+            LogHelper.Log(String.format(TextHelper.POSTPROCESS_QUEUED, ids.size(), postProcessSteps));
+        } catch (java.io.IOException e) {
+            LogHelper.LogWarning(String.format(TextHelper.POSTPROCESS_START_FAILED, e.getMessage()));
+        }
+    }
+
     // Build argument list for ScheduledRecorder process
     public static java.util.List<String> buildScheduledRecorderArgs(
         String url, String filePath, String timeFrom, String timeTo, String mode, String logConfigPath, String tvgName, String timezone, boolean is24Hour, String logFile, String groupTitle, String tvgId, int recRetries, int recRetriesDelay, String tvgLogo
@@ -4,14 +4,33 @@ import java.io.File;
 import java.nio.file.Files;
 import java.util.Scanner;
 import se.eskimos.log.LogHelper;
+import se.eskimos.admission.AdmissionController;
+import se.eskimos.admission.ProviderSlots;
 import se.eskimos.helpers.UserIOHelper;
 import se.eskimos.helpers.TextHelper;
 import se.eskimos.helpers.ConfigHelper;
 import se.eskimos.mail.MailExceptionBuffer;
 import se.eskimos.mail.MailHelper;
 import se.eskimos.helpers.RecorderHelper;
+import se.eskimos.helpers.ChannelTimeIndex;
+import se.eskimos.helpers.DateTimeHelper;
+import se.eskimos.helpers.StringAndFileHelper;
 import se.eskimos.m3u.M3UHolder;
 import se.eskimos.m3u.M3UParser;
+import se.eskimos.m3u.GroupFilter;
+import se.eskimos.metrics.Metrics;
+import se.eskimos.metrics.MetricsFiles;
+import se.eskimos.postprocess.PostProcessor;
+import se.eskimos.probe.ChannelProber;
+import se.eskimos.probe.ProbeCache;
+import se.eskimos.probe.ProbeResult;
+import se.eskimos.scheduler.RecordingWindow;
+import se.eskimos.storage.RecordingCatalog;
+import se.eskimos.storage.RetentionEngine;
+import se.eskimos.stream.SeekIndex;
+import se.eskimos.stream.TsVerifier;
+import se.eskimos.watch.WatchRule;
+import se.eskimos.watch.WatchRuleMatcher;
 
 public class StartRecorder {
 	
@@ -19,6 +38,27 @@ public class StartRecorder {
 	private static final String CONFIG_PATH = "config.properties";
 	private static final String HELP_FLAG_1 = "--help";
 	private static final String HELP_FLAG_2 = "-h";
+	private static final String STARTING_FLAG = "--starting";
+	private static final String NOW_ARGUMENT = "now";
+	private static final String WATCH_FLAG = "--watch";
+	private static final String BATCH_FLAG = "--batch";
+	private static final String PROBE_FLAG = "--probe";
+	private static final String METRICS_FLAG = "--metrics";
+	private static final String JOBS_FLAG = "--jobs";
+	private static final String RETENTION_FLAG = "--retention";
+	private static final String DRY_RUN_ARGUMENT = "dry-run";
+	private static final String EXTRACT_FLAG = "--extract";
+	private static final String VERIFY_FLAG = "--verify";
+	private static final String POSTPROCESS_FLAG = "--postprocess";
+	private static final String RETRY_ARGUMENT = "retry";
+	private static final String CATALOG_FLAG = "--catalog";
+	private static final int POSTPROCESS_RETENTION_DAYS = 7;
+	// Files written this recently may still be recording
+	private static final long VERIFY_SETTLE_MS = 15 * 60_000L;
+	private static final int JOB_RETENTION_DAYS = 7;
+	// How long to wait for a just started recorder's control API before giving it an adjacent job
+	private static final long ATTACH_WAIT_MS = 5000;
+	private static final java.time.format.DateTimeFormatter HHMM_FORMATTER = java.time.format.DateTimeFormatter.ofPattern("HH:mm");
 	private static final String TEMP_FILE_PREFIX = "iptv-m3u-";
 	private static final String TEMP_FILE_SUFFIX = ".m3u";
 	
@@ -63,6 +103,72 @@ public class StartRecorder {
 			return;
 		}
 
+		// Time window query: list channels starting between two times
+		if (args.length > 0 && STARTING_FLAG.equals(args[0])) {
+			runStartingQuery(args);
+			return;
+		}
+
+		// Watch mode: evaluate auto-record rules on each playlist refresh
+		if (args.length > 0 && WATCH_FLAG.equals(args[0])) {
+			runWatch(args);
+			return;
+		}
+
+		// Batch special scenario: many searches against one playlist load
+		if (args.length > 0 && BATCH_FLAG.equals(args[0])) {
+			runBatch(args);
+			return;
+		}
+
+		// Liveness probe of the playlist channels
+		if (args.length > 0 && PROBE_FLAG.equals(args[0])) {
+			runProbe(args);
+			return;
+		}
+
+		// Provider slot usage and metrics of the running recorders
+		if (args.length > 0 && METRICS_FLAG.equals(args[0])) {
+			runMetrics(args);
+			return;
+		}
+
+		// List, cancel or move the stop time of scheduled recordings
+		if (args.length > 0 && JOBS_FLAG.equals(args[0])) {
+			runJobs(args);
+			return;
+		}
+
+		// Evict recordings the retention policy does not keep
+		if (args.length > 0 && RETENTION_FLAG.equals(args[0])) {
+			runRetention(args);
+			return;
+		}
+
+		// Copy a time range out of a recording using its seek index
+		if (args.length > 0 && EXTRACT_FLAG.equals(args[0])) {
+			runExtract(args);
+			return;
+		}
+
+		// Verify finished recordings and write their reports
+		if (args.length > 0 && VERIFY_FLAG.equals(args[0])) {
+			runVerify(args);
+			return;
+		}
+
+		// Run post-processing jobs that were not run or did not finish
+		if (args.length > 0 && POSTPROCESS_FLAG.equals(args[0])) {
+			runPostProcess(args);
+			return;
+		}
+
+		// Query the catalog of finished recordings
+		if (args.length > 0 && CATALOG_FLAG.equals(args[0])) {
+			runCatalog(args);
+			return;
+		}
+
 		// Special scenario: Direct search and start without interaction
 		if (args.length > 1) {
 			runSpecialScenario(args);
@@ -98,14 +204,8 @@ public class StartRecorder {
 			String m3uFile = config.getM3UFile();
 			String url = config.getUrl();
 			
-			// Load channels from M3U file or URL
-			myChannels = loadChannels(useM3UFile, m3uFile, url);
-			
-			// Filter channels by group title if specified
-			String[] groupTitles = config.getGroupTitles();
-			if (groupTitles.length > 0) {
-				myChannels = filterChannelsByGroup(myChannels, groupTitles);
-			}
+			// Load channels from M3U file or URL, filtered by group title in the parser if specified
+			myChannels = loadChannels(useM3UFile, m3uFile, url, config.getGroupFilter());
 			
 			// Prompt user for channel selection and recording time (with paging)
 			int startIndex = 0;
@@ -143,9 +243,11 @@ public class StartRecorder {
 			logRecordingSummary(channelDisplayName, rH, destinationPath);
 
 			// Start ScheduledRecorder as a background process
-			startScheduledRecorder(rH, config, channelDisplayName, selectedChannel);
-			
-			userIO.print(backgroundProcessStartedText);
+			if (startScheduledRecorder(rH, config, channelDisplayName, selectedChannel, myChannels, "interactive", config.getDefaultPriority(), config.getPreRollMinutes(), new AdmissionController(new JobRegistry(config.getStateDir())))) {
+				userIO.print(backgroundProcessStartedText);
+			} else {
+				userIO.print(TextHelper.ADMISSION_NOT_SCHEDULED);
+			}
 			// After run, send summary mail if any error occurred
 			MailExceptionBuffer.flushAndSend();
 			return;
@@ -176,13 +278,9 @@ public class StartRecorder {
 		try {
 			validateConfiguration(config, userIO);
 			var rH = new RecorderHelper(userIO);
-			var myChannels = loadChannels(config.useM3UFile(), config.getM3UFile(), config.getUrl());
+			// Group filter if it exists is applied while parsing
+			var myChannels = loadChannels(config.useM3UFile(), config.getM3UFile(), config.getUrl(), config.getGroupFilter());
 			String destinationPath = config.getDestinationPath();
-			// Group filter if it exists
-			String[] groupTitles = config.getGroupTitles();
-			if (groupTitles.length > 0) {
-				myChannels = filterChannelsByGroup(myChannels, groupTitles);
-			}
 			// Search directly
 			java.util.List<M3UHolder> matches = se.eskimos.helpers.ChannelSearchHelper.searchChannels(myChannels, searchString);
 			if (matches.isEmpty()) {
@@ -196,6 +294,17 @@ public class StartRecorder {
 				MailExceptionBuffer.flushAndSend();
 				return;
 			}
+			// Several channels often carry the same event, prefer one that is known to be streaming
+			if (matches.size() > 1) {
+				if (config.isProbeEnabled()) {
+					ChannelProber prober = createProber(config);
+					prober.probeAll(matches);
+					matches = prober.preferLive(matches);
+				} else {
+					matches = probeCache(config).preferLive(matches, M3UHolder::url);
+				}
+				LogHelper.Log(String.format(TextHelper.PROBE_PREFERRED_LIVE, getChannelDisplayName(matches.get(0)), matches.size()));
+			}
 			M3UHolder selected = matches.get(0);
 			rH.setUrl(selected.url());
 			// Extract time from tvg-name if possible
@@ -211,7 +320,15 @@ public class StartRecorder {
 			// Start ScheduledRecorder as usual (or equivalent logic)
 			String channelDisplayName = getChannelDisplayName(selected);
 			logRecordingSummary(channelDisplayName, rH, destinationPath);
-			startScheduledRecorder(rH, config, channelDisplayName, selected);
+			if (!startScheduledRecorder(rH, config, channelDisplayName, selected, myChannels, "search", config.getDefaultPriority(), config.getPreRollMinutes(), new AdmissionController(new JobRegistry(config.getStateDir())))) {
+				userIO.print(TextHelper.ADMISSION_NOT_SCHEDULED);
+				new MailHelper(config).sendMail(
+					"IPTV-Recorder: No recording scheduled",
+					"Channel '" + channelDisplayName + "' " + rH.getTimeFrom() + "-" + rH.getTimeTo() + " was not scheduled: it is already recorded or the provider has no free connection in that window."
+				);
+				MailExceptionBuffer.flushAndSend();
+				return;
+			}
 			userIO.print(backgroundProcessStartedText);
 			// Send mail if recording is scheduled
 			StringBuilder mailBody = new StringBuilder();
@@ -235,6 +352,658 @@ public class StartRecorder {
 		}
 	}
 	
+	// Time window query: lists channels whose tvg-name start time falls inside a window
+	private void runStartingQuery(String[] args) {
+		// Expected: args[1]=config, args[2]=from (HH:mm or 'now'), args[3]=to (HH:mm or +minutes), args[4]=optional groups
+		if (args.length < 4) {
+			System.err.println(TextHelper.STARTING_QUERY_TOO_FEW_ARGS);
+			return;
+		}
+		ConfigHelper config = new ConfigHelper(args[1]);
+		String logFile = config.getLogFile();
+		if (logFile != null && !logFile.isEmpty()) {
+			LogHelper.setLogFile(logFile);
+		}
+		try {
+			validateConfiguration(config, userIO);
+			java.time.LocalTime from;
+			if (NOW_ARGUMENT.equalsIgnoreCase(args[2])) {
+				from = java.time.LocalTime.now(java.time.ZoneId.of(config.getTimezone()));
+			} else {
+				from = parseQueryTime(args[2]);
+			}
+			var myChannels = loadChannels(config.useM3UFile(), config.getM3UFile(), config.getUrl(), config.getGroupFilter());
+			String[] queryGroups = args.length > 4 ? args[4].split("\\|") : null;
+			ChannelTimeIndex index = ChannelTimeIndex.build(myChannels);
+			ChannelTimeIndex.Window window;
+			java.util.List<ChannelTimeIndex.Entry> result;
+			if (args[3].startsWith("+")) {
+				int minutes = Integer.parseInt(args[3].substring(1));
+				result = index.startingWithin(from, minutes, queryGroups);
+				window = ChannelTimeIndex.window(from, minutes);
+			} else {
+				window = new ChannelTimeIndex.Window(from, parseQueryTime(args[3]));
+				result = index.between(window.from(), window.to(), queryGroups);
+			}
+			java.time.format.DateTimeFormatter hhmm = java.time.format.DateTimeFormatter.ofPattern("HH:mm");
+			userIO.print(String.format(TextHelper.STARTING_QUERY_HEADER, hhmm.format(window.from()), hhmm.format(window.to()), result.size()));
+			userIO.printTimeWindowResults(result);
+		} catch (Exception e) {
+			LogHelper.LogError(String.format(TextHelper.APPLICATION_ERROR, e.getMessage()), e);
+			userIO.print(errorPrefixText + e.getMessage());
+		}
+	}
+
+	// Liveness probe: checks the (optionally group filtered) playlist channels and prints which ones are streaming
+	private void runProbe(String[] args) {
+		// Expected: args[1]=config, args[2]=optional groups
+		if (args.length < 2) {
+			System.err.println(TextHelper.PROBE_TOO_FEW_ARGS);
+			return;
+		}
+		ConfigHelper config = new ConfigHelper(args[1]);
+		String logFile = config.getLogFile();
+		if (logFile != null && !logFile.isEmpty()) {
+			LogHelper.setLogFile(logFile);
+		}
+		try {
+			validateConfiguration(config, userIO);
+			GroupFilter filter = args.length > 2 ? GroupFilter.compile(GroupFilter.split(args[2])) : config.getGroupFilter();
+			var myChannels = loadChannels(config.useM3UFile(), config.getM3UFile(), config.getUrl(), filter);
+			ChannelProber prober = createProber(config);
+			LogHelper.Log(String.format(TextHelper.PROBE_STARTED, myChannels.size(), config.getProbeMaxConnections()));
+			java.util.List<ProbeResult> results = prober.probeAll(myChannels);
+			userIO.printProbeResults(myChannels, results);
+			long alive = results.stream().filter(ProbeResult::alive).count();
+			userIO.print(String.format(TextHelper.PROBE_DONE, alive, results.size()));
+		} catch (Exception e) {
+			LogHelper.LogError(String.format(TextHelper.APPLICATION_ERROR, e.getMessage()), e);
+			userIO.print(errorPrefixText + e.getMessage());
+		}
+	}
+
+	// Each probe holds one of its provider's connection slots, like a recorder, and is skipped when none is free
+	private static ChannelProber createProber(ConfigHelper config) {
+		ProbeCache cache = new ProbeCache(config.getStateDir(), config.getProbeCacheMinutes());
+		ProviderSlots slots = new ProviderSlots(config.getStateDir());
+		ChannelProber.ConnectionSlots probeSlots = url -> {
+			String provider = config.getProviderKey(url);
+			int maxConnections = config.getMaxConnections(provider);
+			if (maxConnections == 0 || config.getStateDir().isEmpty()) {
+				return () -> {};
+			}
+			// Probes run in parallel, a slot file must not be opened by two threads of this process at once
+			synchronized (slots) {
+				// Recorders waiting for a slot go first
+				return slots.waiting(provider) > 0 ? null : slots.tryAcquire(provider, maxConnections);
+			}
+		};
+		return new ChannelProber(cache, config.getProbeMaxConnections(), config.getProbeTimeoutSeconds(), probeSlots);
+	}
+
+	// Earlier probe results, e.g. of watch mode's probeGroups, without probing anything now
+	private static ProbeCache probeCache(ConfigHelper config) {
+		return new ProbeCache(config.getStateDir(), config.getProbeCacheMinutes());
+	}
+
+	// Metrics: live provider slot usage plus the metrics files of all running recorders, in Prometheus text format
+	private void runMetrics(String[] args) {
+		// Expected: args[1]=config
+		if (args.length < 2) {
+			System.err.println(TextHelper.METRICS_TOO_FEW_ARGS);
+			return;
+		}
+		ConfigHelper config = new ConfigHelper(args[1]);
+		ProviderSlots slots = new ProviderSlots(config.getStateDir());
+		Metrics live = new Metrics();
+		for (String provider : slots.providers()) {
+			int max = config.getMaxConnections(provider);
+			String labels = Metrics.labels("provider", provider);
+			live.setGauge("iptv_provider_slots_in_use", labels, slots.inUse(provider, max));
+			live.setGauge("iptv_provider_slots_max", labels, max);
+			live.setGauge("iptv_provider_slots_waiting", labels, slots.waiting(provider));
+		}
+		for (RecordingJob job : new JobRegistry(config.getStateDir()).list()) {
+			if (job.isActive()) {
+				live.increment("iptv_jobs", Metrics.labels("provider", job.getProvider(), "status", job.getStatus().name()));
+				if (!job.getDowngradedTo().isEmpty()) {
+					live.increment("iptv_jobs_downgraded", Metrics.labels("provider", job.getProvider()));
+				}
+			} else if (job.getStatus() == RecordingJob.Status.PREEMPTED) {
+				live.increment("iptv_jobs_preempted", Metrics.labels("provider", job.getProvider(), "reason", job.getPreemptReason()));
+			}
+		}
+		userIO.print(Metrics.withTypes(live.toPrometheus() + MetricsFiles.collect(config.getStateDir())));
+	}
+
+	// Retention: one run of the retention policy over the recordings tree, from the saved index
+	private void runRetention(String[] args) {
+		// Expected: args[1]=config, args[2]=optional dry-run
+		if (args.length < 2) {
+			System.err.println(TextHelper.RETENTION_TOO_FEW_ARGS);
+			return;
+		}
+		ConfigHelper config = new ConfigHelper(args[1]);
+		String logFile = config.getLogFile();
+		if (logFile != null && !logFile.isEmpty()) {
+			LogHelper.setLogFile(logFile);
+		}
+		java.util.List<RetentionEngine> engines = createRetentionEngines(config);
+		if (engines.isEmpty()) {
+			userIO.print(TextHelper.RETENTION_DISABLED);
+			return;
+		}
+		for (RetentionEngine engine : engines) {
+			engine.load();
+			applyRetention(config, engine, args.length > 2 && DRY_RUN_ARGUMENT.equalsIgnoreCase(args[2]));
+		}
+	}
+
+	// One engine per destination volume, none if no retention limit is configured
+	private static java.util.List<RetentionEngine> createRetentionEngines(ConfigHelper config) {
+		RetentionEngine.Policy policy = new RetentionEngine.Policy(config.getRetentionDays(),
+			config.getRetentionMaxGB() * 1024L * 1024L * 1024L, config.getRetentionKeepPerChannel());
+		if (!policy.isEnabled()) {
+			return java.util.List.of();
+		}
+		return config.getDestinationPaths().stream().map(path -> new RetentionEngine(path, config.getStateDir(), policy)).toList();
+	}
+
+	// Recordings of active jobs are never evicted, whatever their age
+	private static void applyRetention(ConfigHelper config, RetentionEngine engine, boolean dryRun) {
+		java.util.Set<java.nio.file.Path> inUse = new java.util.HashSet<>();
+		for (RecordingJob job : new JobRegistry(config.getStateDir()).list()) {
+			if (!job.isActive()) {
+				continue;
+			}
+			// Every part, a recording that failed over writes to more than one volume
+			java.util.List<String> files = new java.util.ArrayList<>(job.getFiles());
+			if (!job.getFile().isEmpty()) {
+				files.add(job.getFile());
+			}
+			for (String file : files) {
+				inUse.add(java.nio.file.Path.of(file).toAbsolutePath().normalize().getParent());
+			}
+		}
+		try {
+			java.util.List<RetentionEngine.Eviction> evicted = engine.run(dir -> inUse.contains(dir), dryRun);
+			for (RetentionEngine.Eviction eviction : evicted) {
+				LogHelper.Log(String.format(dryRun ? TextHelper.RETENTION_WOULD_EVICT : TextHelper.RETENTION_EVICTED,
+					eviction.dir(), eviction.bytes() / (1024 * 1024), eviction.reason()));
+			}
+			LogHelper.Log(String.format(TextHelper.RETENTION_DONE, evicted.size(), engine.size(), engine.getTotalBytes() / (1024 * 1024)));
+			if (!dryRun && !evicted.isEmpty()) {
+				uncatalog(config, evicted);
+			}
+		} catch (java.io.IOException e) {
+			LogHelper.LogError(String.format(TextHelper.APPLICATION_ERROR, e.getMessage()), e);
+		}
+	}
+
+	// Evicted recordings leave the catalog, one with parts on another volume keeps those parts
+	private static void uncatalog(ConfigHelper config, java.util.List<RetentionEngine.Eviction> evicted) {
+		RecordingCatalog catalog = new RecordingCatalog(config.getStateDir());
+		catalog.load();
+		java.util.Map<String, RecordingCatalog.Entry> affected = new java.util.LinkedHashMap<>();
+		for (RetentionEngine.Eviction eviction : evicted) {
+			catalog.findUnder(eviction.dir()).forEach(entry -> affected.put(entry.id(), entry));
+		}
+		for (RecordingCatalog.Entry entry : affected.values()) {
+			java.util.List<String> left = entry.files().stream()
+				.filter(f -> evicted.stream().noneMatch(eviction -> java.nio.file.Path.of(f).toAbsolutePath().normalize().startsWith(eviction.dir())))
+				.toList();
+			try {
+				if (left.isEmpty()) {
+					catalog.remove(entry.id());
+				} else {
+					catalog.append(entry.withFiles(left));
+				}
+			} catch (java.io.IOException e) {
+				LogHelper.LogWarning(String.format(TextHelper.CATALOG_REMOVE_FAILED, entry.id(), e.getMessage()));
+			}
+		}
+	}
+
+	// Extract: byte copy of a time range of a recording, located through its seek index
+	private void runExtract(String[] args) {
+		// Expected: args[1]=recording, args[2]=from, args[3]=to, args[4]=optional output file
+		if (args.length < 4) {
+			System.err.println(TextHelper.EXTRACT_TOO_FEW_ARGS);
+			return;
+		}
+		try {
+			java.nio.file.Path recording = java.nio.file.Path.of(args[1]);
+			long from = DateTimeHelper.parsePositionMillis(args[2]);
+			long to = DateTimeHelper.parsePositionMillis(args[3]);
+			String name = recording.getFileName().toString().replaceFirst("\\.ts$", "");
+			java.nio.file.Path out = args.length > 4 ? java.nio.file.Path.of(args[4])
+				: recording.resolveSibling(name + "_" + (from / 1000) + "-" + (to / 1000) + ".ts");
+			long bytes = SeekIndex.extract(recording, from, to, out);
+			userIO.print(String.format(TextHelper.EXTRACT_DONE, out, bytes / (1024 * 1024)));
+		} catch (IllegalArgumentException | java.io.IOException e) {
+			System.err.println(errorPrefixText + e.getMessage());
+		}
+	}
+
+	// Verify: scans the recordings without an up-to-date report, in parallel on a bounded pool
+	private void runVerify(String[] args) {
+		// Expected: args[1]=config, args[2]=optional file or directory (default: all destination paths)
+		if (args.length < 2) {
+			System.err.println(TextHelper.VERIFY_TOO_FEW_ARGS);
+			return;
+		}
+		ConfigHelper config = new ConfigHelper(args[1]);
+		String logFile = config.getLogFile();
+		if (logFile != null && !logFile.isEmpty()) {
+			LogHelper.setLogFile(logFile);
+		}
+		java.util.List<String> roots = args.length > 2 ? java.util.List.of(args[2]) : config.getDestinationPaths();
+		java.util.Set<java.nio.file.Path> recording = new java.util.HashSet<>();
+		for (RecordingJob job : new JobRegistry(config.getStateDir()).list()) {
+			if (job.isActive() && !job.getFile().isEmpty()) {
+				recording.add(java.nio.file.Path.of(job.getFile()).toAbsolutePath().normalize());
+			}
+		}
+		long settled = System.currentTimeMillis() - VERIFY_SETTLE_MS;
+		java.util.List<java.nio.file.Path> files = new java.util.ArrayList<>();
+		for (String root : roots) {
+			try (java.util.stream.Stream<java.nio.file.Path> walk = java.nio.file.Files.walk(java.nio.file.Path.of(root))) {
+				walk.filter(p -> p.getFileName().toString().endsWith(".ts"))
+					.map(p -> p.toAbsolutePath().normalize())
+					.filter(p -> !recording.contains(p))
+					.filter(p -> {
+						java.io.File file = p.toFile();
+						java.io.File report = TsVerifier.reportFile(p).toFile();
+						return file.lastModified() < settled && (args.length > 2 || report.lastModified() < file.lastModified());
+					})
+					.forEach(files::add);
+			} catch (java.io.IOException | java.io.UncheckedIOException e) {
+				LogHelper.LogWarning(String.format(TextHelper.VERIFY_FAILED, root, e.getMessage()));
+			}
+		}
+		java.util.List<TsVerifier.Report> reports = TsVerifier.verifyAll(files,
+			file -> StringAndFileHelper.scheduledMillisFromFolder(file.getParent().getFileName().toString()), config.getVerifyThreads());
+		long problems = 0;
+		RecordingCatalog catalog = new RecordingCatalog(config.getStateDir());
+		catalog.load();
+		for (TsVerifier.Report report : reports) {
+			TsVerifier.log(report);
+			if (!report.isOk()) {
+				problems++;
+			}
+			RecordingCatalog.Entry entry = catalog.findByFile(report.file());
+			String verified = report.isOk() ? "ok" : "failed";
+			if (entry != null && !verified.equals(entry.verified())) {
+				try {
+					catalog.append(entry.withVerified(verified));
+				} catch (java.io.IOException e) {
+					LogHelper.LogWarning(String.format(TextHelper.CATALOG_APPEND_FAILED, entry.id(), e.getMessage()));
+				}
+			}
+		}
+		userIO.print(String.format(TextHelper.VERIFY_DONE, reports.size(), problems));
+	}
+
+	// Post-process: runs queued jobs and jobs whose worker died, failed ones too with retry
+	private void runPostProcess(String[] args) {
+		// Expected: args[1]=config, args[2]=optional "retry"
+		if (args.length < 2) {
+			System.err.println(TextHelper.POSTPROCESS_TOO_FEW_ARGS);
+			return;
+		}
+		ConfigHelper config = new ConfigHelper(args[1]);
+		String logFile = config.getLogFile();
+		if (logFile != null && !logFile.isEmpty()) {
+			LogHelper.setLogFile(logFile);
+		}
+		if (config.getPostProcessSteps().isEmpty()) {
+			userIO.print(TextHelper.POSTPROCESS_DISABLED);
+		}
+		PostProcessor processor = new PostProcessor(config.getStateDir(), config.getPostProcessParallel(), config.isPostProcessLowPriority());
+		processor.getQueue().pruneDoneBefore(System.currentTimeMillis() - POSTPROCESS_RETENTION_DAYS * 24 * 3_600_000L);
+		boolean retry = args.length > 2 && RETRY_ARGUMENT.equalsIgnoreCase(args[2]);
+		int jobs = processor.getQueue().pending(retry).size();
+		try {
+			int failed = processor.runPending(retry);
+			userIO.print(String.format(TextHelper.POSTPROCESS_SUMMARY, jobs, failed));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Catalog: finished recordings by date, channel, sport and status, from the in-memory indexes
+	private void runCatalog(String[] args) {
+		// Expected: args[1]=config, args[2..]=key=value criteria
+		if (args.length < 2) {
+			System.err.println(TextHelper.CATALOG_TOO_FEW_ARGS);
+			return;
+		}
+		ConfigHelper config = new ConfigHelper(args[1]);
+		RecordingCatalog.Query query;
+		try {
+			query = RecordingCatalog.Query.parse(java.util.Arrays.asList(args).subList(2, args.length));
+		} catch (IllegalArgumentException e) {
+			System.err.println(errorPrefixText + e.getMessage());
+			return;
+		}
+		long loadStart = System.nanoTime();
+		RecordingCatalog catalog = new RecordingCatalog(config.getStateDir());
+		int total = catalog.load();
+		long queryStart = System.nanoTime();
+		java.util.List<RecordingCatalog.Entry> found = catalog.query(query);
+		long queryEnd = System.nanoTime();
+		java.time.ZoneId zone = java.time.ZoneId.of(config.getTimezone());
+		for (RecordingCatalog.Entry e : found) {
+			userIO.print(String.format(TextHelper.CATALOG_ENTRY, e.date(),
+				HHMM_FORMATTER.format(java.time.Instant.ofEpochMilli(e.scheduledStart()).atZone(zone)),
+				HHMM_FORMATTER.format(java.time.Instant.ofEpochMilli(e.scheduledStop()).atZone(zone)),
+				e.channel(), String.join(",", e.sports()), e.size() / (1024 * 1024), e.status(),
+				e.verified().isEmpty() ? "-" : e.verified(), String.join(" ", e.files())));
+		}
+		userIO.print(String.format(TextHelper.CATALOG_SUMMARY, found.size(), total,
+			(queryEnd - queryStart) / 1_000_000, (queryStart - loadStart) / 1_000_000));
+	}
+
+	// Jobs: talks to the control API of the running ScheduledRecorder processes
+	private void runJobs(String[] args) {
+		// Expected: args[1]=config, args[2]=command (default list), args[3]=job id (or unique prefix), args[4]=minutes or HH:mm
+		if (args.length < 2) {
+			System.err.println(TextHelper.JOBS_TOO_FEW_ARGS);
+			return;
+		}
+		ConfigHelper config = new ConfigHelper(args[1]);
+		JobRegistry registry = new JobRegistry(config.getStateDir());
+		String command = args.length > 2 ? args[2] : "list";
+		if ("list".equals(command)) {
+			java.util.List<RecordingJob> jobs = new java.util.ArrayList<>(registry.list().stream().filter(RecordingJob::isActive).toList());
+			jobs.sort(java.util.Comparator.comparingLong(RecordingJob::getStartAt));
+			if (jobs.isEmpty()) {
+				userIO.print(TextHelper.JOBS_NONE);
+			}
+			for (RecordingJob job : jobs) {
+				java.util.Map<String, String> live = null;
+				if (job.getControlPort() > 0) {
+					try {
+						live = new se.eskimos.control.ControlClient(job.getControlPort(), job.getControlToken()).status(job.getId());
+					} catch (java.io.IOException e) {
+						LogHelper.LogDebug(String.format(TextHelper.JOBS_NO_CONTROL, job.getId(), job.getPid(), e.getMessage()));
+					}
+				}
+				userIO.printJob(job, live);
+			}
+			return;
+		}
+		boolean needsValue = "extend".equals(command) || "stop".equals(command);
+		if (!("cancel".equals(command) || "start".equals(command) || needsValue) || args.length < (needsValue ? 5 : 4)) {
+			System.err.println(TextHelper.JOBS_TOO_FEW_ARGS);
+			return;
+		}
+		RecordingJob job = findActiveJob(registry, args[3]);
+		if (job == null) {
+			return;
+		}
+		se.eskimos.control.ControlClient client = new se.eskimos.control.ControlClient(job.getControlPort(), job.getControlToken());
+		try {
+			if ("cancel".equals(command)) {
+				client.cancel(job.getId());
+				userIO.print(String.format(TextHelper.JOBS_CANCELLED, job.getId()));
+				return;
+			}
+			if ("start".equals(command)) {
+				client.startNow();
+				userIO.print(String.format(TextHelper.JOBS_STARTED, job.getId()));
+				return;
+			}
+			java.time.ZoneId zone = java.time.ZoneId.of(config.getTimezone());
+			java.time.ZonedDateTime newStop;
+			if ("extend".equals(command)) {
+				newStop = java.time.Instant.ofEpochMilli(job.getStopAt()).atZone(zone).plusMinutes(Long.parseLong(args[4].replace("+", "")));
+			} else {
+				// The first occurrence of the time after the start, so the stop may cross midnight
+				java.time.ZonedDateTime start = java.time.Instant.ofEpochMilli(job.getStartAt()).atZone(zone);
+				newStop = start.with(parseQueryTime(args[4]));
+				if (!newStop.isAfter(start)) {
+					newStop = newStop.plusDays(1);
+				}
+			}
+			client.moveStop(job.getId(), newStop.toInstant().toEpochMilli());
+			userIO.print(String.format(TextHelper.JOBS_STOP_MOVED, job.getId(), HHMM_FORMATTER.format(newStop)));
+		} catch (IllegalArgumentException e) {
+			// Bad minutes or time
+			System.err.println(errorPrefixText + e.getMessage());
+		} catch (java.io.IOException e) {
+			System.err.println(String.format(TextHelper.JOBS_NO_CONTROL, job.getId(), job.getPid(), e.getMessage()));
+		}
+	}
+
+	// Finds an active job by id or unique id prefix, prints why if there is none
+	private RecordingJob findActiveJob(JobRegistry registry, String idOrPrefix) {
+		java.util.List<RecordingJob> found = registry.list().stream()
+			.filter(j -> j.isActive() && j.getId().startsWith(idOrPrefix))
+			.toList();
+		java.util.Optional<RecordingJob> exact = found.stream().filter(j -> j.getId().equals(idOrPrefix)).findFirst();
+		if (exact.isPresent()) {
+			return exact.get();
+		}
+		if (found.size() == 1) {
+			return found.get(0);
+		}
+		System.err.println(String.format(found.isEmpty() ? TextHelper.JOBS_NOT_FOUND : TextHelper.JOBS_AMBIGUOUS, idOrPrefix));
+		return null;
+	}
+
+	// Watch mode: compiles the watch rules once and evaluates them against the playlist, once or on every refresh
+	private void runWatch(String[] args) {
+		// Expected: args[1]=config
+		if (args.length < 2) {
+			System.err.println(TextHelper.WATCH_TOO_FEW_ARGS);
+			return;
+		}
+		ConfigHelper config = new ConfigHelper(args[1]);
+		String logFile = config.getLogFile();
+		if (logFile != null && !logFile.isEmpty()) {
+			LogHelper.setLogFile(logFile);
+		}
+		MailExceptionBuffer.setConfig(config);
+		try {
+			validateConfiguration(config, userIO);
+			WatchRuleMatcher matcher = WatchRuleMatcher.compile(WatchRule.load(config.getWatchRulesFile()));
+			LogHelper.Log(String.format(TextHelper.WATCH_RULES_LOADED, matcher.getRuleCount(), config.getWatchRulesFile()));
+			JobRegistry registry = new JobRegistry(config.getStateDir());
+			int refreshMinutes = config.getWatchRefreshMinutes();
+			ChannelProber prober = config.getProbeGroups().length > 0 ? createProber(config) : null;
+			// The index is kept current between passes, a pass only relists what changed
+			java.util.List<RetentionEngine> retention = createRetentionEngines(config);
+			for (RetentionEngine engine : retention) {
+				engine.load();
+				if (refreshMinutes > 0) {
+					engine.watch();
+				}
+			}
+			while (true) {
+				java.util.concurrent.CompletableFuture<?> probing = runWatchPass(config, matcher, registry, prober);
+				for (RetentionEngine engine : retention) {
+					applyRetention(config, engine, false);
+				}
+				MailExceptionBuffer.flushAndSend();
+				if (refreshMinutes <= 0) {
+					// Let the background probe finish so its results are saved for later runs
+					probing.join();
+					return;
+				}
+				Thread.sleep(refreshMinutes * 60_000L);
+			}
+		} catch (Exception e) {
+			LogHelper.LogError(String.format(TextHelper.APPLICATION_ERROR, e.getMessage()), e);
+			userIO.print(errorPrefixText + e.getMessage());
+			MailExceptionBuffer.flushAndSend();
+		}
+	}
+
+	// One watch pass: load the playlist, evaluate all rules in one pass and schedule new matches.
+	// Returns the background probe of the probeGroups channels (already completed if there is none)
+	private java.util.concurrent.CompletableFuture<?> runWatchPass(ConfigHelper config, WatchRuleMatcher matcher, JobRegistry registry, ChannelProber prober) throws Exception {
+		java.time.ZonedDateTime now = java.time.ZonedDateTime.now(java.time.ZoneId.of(config.getTimezone()));
+		registry.pruneBefore(now.toLocalDate().minusDays(JOB_RETENTION_DAYS));
+		var myChannels = loadChannels(config.useM3UFile(), config.getM3UFile(), config.getUrl(), config.getGroupFilter());
+		java.util.concurrent.CompletableFuture<?> probing = java.util.concurrent.CompletableFuture.completedFuture(null);
+		if (prober != null) {
+			GroupFilter probeFilter = GroupFilter.compile(config.getProbeGroups());
+			java.util.List<M3UHolder> toProbe = myChannels.stream().filter(ch -> probeFilter.matches(ch.groupTitle())).toList();
+			probing = prober.probeAllAsync(toProbe);
+		}
+		// Known working streams are scheduled first, so they get the provider's connections
+		java.util.List<WatchRuleMatcher.Match> matches = (prober != null ? prober.getCache() : probeCache(config))
+			.preferLive(matcher.evaluate(myChannels), match -> match.channel().url());
+		AdmissionController admission = new AdmissionController(registry);
+		StringBuilder mailBody = new StringBuilder();
+		int scheduled = 0;
+		for (WatchRuleMatcher.Match match : matches) {
+			WatchRule rule = match.rule();
+			String channelDisplayName = getChannelDisplayName(match.channel());
+			java.time.LocalTime start = match.channelStartTime();
+			if (start == null && rule.start() != null) {
+				start = DateTimeHelper.parseFlexibleLocalTime(rule.start(), HHMM_FORMATTER);
+			}
+			if (start == null) {
+				LogHelper.LogDebug(String.format(TextHelper.WATCH_NO_START_TIME, rule.name(), channelDisplayName));
+				continue;
+			}
+			java.time.LocalTime stop = rule.stop() != null
+				? DateTimeHelper.parseFlexibleLocalTime(rule.stop(), HHMM_FORMATTER)
+				: start.plusMinutes(rule.durationMinutes());
+			// Events that already ended today are not scheduled (windows crossing midnight never count as ended)
+			if (stop.isAfter(start) && !now.toLocalTime().isBefore(stop)) {
+				continue;
+			}
+			String startText = HHMM_FORMATTER.format(start);
+			String stopText = HHMM_FORMATTER.format(stop);
+			// Deduplication against earlier refreshes, cron runs and other rules, keyed like createJob by the window's start date
+			java.time.LocalDate date = RecordingWindow.resolve(start, stop, now).start().toLocalDate();
+			if (registry.isActive(JobRegistry.jobId(match.channel().url(), date, startText, stopText))) {
+				LogHelper.LogDebug(String.format(TextHelper.WATCH_ALREADY_SCHEDULED, channelDisplayName, startText, stopText));
+				continue;
+			}
+			var rH = new RecorderHelper(userIO);
+			rH.setUrl(match.channel().url());
+			rH.setTimeFrom(startText);
+			rH.setTimeTo(stopText);
+			logRecordingSummary(channelDisplayName, rH, config.getDestinationPath());
+			if (!startScheduledRecorder(rH, config, channelDisplayName, match.channel(), myChannels, "watch:" + rule.name(), rule.priority(), rule.preRollMinutes() > 0 ? rule.preRollMinutes() : config.getPreRollMinutes(), admission)) {
+				continue;
+			}
+			scheduled++;
+			mailBody.append("Channel: ").append(channelDisplayName).append("\n");
+			mailBody.append("Rule: ").append(rule.name()).append("\n");
+			mailBody.append("Start time: ").append(startText).append("\n");
+			mailBody.append("Stop time: ").append(stopText).append("\n\n");
+		}
+		LogHelper.Log(String.format(TextHelper.WATCH_PASS_DONE, myChannels.size(), matches.size(), scheduled));
+		if (scheduled > 0) {
+			new MailHelper(config).sendMail(
+				"IPTV-Recorder: " + scheduled + " recording(s) scheduled by watch rules",
+				"The following recordings have been scheduled:\n\n" + mailBody
+			);
+		}
+		return probing;
+	}
+
+	// Batch special scenario: loads the playlist once, resolves all searches in one pass and schedules every job.
+	// Every recording still gets a ScheduledRecorder process of its own: connection slots are file locks held per
+	// process, and preemption, the failsafe and a failed recording end that process without touching the others.
+	// Recordings of a channel that is already recorded attach to its recorder instead.
+	private void runBatch(String[] args) {
+		// Expected: args[1]=config, args[2]=batch file (CSV or JSON lines of search, start, stop)
+		if (args.length < 3) {
+			System.err.println(TextHelper.BATCH_TOO_FEW_ARGS);
+			return;
+		}
+		ConfigHelper config = new ConfigHelper(args[1]);
+		String logFile = config.getLogFile();
+		if (logFile != null && !logFile.isEmpty()) {
+			LogHelper.setLogFile(logFile);
+		}
+		MailExceptionBuffer.setConfig(config);
+		try {
+			validateConfiguration(config, userIO);
+			java.util.List<BatchEntry> entries = BatchEntry.load(args[2]);
+			java.util.List<WatchRule> searches = new java.util.ArrayList<>();
+			for (BatchEntry entry : entries) {
+				// Fail on bad times before the playlist is downloaded
+				parseQueryTime(entry.start());
+				parseQueryTime(entry.stop());
+				searches.add(WatchRule.forSearch("line " + entry.lineNumber(), entry.search()));
+			}
+			var myChannels = loadChannels(config.useM3UFile(), config.getM3UFile(), config.getUrl(), config.getGroupFilter());
+			// The first match of a search is the first known working stream, in playlist order otherwise
+			WatchRuleMatcher.Match[] resolved = WatchRuleMatcher.compile(searches).firstMatchPerRule(probeCache(config).preferLive(myChannels, M3UHolder::url));
+			LogHelper.Log(String.format(TextHelper.BATCH_RESOLVED, entries.size(), myChannels.size()));
+
+			java.time.ZoneId zone = java.time.ZoneId.of(config.getTimezone());
+			JobRegistry registry = new JobRegistry(config.getStateDir());
+			AdmissionController admission = new AdmissionController(registry);
+			StringBuilder scheduledText = new StringBuilder();
+			StringBuilder notScheduledText = new StringBuilder();
+			int scheduled = 0;
+			for (int i = 0; i < entries.size(); i++) {
+				BatchEntry entry = entries.get(i);
+				WatchRuleMatcher.Match match = resolved[i];
+				if (match == null) {
+					LogHelper.LogWarning(String.format(TextHelper.SPECIAL_SCENARIO_NO_MATCH, entry.search()));
+					notScheduledText.append("No channel matched: '").append(entry.search()).append("'\n");
+					continue;
+				}
+				String channelDisplayName = getChannelDisplayName(match.channel());
+				// Same rule as the special scenario: a time in tvg-name replaces the given start time
+				String startText = match.channelStartTime() != null
+					? HHMM_FORMATTER.format(match.channelStartTime())
+					: HHMM_FORMATTER.format(parseQueryTime(entry.start()));
+				String stopText = HHMM_FORMATTER.format(parseQueryTime(entry.stop()));
+				java.time.LocalDate date = RecordingWindow.resolve(startText, stopText, HHMM_FORMATTER, zone).start().toLocalDate();
+				if (registry.isActive(JobRegistry.jobId(match.channel().url(), date, startText, stopText))) {
+					notScheduledText.append("Already scheduled: ").append(channelDisplayName).append(" ").append(startText).append("-").append(stopText).append("\n");
+					continue;
+				}
+				var rH = new RecorderHelper(userIO);
+				rH.setUrl(match.channel().url());
+				rH.setTimeFrom(startText);
+				rH.setTimeTo(stopText);
+				logRecordingSummary(channelDisplayName, rH, config.getDestinationPath());
+				if (!startScheduledRecorder(rH, config, channelDisplayName, match.channel(), myChannels, "batch", config.getDefaultPriority(), config.getPreRollMinutes(), admission)) {
+					notScheduledText.append("Not admitted (duplicate or no free provider connection): ").append(channelDisplayName).append(" ").append(startText).append("-").append(stopText).append("\n");
+					continue;
+				}
+				scheduled++;
+				scheduledText.append(channelDisplayName).append(": ").append(startText).append(" - ").append(stopText).append("\n");
+			}
+			userIO.print(String.format(TextHelper.BATCH_DONE, scheduled, entries.size()));
+			// One summary mail for the whole batch
+			StringBuilder mailBody = new StringBuilder();
+			mailBody.append("Batch file: ").append(args[2]).append("\n\n");
+			mailBody.append("Scheduled recordings (").append(scheduled).append("):\n").append(scheduledText);
+			if (notScheduledText.length() > 0) {
+				mailBody.append("\nNot scheduled:\n").append(notScheduledText);
+			}
+			new MailHelper(config).sendMail(
+				"IPTV-Recorder: " + scheduled + " of " + entries.size() + " batch recording(s) scheduled",
+				mailBody.toString()
+			);
+			MailExceptionBuffer.flushAndSend();
+		} catch (Exception e) {
+			LogHelper.LogError(String.format(TextHelper.APPLICATION_ERROR, e.getMessage()), e);
+			userIO.print(errorPrefixText + e.getMessage());
+			MailExceptionBuffer.flushAndSend();
+		}
+	}
+
+	private static java.time.LocalTime parseQueryTime(String time) {
+		try {
+			return DateTimeHelper.parseFlexibleLocalTime(time, java.time.format.DateTimeFormatter.ofPattern("HH:mm"));
+		} catch (java.time.format.DateTimeParseException e) {
+			throw new IllegalArgumentException(String.format(TextHelper.INVALID_TIME_ARGUMENT, time));
+		}
+	}
+	
 	/**
 	 * Validates the configuration for required parameters
 	 * @param config The configuration helper
@@ -341,22 +1110,23 @@ public class StartRecorder {
 	 * @param useM3UFile Whether to use local M3U file
 	 * @param m3uFile Path to M3U file
 	 * @param url URL to download M3U from
+	 * @param groupFilter Group filter applied while parsing, or null for all channels
 	 * @return List of channels
 	 * @throws Exception if loading fails
 	 */
-	private static java.util.ArrayList<M3UHolder> loadChannels(boolean useM3UFile, String m3uFile, String url) throws Exception {
+	private static java.util.ArrayList<M3UHolder> loadChannels(boolean useM3UFile, String m3uFile, String url, GroupFilter groupFilter) throws Exception {
 		var myChannels = new java.util.ArrayList<M3UHolder>();
 		
 		if (useM3UFile) {
 			var m3u = new M3UParser();
-			myChannels = m3u.parseFile(new File(m3uFile));
+			myChannels = m3u.parseFile(new File(m3uFile), groupFilter);
 		} else {
 			// Download M3U to a temp file, parse, then delete
 			File tempM3U = Files.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX).toFile();
 			try {
 				RecorderHelper.getM3UFile(url, tempM3U.getParent(), tempM3U.getName());
 				var m3u = new M3UParser();
-				myChannels = m3u.parseFile(tempM3U);
+				myChannels = m3u.parseFile(tempM3U, groupFilter);
 			} finally {
 				tempM3U.delete();
 			}
@@ -365,22 +1135,6 @@ public class StartRecorder {
 		return myChannels;
 	}
 	
-	/**
-	 * Filters channels by group titles
-	 * @param channels List of channels to filter
-	 * @param groupTitles Group titles to match
-	 * @return Filtered list of channels
-	 */
-	private static java.util.ArrayList<M3UHolder> filterChannelsByGroup(java.util.ArrayList<M3UHolder> channels, String[] groupTitles) {
-		var filtered = new java.util.ArrayList<M3UHolder>();
-		for (M3UHolder ch : channels) {
-			if (ConfigHelper.matchesAnyGroup(ch.groupTitle(), groupTitles)) {
-				filtered.add(ch);
-			}
-		}
-		return filtered;
-	}
-	
 	/**
 	 * Finds the selected channel by URL
 	 * @param channels List of available channels
@@ -427,14 +1181,21 @@ public class StartRecorder {
 	}
 	
 	/**
-	 * Starts the ScheduledRecorder as a background process
+	 * Starts the ScheduledRecorder as a background process, unless the provider has no free connection
+	 * in the recording window and its admission policy is reject
 	 * @param rH Recorder helper instance
 	 * @param config Configuration helper
 	 * @param channelDisplayName Display name of the selected channel
 	 * @param selectedChannel Selected channel information
+	 * @param channels Loaded channel list, searched for a lower quality variant of the channel
+	 * @param source What scheduled the recording (stored in the job registry)
+	 * @param priority Priority when waiting for a provider slot
+	 * @param preRollMinutes Minutes of the stream before the start time to record as well, 0 for none
+	 * @param admission Admission controller, shared by all recordings scheduled in one pass
+	 * @return true if the recorder was started, false if admission rejected it
 	 * @throws Exception if process start fails
 	 */
-	private static void startScheduledRecorder(RecorderHelper rH, ConfigHelper config, String channelDisplayName, M3UHolder selectedChannel) throws Exception {
+	private static boolean startScheduledRecorder(RecorderHelper rH, ConfigHelper config, String channelDisplayName, M3UHolder selectedChannel, java.util.List<M3UHolder> channels, String source, int priority, int preRollMinutes, AdmissionController admission) throws Exception {
 		// Parameters are already validated in validateConfiguration
 		int recRetries = config.getRecRetries();
 		int recRetriesDelay = config.getRecRetriesDelay();
@@ -450,6 +1211,39 @@ public class StartRecorder {
 			LogHelper.setLogFile(logFile);
 		}
 		LogHelper.setTimeZone(java.time.ZoneId.of(timezone));
+
+		// Admission control: duplicates and provider capacity in the window are checked before anything is started
+		RecordingJob job = createJob(rH, config, channelDisplayName, selectedChannel, source, priority, preRollMinutes);
+		JobRegistry registry = new JobRegistry(config.getStateDir());
+		int maxConnections = config.getMaxConnections(job.getProvider());
+		boolean reject = "reject".equals(config.getAdmissionPolicy(job.getProvider()));
+		AdmissionController.Result result = admission.check(job, maxConnections, reject);
+		int booked = result.report().peakConcurrent();
+		if (result.decision() == AdmissionController.Decision.DUPLICATE) {
+			LogHelper.LogWarning(String.format(TextHelper.ADMISSION_DUPLICATE, channelDisplayName, rH.getTimeFrom(), rH.getTimeTo(), result.report().coveringJob(job).getId()));
+			return false;
+		}
+		// Continues a recording of the same channel (back-to-back or overlapping): no second connection, no gap.
+		// ffmpeg writes its own file, so only regular recordings can share.
+		if (!config.useFFMPEG() && attachToRunning(registry, admission, job, channelDisplayName)) {
+			return true;
+		}
+		switch (result.decision()) {
+			case REJECT:
+				LogHelper.LogWarning(String.format(TextHelper.ADMISSION_REJECTED, channelDisplayName, rH.getTimeFrom(), rH.getTimeTo(), job.getProvider(), booked, maxConnections));
+				return false;
+			case QUEUE:
+				LogHelper.Log(String.format(TextHelper.ADMISSION_QUEUED, job.getProvider(), booked, maxConnections, channelDisplayName, rH.getTimeFrom(), rH.getTimeTo(), priority));
+				break;
+			default:
+				break;
+		}
+		for (RecordingJob overlap : result.report().duplicates()) {
+			LogHelper.LogWarning(String.format(TextHelper.ADMISSION_CHANNEL_OVERLAP, channelDisplayName, rH.getTimeFrom(), rH.getTimeTo(), overlap.getStart(), overlap.getStop(), overlap.getId()));
+		}
+		// Registered before the process starts, so a concurrent scheduler already counts this job
+		saveJob(registry, job);
+		admission.admitted(job);
 		
 		java.util.List<String> cmd = new java.util.ArrayList<>();
 		// Build the argument list in the exact required order for ScheduledRecorder
@@ -473,16 +1267,161 @@ public class StartRecorder {
 		cmd.add(Integer.toString(recRetries));       // 16 (args[12])
 		cmd.add(Integer.toString(recRetriesDelay));  // 17 (args[13])
 		cmd.add(selectedChannel != null ? selectedChannel.tvgLogo() : ""); // 18 (args[14])
+		// Optional settings as key=value (args[15] and on)
+		RecorderOptions options = new RecorderOptions()
+			.set(RecorderOptions.PRE_WARM_SECONDS, config.getPreWarmSeconds())
+			.setRetryPolicy(config.getRetryPolicy(ConfigHelper.getProviderHost(rH.getUrl())))
+			.set(RecorderOptions.JOB_ID, job.getId())
+			.set(RecorderOptions.STATE_DIR, config.getStateDir())
+			.set(RecorderOptions.PROVIDER, job.getProvider())
+			.set(RecorderOptions.MAX_CONNECTIONS, maxConnections)
+			.set(RecorderOptions.PRIORITY, priority)
+			.set(RecorderOptions.METRICS_INTERVAL_SECONDS, config.getMetricsIntervalSeconds())
+			.set(RecorderOptions.PRE_ROLL_SECONDS, preRollMinutes * 60)
+			.set(RecorderOptions.PRE_ROLL_MAX_MB, config.getPreRollMaxMB())
+			.set(RecorderOptions.PREEMPT_AFTER_SECONDS, config.getPreemptAfterSeconds(job.getProvider()))
+			.set(RecorderOptions.MAX_BANDWIDTH_MBPS, config.getMaxBandwidthMbps())
+			.set(RecorderOptions.DISK_POLICY, config.getDiskPolicy())
+			.set(RecorderOptions.DISK_RESERVE_MB, config.getDiskReserveMB())
+			.set(RecorderOptions.DISK_FAILOVER_PATH, config.getDiskFailoverPath())
+			.set(RecorderOptions.PREALLOCATE_MB, config.getPreallocateMB())
+			.set(RecorderOptions.DURABILITY, config.getDurability())
+			.set(RecorderOptions.DURABILITY_SECONDS, config.getDurabilitySeconds())
+			.set(RecorderOptions.DURABILITY_MB, config.getDurabilityMB())
+			.set(RecorderOptions.SEEK_INDEX, config.isSeekIndexEnabled())
+			.set(RecorderOptions.VERIFY, config.isVerifyAfterRecording())
+			.set(RecorderOptions.VERIFY_THREADS, config.getVerifyThreads())
+			.set(RecorderOptions.LOGO_CACHE_HOURS, config.getLogoCacheHours());
+		if (!config.getPostProcessSteps().isEmpty()) {
+			options.set(RecorderOptions.POST_PROCESS_STEPS, config.getPostProcessSteps())
+				.set(RecorderOptions.POST_PROCESS_PARALLEL, config.getPostProcessParallel())
+				.set(RecorderOptions.POST_PROCESS_LOW_PRIORITY, config.isPostProcessLowPriority())
+				.set(RecorderOptions.POST_PROCESS_KEEP_SOURCE, config.isPostProcessKeepSource());
+		}
+		if (config.getMirrorPaths().length > 0) {
+			options.set(RecorderOptions.MIRROR_PATHS, String.join("|", config.getMirrorPaths()))
+				.set(RecorderOptions.MIRROR_BUFFER_MB, config.getMirrorBufferMB());
+		}
+		// Several destination volumes: the recorder picks one when it starts recording
+		if (config.getDestinationPaths().size() > 1) {
+			options.set(RecorderOptions.DESTINATION_PATHS, String.join("|", config.getDestinationPaths()));
+		}
+		// Stream the recorder can switch to when the downlink limit is exceeded (SD variant of the same tvg-id)
+		M3UHolder variant = se.eskimos.helpers.ChannelSearchHelper.findLowerQualityVariant(channels, selectedChannel);
+		if (variant != null) {
+			options.set(RecorderOptions.FALLBACK_URL, variant.url());
+		}
+		cmd.addAll(options.toArgs());
 
-		
 
 		ProcessBuilder pb = new ProcessBuilder(cmd);
 		pb.inheritIO(); // Optional: inherit IO for debug, or redirect to log
-		Process process = pb.start();
+		Process process;
+		try {
+			process = pb.start();
+		} catch (java.io.IOException e) {
+			job.setStatus(RecordingJob.Status.FAILED);
+			saveJob(registry, job);
+			throw e;
+		}
 		
 		// Validate that process started successfully
 		if (!process.isAlive()) {
+			job.setStatus(RecordingJob.Status.FAILED);
+			saveJob(registry, job);
 			throw new RuntimeException("Failed to start background recording process");
 		}
+		return true;
+	}
+
+	/**
+	 * Hands the job to a running recorder of the same channel whose recording it continues or overlaps.
+	 * @return true if a recorder took the job, false to start a recorder of its own
+	 */
+	private static boolean attachToRunning(JobRegistry registry, AdmissionController admission, RecordingJob job, String channelDisplayName) {
+		for (RecordingJob candidate : admission.connectionHosts(job)) {
+			RecordingJob host = awaitControl(registry, candidate);
+			if (host == null) {
+				continue;
+			}
+			job.setPid(host.getPid());
+			job.setControlPort(host.getControlPort());
+			job.setControlToken(host.getControlToken());
+			job.setAttachedTo(host.getAttachedTo().isEmpty() ? host.getId() : host.getAttachedTo());
+			// Saved first, the recorder updates the entry once the job's file is started
+			saveJob(registry, job);
+			try {
+				new se.eskimos.control.ControlClient(host.getControlPort(), host.getControlToken()).attach(job.getId(), job.getStartAt(), job.getStopAt());
+			} catch (java.io.IOException e) {
+				LogHelper.LogWarning(String.format(TextHelper.ATTACH_FAILED, channelDisplayName, host.getId(), e.getMessage()));
+				job.setPid(0);
+				job.setControlPort(0);
+				job.setControlToken("");
+				job.setAttachedTo("");
+				continue;
+			}
+			admission.admitted(job);
+			LogHelper.Log(String.format(TextHelper.ATTACH_SHARED, channelDisplayName, job.getStart(), job.getStop(), job.getAttachedTo()));
+			return true;
+		}
+		return false;
+	}
+
+	// A recorder started moments ago has not published its control API yet, give it a few seconds
+	private static RecordingJob awaitControl(JobRegistry registry, RecordingJob host) {
+		long giveUpAt = System.currentTimeMillis() + ATTACH_WAIT_MS;
+		while (true) {
+			if (host.getControlPort() > 0) {
+				return host;
+			}
+			if (!host.isActive() || System.currentTimeMillis() >= giveUpAt) {
+				return null;
+			}
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			host = registry.load(host.getId());
+			if (host == null) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Creates the registry entry of a recording, used for deduplication by watch mode and for admission control
+	 */
+	private static RecordingJob createJob(RecorderHelper rH, ConfigHelper config, String channelDisplayName, M3UHolder selectedChannel, String source, int priority, int preRollMinutes) {
+		java.time.ZoneId zone = java.time.ZoneId.of(config.getTimezone());
+		java.time.format.DateTimeFormatter formatter = config.is24HourClock() ? HHMM_FORMATTER : java.time.format.DateTimeFormatter.ofPattern("hh:mm a");
+		RecordingWindow window = RecordingWindow.resolve(rH.getTimeFrom(), rH.getTimeTo(), formatter, zone);
+		// The day the recording starts, yesterday for a window crossing midnight that still runs or tomorrow for a later one
+		java.time.LocalDate date = window.start().toLocalDate();
+		RecordingJob job = new RecordingJob(JobRegistry.jobId(rH.getUrl(), date, rH.getTimeFrom(), rH.getTimeTo()));
+		job.setUrl(rH.getUrl());
+		job.setChannelName(channelDisplayName);
+		job.setGroupTitle(selectedChannel != null ? selectedChannel.groupTitle() : "");
+		job.setTvgId(selectedChannel != null ? selectedChannel.tvgId() : "");
+		job.setDate(date.toString());
+		job.setStart(rH.getTimeFrom());
+		job.setStop(rH.getTimeTo());
+		job.setSource(source);
+		job.setProvider(config.getProviderKey(rH.getUrl()));
+		job.setPriority(priority);
+		job.setStartAt(window.start().toInstant().toEpochMilli());
+		job.setStopAt(window.stop().toInstant().toEpochMilli());
+		// The recorder connects this early, as ScheduledRecorder computes it (no pre-roll in ffmpeg mode)
+		job.setLeadSeconds(Math.max(config.getPreWarmSeconds(), config.useFFMPEG() ? 0 : preRollMinutes * 60));
+		return job;
+	}
+
+	private static void saveJob(JobRegistry registry, RecordingJob job) {
+		try {
+			registry.save(job);
+		} catch (Exception e) {
+			LogHelper.LogWarning(String.format(TextHelper.JOB_REGISTRY_WRITE_FAILED, job.getId(), e.getMessage()));
+		}
 	}
 }
@@ -0,0 +1,196 @@
+package se.eskimos.scheduler;
+
+import java.time.ZonedDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import se.eskimos.log.LogHelper;
+
+/**
+ * Central scheduler for start, stop, pre-warm and failsafe deadlines.
+ * All armed deadlines sit in one DelayQueue served by a single dispatcher thread, which only wakes up
+ * when the earliest deadline is due, so any number of armed deadlines cost nothing while idle.
+ * Tasks run on the dispatcher thread and should be short; hand long work off to an executor.
+ */
+public class DeadlineScheduler {
+    private static final DeadlineScheduler DEFAULT = new DeadlineScheduler("deadline-scheduler");
+
+    private final DelayQueue<Deadline> queue = new DelayQueue<>();
+
+    /**
+     * Creates a scheduler with its own daemon dispatcher thread.
+     * @param threadName Name of the dispatcher thread
+     */
+    public DeadlineScheduler(String threadName) {
+        Thread dispatcher = new Thread(this::dispatch, threadName);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * @return The process wide scheduler
+     */
+    public static DeadlineScheduler getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Arms a deadline.
+     * @param name Name used in logging
+     * @param at When the task should run, a time in the past runs it right away
+     * @param task Task to run on the dispatcher thread
+     * @return Handle to cancel, reschedule or wait for the deadline
+     */
+    public Deadline schedule(String name, ZonedDateTime at, Runnable task) {
+        Deadline deadline = new Deadline(name, at, task);
+        queue.add(deadline);
+        return deadline;
+    }
+
+    /**
+     * Arms a deadline without a task, useful to just wait for a point in time with {@link Deadline#await()}.
+     */
+    public Deadline schedule(String name, ZonedDateTime at) {
+        return schedule(name, at, () -> {});
+    }
+
+    /**
+     * Blocks the calling thread until the given time.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitUntil(String name, ZonedDateTime at) throws InterruptedException {
+        Deadline deadline = schedule(name, at);
+        try {
+            deadline.await();
+        } finally {
+            deadline.cancel();
+        }
+    }
+
+    /**
+     * @return Number of armed deadlines
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    private void dispatch() {
+        while (true) {
+            Deadline deadline;
+            try {
+                deadline = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            deadline.fire();
+        }
+    }
+
+    /**
+     * Handle to an armed deadline.
+     */
+    public final class Deadline implements Delayed {
+        private static final int ARMED = 0;
+        private static final int FIRED = 1;
+        private static final int CANCELLED = 2;
+
+        private final String name;
+        private final Runnable task;
+        private final AtomicInteger state = new AtomicInteger(ARMED);
+        private final CountDownLatch done = new CountDownLatch(1);
+        // Only changed while the deadline is out of the queue
+        private volatile ZonedDateTime at;
+        private volatile long atMillis;
+
+        private Deadline(String name, ZonedDateTime at, Runnable task) {
+            this.name = name;
+            this.task = task;
+            setAt(at);
+        }
+
+        private void setAt(ZonedDateTime at) {
+            this.at = at;
+            this.atMillis = at.toInstant().toEpochMilli();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ZonedDateTime getAt() {
+            return at;
+        }
+
+        public boolean isDone() {
+            return state.get() != ARMED;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * Disarms the deadline. Threads waiting in {@link #await()} are released.
+         * @return true if the deadline was armed, false if it already fired or was cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(ARMED, CANCELLED)) {
+                return false;
+            }
+            queue.remove(this);
+            done.countDown();
+            return true;
+        }
+
+        /**
+         * Moves the deadline, e.g. to extend a running recording.
+         * @return true if it was moved, false if it already fired (or is firing) or was cancelled
+         */
+        public synchronized boolean reschedule(ZonedDateTime newAt) {
+            if (state.get() != ARMED || !queue.remove(this)) {
+                return false;
+            }
+            setAt(newAt);
+            queue.add(this);
+            return true;
+        }
+
+        /**
+         * Blocks until the deadline fires or is cancelled.
+         * @return true if it fired, false if it was cancelled
+         */
+        public boolean await() throws InterruptedException {
+            done.await();
+            return state.get() == FIRED;
+        }
+
+        private void fire() {
+            if (!state.compareAndSet(ARMED, FIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LogHelper.LogError(String.format("[SCHEDULER] Deadline '%s' failed: %s", name, LogHelper.printStackTrace(t)));
+            } finally {
+                done.countDown();
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(atMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof Deadline d) {
+                return Long.compare(atMillis, d.atMillis);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+}
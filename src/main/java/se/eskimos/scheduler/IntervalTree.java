@@ -0,0 +1,191 @@
+package se.eskimos.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Half-open intervals [start, end) with values, in an AVL tree ordered by start and augmented with the
+ * largest end of each subtree. Insert and remove take O(log n), finding the k intervals that overlap a
+ * range takes O(log n + k). Equal intervals are allowed.
+ * @param <T> Value type
+ */
+public class IntervalTree<T> {
+
+    private final class Node {
+        final long start;
+        final long end;
+        final T value;
+        Node left;
+        Node right;
+        long maxEnd;
+        int height = 1;
+
+        Node(long start, long end, T value) {
+            this.start = start;
+            this.end = end;
+            this.value = value;
+            this.maxEnd = end;
+        }
+    }
+
+    private Node root;
+    private int size;
+
+    /**
+     * Adds an interval.
+     * @throws IllegalArgumentException if end is not after start
+     */
+    public void add(long start, long end, T value) {
+        if (end <= start) {
+            throw new IllegalArgumentException("Interval end must be after start: [" + start + ", " + end + ")");
+        }
+        root = insert(root, new Node(start, end, value));
+        size++;
+    }
+
+    /**
+     * Removes one interval with exactly these bounds and an equal value.
+     * @return true if an interval was removed
+     */
+    public boolean remove(long start, long end, T value) {
+        int before = size;
+        root = delete(root, start, end, value);
+        return size < before;
+    }
+
+    /**
+     * @return Values of all intervals overlapping [start, end), ordered by interval start
+     */
+    public List<T> overlapping(long start, long end) {
+        List<T> result = new ArrayList<>();
+        collect(root, start, end, result);
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Height of the tree, the balance is checked by the tests
+    int height() {
+        return height(root);
+    }
+
+    private void collect(Node node, long start, long end, List<T> result) {
+        // No interval in this subtree ends after start
+        if (node == null || node.maxEnd <= start) {
+            return;
+        }
+        collect(node.left, start, end, result);
+        if (node.start < end && start < node.end) {
+            result.add(node.value);
+        }
+        // Everything to the right starts at or after this node
+        if (node.start < end) {
+            collect(node.right, start, end, result);
+        }
+    }
+
+    private Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (added.start < node.start) {
+            node.left = insert(node.left, added);
+        } else {
+            node.right = insert(node.right, added);
+        }
+        return balance(node);
+    }
+
+    private Node delete(Node node, long start, long end, T value) {
+        if (node == null) {
+            return null;
+        }
+        if (start < node.start) {
+            node.left = delete(node.left, start, end, value);
+        } else if (start > node.start || node.end != end || !Objects.equals(node.value, value)) {
+            // Equal starts can be on both sides after rotations
+            int before = size;
+            node.right = delete(node.right, start, end, value);
+            if (size == before && start == node.start) {
+                node.left = delete(node.left, start, end, value);
+            }
+        } else {
+            size--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            Node replacement = new Node(successor.start, successor.end, successor.value);
+            replacement.right = removeMin(node.right);
+            replacement.left = node.left;
+            return balance(replacement);
+        }
+        return balance(node);
+    }
+
+    private Node removeMin(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeMin(node.left);
+        return balance(node);
+    }
+
+    private Node balance(Node node) {
+        update(node);
+        int diff = height(node.left) - height(node.right);
+        if (diff > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (diff < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private void update(Node node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        node.maxEnd = Math.max(node.end, Math.max(maxEnd(node.left), maxEnd(node.right)));
+    }
+
+    private int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private long maxEnd(Node node) {
+        return node == null ? Long.MIN_VALUE : node.maxEnd;
+    }
+}
@@ -0,0 +1,65 @@
+package se.eskimos.scheduler;
+
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import se.eskimos.helpers.DateTimeHelper;
+
+/**
+ * A recording's start and stop as absolute times. Start and stop are given as wall clock times,
+ * a stop time before (or equal to) the start time means the recording crosses midnight.
+ */
+public record RecordingWindow(ZonedDateTime start, ZonedDateTime stop) {
+
+    /**
+     * Resolves HH:mm start and stop times to the nearest window that has not ended yet:
+     * the one that started yesterday if it crosses midnight and is still running, otherwise today's,
+     * and tomorrow's if today's has already ended.
+     * @param startTime Start time text
+     * @param stopTime Stop time text
+     * @param formatter Formatter for the time texts (a flexible H:mm fallback is always tried)
+     * @param zone Time zone of the wall clock times
+     * @return The resolved window
+     */
+    public static RecordingWindow resolve(String startTime, String stopTime, DateTimeFormatter formatter, ZoneId zone) {
+        return resolve(DateTimeHelper.parseFlexibleLocalTime(startTime, formatter),
+            DateTimeHelper.parseFlexibleLocalTime(stopTime, formatter), ZonedDateTime.now(zone));
+    }
+
+    /**
+     * Resolves the window relative to the given current time.
+     */
+    public static RecordingWindow resolve(LocalTime startTime, LocalTime stopTime, ZonedDateTime now) {
+        for (int dayOffset = -1; dayOffset <= 0; dayOffset++) {
+            RecordingWindow window = onDay(startTime, stopTime, now.plusDays(dayOffset));
+            if (window.stop().isAfter(now)) {
+                return window;
+            }
+        }
+        return onDay(startTime, stopTime, now.plusDays(1));
+    }
+
+    private static RecordingWindow onDay(LocalTime startTime, LocalTime stopTime, ZonedDateTime day) {
+        ZonedDateTime start = ZonedDateTime.of(day.toLocalDate(), startTime, day.getZone());
+        ZonedDateTime stop = ZonedDateTime.of(day.toLocalDate(), stopTime, day.getZone());
+        if (!stop.isAfter(start)) {
+            stop = stop.plusDays(1);
+        }
+        return new RecordingWindow(start, stop);
+    }
+
+    /**
+     * @return true if the stop time is on the day after the start time
+     */
+    public boolean crossesMidnight() {
+        return !stop.toLocalDate().equals(start.toLocalDate());
+    }
+
+    /**
+     * @return true if the window has started but not ended at the given time
+     */
+    public boolean isRunning(ZonedDateTime now) {
+        return !now.isBefore(start) && now.isBefore(stop);
+    }
+}
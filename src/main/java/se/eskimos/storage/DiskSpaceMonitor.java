@@ -0,0 +1,157 @@
+package se.eskimos.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.function.Supplier;
+import se.eskimos.admission.BandwidthGovernor;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+import se.eskimos.metrics.Metrics;
+import se.eskimos.metrics.MetricsFiles;
+import se.eskimos.recorder.JobRegistry;
+import se.eskimos.recorder.RecordingJob;
+import se.eskimos.scheduler.DeadlineScheduler;
+
+/**
+ * Watches the free space of the volume a recorder writes to while it records. Every interval it projects
+ * what the running recordings on the volume still need, from each one's measured bitrate and the time left
+ * until its stop, and compares it with the usable space minus a reserve.
+ *
+ * When the space will run out the policy decides: alert only logs it, stop ends the lowest priority recording
+ * on the volume and failover moves it to another volume. As with the bandwidth limit only the lowest
+ * priority recording acts and a decision is given a few intervals to show in the free space.
+ */
+public class DiskSpaceMonitor {
+
+    /**
+     * What happens when the volume will run out of space.
+     */
+    public enum Policy {
+        ALERT, STOP, FAILOVER;
+
+        /**
+         * @return The policy, ALERT for unknown names
+         */
+        public static Policy parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return ALERT;
+            }
+        }
+    }
+
+    /**
+     * What the lowest priority recording does under the stop and failover policies.
+     */
+    public interface Actions {
+        /**
+         * Continues the recording on the failover volume.
+         * @return false if it cannot be moved
+         */
+        boolean failover();
+
+        /** Ends the recording */
+        void stop();
+    }
+
+    private static final String DECISION_FILE = "disk.last";
+    private static final int SETTLE_INTERVALS = 3;
+
+    private final String stateDir;
+    private final String jobId;
+    private final Supplier<String> outputDir;
+    private final Policy policy;
+    private final long reserveBytes;
+    private final int intervalSeconds;
+    private final Actions actions;
+    private boolean alerted;
+
+    /**
+     * @param outputDir Directory this recorder writes to, read at every check as it can move to another volume
+     * @param reserveBytes Space that is kept free on the volume
+     * @param intervalSeconds Metrics export interval, the check runs as often
+     */
+    public DiskSpaceMonitor(String stateDir, String jobId, Supplier<String> outputDir, Policy policy, long reserveBytes, int intervalSeconds, Actions actions) {
+        if (intervalSeconds <= 0) {
+            throw new IllegalArgumentException("The metrics interval must be > 0");
+        }
+        this.stateDir = stateDir;
+        this.jobId = jobId;
+        this.outputDir = outputDir;
+        this.policy = policy;
+        this.reserveBytes = Math.max(0, reserveBytes);
+        this.intervalSeconds = intervalSeconds;
+        this.actions = actions;
+    }
+
+    /**
+     * Checks the volume every interval until the process exits.
+     */
+    public void start() {
+        DeadlineScheduler.getDefault().schedule("disk", ZonedDateTime.now().plusSeconds(intervalSeconds), () -> {
+            try {
+                check();
+            } catch (IOException | RuntimeException e) {
+                LogHelper.LogWarning(String.format(TextHelper.DISK_CHECK_FAILED, outputDir.get(), e.getMessage()));
+            }
+            start();
+        });
+    }
+
+    /**
+     * Projects the space the recordings on the volume still need and acts if it is not there.
+     */
+    void check() throws IOException {
+        String dir = outputDir.get();
+        FileStore store = Files.getFileStore(Path.of(dir));
+        long usable = store.getUsableSpace();
+        long now = System.currentTimeMillis();
+        JobRegistry registry = new JobRegistry(stateDir);
+        long needed = 0;
+        MetricsFiles.Samples bitrates = MetricsFiles.read(stateDir, BandwidthGovernor.BITRATE_METRIC);
+        for (RecordingJob job : registry.list()) {
+            if (job.getStatus() == RecordingJob.Status.RECORDING && job.getStopAt() > now && VolumePlacement.isOn(store, job.getOutputDir())) {
+                // Attached jobs get the bitrate of the connection they are recorded from
+                String source = job.getAttachedTo().isEmpty() ? job.getId() : job.getAttachedTo();
+                double bitsPerSecond = bitrates.sum("job=\"" + source + "\"");
+                needed += (long) (bitsPerSecond / 8 * (job.getStopAt() - now) / 1000);
+            }
+        }
+        String labels = Metrics.labels("job", jobId, "path", dir);
+        Metrics.get().setGauge("iptv_disk_usable_bytes", labels, usable);
+        Metrics.get().setGauge("iptv_disk_projected_bytes", labels, needed);
+        if (needed + reserveBytes <= usable) {
+            alerted = false;
+            return;
+        }
+        if (!alerted) {
+            LogHelper.LogWarning(String.format(TextHelper.DISK_SPACE_LOW, store, needed / (1024 * 1024), usable / (1024 * 1024), reserveBytes / (1024 * 1024), policy));
+            Metrics.get().increment("iptv_disk_pressure_total", Metrics.labels("job", jobId, "policy", policy.name().toLowerCase()));
+            alerted = true;
+        }
+        if (policy == Policy.ALERT) {
+            return;
+        }
+        File decision = new File(stateDir, DECISION_FILE);
+        if (decision.lastModified() > now - SETTLE_INTERVALS * intervalSeconds * 1000L) {
+            return;
+        }
+        RecordingJob lowest = registry.lowestPriorityRecording(job -> VolumePlacement.isOn(store, job.getOutputDir()));
+        if (lowest == null || !lowest.getId().equals(jobId)) {
+            return;
+        }
+        if (!decision.createNewFile()) {
+            decision.setLastModified(now);
+        }
+        alerted = false;
+        if (policy == Policy.FAILOVER && actions.failover()) {
+            return;
+        }
+        actions.stop();
+    }
+}
@@ -0,0 +1,296 @@
+package se.eskimos.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+
+/**
+ * Channel logos (tvg-logo) shared by all recordings, kept in &lt;stateDir&gt;/logos. Images are stored once
+ * under the SHA-256 of their content, and a small file per URL remembers which image it gave and its ETag
+ * and Last-Modified, so a logo is revalidated with a conditional request instead of downloaded again.
+ *
+ * Logos are fetched on a background thread and hard-linked into the recording folder (copied where links
+ * are not possible), so a slow logo server never delays the start of a recording. Several processes can
+ * share the directory, every file is written to a temp file and moved.
+ */
+public class LogoCache {
+
+    private static final String CACHE_DIR = "logos";
+    private static final String IMAGE_SUFFIX = ".img";
+    private static final String URL_SUFFIX = ".url";
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 30_000;
+    // Anything larger is not a logo
+    private static final long MAX_BYTES = 10L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 8192;
+
+    // A downloaded image with the validators the server sent
+    private record Download(Path file, String etag, String lastModified) {}
+
+    private final File dir;
+    private final long revalidateMillis;
+    // One thread: requests for the same logo run one after the other and the second finds it cached
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "logo-cache");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param stateDir Directory for runtime state, empty to download every logo straight into its folder
+     * @param revalidateHours Cached logos are used without asking the server for this long
+     */
+    public LogoCache(String stateDir, int revalidateHours) {
+        this.dir = stateDir == null || stateDir.isEmpty() ? null : new File(stateDir, CACHE_DIR);
+        this.revalidateMillis = Math.max(0, revalidateHours) * 3_600_000L;
+    }
+
+    /**
+     * Fetches a logo in the background and puts it at dest, the folder is created if needed.
+     * @return Completes with true once the logo is in place, false if it could not be fetched
+     */
+    public CompletableFuture<Boolean> fetchInto(String logoUrl, String channelName, File dest) {
+        String channel = channelName != null ? channelName : "?";
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                File parent = dest.getParentFile();
+                if (parent != null) {
+                    parent.mkdirs();
+                }
+                if (dir == null) {
+                    download(logoUrl, dest.toPath(), null);
+                } else {
+                    link(resolve(logoUrl), dest.toPath());
+                }
+                LogHelper.Log(String.format(TextHelper.REGULAR_DOWNLOADED_TVG_LOGO, channel));
+                return true;
+            } catch (IOException | RuntimeException e) {
+                LogHelper.LogWarning(String.format(TextHelper.REGULAR_FAILED_TO_DOWNLOAD_TVG_LOGO, channel, e.getMessage()));
+                return false;
+            }
+        }, executor);
+    }
+
+    /**
+     * Fetches a logo into the cache in the background, e.g. while a recording waits for its start.
+     */
+    public void prefetch(String logoUrl) {
+        if (dir == null) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                resolve(logoUrl);
+            } catch (IOException | RuntimeException e) {
+                LogHelper.LogDebug(String.format(TextHelper.LOGO_CACHE_FAILED, logoUrl, e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Lets queued logos finish, then stops the background thread.
+     * @return false if they did not finish in time
+     */
+    public boolean shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return The cached image of the URL, fetched or revalidated first if needed
+     * @throws IOException if there is neither a usable answer nor a cached image
+     */
+    private Path resolve(String logoUrl) throws IOException {
+        dir.mkdirs();
+        File urlFile = new File(dir, sha256(logoUrl.getBytes(StandardCharsets.UTF_8)) + URL_SUFFIX);
+        Properties entry = readEntry(urlFile);
+        Path cached = entry != null ? new File(dir, entry.getProperty("image", "")).toPath() : null;
+        if (cached != null && !Files.isRegularFile(cached)) {
+            cached = null;
+        }
+        long now = System.currentTimeMillis();
+        if (cached != null && now - Long.parseLong(entry.getProperty("checkedAt", "0")) < revalidateMillis) {
+            return cached;
+        }
+        try {
+            Properties next = new Properties();
+            Download download = download(logoUrl, null, cached != null ? entry : null);
+            Path image;
+            if (download == null) {
+                // Not modified
+                next.putAll(entry);
+                image = cached;
+            } else {
+                image = download.file();
+                next.setProperty("image", image.getFileName().toString());
+                next.setProperty("etag", download.etag());
+                next.setProperty("lastModified", download.lastModified());
+            }
+            next.setProperty("url", logoUrl);
+            next.setProperty("checkedAt", Long.toString(now));
+            writeEntry(urlFile, next);
+            if (cached != null && !cached.equals(image)) {
+                LogHelper.LogDebug(String.format(TextHelper.LOGO_CHANGED, logoUrl));
+                removeIfUnused(cached);
+            }
+            return image;
+        } catch (IOException e) {
+            if (cached == null) {
+                throw e;
+            }
+            LogHelper.LogWarning(String.format(TextHelper.LOGO_REVALIDATE_FAILED, logoUrl, e.getMessage()));
+            return cached;
+        }
+    }
+
+    /**
+     * Downloads a logo, conditionally if a cache entry is given.
+     * @param target File to write, null to store it in the cache under its hash
+     * @return The written file, null if the server answered that the cached image is current
+     */
+    private Download download(String logoUrl, Path target, Properties entry) throws IOException {
+        if (!logoUrl.startsWith("http://") && !logoUrl.startsWith("https://")) {
+            throw new IllegalArgumentException("Not an http(s) URL: " + logoUrl);
+        }
+        HttpURLConnection conn = (HttpURLConnection) java.net.URI.create(logoUrl).toURL().openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(READ_TIMEOUT_MS);
+        if (entry != null) {
+            if (!entry.getProperty("etag", "").isEmpty()) {
+                conn.setRequestProperty("If-None-Match", entry.getProperty("etag"));
+            }
+            if (!entry.getProperty("lastModified", "").isEmpty()) {
+                conn.setRequestProperty("If-Modified-Since", entry.getProperty("lastModified"));
+            }
+        }
+        try {
+            int code = conn.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+                return null;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + code);
+            }
+            Path tmpDir = target != null ? target.toAbsolutePath().getParent() : dir.toPath();
+            // Not createTempFile, its owner-only permissions would carry over to the poster
+            Path tmp = tmpDir.resolve(".logo-" + ProcessHandle.current().pid() + "-" + System.nanoTime() + ".tmp");
+            try {
+                MessageDigest digest = sha256();
+                long total = 0;
+                try (InputStream in = conn.getInputStream(); OutputStream out = new FileOutputStream(tmp.toFile())) {
+                    byte[] buf = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = in.read(buf)) != -1) {
+                        total += read;
+                        if (total > MAX_BYTES) {
+                            throw new IOException("Larger than " + MAX_BYTES / (1024 * 1024) + " MB");
+                        }
+                        digest.update(buf, 0, read);
+                        out.write(buf, 0, read);
+                    }
+                }
+                Path result = target != null ? target : dir.toPath().resolve(HexFormat.of().formatHex(digest.digest()) + IMAGE_SUFFIX);
+                // An image already in the cache (same logo under another URL, or unchanged content) is kept
+                if (target != null || !Files.isRegularFile(result)) {
+                    Files.move(tmp, result, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return new Download(result, header(conn, "ETag"), header(conn, "Last-Modified"));
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    // Recordings keep their links, the cache only drops an image no URL gives any more
+    private void removeIfUnused(Path image) {
+        File[] entries = dir.listFiles((d, name) -> name.endsWith(URL_SUFFIX));
+        if (entries == null) {
+            return;
+        }
+        String name = image.getFileName().toString();
+        for (File file : entries) {
+            Properties entry = readEntry(file);
+            if (entry != null && name.equals(entry.getProperty("image"))) {
+                return;
+            }
+        }
+        try {
+            Files.deleteIfExists(image);
+        } catch (IOException e) {
+            LogHelper.LogDebug(String.format(TextHelper.LOGO_CACHE_FAILED, image, e.getMessage()));
+        }
+    }
+
+    // Replaces dest with a hard link to the cached image, or a copy on another volume
+    private static void link(Path image, Path dest) throws IOException {
+        Files.deleteIfExists(dest);
+        try {
+            Files.createLink(dest, image);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(image, dest, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Properties readEntry(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (var in = new FileInputStream(file)) {
+            props.load(in);
+            return props;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeEntry(File file, Properties props) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (var out = new FileOutputStream(tmp)) {
+            props.store(out, null);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String header(HttpURLConnection conn, String name) {
+        String value = conn.getHeaderField(name);
+        return value != null ? value : "";
+    }
+
+    private static String sha256(byte[] data) {
+        return HexFormat.of().formatHex(sha256().digest(data));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package se.eskimos.storage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import se.eskimos.helpers.SportsEventsHelper;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+import se.eskimos.recorder.RecordingJob;
+
+/**
+ * Catalog of finished recordings in &lt;stateDir&gt;/recordings.catalog, so they can be found without walking
+ * the recordings tree and decoding folder names. The file is only appended to, one line per entry, by every
+ * recorder when it finishes and by post-processing and verification when they change a recording. A later
+ * entry for the same job replaces the earlier one, a removal line (written when retention deletes the
+ * recording) drops it.
+ *
+ * Loaded into memory with indexes by date, channel and sport, a query looks only at the entries of the most
+ * selective index it is given.
+ */
+public class RecordingCatalog {
+
+    /**
+     * One recording.
+     * @param date Date of the recording (yyyy-MM-dd)
+     * @param sports Sports and stages found in the channel name, e.g. Cykling, Etapp_5
+     * @param scheduledStart Start of the window it was scheduled for, epoch millis
+     * @param recordedFrom When the first file was opened, epoch millis (0 if it never was)
+     * @param recordedTo When the recorder finished, epoch millis
+     * @param status Final job status (DONE, FAILED, ...)
+     * @param verified ok, failed or empty if it was not verified
+     * @param files The files in order, more than one if it moved to another volume
+     */
+    public record Entry(String id, String date, String channel, String tvgId, String group, List<String> sports,
+                        long scheduledStart, long scheduledStop, long recordedFrom, long recordedTo, long size,
+                        String status, String verified, List<String> files) {
+
+        /**
+         * @return The entry of a finished job, its size from the files as they are now
+         */
+        public static Entry of(RecordingJob job) {
+            return new Entry(job.getId(), job.getDate(), job.getChannelName(), job.getTvgId(), job.getGroupTitle(),
+                List.of(SportsEventsHelper.extractAllEventsAndStages(job.getChannelName())), job.getStartAt(), job.getStopAt(),
+                job.getRecordedFrom(), job.getRecordedTo(), sizeOf(job.getFiles()), job.getStatus().name(), job.getVerified(), job.getFiles());
+        }
+
+        /**
+         * @return The same recording in other files, e.g. after post-processing
+         */
+        public Entry withFiles(List<String> files) {
+            return new Entry(id, date, channel, tvgId, group, sports, scheduledStart, scheduledStop, recordedFrom,
+                recordedTo, sizeOf(files), status, verified, List.copyOf(files));
+        }
+
+        public Entry withVerified(String verified) {
+            return new Entry(id, date, channel, tvgId, group, sports, scheduledStart, scheduledStop, recordedFrom,
+                recordedTo, size, status, verified, files);
+        }
+    }
+
+    /**
+     * What to look for, empty criteria match everything.
+     * @param from First date, a prefix such as 2025 or 2025-05 is the start of that year or month
+     * @param to Last date, a prefix is the end of that year or month
+     * @param channel Part of the channel name, or the tvg-id
+     * @param sport Part of a sport or stage, e.g. cykling or etapp
+     * @param status Job status or verification outcome, e.g. failed
+     */
+    public record Query(String from, String to, String channel, String sport, String status) {
+
+        /**
+         * Parses date=, from=, to=, channel=, sport= and status= arguments.
+         * @throws IllegalArgumentException for other arguments
+         */
+        public static Query parse(List<String> args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                String key = eq < 0 ? "" : arg.substring(0, eq).trim().toLowerCase();
+                if (!List.of("date", "from", "to", "channel", "sport", "status").contains(key)) {
+                    throw new IllegalArgumentException("Unknown catalog query: " + arg);
+                }
+                values.put(key, arg.substring(eq + 1).trim());
+            }
+            String date = values.getOrDefault("date", "");
+            return new Query(values.getOrDefault("from", date), values.getOrDefault("to", date),
+                values.getOrDefault("channel", "").toLowerCase(), values.getOrDefault("sport", "").toLowerCase(),
+                values.getOrDefault("status", "").toLowerCase());
+        }
+
+        boolean matches(Entry e) {
+            return (from.isEmpty() || e.date().compareTo(from) >= 0)
+                && (to.isEmpty() || e.date().compareTo(to + Character.MAX_VALUE) <= 0)
+                && (channel.isEmpty() || e.channel().toLowerCase().contains(channel) || e.tvgId().equalsIgnoreCase(channel))
+                && (sport.isEmpty() || e.sports().stream().anyMatch(s -> s.toLowerCase().contains(sport)))
+                && (status.isEmpty() || e.status().equalsIgnoreCase(status) || e.verified().equalsIgnoreCase(status));
+        }
+    }
+
+    private static final String CATALOG_FILE = "recordings.catalog";
+    private static final String HEADER = "# IPTV-Recorder recording catalog";
+    private static final int FIELDS = 15;
+    // First field of a line that removes the job's entry
+    private static final String REMOVED = "D";
+
+    private final File file;
+    private final Map<String, Entry> byId = new HashMap<>();
+    private final Map<String, Entry> byFile = new HashMap<>();
+    private final TreeMap<String, List<Entry>> byDate = new TreeMap<>();
+    private final Map<String, List<Entry>> byChannel = new HashMap<>();
+    private final Map<String, List<Entry>> bySport = new HashMap<>();
+
+    /**
+     * @param stateDir Directory for runtime state (created if missing)
+     */
+    public RecordingCatalog(String stateDir) {
+        File dir = new File(stateDir);
+        dir.mkdirs();
+        this.file = new File(dir, CATALOG_FILE);
+    }
+
+    /**
+     * Appends an entry to the file. The loaded indexes are not changed.
+     */
+    public void append(Entry e) throws IOException {
+        StringBuilder line = new StringBuilder("R");
+        for (String field : List.of(escape(e.id()), escape(e.date()), escape(e.channel()), escape(e.tvgId()), escape(e.group()),
+                join(e.sports()), Long.toString(e.scheduledStart()), Long.toString(e.scheduledStop()), Long.toString(e.recordedFrom()),
+                Long.toString(e.recordedTo()), Long.toString(e.size()), escape(e.status()), escape(e.verified()), join(e.files()))) {
+            line.append('\t').append(field);
+        }
+        line.append('\n');
+        write(line.toString());
+    }
+
+    /**
+     * Appends a removal of the job's entry, e.g. once retention has deleted its files.
+     */
+    public void remove(String id) throws IOException {
+        write(REMOVED + "\t" + escape(id) + "\n");
+    }
+
+    // Under a lock so lines of concurrent recorders do not mix
+    private void write(String line) throws IOException {
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            FileLock lock = out.lock();
+            try {
+                ByteBuffer data = StandardCharsets.UTF_8.encode((out.size() == 0 ? HEADER + "\n" : "") + line);
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Reads the file and builds the indexes, lines that cannot be read are skipped.
+     * @return Number of recordings in the catalog
+     */
+    public synchronized int load() {
+        byId.clear();
+        if (file.exists()) {
+            int skipped = 0;
+            try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    if (line.startsWith(REMOVED + "\t")) {
+                        byId.remove(unescape(line.substring(REMOVED.length() + 1)));
+                        continue;
+                    }
+                    Entry e = parse(line);
+                    if (e == null) {
+                        skipped++;
+                    } else {
+                        byId.put(e.id(), e);
+                    }
+                }
+            } catch (IOException e) {
+                LogHelper.LogWarning(String.format(TextHelper.CATALOG_READ_FAILED, file, e.getMessage()));
+            }
+            if (skipped > 0) {
+                LogHelper.LogWarning(String.format(TextHelper.CATALOG_LINES_SKIPPED, skipped, file));
+            }
+        }
+        byFile.clear();
+        byDate.clear();
+        byChannel.clear();
+        bySport.clear();
+        for (Entry e : byId.values()) {
+            byDate.computeIfAbsent(e.date(), k -> new ArrayList<>()).add(e);
+            byChannel.computeIfAbsent(e.channel().toLowerCase(), k -> new ArrayList<>()).add(e);
+            if (!e.tvgId().isEmpty()) {
+                byChannel.computeIfAbsent(e.tvgId().toLowerCase(), k -> new ArrayList<>()).add(e);
+            }
+            for (String sport : e.sports()) {
+                bySport.computeIfAbsent(sport.toLowerCase(), k -> new ArrayList<>()).add(e);
+            }
+        }
+        return byId.size();
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    /**
+     * @return The loaded entry of a job, null if it is not in the catalog
+     */
+    public synchronized Entry get(String id) {
+        return byId.get(id);
+    }
+
+    /**
+     * @return The loaded entry the file belongs to, null if none
+     */
+    public synchronized Entry findByFile(Path path) {
+        // Only verification looks files up, the index is built for it
+        if (byFile.isEmpty()) {
+            for (Entry e : byId.values()) {
+                e.files().forEach(f -> byFile.put(normalize(f), e));
+            }
+        }
+        return byFile.get(normalize(path.toString()));
+    }
+
+    /**
+     * @return The loaded entries with a file below the directory
+     */
+    public synchronized List<Entry> findUnder(Path dir) {
+        Path base = Path.of(normalize(dir.toString()));
+        List<Entry> found = new ArrayList<>();
+        for (Entry e : byId.values()) {
+            if (e.files().stream().anyMatch(f -> Path.of(normalize(f)).startsWith(base))) {
+                found.add(e);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return The loaded entries that match, by scheduled start
+     */
+    public synchronized List<Entry> query(Query q) {
+        // Only the entries of the most selective index that applies are looked at
+        Collection<Entry> candidates = byId.values();
+        if (!q.from().isEmpty() || !q.to().isEmpty()) {
+            candidates = narrow(candidates, (q.to().isEmpty() ? byDate.tailMap(q.from(), true)
+                : byDate.subMap(q.from(), true, q.to() + Character.MAX_VALUE, true)).values());
+        }
+        if (!q.channel().isEmpty()) {
+            candidates = narrow(candidates, matchingKeys(byChannel, q.channel()));
+        }
+        if (!q.sport().isEmpty()) {
+            candidates = narrow(candidates, matchingKeys(bySport, q.sport()));
+        }
+        List<Entry> result = new ArrayList<>();
+        for (Entry e : candidates) {
+            if (q.matches(e)) {
+                result.add(e);
+            }
+        }
+        result.sort(Comparator.comparingLong(Entry::scheduledStart).thenComparing(Entry::id));
+        return result;
+    }
+
+    // Lists of every key that contains the term, there are far fewer keys than entries
+    private static List<List<Entry>> matchingKeys(Map<String, List<Entry>> index, String term) {
+        List<List<Entry>> lists = new ArrayList<>();
+        for (Map.Entry<String, List<Entry>> key : index.entrySet()) {
+            if (key.getKey().contains(term)) {
+                lists.add(key.getValue());
+            }
+        }
+        return lists;
+    }
+
+    // The entries of the lists if there are fewer than the candidates so far, counted before they are copied
+    private static Collection<Entry> narrow(Collection<Entry> current, Collection<List<Entry>> lists) {
+        int size = 0;
+        for (List<Entry> list : lists) {
+            size += list.size();
+            if (size >= current.size()) {
+                return current;
+            }
+        }
+        // An entry can be under several keys (channel name and tvg-id, several sports)
+        Set<Entry> entries = Collections.newSetFromMap(new IdentityHashMap<>(size));
+        lists.forEach(entries::addAll);
+        return entries;
+    }
+
+    private static Entry parse(String line) {
+        String[] f = line.split("\t", -1);
+        if (f.length < FIELDS || !"R".equals(f[0])) {
+            return null;
+        }
+        try {
+            return new Entry(unescape(f[1]), unescape(f[2]), unescape(f[3]), unescape(f[4]), unescape(f[5]), split(f[6]),
+                Long.parseLong(f[7]), Long.parseLong(f[8]), Long.parseLong(f[9]), Long.parseLong(f[10]), Long.parseLong(f[11]),
+                unescape(f[12]), unescape(f[13]), split(f[14]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Elements are escaped one by one, so a | inside one (\p) does not split it
+    private static String join(List<String> values) {
+        StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            joined.append(joined.length() == 0 ? "" : "|").append(escape(value));
+        }
+        return joined.toString();
+    }
+
+    private static List<String> split(String joined) {
+        if (joined.isEmpty()) {
+            return List.of();
+        }
+        List<String> values = new ArrayList<>();
+        for (String value : joined.split("\\|", -1)) {
+            values.add(unescape(value));
+        }
+        return List.copyOf(values);
+    }
+
+    private static long sizeOf(List<String> files) {
+        long size = 0;
+        for (String f : files) {
+            size += new File(f).length();
+        }
+        return size;
+    }
+
+    private static String normalize(String path) {
+        return Path.of(path).toAbsolutePath().normalize().toString();
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "").replace("|", "\\p");
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                out.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'p' ? '|' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
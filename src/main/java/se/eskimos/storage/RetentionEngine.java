@@ -0,0 +1,456 @@
+package se.eskimos.storage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+
+/**
+ * Evicts recordings from a recordings tree (&lt;root&gt;/&lt;channel&gt;/&lt;date_start_stop&gt;/) by age, by a
+ * quota on the total size and by keeping the newest N per channel. A recording directory with its files is
+ * the unit that is evicted; under the quota the least recently used recordings go first.
+ *
+ * The tree is scanned fully only once, the index is saved in the state directory. Later runs list the root
+ * and relist only the channel directories whose modification time changed, plus the recordings that were
+ * still being written. A long running process also keeps the index current with a WatchService on the root
+ * and channel directories, so a run does not touch the file system beyond what changed.
+ *
+ * Recordings in progress are never evicted: those the caller reports as in use (files of active jobs) and
+ * those with a file modified during the last minutes.
+ */
+public class RetentionEngine {
+
+    /**
+     * What is kept. Zero disables a limit.
+     * @param maxAgeDays Recordings older than this are evicted
+     * @param maxTotalBytes Least recently used recordings are evicted until the tree is below this size
+     * @param keepPerChannel Only the newest recordings of a channel are kept
+     */
+    public record Policy(int maxAgeDays, long maxTotalBytes, int keepPerChannel) {
+        public boolean isEnabled() {
+            return maxAgeDays > 0 || maxTotalBytes > 0 || keepPerChannel > 0;
+        }
+    }
+
+    /**
+     * An evicted recording and the limit that evicted it (age, quota or keep).
+     */
+    public record Eviction(Path dir, long bytes, String reason) {}
+
+    // One recording directory
+    private static final class Entry {
+        final String path;
+        final String channel;
+        long dirModified;
+        long size;
+        long modified;
+        long accessed;
+        // Still written when last statted, re-statted until size and modification time settle
+        boolean open;
+
+        Entry(String path, String channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+
+    // Files modified this recently belong to a recording that may still be written
+    private static final long OPEN_GRACE_MILLIS = 15 * 60_000L;
+    private static final String INDEX_HEADER = "# IPTV-Recorder retention index";
+
+    private final Path root;
+    private final File indexFile;
+    private final Policy policy;
+    private final Map<String, Entry> entries = new HashMap<>();
+    // Least recently used first
+    private final TreeSet<Entry> lru = new TreeSet<>(Comparator.comparingLong((Entry e) -> e.accessed).thenComparing(e -> e.path));
+    private final Map<String, Long> channels = new HashMap<>();
+    private final Set<String> dirtyChannels = ConcurrentHashMap.newKeySet();
+    private volatile boolean rootDirty = true;
+    private long totalBytes;
+    private WatchService watcher;
+    private final Map<WatchKey, String> watchedChannels = new ConcurrentHashMap<>();
+
+    /**
+     * @param root Recordings tree (destinationPath)
+     * @param stateDir Directory the index is saved in
+     */
+    public RetentionEngine(String root, String stateDir, Policy policy) {
+        this.root = Path.of(root).toAbsolutePath().normalize();
+        File dir = new File(stateDir, "retention");
+        dir.mkdirs();
+        this.indexFile = new File(dir, Integer.toHexString(this.root.toString().hashCode()) + ".index");
+        this.policy = policy;
+    }
+
+    /**
+     * Loads the saved index, or scans the tree if there is none. The changes since it was saved are picked
+     * up by the next run.
+     */
+    public synchronized void load() {
+        if (!indexFile.exists() || !readIndex()) {
+            entries.clear();
+            lru.clear();
+            channels.clear();
+            totalBytes = 0;
+            LogHelper.Log(String.format(TextHelper.RETENTION_SCANNING, root));
+        }
+        rootDirty = true;
+    }
+
+    /**
+     * Keeps the index current from file system events until the process exits.
+     */
+    public synchronized void watch() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        watcher = root.getFileSystem().newWatchService();
+        if (Files.isDirectory(root)) {
+            watchedChannels.put(root.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE), "");
+        }
+        for (String channel : channels.keySet()) {
+            register(channel);
+        }
+        Thread t = new Thread(this::drainEvents, "retention-watch");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Brings the index up to date, evicts what the policy does not keep and saves the index.
+     * @param inUse Recording directories that must not be touched (e.g. holding a file of an active job)
+     * @param dryRun Only report what would be evicted
+     * @return The evicted recordings
+     */
+    public synchronized List<Eviction> run(Predicate<Path> inUse, boolean dryRun) throws IOException {
+        refresh();
+        long now = System.currentTimeMillis();
+        Map<String, String> chosen = new LinkedHashMap<>();
+        Predicate<Entry> protectedEntry = e -> e.open || e.modified > now - OPEN_GRACE_MILLIS || inUse.test(root.resolve(e.path));
+        if (policy.maxAgeDays() > 0) {
+            long cutoff = now - policy.maxAgeDays() * 86_400_000L;
+            for (Entry e : lru) {
+                if (e.modified < cutoff && !protectedEntry.test(e)) {
+                    chosen.put(e.path, "age");
+                }
+            }
+        }
+        if (policy.keepPerChannel() > 0) {
+            Map<String, List<Entry>> byChannel = new HashMap<>();
+            for (Entry e : entries.values()) {
+                byChannel.computeIfAbsent(e.channel, k -> new ArrayList<>()).add(e);
+            }
+            for (List<Entry> list : byChannel.values()) {
+                list.sort(Comparator.comparingLong((Entry e) -> e.modified).reversed());
+                for (int i = policy.keepPerChannel(); i < list.size(); i++) {
+                    Entry e = list.get(i);
+                    if (!protectedEntry.test(e)) {
+                        chosen.putIfAbsent(e.path, "keep");
+                    }
+                }
+            }
+        }
+        if (policy.maxTotalBytes() > 0) {
+            long remaining = totalBytes;
+            for (String path : chosen.keySet()) {
+                remaining -= entries.get(path).size;
+            }
+            for (Entry e : lru) {
+                if (remaining <= policy.maxTotalBytes()) {
+                    break;
+                }
+                if (!chosen.containsKey(e.path) && !protectedEntry.test(e)) {
+                    chosen.put(e.path, "quota");
+                    remaining -= e.size;
+                }
+            }
+        }
+        List<Eviction> evicted = new ArrayList<>();
+        for (Map.Entry<String, String> c : chosen.entrySet()) {
+            Entry e = entries.get(c.getKey());
+            Path dir = root.resolve(e.path);
+            if (!dryRun) {
+                try {
+                    delete(dir);
+                } catch (IOException ex) {
+                    LogHelper.LogWarning(String.format(TextHelper.RETENTION_DELETE_FAILED, dir, ex.getMessage()));
+                    continue;
+                }
+                remove(e);
+            }
+            evicted.add(new Eviction(dir, e.size, c.getValue()));
+        }
+        if (!dryRun) {
+            saveIndex();
+        }
+        return evicted;
+    }
+
+    /**
+     * @return Total size of the indexed recordings
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return Number of indexed recordings
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Relists what changed: the root, changed or dirty channels and recordings that were still written
+    private void refresh() throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        if (rootDirty) {
+            rootDirty = false;
+            Set<String> present = new HashSet<>();
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, Files::isDirectory)) {
+                for (Path dir : dirs) {
+                    String channel = dir.getFileName().toString();
+                    present.add(channel);
+                    Long known = channels.get(channel);
+                    if (known == null || known != Files.getLastModifiedTime(dir).toMillis()) {
+                        dirtyChannels.add(channel);
+                    }
+                }
+            }
+            for (String channel : new ArrayList<>(channels.keySet())) {
+                if (!present.contains(channel)) {
+                    dropChannel(channel);
+                }
+            }
+        }
+        Set<Entry> statted = new HashSet<>();
+        for (String channel : new ArrayList<>(dirtyChannels)) {
+            dirtyChannels.remove(channel);
+            relistChannel(channel, statted);
+        }
+        // Writes inside a recording directory are not seen by the watcher
+        for (Entry e : new ArrayList<>(entries.values())) {
+            if (e.open && !statted.contains(e)) {
+                stat(e);
+            }
+        }
+    }
+
+    // Adds the entries it statted to statted
+    private void relistChannel(String channel, Set<Entry> statted) throws IOException {
+        Path channelDir = root.resolve(channel);
+        if (!Files.isDirectory(channelDir)) {
+            dropChannel(channel);
+            return;
+        }
+        boolean isNew = !channels.containsKey(channel);
+        channels.put(channel, Files.getLastModifiedTime(channelDir).toMillis());
+        if (isNew && watcher != null) {
+            register(channel);
+        }
+        Set<String> present = new HashSet<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(channelDir, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                String path = channel + "/" + dir.getFileName();
+                present.add(path);
+                Entry e = entries.get(path);
+                if (e == null) {
+                    e = new Entry(path, channel);
+                    entries.put(path, e);
+                    lru.add(e);
+                    stat(e);
+                    statted.add(e);
+                } else if (e.dirModified != Files.getLastModifiedTime(dir).toMillis()) {
+                    stat(e);
+                    statted.add(e);
+                }
+            }
+        }
+        for (Entry e : new ArrayList<>(entries.values())) {
+            if (e.channel.equals(channel) && !present.contains(e.path)) {
+                remove(e);
+            }
+        }
+    }
+
+    // Size and newest modification and access of the recording's files
+    private void stat(Entry e) {
+        Path dir = root.resolve(e.path);
+        long size = 0;
+        long modified = 0;
+        long accessed = 0;
+        try {
+            BasicFileAttributes dirAttrs = Files.readAttributes(dir, BasicFileAttributes.class);
+            e.dirModified = dirAttrs.lastModifiedTime().toMillis();
+            modified = e.dirModified;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path f : files) {
+                    BasicFileAttributes attrs = Files.readAttributes(f, BasicFileAttributes.class);
+                    size += attrs.size();
+                    modified = Math.max(modified, attrs.lastModifiedTime().toMillis());
+                    accessed = Math.max(accessed, attrs.lastAccessTime().toMillis());
+                }
+            }
+        } catch (IOException ex) {
+            LogHelper.LogDebug("[RETENTION] Could not read " + dir + ": " + ex.getMessage());
+        }
+        e.open = size != e.size || modified != e.modified
+                || modified > System.currentTimeMillis() - OPEN_GRACE_MILLIS;
+        lru.remove(e);
+        totalBytes += size - e.size;
+        e.size = size;
+        e.modified = modified;
+        // Without access times (noatime) the modification time is the last use
+        e.accessed = Math.max(accessed, modified);
+        lru.add(e);
+    }
+
+    private void remove(Entry e) {
+        lru.remove(e);
+        entries.remove(e.path);
+        totalBytes -= e.size;
+    }
+
+    private void dropChannel(String channel) {
+        channels.remove(channel);
+        for (Entry e : new ArrayList<>(entries.values())) {
+            if (e.channel.equals(channel)) {
+                remove(e);
+            }
+        }
+    }
+
+    private void delete(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                if (Files.isDirectory(f)) {
+                    delete(f);
+                } else {
+                    Files.deleteIfExists(f);
+                }
+            }
+        }
+        Files.deleteIfExists(dir);
+        Path channelDir = dir.getParent();
+        if (!channelDir.equals(root)) {
+            try (DirectoryStream<Path> rest = Files.newDirectoryStream(channelDir)) {
+                if (!rest.iterator().hasNext()) {
+                    Files.deleteIfExists(channelDir);
+                }
+            }
+        }
+    }
+
+    private void register(String channel) {
+        try {
+            Path dir = root.resolve(channel);
+            WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedChannels.put(key, channel);
+        } catch (IOException e) {
+            // The channel is relisted when the root changes
+            LogHelper.LogDebug("[RETENTION] Could not watch " + channel + ": " + e.getMessage());
+        }
+    }
+
+    // Events only mark what to relist, the index itself is changed by run
+    private void drainEvents() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                String channel = watchedChannels.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || channel == null || channel.isEmpty()) {
+                        rootDirty = true;
+                    } else {
+                        dirtyChannels.add(channel);
+                    }
+                }
+                if (!key.reset()) {
+                    watchedChannels.remove(key);
+                    rootDirty = true;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Process is ending
+        }
+    }
+
+    private boolean readIndex() {
+        try (BufferedReader in = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            String rootLine = in.readLine();
+            if (!INDEX_HEADER.equals(header) || rootLine == null || !rootLine.equals("root=" + root)) {
+                return false;
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] f = line.split("\t");
+                if (f.length == 3 && "C".equals(f[0])) {
+                    channels.put(f[1], Long.parseLong(f[2]));
+                } else if ((f.length == 6 || f.length == 7) && "R".equals(f[0])) {
+                    Entry e = new Entry(f[1], f[1].substring(0, f[1].indexOf('/')));
+                    e.dirModified = Long.parseLong(f[2]);
+                    e.size = Long.parseLong(f[3]);
+                    e.modified = Long.parseLong(f[4]);
+                    e.accessed = Long.parseLong(f[5]);
+                    // Indexes without the flag are checked once more
+                    e.open = f.length == 6 || "1".equals(f[6]);
+                    entries.put(e.path, e);
+                    lru.add(e);
+                    totalBytes += e.size;
+                }
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LogHelper.LogWarning(String.format(TextHelper.RETENTION_INDEX_UNREADABLE, indexFile, e.getMessage()));
+            return false;
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            out.write(INDEX_HEADER + "\n");
+            out.write("root=" + root + "\n");
+            for (Map.Entry<String, Long> c : channels.entrySet()) {
+                out.write("C\t" + c.getKey() + "\t" + c.getValue() + "\n");
+            }
+            for (Entry e : lru) {
+                out.write("R\t" + e.path + "\t" + e.dirModified + "\t" + e.size + "\t" + e.modified + "\t" + e.accessed
+                        + "\t" + (e.open ? "1" : "0") + "\n");
+            }
+        }
+        try {
+            Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
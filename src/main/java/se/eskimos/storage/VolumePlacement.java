@@ -0,0 +1,135 @@
+package se.eskimos.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import se.eskimos.admission.BandwidthGovernor;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+import se.eskimos.metrics.MetricsFiles;
+import se.eskimos.recorder.JobRegistry;
+import se.eskimos.recorder.RecordingJob;
+
+/**
+ * Picks the destination volume of a new recording. Each volume is measured from its usable space and the
+ * running recordings on it: their bitrate gauges in the metrics files give the write load, and the bitrate
+ * times the time left gives the space they will still take.
+ *
+ * Volumes whose free space after that is at least half of the emptiest one's count as roomy, the least
+ * loaded of them wins so parallel recordings spread over the disks. Volumes below the reserve are only used
+ * if all are.
+ *
+ * Without metrics export (metricsIntervalSeconds 0) no bitrates are known, every volume has no load and
+ * the free space alone decides. A warning is logged when that happens while recordings are running.
+ */
+public final class VolumePlacement {
+
+    /**
+     * What a destination volume has left and how much is written to it.
+     * @param path Destination directory on the volume
+     * @param usableBytes Usable space now
+     * @param projectedBytes Space the running recordings on the volume still need
+     * @param writeBytesPerSecond Sum of the running recordings' bitrates
+     */
+    public record Volume(String path, long usableBytes, long projectedBytes, double writeBytesPerSecond) {
+        public long freeBytes() {
+            return usableBytes - projectedBytes;
+        }
+    }
+
+    private VolumePlacement() {}
+
+    /**
+     * @param paths Destination directories, missing ones are created
+     * @param reserveBytes Space kept free on each volume
+     * @return The directory for the new recording, the first one if none can be measured
+     */
+    public static String choose(String stateDir, List<String> paths, long reserveBytes) {
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("No destination paths");
+        }
+        List<Volume> volumes = measure(stateDir, paths);
+        if (volumes.isEmpty()) {
+            return paths.get(0);
+        }
+        List<Volume> candidates = volumes.stream().filter(v -> v.freeBytes() > reserveBytes).toList();
+        if (candidates.isEmpty()) {
+            candidates = volumes;
+        }
+        long mostFree = candidates.stream().mapToLong(Volume::freeBytes).max().getAsLong();
+        Volume best = null;
+        for (Volume v : candidates) {
+            if (v.freeBytes() * 2 < mostFree) {
+                continue;
+            }
+            if (best == null || v.writeBytesPerSecond() < best.writeBytesPerSecond()
+                || (v.writeBytesPerSecond() == best.writeBytesPerSecond() && v.freeBytes() > best.freeBytes())) {
+                best = v;
+            }
+        }
+        return best.path();
+    }
+
+    /**
+     * Measures the volumes of the destination directories, directories that cannot be measured are left out.
+     */
+    public static List<Volume> measure(String stateDir, List<String> paths) {
+        List<RecordingJob> recording = new ArrayList<>();
+        if (stateDir != null && !stateDir.isEmpty()) {
+            for (RecordingJob job : new JobRegistry(stateDir).list()) {
+                if (job.getStatus() == RecordingJob.Status.RECORDING) {
+                    recording.add(job);
+                }
+            }
+        }
+        // Read once for all jobs and volumes
+        MetricsFiles.Samples bitrates = recording.isEmpty() ? null : MetricsFiles.read(stateDir, BandwidthGovernor.BITRATE_METRIC);
+        if (bitrates != null && bitrates.isEmpty()) {
+            LogHelper.LogWarning(String.format(TextHelper.DISK_NO_BITRATES, recording.size()));
+        }
+        long now = System.currentTimeMillis();
+        List<Volume> volumes = new ArrayList<>();
+        for (String path : paths) {
+            try {
+                new File(path).mkdirs();
+                FileStore store = Files.getFileStore(Path.of(path));
+                long projected = 0;
+                double bytesPerSecond = 0;
+                for (RecordingJob job : recording) {
+                    if (!isOn(store, job.getOutputDir())) {
+                        continue;
+                    }
+                    // Attached jobs get the bitrate of the connection they are recorded from
+                    String source = job.getAttachedTo().isEmpty() ? job.getId() : job.getAttachedTo();
+                    double rate = bitrates.sum("job=\"" + source + "\"") / 8;
+                    bytesPerSecond += rate;
+                    if (job.getStopAt() > now) {
+                        projected += (long) (rate * (job.getStopAt() - now) / 1000);
+                    }
+                }
+                volumes.add(new Volume(path, store.getUsableSpace(), projected, bytesPerSecond));
+            } catch (IOException | RuntimeException e) {
+                LogHelper.LogWarning(String.format(TextHelper.DISK_MEASURE_FAILED, path, e.getMessage()));
+            }
+        }
+        return volumes;
+    }
+
+    /**
+     * @return true if the directory is on the volume
+     */
+    static boolean isOn(FileStore store, String dir) {
+        if (dir.isEmpty()) {
+            return false;
+        }
+        try {
+            return store.equals(Files.getFileStore(Path.of(dir)));
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package se.eskimos.stream;
+
+/**
+ * When a recording's data is forced to the disk (FileChannel.force). Without it the kernel decides when the
+ * page cache is written back, which can mean gigabytes at once that stall every writer on the volume.
+ *
+ * @param mode NONE leaves it to the kernel, PERIODIC forces every intervalMillis or intervalBytes (whichever
+ *             comes first) and when a file is closed, ROLLOVER only when a file is closed
+ * @param intervalMillis Time between forces in PERIODIC mode, 0 for no time limit
+ * @param intervalBytes Data between forces in PERIODIC mode, 0 for no size limit
+ */
+public record Durability(Mode mode, long intervalMillis, long intervalBytes) {
+
+    /** The kernel writes back when it sees fit */
+    public static final Durability NONE = new Durability(Mode.NONE, 0, 0);
+
+    public enum Mode {
+        NONE, PERIODIC, ROLLOVER;
+
+        /**
+         * @return The mode, NONE for unknown names
+         */
+        public static Mode parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return NONE;
+            }
+        }
+    }
+
+    /**
+     * @return true if a file is forced before it is closed
+     */
+    public boolean forcesOnClose() {
+        return mode != Mode.NONE;
+    }
+
+    /**
+     * @return true if the data written since the last force should be forced now
+     */
+    public boolean isDue(long bytesSinceForce, long millisSinceForce) {
+        if (mode != Mode.PERIODIC || bytesSinceForce == 0) {
+            return false;
+        }
+        return (intervalBytes > 0 && bytesSinceForce >= intervalBytes) || (intervalMillis > 0 && millisSinceForce >= intervalMillis);
+    }
+}
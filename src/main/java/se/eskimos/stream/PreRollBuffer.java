@@ -0,0 +1,110 @@
+package se.eskimos.stream;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Off-heap ring buffer with the most recent part of a stream: at most a fixed number of bytes and, within
+ * that, only what arrived during the last windowMillis. Older data is overwritten. Used to keep the
+ * minutes before a recording's start, so a kickoff earlier than announced is not missed.
+ *
+ * Not thread safe, the stream is buffered and drained by the recorder's thread.
+ */
+public class PreRollBuffer {
+    private final ByteBuffer ring;
+    private final int capacity;
+    private final long windowMillis;
+    // Stream offsets: data in [tail, head) is buffered
+    private long head;
+    private long tail;
+    // End offset and arrival time of each write, for trimming by age
+    private final ArrayDeque<long[]> arrivals = new ArrayDeque<>();
+
+    /**
+     * @param capacityBytes Memory cap, allocated up front outside the Java heap
+     * @param windowMillis How much of the stream to keep
+     */
+    public PreRollBuffer(int capacityBytes, long windowMillis) {
+        if (capacityBytes <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException("Pre-roll capacity and window must be > 0");
+        }
+        this.ring = ByteBuffer.allocateDirect(capacityBytes);
+        this.capacity = capacityBytes;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Appends stream data, dropping the oldest data beyond the window or capacity.
+     */
+    public void write(byte[] buf, int off, int len, long nowMillis) {
+        if (len > capacity) {
+            off += len - capacity;
+            len = capacity;
+        }
+        int pos = (int) (head % capacity);
+        int first = Math.min(len, capacity - pos);
+        ring.put(pos, buf, off, first);
+        ring.put(0, buf, off + first, len - first);
+        head += len;
+        tail = Math.max(tail, head - capacity);
+        arrivals.addLast(new long[] {head, nowMillis});
+        while (!arrivals.isEmpty() && arrivals.peekFirst()[1] < nowMillis - windowMillis) {
+            tail = Math.max(tail, arrivals.pollFirst()[0]);
+        }
+    }
+
+    /**
+     * @return Bytes buffered
+     */
+    public long size() {
+        return head - tail;
+    }
+
+    /**
+     * @return Milliseconds of stream buffered, by arrival time
+     */
+    public long bufferedMillis(long nowMillis) {
+        for (long[] arrival : arrivals) {
+            if (arrival[0] > tail) {
+                return nowMillis - arrival[1];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Reads the buffered data, oldest first. The returned stream consumes the buffer, so data written
+     * later is not part of it. It does not start on a packet boundary, the reader realigns.
+     */
+    public InputStream drain() {
+        long end = head;
+        arrivals.clear();
+        return new InputStream() {
+            @Override
+            public int read() {
+                if (tail >= end) {
+                    return -1;
+                }
+                return ring.get((int) (tail++ % capacity)) & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (tail >= end) {
+                    return -1;
+                }
+                int pos = (int) (tail % capacity);
+                int n = (int) Math.min(len, Math.min(end - tail, capacity - pos));
+                ring.get(pos, b, off, n);
+                tail += n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return (int) (end - tail);
+            }
+        };
+    }
+}
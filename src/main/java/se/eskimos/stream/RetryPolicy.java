@@ -0,0 +1,125 @@
+package se.eskimos.stream;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry timing for stream connections: fast first retries, exponential backoff with jitter
+ * (so many recorders hitting one provider do not retry in lockstep) and a total time budget.
+ * Optionally a second, hedged connection attempt is started when the first one has not
+ * produced any bytes within hedgeAfterMillis.
+ *
+ * @param initialDelayMillis Delay before the first retry
+ * @param maxDelayMillis Upper bound for a single delay
+ * @param multiplier Growth factor per retry
+ * @param jitter Fraction of each delay that is randomized, 0 = fixed delays, 1 = full jitter
+ * @param budgetMillis Total time for all attempts and delays, 0 = no limit
+ * @param maxAttempts Maximum number of attempts, 0 = no limit
+ * @param hedgeAfterMillis Start a hedged connection attempt after this long without bytes, 0 = no hedging
+ */
+public record RetryPolicy(long initialDelayMillis, long maxDelayMillis, double multiplier, double jitter,
+                          long budgetMillis, int maxAttempts, long hedgeAfterMillis) {
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 1000;
+    public static final double DEFAULT_MULTIPLIER = 2.0;
+    public static final double DEFAULT_JITTER = 0.5;
+
+    public RetryPolicy {
+        if (initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException("Invalid retry delays: " + initialDelayMillis + "/" + maxDelayMillis);
+        }
+        if (multiplier < 1.0) {
+            throw new IllegalArgumentException("Retry multiplier must be at least 1: " + multiplier);
+        }
+        if (jitter < 0.0 || jitter > 1.0) {
+            throw new IllegalArgumentException("Retry jitter must be between 0 and 1: " + jitter);
+        }
+    }
+
+    /**
+     * Defaults derived from the recRetries/recRetriesDelay settings: the same number of attempts and worst case
+     * total time as fixed delays, but starting with a one second retry and backing off to recRetriesDelay.
+     * @param retries Number of attempts (recRetries)
+     * @param delaySeconds Longest delay between attempts (recRetriesDelay)
+     */
+    public static RetryPolicy fromLegacy(int retries, int delaySeconds) {
+        long maxDelay = Math.max(1, delaySeconds) * 1000L;
+        return new RetryPolicy(Math.min(DEFAULT_INITIAL_DELAY_MILLIS, maxDelay), maxDelay, DEFAULT_MULTIPLIER, DEFAULT_JITTER,
+            Math.max(1, retries) * maxDelay, Math.max(1, retries), 0);
+    }
+
+    /**
+     * @return A copy with another total budget, e.g. the time left until a recording's stop time
+     */
+    public RetryPolicy withBudget(long newBudgetMillis) {
+        return new RetryPolicy(initialDelayMillis, maxDelayMillis, multiplier, jitter, newBudgetMillis, maxAttempts, hedgeAfterMillis);
+    }
+
+    /**
+     * @return A copy without an attempt limit
+     */
+    public RetryPolicy withUnlimitedAttempts() {
+        return new RetryPolicy(initialDelayMillis, maxDelayMillis, multiplier, jitter, budgetMillis, 0, hedgeAfterMillis);
+    }
+
+    /**
+     * Starts tracking one sequence of attempts. The budget starts counting now.
+     */
+    public Backoff start() {
+        return new Backoff();
+    }
+
+    /**
+     * The state of one sequence of attempts, not thread safe.
+     */
+    public final class Backoff {
+        private final long startedAt = System.currentTimeMillis();
+        private int failures;
+
+        private Backoff() {
+        }
+
+        /**
+         * Registers a failed attempt and computes the delay before the next one.
+         * @return Delay in milliseconds, or -1 if attempts or the budget are used up
+         */
+        public long nextDelayMillis() {
+            failures++;
+            if (maxAttempts > 0 && failures >= maxAttempts) {
+                return -1;
+            }
+            double base = Math.min(maxDelayMillis, initialDelayMillis * Math.pow(multiplier, failures - 1));
+            long delay = (long) (base * (1.0 - jitter) + ThreadLocalRandom.current().nextDouble() * base * jitter);
+            if (budgetMillis > 0 && System.currentTimeMillis() - startedAt + delay >= budgetMillis) {
+                return -1;
+            }
+            return delay;
+        }
+
+        /**
+         * Waits the next delay.
+         * @return false if attempts or the budget are used up (nothing is waited then)
+         * @throws InterruptedException if interrupted while waiting
+         */
+        public boolean awaitNext() throws InterruptedException {
+            long delay = nextDelayMillis();
+            if (delay < 0) {
+                return false;
+            }
+            Thread.sleep(delay);
+            return true;
+        }
+
+        /**
+         * @return Number of failed attempts so far
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return The attempt number of the next attempt, starting at 1
+         */
+        public int getAttempt() {
+            return failures + 1;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package se.eskimos.stream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sidecar index of a recording (&lt;file&gt;.idx) that maps stream time to byte offsets, so players and
+ * cutters can seek without scanning the file. Time is counted from the first PCR of the recording and
+ * follows the PCR across wrap-arounds; over a discontinuity the arrival time bridges the jump.
+ *
+ * An entry is written at every keyframe (a PES start with the random access indicator) at most twice a
+ * second, and on the PCR every couple of seconds when the stream does not mark keyframes. The writer only
+ * looks at packets with an adaptation field, so it costs little next to writing the file.
+ *
+ * File format (big endian): magic "IDX1", start epoch millis, first PCR, then entries of byte offset (8),
+ * millis (4), PTS (8, -1 if none) and flags (1, bit 0 keyframe).
+ */
+public class SeekIndex {
+
+    /**
+     * @param offset Byte offset of the packet in the recording
+     * @param millis Stream time since the first PCR
+     * @param pts PTS of the PES starting there, -1 if none
+     * @param keyframe true if decoding can start here
+     */
+    public record Entry(long offset, long millis, long pts, boolean keyframe) {}
+
+    /** Suffix of the sidecar file next to the recording */
+    public static final String SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x49445831;
+    private static final int KEYFRAME = 1;
+    private static final long MIN_SPACING_MS = 500;
+    private static final long MAX_SPACING_MS = 2000;
+    // Larger PCR steps are a jump in the stream, not elapsed time
+    private static final long MAX_PCR_STEP = 10 * TsPackets.CLOCK_HZ;
+    private static final int FLUSH_ENTRIES = 16;
+    // PAT and PMT are looked for this far into the recording
+    private static final int PSI_SCAN_BYTES = 2 * 1024 * 1024;
+
+    private final long startMillis;
+    private final List<Entry> entries;
+    private final boolean keyframes;
+
+    private SeekIndex(long startMillis, List<Entry> entries) {
+        this.startMillis = startMillis;
+        this.entries = entries;
+        this.keyframes = entries.stream().anyMatch(Entry::keyframe);
+    }
+
+    /**
+     * @return The sidecar index of a recording
+     */
+    public static Path indexFile(Path recording) {
+        return recording.resolveSibling(recording.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Reads an index, also one that is still written (a partial last entry is ignored).
+     * @throws IOException if it cannot be read or is not an index
+     */
+    public static SeekIndex load(Path indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a seek index: " + indexFile);
+            }
+            long startMillis = in.readLong();
+            in.readLong();
+            List<Entry> entries = new ArrayList<>();
+            try {
+                while (true) {
+                    long offset = in.readLong();
+                    long millis = in.readInt() & 0xFFFFFFFFL;
+                    long pts = in.readLong();
+                    int flags = in.readByte();
+                    entries.add(new Entry(offset, millis, pts, (flags & KEYFRAME) != 0));
+                }
+            } catch (EOFException e) {
+                // End of the entries
+            }
+            return new SeekIndex(startMillis, Collections.unmodifiableList(entries));
+        }
+    }
+
+    /**
+     * @return Wall clock time of the first indexed packet
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return Stream time of the last entry
+     */
+    public long getDurationMillis() {
+        return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).millis();
+    }
+
+    /**
+     * Finds where to start reading to show the given time: the last keyframe at or before it, or the last
+     * entry if the stream marks no keyframes.
+     * @return The entry, null if the time is before the first one
+     */
+    public Entry seek(long millis) {
+        int last = -1;
+        int lo = 0;
+        int hi = entries.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (entries.get(mid).millis() <= millis) {
+                last = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        for (int k = last; k >= 0; k--) {
+            if (!keyframes || entries.get(k).keyframe()) {
+                return entries.get(k);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Offset of the first entry after the time, -1 if there is none
+     */
+    public long endOffset(long millis) {
+        for (Entry entry : entries) {
+            if (entry.millis() > millis) {
+                return entry.offset();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies a time range of a recording into a new file: from the keyframe before the start to the entry
+     * after the end, with the PAT and PMT of the recording in front so players can decode it.
+     * @return Bytes written
+     * @throws IllegalArgumentException if the range is empty or there is no index
+     */
+    public static long extract(Path recording, long fromMillis, long toMillis, Path out) throws IOException {
+        if (toMillis <= fromMillis) {
+            throw new IllegalArgumentException("The end must be after the start");
+        }
+        Path indexFile = indexFile(recording);
+        if (!Files.exists(indexFile)) {
+            throw new IllegalArgumentException("No seek index next to " + recording);
+        }
+        SeekIndex index = load(indexFile);
+        Entry start = index.seek(fromMillis);
+        long from = start != null ? start.offset() : 0;
+        long to = index.endOffset(toMillis);
+        try (FileChannel in = FileChannel.open(recording, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (to < 0 || to > in.size()) {
+                to = in.size() / TsPackets.PACKET_SIZE * TsPackets.PACKET_SIZE;
+            }
+            if (to <= from) {
+                throw new IllegalArgumentException("Nothing recorded in the range");
+            }
+            long written = 0;
+            if (from > 0) {
+                ByteBuffer psi = ByteBuffer.wrap(programTables(in));
+                while (psi.hasRemaining()) {
+                    written += target.write(psi);
+                }
+            }
+            long pos = from;
+            while (pos < to) {
+                long n = in.transferTo(pos, to - pos, target);
+                if (n <= 0) {
+                    break;
+                }
+                pos += n;
+            }
+            return written + pos - from;
+        }
+    }
+
+    // First PAT packet of the recording and the first packet of each PMT it lists
+    private static byte[] programTables(FileChannel in) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(PSI_SCAN_BYTES, in.size()));
+        while (head.hasRemaining()) {
+            if (in.read(head, head.position()) <= 0) {
+                break;
+            }
+        }
+        byte[] buf = head.array();
+        int len = head.position();
+        int sync = TsPackets.findSync(buf, 0, len);
+        if (sync < 0) {
+            return new byte[0];
+        }
+        int[] pmtPids = new int[16];
+        int pmtCount = 0;
+        int patAt = -1;
+        for (int off = sync; off + TsPackets.PACKET_SIZE <= len && patAt < 0; off += TsPackets.PACKET_SIZE) {
+            pmtCount = TsPackets.patProgramMapPids(buf, off, pmtPids);
+            if (pmtCount > 0) {
+                patAt = off;
+            }
+        }
+        if (patAt < 0) {
+            return new byte[0];
+        }
+        java.io.ByteArrayOutputStream tables = new java.io.ByteArrayOutputStream();
+        tables.write(buf, patAt, TsPackets.PACKET_SIZE);
+        boolean[] found = new boolean[pmtCount];
+        for (int off = patAt; off + TsPackets.PACKET_SIZE <= len; off += TsPackets.PACKET_SIZE) {
+            int pid = TsPackets.pid(buf, off);
+            for (int k = 0; k < pmtCount; k++) {
+                if (!found[k] && pid == pmtPids[k] && TsPackets.payloadUnitStart(buf, off)) {
+                    found[k] = true;
+                    tables.write(buf, off, TsPackets.PACKET_SIZE);
+                }
+            }
+        }
+        return tables.toByteArray();
+    }
+
+    /**
+     * Builds the index of one file while it is written. Not thread safe, fed by the file's writer.
+     */
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private long fileOffset;
+        private int pcrPid = -1;
+        private long firstPcr = -1;
+        private long lastPcr = -1;
+        private long lastPcrWall;
+        private long ticks;
+        private long lastEntryMillis = -1;
+        private int unflushed;
+
+        /**
+         * Creates or replaces the sidecar index of a recording.
+         */
+        public Writer(Path recording) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile(recording).toFile())));
+        }
+
+        /**
+         * Indexes whole packets written to the file at the current offset.
+         */
+        public void observe(byte[] buf, int off, int len) throws IOException {
+            int end = off + len;
+            for (int p = off; p + TsPackets.PACKET_SIZE <= end; p += TsPackets.PACKET_SIZE) {
+                // Only packets with an adaptation field carry a PCR or the random access indicator
+                if (buf[p] == TsPackets.SYNC_BYTE && TsPackets.hasAdaptationField(buf, p)) {
+                    packet(buf, p, fileOffset + p - off);
+                }
+            }
+            fileOffset += len;
+        }
+
+        private void packet(byte[] buf, int p, long offset) throws IOException {
+            int pid = TsPackets.pid(buf, p);
+            boolean clock = false;
+            if (TsPackets.hasPcr(buf, p) && (pcrPid < 0 || pid == pcrPid)) {
+                pcrPid = pid;
+                clock(TsPackets.pcr(buf, p), TsPackets.discontinuity(buf, p));
+                clock = true;
+            }
+            if (firstPcr < 0) {
+                return;
+            }
+            long millis = ticks / (TsPackets.CLOCK_HZ / 1000);
+            if (TsPackets.randomAccess(buf, p) && TsPackets.payloadUnitStart(buf, p)) {
+                if (lastEntryMillis < 0 || millis - lastEntryMillis >= MIN_SPACING_MS) {
+                    entry(offset, millis, TsPackets.pts(buf, p), KEYFRAME);
+                }
+            } else if (clock && (lastEntryMillis < 0 || millis - lastEntryMillis >= MAX_SPACING_MS)) {
+                entry(offset, millis, -1, 0);
+            }
+        }
+
+        private void clock(long pcr, boolean discontinuity) throws IOException {
+            long now = System.currentTimeMillis();
+            if (firstPcr < 0) {
+                firstPcr = pcr;
+                out.writeInt(MAGIC);
+                out.writeLong(now);
+                out.writeLong(pcr);
+            } else {
+                long step = TsPackets.clockDelta(lastPcr, pcr);
+                if (discontinuity || step > MAX_PCR_STEP) {
+                    step = Math.max(0, now - lastPcrWall) * (TsPackets.CLOCK_HZ / 1000);
+                }
+                ticks += step;
+            }
+            lastPcr = pcr;
+            lastPcrWall = now;
+        }
+
+        private void entry(long offset, long millis, long pts, int flags) throws IOException {
+            out.writeLong(offset);
+            out.writeInt((int) millis);
+            out.writeLong(pts);
+            out.writeByte(flags);
+            lastEntryMillis = millis;
+            // Readers can use the index while the recording goes on
+            if (++unflushed >= FLUSH_ENTRIES) {
+                out.flush();
+                unflushed = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
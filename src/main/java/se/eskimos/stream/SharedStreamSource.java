@@ -0,0 +1,592 @@
+package se.eskimos.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+import se.eskimos.metrics.LatencyHistogram;
+
+/**
+ * Fans one upstream connection out to several recordings (subscribers), so the provider sees a single
+ * connection however many recordings of the channel overlap or follow each other.
+ *
+ * The stream is read once into pooled, reference counted chunks. Every subscriber whose window contains
+ * the arrival instant gets a read-only view of the chunk (no copy) on its queue, and its own writer thread
+ * writes it to the subscriber's file. A chunk goes back to the pool when the last subscriber has written
+ * it, so the pool bounds the memory held for slow disks; when it is empty the upstream read waits.
+ *
+ * Data is only cut between whole TS packets. Subscribers can be added, moved and removed while the
+ * stream is read, and a subscriber's file can be continued in another file (e.g. on another volume).
+ *
+ * Files can be preallocated: they are extended with zeros in large extents ahead of the data, which keeps
+ * them in few fragments and claims their space early, and cut to the data length when closed. A file of a
+ * process that is killed keeps the zeros of its last extent at the end.
+ *
+ * A seek index (SeekIndex) can be written next to every file, from the data the writer thread has at hand.
+ *
+ * With mirrors every file is also written to the other destinations by a TeeWriter, which buffers or drops
+ * for a slow mirror so it never holds up the file or the shared chunks.
+ *
+ * The durability policy decides when files are forced to the disk. How long writes and forces take is
+ * counted in latency histograms, shared by all subscribers of the connection.
+ */
+public class SharedStreamSource implements Closeable {
+
+    /**
+     * Told when a subscriber's file is opened and closed, e.g. to update the job registry.
+     * Called on the subscriber's writer thread.
+     */
+    public interface Listener {
+        void started(String id, String file);
+
+        void finished(String id, long bytes);
+    }
+
+    // 348 packets, about 64 KB
+    private static final int CHUNK_SIZE = 348 * TsPackets.PACKET_SIZE;
+    private static final int MAX_CHUNKS = 64;
+    private static final long CLOSE_TIMEOUT_MS = 10_000;
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(1024 * 1024).asReadOnlyBuffer();
+
+    // Pooled read buffer, counted by the reader and the subscribers it was given to
+    private final class Chunk {
+        final byte[] data = new byte[CHUNK_SIZE];
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        final AtomicInteger refs = new AtomicInteger();
+
+        ByteBuffer view(int length) {
+            return buffer.asReadOnlyBuffer().limit(length);
+        }
+
+        void retain() {
+            refs.incrementAndGet();
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0) {
+                pool.offer(this);
+            }
+        }
+    }
+
+    private record Slice(Chunk chunk, ByteBuffer data) {}
+
+    // Queued after a subscriber's last slice
+    private static final Slice END = new Slice(null, null);
+
+    private final class Subscriber implements Runnable {
+        final String id;
+        final Supplier<String> fileName;
+        volatile long startMillis;
+        volatile long stopMillis;
+        final BlockingQueue<Slice> queue = new LinkedBlockingQueue<>();
+        final Thread writer;
+        volatile long bytes;
+        // Continue in this file from the next slice on
+        volatile Supplier<String> relocateTo;
+        boolean finished;
+
+        Subscriber(String id, long startMillis, long stopMillis, Supplier<String> fileName) {
+            this.id = id;
+            this.startMillis = startMillis;
+            this.stopMillis = stopMillis;
+            this.fileName = fileName;
+            this.writer = new Thread(this, "stream-writer-" + id);
+            writer.setDaemon(true);
+        }
+
+        synchronized boolean isFinished() {
+            return finished;
+        }
+
+        synchronized void offer(Chunk chunk, int length) {
+            if (!finished) {
+                chunk.retain();
+                queue.add(new Slice(chunk, chunk.view(length)));
+            }
+        }
+
+        synchronized void finish() {
+            if (!finished) {
+                finished = true;
+                queue.add(END);
+            }
+        }
+
+        @Override
+        public void run() {
+            FileChannel out = null;
+            Supplier<String> names = fileName;
+            String file = null;
+            // Data written to and space allocated in the current file
+            long fileBytes = 0;
+            long allocated = 0;
+            // Data written since the file was last forced, and when that was
+            long unforced = 0;
+            long forcedAt = System.currentTimeMillis();
+            boolean failed = false;
+            SeekIndex.Writer index = null;
+            // Made with the first file, mirrors are added after the subscription has started this thread
+            TeeWriter tee = null;
+            try {
+                while (true) {
+                    Slice slice = queue.take();
+                    if (slice == END) {
+                        break;
+                    }
+                    try {
+                        Supplier<String> relocated = relocateTo;
+                        if (relocated != null) {
+                            relocateTo = null;
+                            names = relocated;
+                            failed = false;
+                            if (out != null) {
+                                index = closeIndex(index);
+                                closeFile(out, fileBytes, allocated);
+                                out = null;
+                                LogHelper.Log(String.format(TextHelper.SEGMENT_RELOCATED, id, file));
+                            }
+                        }
+                        if (!failed) {
+                            if (out == null) {
+                                file = names.get();
+                                out = FileChannel.open(Path.of(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                                fileBytes = 0;
+                                allocated = 0;
+                                unforced = 0;
+                                forcedAt = System.currentTimeMillis();
+                                LogHelper.LogDebug(String.format(TextHelper.SEGMENT_STARTED, id, file));
+                                if (listener != null) {
+                                    listener.started(id, file);
+                                }
+                                index = openIndex(file);
+                                if (tee == null && !mirrors.isEmpty()) {
+                                    tee = new TeeWriter(id, mirrors);
+                                }
+                                if (tee != null) {
+                                    tee.open(file);
+                                }
+                            }
+                            if (tee != null) {
+                                tee.write(slice.data());
+                            }
+                            long extent = preallocateBytes;
+                            if (extent > 0 && fileBytes + slice.data().remaining() > allocated) {
+                                allocated = preallocate(out, fileBytes, allocated, extent);
+                            }
+                            long writeStart = System.nanoTime();
+                            while (slice.data().hasRemaining()) {
+                                int written = out.write(slice.data());
+                                bytes += written;
+                                fileBytes += written;
+                                unforced += written;
+                            }
+                            writeLatency.record(System.nanoTime() - writeStart);
+                            if (durability.isDue(unforced, System.currentTimeMillis() - forcedAt)) {
+                                force(out, false);
+                                unforced = 0;
+                                forcedAt = System.currentTimeMillis();
+                            }
+                            if (index != null) {
+                                index = observe(index, slice);
+                            }
+                        }
+                    } catch (IOException e) {
+                        // Keep draining so the chunks go back to the pool and the other recordings go on
+                        failed = true;
+                        LogHelper.LogError(String.format(TextHelper.SEGMENT_WRITE_FAILED, id, e.getMessage()));
+                    } finally {
+                        slice.chunk().release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (out != null) {
+                closeIndex(index);
+                try {
+                    closeFile(out, fileBytes, allocated);
+                } catch (IOException e) {
+                    LogHelper.LogWarning(String.format(TextHelper.SEGMENT_CLOSE_FAILED, id, e.getMessage()));
+                }
+                LogHelper.LogDebug(String.format(TextHelper.SEGMENT_FINISHED, id, bytes));
+                if (listener != null) {
+                    listener.finished(id, bytes);
+                }
+            }
+            if (tee != null) {
+                tee.close();
+            }
+        }
+
+        private SeekIndex.Writer openIndex(String file) {
+            if (!seekIndex) {
+                return null;
+            }
+            try {
+                return new SeekIndex.Writer(Path.of(file));
+            } catch (IOException e) {
+                LogHelper.LogWarning(String.format(TextHelper.SEGMENT_INDEX_FAILED, id, e.getMessage()));
+                return null;
+            }
+        }
+
+        // The chunk's array holds the slice from its start, the view is read-only
+        private SeekIndex.Writer observe(SeekIndex.Writer index, Slice slice) {
+            try {
+                index.observe(slice.chunk().data, 0, slice.data().limit());
+                return index;
+            } catch (IOException e) {
+                LogHelper.LogWarning(String.format(TextHelper.SEGMENT_INDEX_FAILED, id, e.getMessage()));
+                return closeIndex(index);
+            }
+        }
+
+        private SeekIndex.Writer closeIndex(SeekIndex.Writer index) {
+            if (index != null) {
+                try {
+                    index.close();
+                } catch (IOException e) {
+                    LogHelper.LogWarning(String.format(TextHelper.SEGMENT_INDEX_FAILED, id, e.getMessage()));
+                }
+            }
+            return null;
+        }
+
+        // Zeros from the end of the allocated space to one extent past the data. Without space for it the
+        // file is cut back and grows with the data, the recording is not failed for it.
+        private long preallocate(FileChannel out, long fileBytes, long allocated, long extent) {
+            long target = fileBytes + extent;
+            long pos = Math.max(allocated, fileBytes);
+            try {
+                while (pos < target) {
+                    ByteBuffer zeros = ZEROS.duplicate();
+                    zeros.limit((int) Math.min(zeros.capacity(), target - pos));
+                    pos += out.write(zeros, pos);
+                }
+                return target;
+            } catch (IOException e) {
+                LogHelper.LogWarning(String.format(TextHelper.SEGMENT_PREALLOCATE_FAILED, id, e.getMessage()));
+                try {
+                    out.truncate(fileBytes);
+                } catch (IOException ignored) {
+                }
+                return fileBytes;
+            }
+        }
+
+        private void closeFile(FileChannel out, long fileBytes, long allocated) throws IOException {
+            try {
+                if (allocated > fileBytes) {
+                    out.truncate(fileBytes);
+                }
+                // With the metadata, so the length the file was cut to is on the disk as well
+                if (durability.forcesOnClose()) {
+                    force(out, true);
+                }
+            } finally {
+                out.close();
+            }
+        }
+
+        // A failed force is logged, the data is still written and the kernel may yet write it back
+        private void force(FileChannel out, boolean metaData) {
+            long start = System.nanoTime();
+            try {
+                out.force(metaData);
+            } catch (IOException e) {
+                LogHelper.LogError(String.format(TextHelper.SEGMENT_FORCE_FAILED, id, e.getMessage()));
+            }
+            forceLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final List<TeeWriter.Destination> mirrors = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<Chunk> pool = new LinkedBlockingQueue<>();
+    private int chunksCreated;
+    // Partial packet left over from the previous read
+    private final byte[] carry = new byte[TsPackets.PACKET_SIZE];
+    private int carryLength;
+    private boolean closed;
+    private volatile Listener listener;
+    private volatile long preallocateBytes;
+    private volatile boolean seekIndex;
+    private volatile Durability durability = Durability.NONE;
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram forceLatency = new LatencyHistogram();
+    // Bytes read from upstream, whether or not a subscriber wanted them
+    private volatile long bytesRead;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Preallocates files in extents of this size, 0 (the default) lets them grow with the data.
+     */
+    public void setPreallocation(long extentBytes) {
+        this.preallocateBytes = Math.max(0, extentBytes);
+    }
+
+    /**
+     * Writes a seek index next to every file that is opened from now on.
+     */
+    public void setSeekIndex(boolean seekIndex) {
+        this.seekIndex = seekIndex;
+    }
+
+    /**
+     * Sets when files are forced to the disk, NONE (the default) leaves it to the kernel.
+     */
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+    }
+
+    /**
+     * @return Time each write of a chunk to a file took
+     */
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    /**
+     * @return Time each force of a file took
+     */
+    public LatencyHistogram getForceLatency() {
+        return forceLatency;
+    }
+
+    /**
+     * Writes every file to another destination as well. Mirrors are taken up by a recording when it opens
+     * its first file.
+     */
+    public void addMirror(TeeWriter.Destination mirror) {
+        mirrors.add(mirror);
+    }
+
+    /**
+     * Adds a recording window.
+     * @param id Job id of the recording
+     * @param fileName Gives the output file when the first data for the window arrives
+     * @throws IllegalStateException if the source is closed
+     */
+    public synchronized void subscribe(String id, long startMillis, long stopMillis, Supplier<String> fileName) {
+        if (closed) {
+            throw new IllegalStateException("The recording has ended");
+        }
+        Subscriber subscriber = new Subscriber(id, startMillis, stopMillis, fileName);
+        subscribers.add(subscriber);
+        subscriber.writer.start();
+    }
+
+    /**
+     * Moves the start of a subscriber, e.g. to start recording before the scheduled time.
+     * @return false if there is no such subscriber
+     */
+    public boolean setStart(String id, long startMillis) {
+        Subscriber subscriber = find(id);
+        if (subscriber == null || subscriber.isFinished()) {
+            return false;
+        }
+        subscriber.startMillis = startMillis;
+        return true;
+    }
+
+    /**
+     * Moves the stop of a subscriber that has not finished.
+     * @return false if there is no such subscriber
+     */
+    public boolean setStop(String id, long stopMillis) {
+        Subscriber subscriber = find(id);
+        if (subscriber == null || subscriber.isFinished()) {
+            return false;
+        }
+        subscriber.stopMillis = stopMillis;
+        return true;
+    }
+
+    /**
+     * Continues a subscriber in another file: the current file is closed after the data queued for it and
+     * the rest of the window goes to the new one. A subscriber that failed to write is given another try.
+     * @param fileName Gives the new file when its first data arrives
+     * @return false if there is no such subscriber
+     */
+    public boolean relocate(String id, Supplier<String> fileName) {
+        Subscriber subscriber = find(id);
+        if (subscriber == null || subscriber.isFinished()) {
+            return false;
+        }
+        subscriber.relocateTo = fileName;
+        return true;
+    }
+
+    /**
+     * Ends a subscriber now, what it has been given is still written.
+     * @return false if there is no such subscriber
+     */
+    public boolean unsubscribe(String id) {
+        Subscriber subscriber = find(id);
+        if (subscriber == null) {
+            return false;
+        }
+        subscriber.finish();
+        subscribers.remove(subscriber);
+        return true;
+    }
+
+    /**
+     * @return Latest stop of all unfinished subscribers, 0 if there are none
+     */
+    public long getStopMillis() {
+        long stop = 0;
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.isFinished()) {
+                stop = Math.max(stop, subscriber.stopMillis);
+            }
+        }
+        return stop;
+    }
+
+    /**
+     * @return Bytes written to the subscriber's file, 0 if unknown
+     */
+    public long getBytes(String id) {
+        Subscriber subscriber = find(id);
+        return subscriber == null ? 0 : subscriber.bytes;
+    }
+
+    /**
+     * @return Bytes read from the upstream connections so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return true when every subscriber has reached its stop
+     */
+    public boolean isDone(long nowMillis) {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.isFinished() && nowMillis < subscriber.stopMillis) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops a partial packet, call it when a new connection starts (its stream starts on a packet boundary).
+     * Only called by the reading thread, like readFrom.
+     */
+    public void resync() {
+        carryLength = 0;
+    }
+
+    /**
+     * Reads once from the upstream connection and hands the whole packets to the subscribers whose window
+     * contains the arrival instant. Waits for a free chunk if the subscribers are behind. Not synchronized,
+     * the stream is read by one thread so subscribers can be changed during a blocking read.
+     * @return Bytes read, -1 at the end of the stream
+     */
+    public int readFrom(InputStream in) throws IOException {
+        Chunk chunk = takeChunk();
+        try {
+            System.arraycopy(carry, 0, chunk.data, 0, carryLength);
+            int read = in.read(chunk.data, carryLength, CHUNK_SIZE - carryLength);
+            if (read < 0) {
+                return read;
+            }
+            long now = System.currentTimeMillis();
+            bytesRead += read;
+            int length = carryLength + read;
+            int whole = length / TsPackets.PACKET_SIZE * TsPackets.PACKET_SIZE;
+            carryLength = length - whole;
+            System.arraycopy(chunk.data, whole, carry, 0, carryLength);
+            if (whole > 0) {
+                dispatch(chunk, whole, now);
+            }
+            return read;
+        } finally {
+            chunk.release();
+        }
+    }
+
+    private void dispatch(Chunk chunk, int length, long nowMillis) {
+        for (Subscriber subscriber : subscribers) {
+            if (nowMillis < subscriber.startMillis) {
+                continue;
+            }
+            if (nowMillis >= subscriber.stopMillis) {
+                subscriber.finish();
+                continue;
+            }
+            subscriber.offer(chunk, length);
+        }
+    }
+
+    // The reader holds one reference while it fills the chunk
+    private Chunk takeChunk() throws IOException {
+        Chunk chunk = pool.poll();
+        if (chunk == null) {
+            if (chunksCreated < MAX_CHUNKS) {
+                chunksCreated++;
+                chunk = new Chunk();
+            } else {
+                try {
+                    chunk = pool.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new java.io.InterruptedIOException("Interrupted while waiting for a stream buffer");
+                }
+            }
+        }
+        chunk.refs.set(1);
+        return chunk;
+    }
+
+    private Subscriber find(String id) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.id.equals(id)) {
+                return subscriber;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ends all subscribers and waits a while for their files to be written.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        long giveUpAt = System.currentTimeMillis() + CLOSE_TIMEOUT_MS;
+        for (Subscriber subscriber : subscribers) {
+            subscriber.finish();
+        }
+        for (Subscriber subscriber : subscribers) {
+            try {
+                subscriber.writer.join(Math.max(1, giveUpAt - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
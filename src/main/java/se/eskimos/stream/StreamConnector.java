@@ -0,0 +1,357 @@
+package se.eskimos.stream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+
+/**
+ * Opens a stream connection ahead of time: resolves DNS, follows redirects (including http/https switches,
+ * which HttpURLConnection does not follow by itself) and keeps the connection drained until capture starts.
+ * Capture then begins on a transport stream packet boundary.
+ */
+public final class StreamConnector implements Closeable {
+    private static final int MAX_REDIRECTS = 5;
+    private static final int DRAIN_BUFFER_SIZE = 64 * 1024;
+    // Bytes searched for a packet boundary when capture starts
+    private static final int ALIGN_WINDOW = TsPackets.PACKET_SIZE * 64;
+    private static final ExecutorService HEDGE_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "stream-connect");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final URLConnection connection;
+    private final InputStream input;
+    private final String resolvedUrl;
+    private final long connectedAt;
+    private PreRollBuffer preRoll;
+
+    private StreamConnector(URLConnection connection, String resolvedUrl) throws IOException {
+        this.connection = connection;
+        this.input = new BufferedInputStream(connection.getInputStream(), DRAIN_BUFFER_SIZE);
+        this.resolvedUrl = resolvedUrl;
+        this.connectedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Resolves DNS and follows redirects, then opens the stream.
+     * @param url Stream URL
+     * @param connectTimeoutMillis Connect timeout
+     * @param readTimeoutMillis Read timeout, also used for the recording itself
+     * @return An open connection, the caller must close it
+     * @throws IOException if the stream cannot be opened
+     */
+    public static StreamConnector open(String url, int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+        URLConnection conn = connect(url, connectTimeoutMillis, readTimeoutMillis);
+        return new StreamConnector(conn, conn.getURL().toString());
+    }
+
+    /**
+     * Takes a provider connection for a hedged attempt, held until both attempts have settled.
+     */
+    public interface HedgeSlots {
+        /**
+         * @return The held connection, or null if none is free
+         */
+        Closeable acquire() throws IOException;
+    }
+
+    /**
+     * Opens the stream like {@link #open}, but if no bytes have arrived after hedgeAfterMillis a second
+     * connection attempt is started. Whichever produces bytes first is used and the other one is closed.
+     * @param hedgeAfterMillis Delay before the hedged attempt, 0 disables hedging
+     * @return An open connection that has already produced data
+     * @throws IOException if all attempts fail
+     */
+    public static StreamConnector openHedged(String url, int connectTimeoutMillis, int readTimeoutMillis, long hedgeAfterMillis) throws IOException {
+        return openHedged(url, connectTimeoutMillis, readTimeoutMillis, hedgeAfterMillis, null);
+    }
+
+    /**
+     * Like openHedged, but the hedged attempt only starts when it gets a provider connection of its own.
+     * Without one it keeps waiting for the first attempt.
+     * @param slots Provider connections for the hedged attempt, null if connections are not limited
+     */
+    public static StreamConnector openHedged(String url, int connectTimeoutMillis, int readTimeoutMillis, long hedgeAfterMillis,
+                                             HedgeSlots slots) throws IOException {
+        if (hedgeAfterMillis <= 0) {
+            StreamConnector connector = open(url, connectTimeoutMillis, readTimeoutMillis);
+            connector.awaitFirstByte();
+            return connector;
+        }
+        CompletableFuture<StreamConnector> first = openAsync(url, connectTimeoutMillis, readTimeoutMillis);
+        try {
+            return first.get(hedgeAfterMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // No data yet, hedged below if there is a connection to spare
+        } catch (ExecutionException e) {
+            // Failed fast, the retry policy decides when to try again
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            first.thenAccept(StreamConnector::close);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting");
+        }
+        Closeable slot = takeHedgeSlot(slots, hedgeAfterMillis);
+        if (slot == null) {
+            return awaitAttempt(first);
+        }
+        LogHelper.LogWarning(String.format(TextHelper.RETRY_HEDGE_STARTED, hedgeAfterMillis));
+        CompletableFuture<StreamConnector> second = openAsync(url, connectTimeoutMillis, readTimeoutMillis);
+        CompletableFuture<StreamConnector> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicInteger settled = new AtomicInteger();
+        for (CompletableFuture<StreamConnector> attempt : java.util.List.of(first, second)) {
+            attempt.whenComplete((connector, error) -> {
+                if (error == null) {
+                    if (!winner.complete(connector)) {
+                        connector.close();
+                    }
+                } else if (failures.incrementAndGet() == 2) {
+                    winner.completeExceptionally(error);
+                }
+                // One connection is left at most, which the recording's own slot covers
+                if (settled.incrementAndGet() == 2) {
+                    closeQuietly(slot);
+                }
+            });
+        }
+        try {
+            StreamConnector connector = winner.get();
+            LogHelper.LogDebug("[RETRY] " + (first.getNow(null) == connector ? "First" : "Hedged") + " connection attempt won");
+            return connector;
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            winner.thenAccept(StreamConnector::close);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting");
+        }
+    }
+
+    // A null result skips the hedge, so does a failure to take a slot
+    private static Closeable takeHedgeSlot(HedgeSlots slots, long hedgeAfterMillis) {
+        if (slots == null) {
+            return () -> { };
+        }
+        try {
+            Closeable slot = slots.acquire();
+            if (slot == null) {
+                LogHelper.LogWarning(String.format(TextHelper.RETRY_HEDGE_SKIPPED, hedgeAfterMillis, "all provider connections in use"));
+            }
+            return slot;
+        } catch (IOException e) {
+            LogHelper.LogWarning(String.format(TextHelper.RETRY_HEDGE_SKIPPED, hedgeAfterMillis, e.getMessage()));
+            return null;
+        }
+    }
+
+    private static StreamConnector awaitAttempt(CompletableFuture<StreamConnector> attempt) throws IOException {
+        try {
+            return attempt.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            attempt.thenAccept(StreamConnector::close);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting");
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LogHelper.LogDebug("[RETRY] Could not release the hedge connection slot: " + e.getMessage());
+        }
+    }
+
+    private static CompletableFuture<StreamConnector> openAsync(String url, int connectTimeoutMillis, int readTimeoutMillis) {
+        return CompletableFuture.supplyAsync(() -> {
+            StreamConnector connector = null;
+            try {
+                connector = open(url, connectTimeoutMillis, readTimeoutMillis);
+                connector.awaitFirstByte();
+                return connector;
+            } catch (IOException e) {
+                if (connector != null) {
+                    connector.close();
+                }
+                throw new UncheckedIOException(e);
+            }
+        }, HEDGE_EXECUTOR);
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof UncheckedIOException u) {
+            return u.getCause();
+        }
+        return cause instanceof IOException io ? io : new IOException(cause);
+    }
+
+    // Blocks until the stream has data, without consuming it
+    private void awaitFirstByte() throws IOException {
+        input.mark(1);
+        if (input.read() == -1) {
+            throw new IOException("Stream ended without data");
+        }
+        input.reset();
+    }
+
+    /**
+     * Resolves DNS and follows redirects without reading the stream, for recorders that open the URL themselves.
+     * @return The final URL after redirects
+     * @throws IOException if the URL cannot be reached
+     */
+    public static String resolve(String url, int connectTimeoutMillis) throws IOException {
+        URLConnection conn = connect(url, connectTimeoutMillis, connectTimeoutMillis);
+        try {
+            return conn.getURL().toString();
+        } finally {
+            if (conn instanceof HttpURLConnection http) {
+                http.disconnect();
+            }
+        }
+    }
+
+    private static URLConnection connect(String url, int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+        URL current = URI.create(url).toURL();
+        for (int hop = 0; hop <= MAX_REDIRECTS; hop++) {
+            warmDns(current);
+            URLConnection conn = current.openConnection();
+            conn.setConnectTimeout(connectTimeoutMillis);
+            conn.setReadTimeout(readTimeoutMillis);
+            if (!(conn instanceof HttpURLConnection http)) {
+                conn.connect();
+                return conn;
+            }
+            http.setInstanceFollowRedirects(false);
+            int code = http.getResponseCode();
+            if (code < 300 || code >= 400) {
+                if (code >= 400) {
+                    http.disconnect();
+                    throw new IOException("HTTP " + code + " from " + current.getHost());
+                }
+                return http;
+            }
+            String location = http.getHeaderField("Location");
+            http.disconnect();
+            if (location == null) {
+                throw new IOException("HTTP " + code + " without Location from " + current.getHost());
+            }
+            try {
+                current = current.toURI().resolve(location).toURL();
+            } catch (java.net.URISyntaxException e) {
+                throw new IOException("Invalid redirect location: " + location, e);
+            }
+            LogHelper.LogDebug("[PREWARM] Redirected to host " + current.getHost());
+        }
+        throw new IOException("Too many redirects for " + url);
+    }
+
+    // Puts the host in the JVM's DNS cache so the connect itself does not pay for the lookup
+    private static void warmDns(URL url) throws IOException {
+        long started = System.nanoTime();
+        InetAddress.getAllByName(url.getHost());
+        LogHelper.LogDebug(String.format("[PREWARM] Resolved %s in %d ms", url.getHost(), (System.nanoTime() - started) / 1_000_000));
+    }
+
+    public String getResolvedUrl() {
+        return resolvedUrl;
+    }
+
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    /**
+     * Reads and discards stream data until the deadline, so the server keeps sending live data and
+     * nothing old is buffered when capture starts.
+     * @param deadlineMillis Epoch millis when capture starts
+     * @return Number of discarded bytes
+     * @throws IOException if the stream fails or ends before the deadline
+     */
+    public long discardUntil(long deadlineMillis) throws IOException {
+        byte[] buf = new byte[DRAIN_BUFFER_SIZE];
+        long discarded = 0;
+        while (System.currentTimeMillis() < deadlineMillis) {
+            int read = input.read(buf);
+            if (read == -1) {
+                throw new IOException("Stream ended before start time");
+            }
+            discarded += read;
+        }
+        return discarded;
+    }
+
+    /**
+     * Like discardUntil, but keeps the most recent data in a pre-roll buffer. The buffered data is the
+     * start of alignedStream, followed by the live stream.
+     * @param startNow Checked between reads, true ends buffering early (the real start was detected)
+     * @return true if buffering was ended early by startNow
+     * @throws IOException if the stream fails or ends before the deadline
+     */
+    public boolean bufferUntil(long deadlineMillis, PreRollBuffer preRoll, BooleanSupplier startNow) throws IOException {
+        this.preRoll = preRoll;
+        byte[] buf = new byte[DRAIN_BUFFER_SIZE];
+        while (System.currentTimeMillis() < deadlineMillis) {
+            if (startNow.getAsBoolean()) {
+                return true;
+            }
+            int read = input.read(buf);
+            if (read == -1) {
+                throw new IOException("Stream ended before start time");
+            }
+            preRoll.write(buf, 0, read, System.currentTimeMillis());
+        }
+        return false;
+    }
+
+    /**
+     * @return The stream starting at the next transport stream packet boundary (or unaligned if no
+     *         packets are found, e.g. for non-TS streams), after the pre-roll if one was buffered
+     * @throws IOException if reading fails
+     */
+    public InputStream alignedStream() throws IOException {
+        InputStream source = preRoll != null ? new SequenceInputStream(preRoll.drain(), input) : input;
+        preRoll = null;
+        byte[] head = source.readNBytes(ALIGN_WINDOW);
+        int sync = TsPackets.findSync(head, 0, head.length);
+        if (sync < 0) {
+            sync = 0;
+        }
+        return new SequenceInputStream(new ByteArrayInputStream(head, sync, head.length - sync), source);
+    }
+
+    @Override
+    public void close() {
+        try {
+            input.close();
+        } catch (IOException ignored) {
+        }
+        if (connection instanceof HttpURLConnection http) {
+            http.disconnect();
+        }
+    }
+}
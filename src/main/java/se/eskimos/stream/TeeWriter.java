@@ -0,0 +1,232 @@
+package se.eskimos.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+
+/**
+ * Writes copies of a recording's data to further destinations (mirrors), e.g. a NAS next to the local
+ * disk. Every mirror has its own thread and a bounded buffer, so the primary write path only copies the
+ * data and never waits: when a mirror falls behind by more than its buffer, the data it cannot take is
+ * dropped (whole TS packets, players resync after the gap) until it has caught up.
+ *
+ * A mirror that fails to write skips the rest of the file and tries again with the next one.
+ */
+public class TeeWriter implements Closeable {
+
+    /**
+     * A mirror destination, shared by all files written to it.
+     */
+    public static final class Destination {
+        private final String name;
+        private final UnaryOperator<String> fileName;
+        private final long bufferBytes;
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+
+        /**
+         * @param name Name in logs and metrics, e.g. the mirror's root directory
+         * @param fileName Mirror file of a primary file
+         * @param bufferBytes Data held for the mirror before it is dropped
+         */
+        public Destination(String name, UnaryOperator<String> fileName, long bufferBytes) {
+            if (bufferBytes <= 0) {
+                throw new IllegalArgumentException("The mirror buffer must be > 0");
+            }
+            this.name = name;
+            this.fileName = fileName;
+            this.bufferBytes = bufferBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** @return Bytes written to this mirror */
+        public long getWritten() {
+            return written.get();
+        }
+
+        /** @return Bytes dropped because this mirror fell behind or failed */
+        public long getDropped() {
+            return dropped.get();
+        }
+    }
+
+    private record Open(String primaryFile) {}
+
+    // Queued after a target's last data
+    private static final Object END = new Object();
+    private static final long CLOSE_TIMEOUT_MS = 10_000;
+
+    private final class Target implements Runnable {
+        final Destination destination;
+        final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        final AtomicLong queuedBytes = new AtomicLong();
+        final Thread thread;
+        // Only changed by the primary writer
+        long droppedSince = -1;
+        // Set when close stops waiting, what is still queued is not written
+        volatile boolean abandoned;
+
+        Target(Destination destination) {
+            this.destination = destination;
+            this.thread = new Thread(this, "stream-mirror-" + destination.getName() + "-" + id);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void write(ByteBuffer data) {
+            int length = data.remaining();
+            if (queuedBytes.get() + length > destination.bufferBytes) {
+                if (droppedSince < 0) {
+                    droppedSince = destination.getDropped();
+                    LogHelper.LogWarning(String.format(TextHelper.MIRROR_BEHIND, destination.getName(), id, destination.bufferBytes / (1024 * 1024)));
+                }
+                destination.dropped.addAndGet(length);
+                return;
+            }
+            if (droppedSince >= 0) {
+                LogHelper.Log(String.format(TextHelper.MIRROR_CAUGHT_UP, destination.getName(), id, (destination.getDropped() - droppedSince) / 1024));
+                droppedSince = -1;
+            }
+            byte[] copy = new byte[length];
+            data.get(copy);
+            queuedBytes.addAndGet(length);
+            queue.add(copy);
+        }
+
+        @Override
+        public void run() {
+            FileChannel out = null;
+            String file = null;
+            try {
+                while (true) {
+                    Object item = queue.take();
+                    if (item == END || abandoned) {
+                        break;
+                    }
+                    if (item instanceof Open open) {
+                        out = closeQuietly(out, file);
+                        file = destination.fileName.apply(open.primaryFile());
+                        try {
+                            Path path = Path.of(file);
+                            if (path.getParent() != null) {
+                                Files.createDirectories(path.getParent());
+                            }
+                            out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                            LogHelper.LogDebug(String.format(TextHelper.MIRROR_STARTED, destination.getName(), id, file));
+                        } catch (IOException | RuntimeException e) {
+                            LogHelper.LogError(String.format(TextHelper.MIRROR_WRITE_FAILED, destination.getName(), id, e.getMessage()));
+                        }
+                        continue;
+                    }
+                    byte[] data = (byte[]) item;
+                    queuedBytes.addAndGet(-data.length);
+                    if (out == null) {
+                        destination.dropped.addAndGet(data.length);
+                        continue;
+                    }
+                    try {
+                        ByteBuffer buffer = ByteBuffer.wrap(data);
+                        while (buffer.hasRemaining()) {
+                            out.write(buffer);
+                        }
+                        destination.written.addAndGet(data.length);
+                    } catch (IOException e) {
+                        // The rest of this file is dropped, the next file is tried again
+                        LogHelper.LogError(String.format(TextHelper.MIRROR_WRITE_FAILED, destination.getName(), id, e.getMessage()));
+                        destination.dropped.addAndGet(data.length);
+                        out = closeQuietly(out, file);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            closeQuietly(out, file);
+        }
+
+        private FileChannel closeQuietly(FileChannel out, String file) {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    LogHelper.LogWarning(String.format(TextHelper.MIRROR_WRITE_FAILED, destination.getName(), id, e.getMessage()));
+                }
+            }
+            return null;
+        }
+    }
+
+    private final String id;
+    private final List<Target> targets = new ArrayList<>();
+
+    /**
+     * Starts a writer thread per destination.
+     * @param id Job id of the recording, for logs
+     */
+    public TeeWriter(String id, List<Destination> destinations) {
+        this.id = id;
+        for (Destination destination : destinations) {
+            targets.add(new Target(destination));
+        }
+    }
+
+    /**
+     * Continues in the mirror files of a new primary file, the previous ones are closed after their data.
+     */
+    public void open(String primaryFile) {
+        for (Target target : targets) {
+            target.queue.add(new Open(primaryFile));
+        }
+    }
+
+    /**
+     * Copies the data to every mirror with room in its buffer, never blocks. Only called by the primary writer.
+     * The buffer's position is left unchanged.
+     */
+    public void write(ByteBuffer data) {
+        for (Target target : targets) {
+            target.write(data.duplicate());
+        }
+    }
+
+    /**
+     * Ends the mirrors and waits a while for their buffers to be written. A mirror that has not finished by
+     * then stops, and what it still had queued is counted as dropped.
+     */
+    @Override
+    public void close() {
+        long giveUpAt = System.currentTimeMillis() + CLOSE_TIMEOUT_MS;
+        for (Target target : targets) {
+            target.queue.add(END);
+        }
+        for (Target target : targets) {
+            try {
+                target.thread.join(Math.max(1, giveUpAt - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (target.thread.isAlive()) {
+                target.abandoned = true;
+                long queued = target.queuedBytes.get();
+                target.destination.dropped.addAndGet(queued);
+                LogHelper.LogWarning(String.format(TextHelper.MIRROR_CLOSE_TIMEOUT, target.destination.getName(), id,
+                    CLOSE_TIMEOUT_MS / 1000, queued / 1024));
+            }
+        }
+    }
+}
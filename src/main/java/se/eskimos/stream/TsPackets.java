@@ -0,0 +1,157 @@
+package se.eskimos.stream;
+
+/**
+ * Helpers for reading MPEG transport stream packet headers (ISO/IEC 13818-1).
+ * All methods take the buffer and the offset of the packet's sync byte and never allocate.
+ */
+public final class TsPackets {
+    public static final int PACKET_SIZE = 188;
+    public static final byte SYNC_BYTE = 0x47;
+    /** PCR and PTS tick rate */
+    public static final long CLOCK_HZ = 90_000L;
+    /** Number of consecutive sync bytes required before an offset is trusted as packet start */
+    private static final int SYNC_CONFIRMATIONS = 3;
+
+    private TsPackets() {
+    }
+
+    /**
+     * Finds the first offset from which several packets in a row start with a sync byte.
+     * @param buf Buffer to search
+     * @param from First offset to test
+     * @param to End of valid data (exclusive)
+     * @return Offset of the first packet, or -1 if no aligned packets are found
+     */
+    public static int findSync(byte[] buf, int from, int to) {
+        int needed = Math.min(SYNC_CONFIRMATIONS, Math.max(1, (to - from) / PACKET_SIZE));
+        for (int i = from; i + (long) (needed - 1) * PACKET_SIZE < to; i++) {
+            boolean aligned = true;
+            for (int k = 0; k < needed; k++) {
+                if (buf[i + k * PACKET_SIZE] != SYNC_BYTE) {
+                    aligned = false;
+                    break;
+                }
+            }
+            if (aligned) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** @return The 13 bit packet identifier */
+    public static int pid(byte[] buf, int off) {
+        return ((buf[off + 1] & 0x1F) << 8) | (buf[off + 2] & 0xFF);
+    }
+
+    /** @return true if a PES packet or PSI section starts in this packet */
+    public static boolean payloadUnitStart(byte[] buf, int off) {
+        return (buf[off + 1] & 0x40) != 0;
+    }
+
+    /** @return The 4 bit continuity counter */
+    public static int continuityCounter(byte[] buf, int off) {
+        return buf[off + 3] & 0x0F;
+    }
+
+    /** @return true if the packet carries payload (the continuity counter only increments for these) */
+    public static boolean hasPayload(byte[] buf, int off) {
+        return (buf[off + 3] & 0x10) != 0;
+    }
+
+    /** @return true if the packet has an adaptation field with at least the flags byte */
+    public static boolean hasAdaptationField(byte[] buf, int off) {
+        return (buf[off + 3] & 0x20) != 0 && (buf[off + 4] & 0xFF) > 0;
+    }
+
+    /** @return true if the discontinuity indicator is set (counter and PCR jumps are expected) */
+    public static boolean discontinuity(byte[] buf, int off) {
+        return hasAdaptationField(buf, off) && (buf[off + 5] & 0x80) != 0;
+    }
+
+    /** @return true if the random access indicator is set (typically a keyframe starts here) */
+    public static boolean randomAccess(byte[] buf, int off) {
+        return hasAdaptationField(buf, off) && (buf[off + 5] & 0x40) != 0;
+    }
+
+    /** @return true if the packet carries a PCR */
+    public static boolean hasPcr(byte[] buf, int off) {
+        return hasAdaptationField(buf, off) && (buf[off + 4] & 0xFF) >= 7 && (buf[off + 5] & 0x10) != 0;
+    }
+
+    /**
+     * Reads the 33 bit PCR base (90 kHz). Only valid if hasPcr is true.
+     */
+    public static long pcr(byte[] buf, int off) {
+        return ((long) (buf[off + 6] & 0xFF) << 25)
+            | ((long) (buf[off + 7] & 0xFF) << 17)
+            | ((long) (buf[off + 8] & 0xFF) << 9)
+            | ((long) (buf[off + 9] & 0xFF) << 1)
+            | ((buf[off + 10] & 0x80) >>> 7);
+    }
+
+    /**
+     * Reads the PTS (90 kHz) of a PES header starting in this packet.
+     * @return The PTS, or -1 if the packet does not start a PES packet with a PTS
+     */
+    public static long pts(byte[] buf, int off) {
+        if (!payloadUnitStart(buf, off) || !hasPayload(buf, off)) {
+            return -1;
+        }
+        int p = off + 4;
+        if ((buf[off + 3] & 0x20) != 0) {
+            p += 1 + (buf[off + 4] & 0xFF);
+        }
+        // PES start code 00 00 01, stream id, length (2), flags (2), header length, PTS (5)
+        if (p + 14 > off + PACKET_SIZE || buf[p] != 0 || buf[p + 1] != 0 || buf[p + 2] != 1) {
+            return -1;
+        }
+        if ((buf[p + 7] & 0x80) == 0) {
+            return -1;
+        }
+        return ((long) (buf[p + 9] & 0x0E) << 29)
+            | ((long) (buf[p + 10] & 0xFF) << 22)
+            | ((long) (buf[p + 11] & 0xFE) << 14)
+            | ((long) (buf[p + 12] & 0xFF) << 7)
+            | ((buf[p + 13] & 0xFE) >>> 1);
+    }
+
+    /**
+     * Reads the program map PIDs of a PAT section starting in this packet (PID 0).
+     * @param pids Receives the PIDs, at most its length
+     * @return Number of PIDs read, 0 if the packet does not start a PAT section
+     */
+    public static int patProgramMapPids(byte[] buf, int off, int[] pids) {
+        if (pid(buf, off) != 0 || !payloadUnitStart(buf, off) || !hasPayload(buf, off)) {
+            return 0;
+        }
+        int p = off + 4;
+        if ((buf[off + 3] & 0x20) != 0) {
+            p += 1 + (buf[off + 4] & 0xFF);
+        }
+        if (p >= off + PACKET_SIZE) {
+            return 0;
+        }
+        // Pointer field, then table id 0, section length and 5 bytes up to the program loop, CRC at the end
+        int s = p + 1 + (buf[p] & 0xFF);
+        if (s + 8 > off + PACKET_SIZE || buf[s] != 0) {
+            return 0;
+        }
+        int end = Math.min(s + 3 + (((buf[s + 1] & 0x0F) << 8) | (buf[s + 2] & 0xFF)) - 4, off + PACKET_SIZE);
+        int count = 0;
+        for (int e = s + 8; e + 4 <= end && count < pids.length; e += 4) {
+            int program = ((buf[e] & 0xFF) << 8) | (buf[e + 1] & 0xFF);
+            if (program != 0) {
+                pids[count++] = ((buf[e + 2] & 0x1F) << 8) | (buf[e + 3] & 0xFF);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Difference between two 33 bit clock values, handling wrap-around.
+     */
+    public static long clockDelta(long from, long to) {
+        return (to - from) & ((1L << 33) - 1);
+    }
+}
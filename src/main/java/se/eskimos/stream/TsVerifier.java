@@ -0,0 +1,271 @@
+package se.eskimos.stream;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToLongFunction;
+import se.eskimos.helpers.TextHelper;
+import se.eskimos.log.LogHelper;
+
+/**
+ * Checks a finished recording: memory maps the file and scans every packet for lost sync, continuity
+ * counter errors and PCR gaps, and compares the duration the PCR covers with the scheduled window. The
+ * result is written as a JSON report next to the recording (&lt;file&gt;.verify.json).
+ *
+ * Several recordings are checked in parallel on a bounded pool.
+ */
+public class TsVerifier {
+
+    /** Suffix of the report next to the recording */
+    public static final String SUFFIX = ".verify.json";
+
+    /**
+     * A stretch of the stream without PCR, e.g. the time a connection was lost.
+     * @param offset Byte offset of the PCR after the gap
+     * @param atMillis Stream time where the gap starts
+     * @param millis Length of the gap
+     */
+    public record Gap(long offset, long atMillis, long millis) {}
+
+    /**
+     * What a scan found.
+     * @param durationMillis Stream time the PCR covers, gaps left out
+     * @param expectedMillis Scheduled length of the recording, 0 if unknown
+     */
+    public record Report(Path file, long bytes, long packets, long syncLosses, long continuityErrors,
+                         Map<Integer, Long> continuityErrorsByPid, List<Gap> pcrGaps, long durationMillis, long expectedMillis) {
+
+        /**
+         * @return How much shorter than scheduled the recording is, 0 if it is not
+         */
+        public long shortfallMillis() {
+            return expectedMillis > 0 ? Math.max(0, expectedMillis - durationMillis) : 0;
+        }
+
+        /**
+         * @return true if nothing was lost and the recording is not noticeably shorter than scheduled
+         */
+        public boolean isOk() {
+            return packets > 0 && syncLosses == 0 && continuityErrors == 0 && pcrGaps.isEmpty() && isComplete(durationMillis, expectedMillis);
+        }
+
+        public String toJson() {
+            StringBuilder json = new StringBuilder("{\n");
+            json.append("  \"file\": \"").append(escape(file.toString())).append("\",\n");
+            json.append("  \"ok\": ").append(isOk()).append(",\n");
+            json.append("  \"bytes\": ").append(bytes).append(",\n");
+            json.append("  \"packets\": ").append(packets).append(",\n");
+            json.append("  \"syncLosses\": ").append(syncLosses).append(",\n");
+            json.append("  \"continuityErrors\": ").append(continuityErrors).append(",\n");
+            json.append("  \"continuityErrorsByPid\": {");
+            String sep = "";
+            for (Map.Entry<Integer, Long> e : continuityErrorsByPid.entrySet()) {
+                json.append(sep).append('"').append(e.getKey()).append("\": ").append(e.getValue());
+                sep = ", ";
+            }
+            json.append("},\n");
+            json.append("  \"pcrGaps\": [");
+            sep = "";
+            for (Gap gap : pcrGaps) {
+                json.append(sep).append("{\"offset\": ").append(gap.offset()).append(", \"atMillis\": ").append(gap.atMillis())
+                    .append(", \"millis\": ").append(gap.millis()).append('}');
+                sep = ", ";
+            }
+            json.append("],\n");
+            json.append("  \"durationMillis\": ").append(durationMillis).append(",\n");
+            json.append("  \"expectedMillis\": ").append(expectedMillis).append(",\n");
+            json.append("  \"shortfallMillis\": ").append(shortfallMillis()).append("\n");
+            return json.append("}\n").toString();
+        }
+    }
+
+    // PCRs are at most 100 ms apart, a second without one is lost stream
+    private static final long GAP_TICKS = TsPackets.CLOCK_HZ;
+    private static final long SHORTFALL_TOLERANCE_MS = 30_000;
+    private static final int NULL_PID = 0x1FFF;
+    // Mapped at most this much of the file at a time, read into a small array packet by packet
+    private static final long REGION_BYTES = 1L << 30;
+    private static final int READ_BYTES = 1024 * TsPackets.PACKET_SIZE;
+    private static final int MAX_GAPS = 1000;
+
+    private TsVerifier() {
+    }
+
+    /**
+     * @return The report file of a recording
+     */
+    public static Path reportFile(Path recording) {
+        return recording.resolveSibling(recording.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Scans one recording.
+     * @param expectedMillis Scheduled length, 0 if unknown
+     */
+    public static Report verify(Path file, long expectedMillis) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            byte[] buf = new byte[READ_BYTES];
+            int[] lastCc = new int[8192];
+            java.util.Arrays.fill(lastCc, -1);
+            Map<Integer, Long> ccErrors = new TreeMap<>();
+            List<Gap> gaps = new ArrayList<>();
+            long packets = 0;
+            long syncLosses = 0;
+            long continuityErrors = 0;
+            int pcrPid = -1;
+            long lastPcr = -1;
+            long durationTicks = 0;
+            long pos = 0;
+            MappedByteBuffer region = null;
+            long regionStart = 0;
+            boolean inSync = true;
+            while (pos + TsPackets.PACKET_SIZE <= size) {
+                if (region == null || pos + TsPackets.PACKET_SIZE > regionStart + region.capacity()) {
+                    regionStart = pos;
+                    region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, Math.min(REGION_BYTES, size - regionStart));
+                }
+                int len = (int) Math.min(buf.length, regionStart + region.capacity() - pos);
+                region.get((int) (pos - regionStart), buf, 0, len);
+                int off = 0;
+                while (off + TsPackets.PACKET_SIZE <= len) {
+                    if (buf[off] != TsPackets.SYNC_BYTE) {
+                        if (inSync) {
+                            syncLosses++;
+                            inSync = false;
+                        }
+                        int sync = TsPackets.findSync(buf, off + 1, len);
+                        off = sync < 0 ? len - TsPackets.PACKET_SIZE + 1 : sync;
+                        continue;
+                    }
+                    inSync = true;
+                    packets++;
+                    int pid = TsPackets.pid(buf, off);
+                    boolean discontinuity = TsPackets.discontinuity(buf, off);
+                    if (pid != NULL_PID && TsPackets.hasPayload(buf, off)) {
+                        int cc = TsPackets.continuityCounter(buf, off);
+                        int last = lastCc[pid];
+                        // A repeated counter is a permitted duplicate packet
+                        if (last >= 0 && !discontinuity && cc != last && cc != ((last + 1) & 0x0F)) {
+                            continuityErrors++;
+                            ccErrors.merge(pid, 1L, Long::sum);
+                        }
+                        lastCc[pid] = cc;
+                    }
+                    if (TsPackets.hasPcr(buf, off) && (pcrPid < 0 || pid == pcrPid)) {
+                        pcrPid = pid;
+                        long pcr = TsPackets.pcr(buf, off);
+                        if (lastPcr >= 0 && !discontinuity) {
+                            long delta = TsPackets.clockDelta(lastPcr, pcr);
+                            if (delta > GAP_TICKS) {
+                                // Backwards steps wrap to huge deltas and count as gaps of unknown length
+                                long millis = delta < (1L << 32) ? delta / (TsPackets.CLOCK_HZ / 1000) : -1;
+                                if (gaps.size() < MAX_GAPS) {
+                                    gaps.add(new Gap(pos + off, durationTicks / (TsPackets.CLOCK_HZ / 1000), millis));
+                                }
+                            } else {
+                                durationTicks += delta;
+                            }
+                        }
+                        lastPcr = pcr;
+                    }
+                    off += TsPackets.PACKET_SIZE;
+                }
+                pos += Math.max(off, 1);
+            }
+            return new Report(file, size, packets, syncLosses, continuityErrors, ccErrors, gaps,
+                durationTicks / (TsPackets.CLOCK_HZ / 1000), expectedMillis);
+        }
+    }
+
+    /**
+     * Scans a recording and writes its report next to it.
+     */
+    public static Report verifyAndWrite(Path file, long expectedMillis) throws IOException {
+        Report report = verify(file, expectedMillis);
+        Path target = reportFile(file);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.writeString(tmp, report.toJson(), StandardCharsets.UTF_8);
+        Files.move(tmp, target, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        return report;
+    }
+
+    /**
+     * Scans recordings in parallel and writes their reports, a recording that cannot be read is logged and left out.
+     * @param expectedMillis Scheduled length of a recording, 0 if unknown
+     * @param threads Size of the pool
+     */
+    public static List<Report> verifyAll(List<Path> files, ToLongFunction<Path> expectedMillis, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())), r -> {
+            Thread t = new Thread(r, "ts-verifier");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Report>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(pool.submit(() -> verifyAndWrite(file, expectedMillis.applyAsLong(file))));
+            }
+            List<Report> reports = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    reports.add(futures.get(i).get());
+                } catch (java.util.concurrent.ExecutionException e) {
+                    LogHelper.LogWarning(String.format(TextHelper.VERIFY_FAILED, files.get(i), e.getCause().getMessage()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return reports;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @param expectedMillis Scheduled length, 0 if unknown
+     * @return true if the duration is at most 30 seconds (or 2%) shorter than scheduled
+     */
+    public static boolean isComplete(long durationMillis, long expectedMillis) {
+        long tolerance = Math.max(SHORTFALL_TOLERANCE_MS, expectedMillis / 50);
+        return expectedMillis <= 0 || expectedMillis - durationMillis <= tolerance;
+    }
+
+    /**
+     * Logs the outcome of a scan, problems as a warning.
+     */
+    public static void log(Report report) {
+        if (report.isOk()) {
+            LogHelper.Log(String.format(TextHelper.VERIFY_OK, report.file(), report.durationMillis() / 1000));
+        } else {
+            LogHelper.LogWarning(String.format(TextHelper.VERIFY_PROBLEMS, report.file(), report.continuityErrors(), report.pcrGaps().size(),
+                report.syncLosses(), report.durationMillis() / 1000, report.expectedMillis() / 1000));
+        }
+    }
+
+    private static String escape(String s) {
+        StringBuilder out = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,169 @@
+package se.eskimos.watch;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import se.eskimos.helpers.DateTimeHelper;
+
+/**
+ * A declarative auto-record rule. All conditions that are set must match:
+ * every keyword (same semantics as the special scenario search), one of the groups,
+ * one of the sports and a start time inside the from/to window.
+ *
+ * Rules are read from a properties file, for example:
+ * <pre>
+ * rule.mxgp.keywords=MXGP FHD
+ * rule.mxgp.groups=Sport Events|Motor
+ * rule.mxgp.from=12:00
+ * rule.mxgp.to=23:00
+ * rule.mxgp.duration=150
+ * rule.mxgp.priority=10
+ * rule.mxgp.preRollMinutes=5
+ * rule.giro.sports=Giro d'Italia
+ * rule.giro.duration=300
+ * </pre>
+ */
+public record WatchRule(String name, List<String> keywords, List<String> groups, List<String> sports,
+                        LocalTime from, LocalTime to, String start, String stop, int durationMinutes, int priority,
+                        int preRollMinutes) {
+
+    public static final int DEFAULT_DURATION_MINUTES = 120;
+    private static final String RULE_PREFIX = "rule.";
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
+    /**
+     * @return true if the rule has a start time window
+     */
+    public boolean hasWindow() {
+        return from != null || to != null;
+    }
+
+    /**
+     * Creates a keyword-only rule with the same semantics as the special scenario search string
+     * (all words must be found in the channel name).
+     * @param name Name of the rule, used in logs
+     * @param search The search string
+     * @return The rule
+     */
+    public static WatchRule forSearch(String name, String search) {
+        List<String> keywords = splitWords(search);
+        if (keywords.isEmpty()) {
+            throw new IllegalArgumentException("Search string for '" + name + "' is empty");
+        }
+        return new WatchRule(name, keywords, List.of(), List.of(), null, null, null, null, DEFAULT_DURATION_MINUTES, 0, 0);
+    }
+
+    /**
+     * Loads all rules from a properties file. Rules are returned sorted by name,
+     * which is also the order used when several rules match the same channel.
+     * @param path Path to the rules file
+     * @return The rules
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    public static List<WatchRule> load(String path) throws IOException {
+        Properties props = new Properties();
+        try (var fis = new FileInputStream(path)) {
+            props.load(fis);
+        }
+        return parse(props);
+    }
+
+    /**
+     * Parses rules from already loaded properties.
+     */
+    public static List<WatchRule> parse(Properties props) {
+        TreeSet<String> names = new TreeSet<>();
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith(RULE_PREFIX) && key.indexOf('.', RULE_PREFIX.length()) > 0) {
+                names.add(key.substring(RULE_PREFIX.length(), key.indexOf('.', RULE_PREFIX.length())));
+            }
+        }
+        List<WatchRule> rules = new ArrayList<>();
+        for (String name : names) {
+            String p = RULE_PREFIX + name + ".";
+            List<String> keywords = splitWords(props.getProperty(p + "keywords"));
+            List<String> groups = splitList(props.getProperty(p + "groups"));
+            List<String> sports = splitList(props.getProperty(p + "sports"));
+            if (keywords.isEmpty() && groups.isEmpty() && sports.isEmpty()) {
+                throw new IllegalArgumentException("Watch rule '" + name + "' needs at least one of keywords, groups or sports");
+            }
+            LocalTime from = parseTime(name, props.getProperty(p + "from"));
+            LocalTime to = parseTime(name, props.getProperty(p + "to"));
+            LocalTime start = parseTime(name, props.getProperty(p + "start"));
+            LocalTime stop = parseTime(name, props.getProperty(p + "stop"));
+            int duration = DEFAULT_DURATION_MINUTES;
+            String durationValue = props.getProperty(p + "duration");
+            if (durationValue != null && !durationValue.trim().isEmpty()) {
+                try {
+                    duration = Integer.parseInt(durationValue.trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Watch rule '" + name + "' has an invalid duration: " + durationValue);
+                }
+                if (duration <= 0) {
+                    throw new IllegalArgumentException("Watch rule '" + name + "' must have a duration > 0");
+                }
+            }
+            int priority = 0;
+            String priorityValue = props.getProperty(p + "priority");
+            if (priorityValue != null && !priorityValue.trim().isEmpty()) {
+                try {
+                    priority = Integer.parseInt(priorityValue.trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Watch rule '" + name + "' has an invalid priority: " + priorityValue);
+                }
+            }
+            int preRoll = 0;
+            String preRollValue = props.getProperty(p + "preRollMinutes");
+            if (preRollValue != null && !preRollValue.trim().isEmpty()) {
+                try {
+                    preRoll = Integer.parseInt(preRollValue.trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Watch rule '" + name + "' has an invalid preRollMinutes: " + preRollValue);
+                }
+                if (preRoll < 0) {
+                    throw new IllegalArgumentException("Watch rule '" + name + "' must have preRollMinutes >= 0");
+                }
+            }
+            rules.add(new WatchRule(name, keywords, groups, sports, from, to,
+                start != null ? TIME_FORMATTER.format(start) : null,
+                stop != null ? TIME_FORMATTER.format(stop) : null,
+                duration, priority, preRoll));
+        }
+        return rules;
+    }
+
+    private static LocalTime parseTime(String rule, String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return DateTimeHelper.parseFlexibleLocalTime(value.trim(), TIME_FORMATTER);
+        } catch (java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException("Watch rule '" + rule + "' has an invalid time: " + value);
+        }
+    }
+
+    private static List<String> splitWords(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return List.of();
+        }
+        return Arrays.asList(value.trim().toLowerCase().split("\\s+"));
+    }
+
+    private static List<String> splitList(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return List.of();
+        }
+        return Arrays.stream(value.split("\\|"))
+            .map(String::trim)
+            .filter(s -> !s.isEmpty())
+            .toList();
+    }
+}
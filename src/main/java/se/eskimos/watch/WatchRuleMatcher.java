@@ -0,0 +1,281 @@
+package se.eskimos.watch;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import se.eskimos.helpers.DateTimeHelper;
+import se.eskimos.helpers.KeywordAutomaton;
+import se.eskimos.helpers.SportsEventsHelper;
+import se.eskimos.log.LogHelper;
+import se.eskimos.m3u.M3UHolder;
+
+/**
+ * All watch rules compiled into one matcher. Keywords and sport names of every rule share one
+ * Aho-Corasick automaton, so each channel name is scanned once regardless of the number of rules.
+ * Only rules that got a keyword or sport hit (or group-only rules matching the channel's group)
+ * are checked further.
+ */
+public class WatchRuleMatcher {
+
+    /**
+     * A channel matched by a rule, with the start time extracted from its name (null if it had none).
+     */
+    public record Match(M3UHolder channel, WatchRule rule, LocalTime channelStartTime) {}
+
+    private final List<WatchRule> rules;
+    private final KeywordAutomaton automaton;
+    // Per keyword id: rules requiring it as keyword, and rules accepting it as sport
+    private final int[][] keywordRules;
+    private final int[][] sportRules;
+    // Number of distinct keywords each rule requires
+    private final int[] requiredKeywords;
+    // Normalized groups per rule (empty = any group)
+    private final List<Set<String>> ruleGroups = new ArrayList<>();
+    // Group-only rules (no keywords or sports) indexed by group
+    private final Map<String, int[]> groupOnlyRules = new HashMap<>();
+
+    private WatchRuleMatcher(List<WatchRule> rules) {
+        this.rules = List.copyOf(rules);
+        Map<String, Integer> keywordIds = new HashMap<>();
+        List<String> keywords = new ArrayList<>();
+        Map<Integer, List<Integer>> keywordPostings = new HashMap<>();
+        Map<Integer, List<Integer>> sportPostings = new HashMap<>();
+        Map<String, List<Integer>> groupOnly = new HashMap<>();
+        this.requiredKeywords = new int[rules.size()];
+
+        for (int r = 0; r < rules.size(); r++) {
+            WatchRule rule = rules.get(r);
+            Set<String> distinct = new HashSet<>(rule.keywords());
+            for (String kw : distinct) {
+                int id = keywordIds.computeIfAbsent(kw, k -> { keywords.add(k); return keywords.size() - 1; });
+                keywordPostings.computeIfAbsent(id, k -> new ArrayList<>()).add(r);
+            }
+            requiredKeywords[r] = distinct.size();
+            for (String sportKeyword : expandSports(rule)) {
+                int id = keywordIds.computeIfAbsent(sportKeyword, k -> { keywords.add(k); return keywords.size() - 1; });
+                List<Integer> postings = sportPostings.computeIfAbsent(id, k -> new ArrayList<>());
+                if (postings.isEmpty() || postings.get(postings.size() - 1) != r) {
+                    postings.add(r);
+                }
+            }
+            Set<String> groups = new HashSet<>();
+            for (String g : rule.groups()) {
+                groups.add(normalize(g));
+            }
+            ruleGroups.add(groups);
+            // Rules with sports but no keywords become candidates through their sport hits
+            if (distinct.isEmpty() && rule.sports().isEmpty()) {
+                for (String g : groups) {
+                    groupOnly.computeIfAbsent(g, k -> new ArrayList<>()).add(r);
+                }
+            }
+        }
+        this.automaton = new KeywordAutomaton(keywords);
+        this.keywordRules = toArrays(keywordPostings, keywords.size());
+        this.sportRules = toArrays(sportPostings, keywords.size());
+        for (Map.Entry<String, List<Integer>> e : groupOnly.entrySet()) {
+            groupOnlyRules.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * Compiles the rules into a matcher. Compile once and reuse it for every playlist refresh.
+     */
+    public static WatchRuleMatcher compile(List<WatchRule> rules) {
+        return new WatchRuleMatcher(rules);
+    }
+
+    /**
+     * @return Number of compiled rules
+     */
+    public int getRuleCount() {
+        return rules.size();
+    }
+
+    /**
+     * Evaluates all rules in a single pass over the channel list.
+     * A channel is matched by at most one rule, the first one in rule order.
+     * @param channels The channels to evaluate
+     * @return One match per matched channel, in playlist order
+     */
+    public List<Match> evaluate(List<M3UHolder> channels) {
+        List<Match> matches = new ArrayList<>();
+        Scratch scratch = new Scratch();
+        for (M3UHolder ch : channels) {
+            String name = displayName(ch);
+            String group = normalize(ch.groupTitle());
+            if (!scratch.collectCandidates(name, group)) {
+                continue;
+            }
+            LocalTime startTime = DateTimeHelper.extractTimeFromName(name);
+            int best = -1;
+            for (int i = 0; i < scratch.candidateCount; i++) {
+                int r = scratch.candidates[i];
+                if ((best == -1 || r < best) && accepts(r, group, startTime, scratch)) {
+                    best = r;
+                }
+            }
+            if (best != -1) {
+                matches.add(new Match(ch, rules.get(best), startTime));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Finds the first channel (in playlist order) matched by each rule, in a single pass that ends
+     * as soon as every rule is resolved. Unlike evaluate, several rules may resolve to the same channel.
+     * @param channels The channels to evaluate
+     * @return Array indexed like the rules, with null for rules that matched nothing
+     */
+    public Match[] firstMatchPerRule(List<M3UHolder> channels) {
+        Match[] result = new Match[rules.size()];
+        int unresolved = rules.size();
+        Scratch scratch = new Scratch();
+        for (M3UHolder ch : channels) {
+            if (unresolved == 0) {
+                break;
+            }
+            String name = displayName(ch);
+            String group = normalize(ch.groupTitle());
+            if (!scratch.collectCandidates(name, group)) {
+                continue;
+            }
+            LocalTime startTime = DateTimeHelper.extractTimeFromName(name);
+            for (int i = 0; i < scratch.candidateCount; i++) {
+                int r = scratch.candidates[i];
+                if (result[r] == null && accepts(r, group, startTime, scratch)) {
+                    result[r] = new Match(ch, rules.get(r), startTime);
+                    unresolved--;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Checks the conditions that the automaton pass does not decide on its own
+    private boolean accepts(int r, String group, LocalTime startTime, Scratch scratch) {
+        WatchRule rule = rules.get(r);
+        if (!rule.sports().isEmpty() && scratch.sportStamp[r] != scratch.stamp) {
+            return false;
+        }
+        Set<String> groups = ruleGroups.get(r);
+        if (!groups.isEmpty() && !groups.contains(group)) {
+            return false;
+        }
+        return !rule.hasWindow() || inWindow(startTime, rule.from(), rule.to());
+    }
+
+    private static String displayName(M3UHolder ch) {
+        return ch.tvgName() != null && !ch.tvgName().isEmpty() ? ch.tvgName() : ch.name();
+    }
+
+    /**
+     * Per-evaluation scratch state. Arrays are stamped with the channel number instead of being cleared per channel.
+     */
+    private final class Scratch {
+        final int[] keywordSeen = new int[automaton.getKeywordCount()];
+        final int[] hitCount = new int[rules.size()];
+        final int[] hitStamp = new int[rules.size()];
+        final int[] sportStamp = new int[rules.size()];
+        final int[] candidateStamp = new int[rules.size()];
+        final int[] candidates = new int[rules.size()];
+        int candidateCount;
+        int stamp;
+
+        // Scans one channel name and collects the rules worth checking, returns false if there are none
+        boolean collectCandidates(String name, String group) {
+            stamp++;
+            candidateCount = 0;
+            automaton.scan(name, this::onKeyword);
+            int[] byGroup = groupOnlyRules.get(group);
+            if (byGroup != null) {
+                for (int r : byGroup) {
+                    addCandidate(r);
+                }
+            }
+            return candidateCount > 0;
+        }
+
+        private void onKeyword(int id) {
+            if (keywordSeen[id] == stamp) {
+                return;
+            }
+            keywordSeen[id] = stamp;
+            for (int r : keywordRules[id]) {
+                if (hitStamp[r] != stamp) {
+                    hitStamp[r] = stamp;
+                    hitCount[r] = 0;
+                }
+                if (++hitCount[r] == requiredKeywords[r]) {
+                    addCandidate(r);
+                }
+            }
+            for (int r : sportRules[id]) {
+                sportStamp[r] = stamp;
+                if (requiredKeywords[r] == 0) {
+                    addCandidate(r);
+                }
+            }
+        }
+
+        private void addCandidate(int r) {
+            if (candidateStamp[r] != stamp) {
+                candidateStamp[r] = stamp;
+                candidates[candidateCount++] = r;
+            }
+        }
+    }
+
+    // Window is inclusive and may cross midnight; a missing bound is open
+    private static boolean inWindow(LocalTime time, LocalTime from, LocalTime to) {
+        if (time == null) {
+            return false;
+        }
+        if (from != null && to != null && to.isBefore(from)) {
+            return !time.isBefore(from) || !time.isAfter(to);
+        }
+        return (from == null || !time.isBefore(from)) && (to == null || !time.isAfter(to));
+    }
+
+    // A rule sport matches the SportsEventsHelper keywords that extractAllEventsAndStages would report under that name
+    private static Set<String> expandSports(WatchRule rule) {
+        Set<String> expanded = new HashSet<>();
+        for (String sport : rule.sports()) {
+            String wanted = sanitize(sport);
+            boolean found = false;
+            for (String keyword : SportsEventsHelper.SPORTS_KEYWORDS) {
+                if (sanitize(keyword).equals(wanted)) {
+                    expanded.add(keyword.toLowerCase());
+                    found = true;
+                }
+            }
+            if (!found) {
+                LogHelper.LogWarning(String.format("[WATCH] Sport '%s' in rule '%s' is not a known sport keyword, matching it as plain text.", sport, rule.name()));
+                expanded.add(sport.toLowerCase());
+            }
+        }
+        return expanded;
+    }
+
+    private static String sanitize(String value) {
+        return value.replaceAll("[^A-Za-z0-9]", "_").toLowerCase();
+    }
+
+    private static String normalize(String group) {
+        return group == null ? "" : group.trim().toLowerCase();
+    }
+
+    private static int[][] toArrays(Map<Integer, List<Integer>> postings, int size) {
+        int[][] result = new int[size][];
+        for (int i = 0; i < size; i++) {
+            List<Integer> list = postings.get(i);
+            result[i] = list == null ? new int[0] : list.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return result;
+    }
+}
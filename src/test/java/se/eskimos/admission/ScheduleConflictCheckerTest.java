@@ -0,0 +1,124 @@
+package se.eskimos.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import se.eskimos.recorder.RecordingJob;
+
+class ScheduleConflictCheckerTest {
+
+    private static RecordingJob job(String id, String provider, String url, long start, long stop) {
+        RecordingJob job = new RecordingJob(id);
+        job.setProvider(provider);
+        job.setUrl(url);
+        job.setStartAt(start);
+        job.setStopAt(stop);
+        return job;
+    }
+
+    @Test
+    void peakCountsOnlyJobsRunningAtTheSameInstant() {
+        // a and b overlap each other, c starts when a and b have stopped
+        ScheduleConflictChecker checker = new ScheduleConflictChecker(List.of(
+            job("a", "p", "u1", 0, 100),
+            job("b", "p", "u2", 50, 150),
+            job("c", "p", "u3", 150, 200)));
+        ScheduleConflictChecker.Report report = checker.check(job("new", "p", "u4", 0, 200));
+        assertEquals(3, report.providerOverlaps().size());
+        assertEquals(2, report.peakConcurrent());
+        assertFalse(report.exceeds(3));
+        assertTrue(report.exceeds(2));
+        assertFalse(report.exceeds(0));
+    }
+
+    @Test
+    void backToBackWindowsDoNotOverlap() {
+        ScheduleConflictChecker checker = new ScheduleConflictChecker(List.of(job("a", "p", "u1", 0, 100)));
+        ScheduleConflictChecker.Report report = checker.check(job("new", "p", "u2", 100, 200));
+        assertEquals(0, report.peakConcurrent());
+        assertFalse(report.exceeds(1));
+    }
+
+    @Test
+    void providerLoadCountsTheLeadBeforeTheStart() {
+        // a connects 60 s before its start to pre-roll, while b is still recording
+        RecordingJob preRolling = job("a", "p", "u1", 100_000, 200_000);
+        preRolling.setLeadSeconds(60);
+        ScheduleConflictChecker checker = new ScheduleConflictChecker(List.of(job("b", "p", "u2", 0, 100_000)));
+        assertTrue(checker.check(preRolling).exceeds(1));
+        checker.add(preRolling);
+        assertEquals(2, checker.check(job("c", "p", "u3", 50_000, 60_000)).peakConcurrent());
+        checker.remove(preRolling);
+        assertEquals(1, checker.check(job("c", "p", "u3", 50_000, 60_000)).peakConcurrent());
+        // Duplicates are judged by the recorded window
+        assertEquals(List.of(), checker.check(job("d", "p", "u1", 0, 100_000)).duplicates());
+    }
+
+    @Test
+    void peakIsClippedToTheNewWindow() {
+        // a and b overlap only before the new job starts
+        ScheduleConflictChecker checker = new ScheduleConflictChecker(List.of(
+            job("a", "p", "u1", 0, 100),
+            job("b", "p", "u2", 10, 60)));
+        assertEquals(1, checker.check(job("new", "p", "u3", 60, 120)).peakConcurrent());
+    }
+
+    @Test
+    void otherProvidersAndInactiveJobsAreNotCounted() {
+        RecordingJob done = job("done", "p", "u1", 0, 100);
+        done.setStatus(RecordingJob.Status.DONE);
+        ScheduleConflictChecker checker = new ScheduleConflictChecker(List.of(done, job("other", "q", "u2", 0, 100)));
+        ScheduleConflictChecker.Report report = checker.check(job("new", "p", "u3", 0, 100));
+        assertEquals(List.of(), report.providerOverlaps());
+        assertEquals(0, report.peakConcurrent());
+    }
+
+    @Test
+    void theJobItselfIsIgnored() {
+        RecordingJob job = job("a", "p", "u1", 0, 100);
+        ScheduleConflictChecker checker = new ScheduleConflictChecker(List.of(job));
+        ScheduleConflictChecker.Report report = checker.check(job);
+        assertEquals(List.of(), report.duplicates());
+        assertEquals(0, report.peakConcurrent());
+    }
+
+    @Test
+    void coveringJobIsTheOneSpanningTheWindow() {
+        RecordingJob partial = job("partial", "p", "u1", 0, 60);
+        RecordingJob covering = job("covering", "p", "u1", 30, 200);
+        ScheduleConflictChecker checker = new ScheduleConflictChecker(List.of(partial, covering));
+        RecordingJob added = job("new", "p", "u1", 50, 150);
+        ScheduleConflictChecker.Report report = checker.check(added);
+        assertEquals(2, report.duplicates().size());
+        assertTrue(report.isCoveredBy(added));
+        assertEquals("covering", report.coveringJob(added).getId());
+
+        ScheduleConflictChecker.Report longer = checker.check(job("longer", "p", "u1", 0, 300));
+        assertEquals(2, longer.duplicates().size());
+        assertNull(longer.coveringJob(job("longer", "p", "u1", 0, 300)));
+    }
+
+    @Test
+    void addedAndRemovedJobsChangeLaterChecks() {
+        ScheduleConflictChecker checker = new ScheduleConflictChecker(List.of());
+        RecordingJob first = job("a", "p", "u1", 0, 100);
+        checker.add(first);
+        assertTrue(checker.check(job("new", "p", "u2", 50, 60)).exceeds(1));
+        checker.remove(first);
+        assertFalse(checker.check(job("new", "p", "u2", 50, 60)).exceeds(1));
+    }
+
+    @Test
+    void runningAtIncludesJobsStoppingAtTheInstant() {
+        ScheduleConflictChecker checker = new ScheduleConflictChecker(List.of(
+            job("a", "p", "u1", 0, 100),
+            job("b", "p", "u1", 100, 200),
+            job("c", "p", "u1", 300, 400)));
+        assertEquals(List.of("a", "b"), checker.runningAt("u1", 100).stream().map(RecordingJob::getId).toList());
+        assertEquals(List.of(), checker.runningAt("u2", 100));
+    }
+}
@@ -0,0 +1,106 @@
+package se.eskimos.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @Test
+    void smallValuesAreCountedExactly() {
+        for (long value = 0; value < 128; value++) {
+            assertEquals(value, LatencyHistogram.highestEquivalent(LatencyHistogram.index(value)));
+        }
+    }
+
+    @Test
+    void bucketsAreWithinOneSixtyFourthOfTheValue() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            long highest = LatencyHistogram.highestEquivalent(LatencyHistogram.index(value));
+            assertTrue(highest >= value, value + " above its bucket " + highest);
+            assertTrue(highest - value <= value / 64, value + " too far below " + highest);
+        }
+    }
+
+    @Test
+    void bucketsFollowEachOtherWithoutGaps() {
+        int last = LatencyHistogram.index(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestEquivalent(last));
+        for (int i = 0; i < last; i++) {
+            long highest = LatencyHistogram.highestEquivalent(i);
+            assertEquals(i, LatencyHistogram.index(highest));
+            assertEquals(i + 1, LatencyHistogram.index(highest + 1));
+        }
+    }
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.valueAtQuantile(0.99));
+        assertEquals(0, histogram.getMeanNanos());
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    void quantilesOfAUniformSpread() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertEquals(500_500, histogram.getMeanNanos());
+        assertWithinBucket(500_000, histogram.valueAtQuantile(0.5));
+        assertWithinBucket(900_000, histogram.valueAtQuantile(0.9));
+        assertWithinBucket(990_000, histogram.valueAtQuantile(0.99));
+        assertWithinBucket(1000, histogram.valueAtQuantile(0));
+        // Upper bucket edges never go past the largest value recorded
+        assertEquals(1_000_000, histogram.valueAtQuantile(1));
+    }
+
+    @Test
+    void outlierOnlyShowsInTheHighQuantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 999; i++) {
+            histogram.record(100);
+        }
+        histogram.record(50_000_000);
+        assertEquals(100, histogram.valueAtQuantile(0.99));
+        assertEquals(50_000_000, histogram.valueAtQuantile(0.9999));
+    }
+
+    @Test
+    void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.valueAtQuantile(1));
+    }
+
+    @Test
+    void exportTypesTheCountAsCounter() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(2_000_000);
+        Metrics metrics = new Metrics();
+        histogram.export(metrics, "write_latency", "job", "a");
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("# TYPE write_latency_total counter\nwrite_latency_total{job=\"a\"} 1\n"), text);
+        assertTrue(text.contains("# TYPE write_latency_max_us gauge\nwrite_latency_max_us{job=\"a\"} 2000\n"), text);
+    }
+
+    @Test
+    void gaugesAndCountersKeepToTheirSuffix() {
+        Metrics metrics = new Metrics();
+        assertThrows(IllegalArgumentException.class, () -> metrics.gauge("bytes_total", "", () -> 0));
+        assertThrows(IllegalArgumentException.class, () -> metrics.counter("bytes", "", () -> 0));
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue(actual >= expected && actual - expected <= expected / 64, "expected about " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,113 @@
+package se.eskimos.scheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class IntervalTreeTest {
+
+    private record Interval(long start, long end, int id) {}
+
+    @Test
+    void overlapIsHalfOpen() {
+        IntervalTree<String> tree = new IntervalTree<>();
+        tree.add(10, 20, "a");
+        assertEquals(List.of(), tree.overlapping(0, 10));
+        assertEquals(List.of(), tree.overlapping(20, 30));
+        assertEquals(List.of("a"), tree.overlapping(19, 30));
+        assertEquals(List.of("a"), tree.overlapping(12, 13));
+        assertEquals(List.of("a"), tree.overlapping(0, 100));
+    }
+
+    @Test
+    void resultsAreOrderedByStart() {
+        IntervalTree<String> tree = new IntervalTree<>();
+        tree.add(30, 40, "c");
+        tree.add(10, 50, "a");
+        tree.add(20, 25, "b");
+        assertEquals(List.of("a", "b", "c"), tree.overlapping(0, 100));
+        assertEquals(List.of("a", "c"), tree.overlapping(35, 36));
+    }
+
+    @Test
+    void emptyIntervalsAreRejected() {
+        IntervalTree<String> tree = new IntervalTree<>();
+        assertThrows(IllegalArgumentException.class, () -> tree.add(5, 5, "x"));
+        assertThrows(IllegalArgumentException.class, () -> tree.add(6, 5, "x"));
+    }
+
+    @Test
+    void removeTakesOneOfEqualIntervals() {
+        IntervalTree<String> tree = new IntervalTree<>();
+        tree.add(0, 10, "a");
+        tree.add(0, 10, "a");
+        tree.add(0, 10, "b");
+        assertTrue(tree.remove(0, 10, "a"));
+        assertEquals(2, tree.size());
+        assertEquals(List.of("a", "b"), sorted(tree.overlapping(0, 10)));
+        assertFalse(tree.remove(0, 11, "a"));
+        assertFalse(tree.remove(0, 10, "c"));
+        assertTrue(tree.remove(0, 10, "b"));
+        assertTrue(tree.remove(0, 10, "a"));
+        assertEquals(0, tree.size());
+        assertEquals(List.of(), tree.overlapping(0, 10));
+    }
+
+    @Test
+    void sortedInsertsStayBalanced() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        int n = 4096;
+        for (int i = 0; i < n; i++) {
+            tree.add(i, i + 1, i);
+        }
+        // An AVL tree is at most about 1.44 log2(n) high
+        assertTrue(tree.height() <= 1.45 * (Math.log(n + 2) / Math.log(2)), "height " + tree.height());
+        for (int i = 0; i < n; i += 2) {
+            assertTrue(tree.remove(i, i + 1, i));
+        }
+        assertEquals(n / 2, tree.size());
+        assertTrue(tree.height() <= 1.45 * (Math.log(n / 2 + 2) / Math.log(2)), "height " + tree.height());
+        assertEquals(List.of(1, 3), tree.overlapping(0, 4));
+    }
+
+    @Test
+    void matchesBruteForceUnderRandomChanges() {
+        Random random = new Random(42);
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        List<Interval> intervals = new ArrayList<>();
+        for (int round = 0; round < 5000; round++) {
+            if (intervals.isEmpty() || random.nextInt(3) > 0) {
+                // Few distinct starts, so equal starts end up on both sides of rotations
+                long start = random.nextInt(50);
+                Interval added = new Interval(start, start + 1 + random.nextInt(20), round);
+                tree.add(added.start(), added.end(), added.id());
+                intervals.add(added);
+            } else {
+                Interval removed = intervals.remove(random.nextInt(intervals.size()));
+                assertTrue(tree.remove(removed.start(), removed.end(), removed.id()));
+            }
+            assertEquals(intervals.size(), tree.size());
+            long from = random.nextInt(70);
+            long to = from + 1 + random.nextInt(10);
+            List<Integer> expected = new ArrayList<>();
+            for (Interval i : intervals) {
+                if (i.start() < to && from < i.end()) {
+                    expected.add(i.id());
+                }
+            }
+            assertEquals(sorted(expected), sorted(tree.overlapping(from, to)));
+        }
+    }
+
+    private static <T extends Comparable<T>> List<T> sorted(List<T> values) {
+        List<T> copy = new ArrayList<>(values);
+        copy.sort(null);
+        return copy;
+    }
+}
@@ -0,0 +1,115 @@
+package se.eskimos.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RecordingCatalogTest {
+
+    @TempDir
+    Path stateDir;
+
+    private static RecordingCatalog.Entry entry(String id, String date, String channel, List<String> sports, String status, List<String> files) {
+        return new RecordingCatalog.Entry(id, date, channel, "", "Sport", sports, 1000, 2000, 1100, 1900, 0, status, "", files);
+    }
+
+    @Test
+    void fieldsSurviveTheRoundTrip() throws Exception {
+        RecordingCatalog catalog = new RecordingCatalog(stateDir.toString());
+        RecordingCatalog.Entry written = new RecordingCatalog.Entry("url|2025-05-01|20:00|22:00", "2025-05-01",
+            "Tab\there, line\nbreak", "tv|id", "A\\B", List.of("Foot|ball", "back\\slash", "\\p"), 1, 2, 3, 4, 5,
+            "DONE", "ok", List.of("/rec/a|b/part.ts", "C:\\rec\\part.ts", "/rec/ends\\"));
+        catalog.append(written);
+        assertEquals(1, catalog.load());
+        RecordingCatalog.Entry read = catalog.get(written.id());
+        assertEquals("Tab\there, line\nbreak", read.channel());
+        assertEquals(written, read);
+    }
+
+    @Test
+    void carriageReturnsAreDropped() throws Exception {
+        RecordingCatalog catalog = new RecordingCatalog(stateDir.toString());
+        catalog.append(entry("a", "2025-05-01", "One\r\nTwo", List.of(), "DONE", List.of()));
+        catalog.load();
+        assertEquals("One\nTwo", catalog.get("a").channel());
+        assertEquals(List.of(), catalog.get("a").files());
+    }
+
+    @Test
+    void laterEntryReplacesEarlierOne() throws Exception {
+        RecordingCatalog catalog = new RecordingCatalog(stateDir.toString());
+        catalog.append(entry("a", "2025-05-01", "SVT1", List.of(), "DONE", List.of("/rec/a.ts")));
+        catalog.append(entry("a", "2025-05-01", "SVT1", List.of(), "DONE", List.of("/rec/a.mkv")));
+        assertEquals(1, catalog.load());
+        assertEquals(List.of("/rec/a.mkv"), catalog.get("a").files());
+        assertEquals("a", catalog.findByFile(Path.of("/rec/a.mkv")).id());
+        assertNull(catalog.findByFile(Path.of("/rec/a.ts")));
+    }
+
+    @Test
+    void linesOfTheEarlierFormatStillLoad() throws Exception {
+        // Lists were escaped as a whole and joined with a bare |
+        Files.writeString(stateDir.resolve("recordings.catalog"), "# IPTV-Recorder recording catalog\n"
+            + "R\ta\t2025-05-01\tSVT1\t\tSport\tCykling|Etapp_5\t1\t2\t3\t4\t5\tDONE\t\t/rec/a.ts|C:\\\\rec\\\\b.ts\n",
+            StandardCharsets.UTF_8);
+        RecordingCatalog catalog = new RecordingCatalog(stateDir.toString());
+        assertEquals(1, catalog.load());
+        assertEquals(List.of("Cykling", "Etapp_5"), catalog.get("a").sports());
+        assertEquals(List.of("/rec/a.ts", "C:\\rec\\b.ts"), catalog.get("a").files());
+    }
+
+    @Test
+    void unreadableLinesAreSkipped() throws Exception {
+        RecordingCatalog catalog = new RecordingCatalog(stateDir.toString());
+        catalog.append(entry("a", "2025-05-01", "SVT1", List.of(), "DONE", List.of()));
+        Files.writeString(stateDir.resolve("recordings.catalog"), "R\tshort\n", StandardCharsets.UTF_8,
+            java.nio.file.StandardOpenOption.APPEND);
+        assertEquals(1, catalog.load());
+    }
+
+    @Test
+    void queriesCombineDateChannelSportAndStatus() throws Exception {
+        RecordingCatalog catalog = new RecordingCatalog(stateDir.toString());
+        catalog.append(entry("a", "2025-04-30", "Eurosport 1", List.of("Cykling", "Etapp_5"), "DONE", List.of()));
+        catalog.append(entry("b", "2025-05-01", "Eurosport 1", List.of("Cykling"), "FAILED", List.of()));
+        catalog.append(entry("c", "2025-05-02", "SVT1", List.of("Fotboll"), "DONE", List.of()));
+        catalog.load();
+        assertEquals(List.of("b", "c"), ids(catalog.query(RecordingCatalog.Query.parse(List.of("date=2025-05")))));
+        assertEquals(List.of("a", "b"), ids(catalog.query(RecordingCatalog.Query.parse(List.of("channel=eurosport")))));
+        assertEquals(List.of("a"), ids(catalog.query(RecordingCatalog.Query.parse(List.of("sport=etapp")))));
+        assertEquals(List.of("b"), ids(catalog.query(RecordingCatalog.Query.parse(List.of("sport=cykling", "status=failed")))));
+        assertEquals(List.of("a", "b", "c"), ids(catalog.query(RecordingCatalog.Query.parse(List.of()))));
+    }
+
+    @Test
+    void removalDropsTheEntryUntilItIsAddedAgain() throws Exception {
+        RecordingCatalog catalog = new RecordingCatalog(stateDir.toString());
+        catalog.append(entry("a|b", "2025-05-01", "SVT1", List.of(), "DONE", List.of("/rec/a.ts")));
+        catalog.append(entry("c", "2025-05-01", "SVT2", List.of(), "DONE", List.of("/rec/c.ts")));
+        catalog.remove("a|b");
+        assertEquals(1, catalog.load());
+        assertNull(catalog.get("a|b"));
+        catalog.append(entry("a|b", "2025-05-01", "SVT1", List.of(), "DONE", List.of("/rec/a.mkv")));
+        assertEquals(2, catalog.load());
+    }
+
+    @Test
+    void findUnderMatchesWholeDirectories() throws Exception {
+        RecordingCatalog catalog = new RecordingCatalog(stateDir.toString());
+        catalog.append(entry("a", "2025-05-01", "SVT1", List.of(), "DONE", List.of("/rec/SVT1/2025_05_01/a.ts", "/spare/SVT1/a.ts")));
+        catalog.append(entry("b", "2025-05-01", "SVT1", List.of(), "DONE", List.of("/rec/SVT1/2025_05_01_2/b.ts")));
+        catalog.load();
+        assertEquals(List.of("a"), ids(catalog.findUnder(Path.of("/rec/SVT1/2025_05_01"))));
+        assertEquals(List.of("a"), ids(catalog.findUnder(Path.of("/spare"))));
+    }
+
+    private static List<String> ids(List<RecordingCatalog.Entry> entries) {
+        return entries.stream().map(RecordingCatalog.Entry::id).toList();
+    }
+}
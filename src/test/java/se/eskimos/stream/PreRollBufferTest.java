@@ -0,0 +1,89 @@
+package se.eskimos.stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.jupiter.api.Test;
+
+class PreRollBufferTest {
+
+    private static byte[] bytes(int from, int to) {
+        byte[] b = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            b[i - from] = (byte) i;
+        }
+        return b;
+    }
+
+    private static void write(PreRollBuffer buffer, byte[] data, long now) {
+        buffer.write(data, 0, data.length, now);
+    }
+
+    @Test
+    void keepsTheNewestBytesAcrossTheWrap() throws IOException {
+        PreRollBuffer buffer = new PreRollBuffer(10, 60_000);
+        write(buffer, bytes(0, 7), 0);
+        write(buffer, bytes(7, 14), 0);
+        assertEquals(10, buffer.size());
+        assertArrayEquals(bytes(4, 14), buffer.drain().readAllBytes());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void bulkReadsStopAtTheEndOfTheRing() throws IOException {
+        PreRollBuffer buffer = new PreRollBuffer(10, 60_000);
+        write(buffer, bytes(0, 8), 0);
+        write(buffer, bytes(8, 13), 0);
+        InputStream in = buffer.drain();
+        byte[] chunk = new byte[10];
+        // The oldest byte is at ring position 3, the first read ends at the ring's end
+        assertEquals(7, in.read(chunk, 0, chunk.length));
+        assertEquals(3, in.read(chunk, 7, 3));
+        assertEquals(-1, in.read(chunk, 0, 1));
+        assertArrayEquals(bytes(3, 13), chunk);
+    }
+
+    @Test
+    void writeLargerThanTheCapacityKeepsItsEnd() throws IOException {
+        PreRollBuffer buffer = new PreRollBuffer(10, 60_000);
+        write(buffer, bytes(0, 3), 0);
+        write(buffer, bytes(3, 28), 0);
+        assertArrayEquals(bytes(18, 28), buffer.drain().readAllBytes());
+    }
+
+    @Test
+    void dataOlderThanTheWindowIsDropped() throws IOException {
+        PreRollBuffer buffer = new PreRollBuffer(100, 1000);
+        write(buffer, bytes(0, 5), 0);
+        write(buffer, bytes(5, 10), 600);
+        assertEquals(1000, buffer.bufferedMillis(1000));
+        write(buffer, bytes(10, 15), 1200);
+        assertEquals(10, buffer.size());
+        assertEquals(600, buffer.bufferedMillis(1200));
+        assertArrayEquals(bytes(5, 15), buffer.drain().readAllBytes());
+    }
+
+    @Test
+    void drainIsASnapshot() throws IOException {
+        PreRollBuffer buffer = new PreRollBuffer(10, 60_000);
+        write(buffer, bytes(0, 4), 0);
+        InputStream in = buffer.drain();
+        assertEquals(4, in.available());
+        assertEquals(0, in.read());
+        write(buffer, bytes(4, 6), 0);
+        assertArrayEquals(bytes(1, 4), in.readAllBytes());
+        assertEquals(2, buffer.size());
+        assertArrayEquals(bytes(4, 6), buffer.drain().readAllBytes());
+    }
+
+    @Test
+    void emptyBufferDrainsNothing() throws IOException {
+        PreRollBuffer buffer = new PreRollBuffer(10, 60_000);
+        assertEquals(0, buffer.bufferedMillis(5));
+        assertEquals(-1, buffer.drain().read());
+        assertThrows(IllegalArgumentException.class, () -> new PreRollBuffer(0, 1000));
+    }
+}